@@ -0,0 +1,78 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.benchmarks;
+
+import it.geosolutions.jaiext.JAIExt;
+import it.geosolutions.jaiext.benchmarks.BenchmarkImages.Scenario;
+import it.geosolutions.jaiext.range.Range;
+import it.geosolutions.jaiext.testclasses.TestBase;
+
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+
+import javax.media.jai.JAI;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.ROI;
+
+/**
+ * Base class of the benchmark states, containing the source image of a data type, together with the NoData Range and the ROI of a
+ * {@link Scenario}. The subclasses define the tested data types and scenarios.
+ */
+public abstract class AbstractImageState {
+
+    /** Subsample bits of the interpolations */
+    static final int SUBSAMPLE_BITS = TestBase.DEFAULT_SUBSAMPLE_BITS;
+
+    /** Center of the source image, used as anchor of the rotations */
+    static final double CENTER_X = TestBase.DEFAULT_WIDTH / 2d;
+
+    static final double CENTER_Y = TestBase.DEFAULT_HEIGHT / 2d;
+
+    /** Data type of the source image */
+    public int sourceDataType;
+
+    /** Source image */
+    public RenderedImage source;
+
+    /** NoData Range, null if not used */
+    public Range noData;
+
+    /** ROI, null if not used */
+    public ROI roi;
+
+    /** Creates the source image, the NoData and the ROI */
+    protected void init(int dataType, Scenario scenario) {
+        JAIExt.initJAIEXT();
+        // The tile cache must not hide the computation time
+        JAI.getDefaultInstance().getTileCache().setMemoryCapacity(0);
+        sourceDataType = dataType;
+        source = BenchmarkImages.createImage(dataType, TestBase.DEFAULT_WIDTH,
+                TestBase.DEFAULT_HEIGHT, 1);
+        noData = scenario.isNoData() ? BenchmarkImages.createNoData(dataType) : null;
+        roi = scenario.isRoi() ? BenchmarkImages.createROI() : null;
+    }
+
+    /** Computes all the tiles of the image and disposes it */
+    public static Raster[] compute(PlanarImage image) {
+        try {
+            return image.getTiles();
+        } finally {
+            image.dispose();
+        }
+    }
+}
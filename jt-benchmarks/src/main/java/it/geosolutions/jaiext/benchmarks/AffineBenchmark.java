@@ -0,0 +1,65 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.benchmarks;
+
+import it.geosolutions.jaiext.affine.AffineDescriptor;
+import it.geosolutions.jaiext.interpolators.InterpolationBilinear;
+import it.geosolutions.jaiext.interpolators.InterpolationNearest;
+
+import java.awt.geom.AffineTransform;
+import java.awt.image.Raster;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the Affine operation with a rotation, using nearest-neighbor and bilinear interpolation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class AffineBenchmark {
+
+    /** Rotation of 30 degrees around the image center */
+    private static final AffineTransform TRANSFORM = AffineTransform.getRotateInstance(
+            Math.PI / 6, AbstractImageState.CENTER_X, AbstractImageState.CENTER_Y);
+
+    @Benchmark
+    public Raster[] nearest(ImageState state) {
+        InterpolationNearest interp = new InterpolationNearest(state.noData, false, 0,
+                state.sourceDataType);
+        return AbstractImageState.compute(AffineDescriptor.create(state.source, TRANSFORM, interp,
+                new double[] { 0 }, state.roi, false, state.noData != null, state.noData, null));
+    }
+
+    @Benchmark
+    public Raster[] bilinear(ImageState state) {
+        InterpolationBilinear interp = new InterpolationBilinear(
+                AbstractImageState.SUBSAMPLE_BITS, state.noData, false, 0, state.sourceDataType);
+        return AbstractImageState.compute(AffineDescriptor.create(state.source, TRANSFORM, interp,
+                new double[] { 0 }, state.roi, false, state.noData != null, state.noData, null));
+    }
+}
@@ -0,0 +1,50 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.benchmarks;
+
+import java.io.File;
+
+import org.openjdk.jmh.results.format.ResultFormatType;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+
+/**
+ * Runs the JAI-EXT benchmarks and writes their results in JSON format, to be kept as regression baseline and compared with the results of later
+ * runs. The first optional argument is the output file (default <code>target/jmh-baseline.json</code>), the second one a regular expression
+ * selecting the benchmarks to run (default all).
+ */
+public class BaselineRunner {
+
+    /** Default output file */
+    static final String DEFAULT_BASELINE = "target" + File.separator + "jmh-baseline.json";
+
+    public static void main(String[] args) throws RunnerException {
+        String output = args.length > 0 ? args[0] : DEFAULT_BASELINE;
+        String include = args.length > 1 ? args[1] : BaselineRunner.class.getPackage()
+                .getName() + ".*Benchmark";
+        File parent = new File(output).getAbsoluteFile().getParentFile();
+        if (parent != null) {
+            parent.mkdirs();
+        }
+        Options options = new OptionsBuilder().include(include)
+                .resultFormat(ResultFormatType.JSON).result(output).build();
+        new Runner(options).run();
+    }
+}
@@ -0,0 +1,118 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.benchmarks;
+
+import it.geosolutions.jaiext.range.Range;
+import it.geosolutions.jaiext.range.RangeFactory;
+import it.geosolutions.jaiext.testclasses.TestBase;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.RenderedImage;
+
+import javax.media.jai.ROI;
+
+/**
+ * This class creates the source images, the NoData {@link Range}s and the {@link ROI}s used by the benchmarks, reusing the image builders of
+ * {@link TestBase}.
+ */
+public class BenchmarkImages extends TestBase {
+
+    /** NoData value used for all the data types */
+    static final int NO_DATA = 100;
+
+    /** Combinations of NoData and ROI tested by each benchmark */
+    public enum Scenario {
+        NONE(false, false), NODATA(true, false), ROI(false, true), ROI_NODATA(true, true);
+
+        private final boolean noData;
+
+        private final boolean roi;
+
+        Scenario(boolean noData, boolean roi) {
+            this.noData = noData;
+            this.roi = roi;
+        }
+
+        public boolean isNoData() {
+            return noData;
+        }
+
+        public boolean isRoi() {
+            return roi;
+        }
+    }
+
+    private BenchmarkImages() {
+    }
+
+    /** Creates a filled test image of the selected data type */
+    static RenderedImage createImage(int dataType, int width, int height, int bands) {
+        // The image is filled in order to have realistic data
+        boolean filler = IMAGE_FILLER;
+        IMAGE_FILLER = true;
+        try {
+            return createTestImage(dataType, width, height, noDataValue(dataType), false, bands);
+        } finally {
+            IMAGE_FILLER = filler;
+        }
+    }
+
+    /** Returns the NoData value of the selected data type, boxed as expected by {@link TestBase} */
+    static Number noDataValue(int dataType) {
+        switch (dataType) {
+        case DataBuffer.TYPE_BYTE:
+            return Byte.valueOf((byte) NO_DATA);
+        case DataBuffer.TYPE_USHORT:
+        case DataBuffer.TYPE_SHORT:
+            return Short.valueOf((short) NO_DATA);
+        case DataBuffer.TYPE_INT:
+            return Integer.valueOf(NO_DATA);
+        case DataBuffer.TYPE_FLOAT:
+            return Float.valueOf(NO_DATA);
+        case DataBuffer.TYPE_DOUBLE:
+            return Double.valueOf(NO_DATA);
+        default:
+            throw new IllegalArgumentException("Wrong data type");
+        }
+    }
+
+    /** Creates the NoData Range of the selected data type */
+    static Range createNoData(int dataType) {
+        switch (dataType) {
+        case DataBuffer.TYPE_BYTE:
+            return RangeFactory.create((byte) NO_DATA, true, (byte) NO_DATA, true);
+        case DataBuffer.TYPE_USHORT:
+            return RangeFactory.createU((short) NO_DATA, true, (short) NO_DATA, true);
+        case DataBuffer.TYPE_SHORT:
+            return RangeFactory.create((short) NO_DATA, true, (short) NO_DATA, true);
+        case DataBuffer.TYPE_INT:
+            return RangeFactory.create(NO_DATA, true, NO_DATA, true);
+        case DataBuffer.TYPE_FLOAT:
+            return RangeFactory.create((float) NO_DATA, true, (float) NO_DATA, true);
+        case DataBuffer.TYPE_DOUBLE:
+            return RangeFactory.create((double) NO_DATA, true, (double) NO_DATA, true);
+        default:
+            throw new IllegalArgumentException("Wrong data type");
+        }
+    }
+
+    /** Creates the ROI used by the benchmarks, covering the upper left 3/4 of the default image */
+    static ROI createROI() {
+        return new BenchmarkImages().roiCreation();
+    }
+}
@@ -0,0 +1,46 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.benchmarks;
+
+import it.geosolutions.jaiext.benchmarks.BenchmarkImages.Scenario;
+
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+/**
+ * Benchmark state testing all the six data types and all the {@link Scenario}s.
+ */
+@State(Scope.Benchmark)
+public class ImageState extends AbstractImageState {
+
+    /** Data type of the source image, from DataBuffer.TYPE_BYTE (0) to DataBuffer.TYPE_DOUBLE (5) */
+    @Param({ "0", "1", "2", "3", "4", "5" })
+    public int dataType;
+
+    /** Combination of NoData and ROI */
+    @Param({ "NONE", "NODATA", "ROI", "ROI_NODATA" })
+    public Scenario scenario;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        init(dataType, scenario);
+    }
+}
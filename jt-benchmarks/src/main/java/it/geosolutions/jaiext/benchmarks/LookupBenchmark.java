@@ -0,0 +1,111 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.benchmarks;
+
+import it.geosolutions.jaiext.benchmarks.BenchmarkImages.Scenario;
+import it.geosolutions.jaiext.lookup.LookupDescriptor;
+import it.geosolutions.jaiext.lookup.LookupTable;
+import it.geosolutions.jaiext.lookup.LookupTableFactory;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the Lookup operation. The lookup is defined only for integral sources, so only the Byte, UShort, Short and Integer data types are
+ * tested; the table maps each source value to a value of the same data type.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class LookupBenchmark {
+
+    /** Image state restricted to the integral data types */
+    @State(Scope.Benchmark)
+    public static class IntegralImageState extends AbstractImageState {
+
+        /** Data type of the source image, from DataBuffer.TYPE_BYTE (0) to DataBuffer.TYPE_INT (3) */
+        @Param({ "0", "1", "2", "3" })
+        public int dataType;
+
+        /** Combination of NoData and ROI */
+        @Param({ "NONE", "NODATA", "ROI", "ROI_NODATA" })
+        public Scenario scenario;
+
+        /** Lookup table for the source data type */
+        public LookupTable table;
+
+        @Setup(Level.Trial)
+        public void setup() {
+            init(dataType, scenario);
+            table = createTable(dataType);
+        }
+    }
+
+    @Benchmark
+    public Raster[] lookup(IntegralImageState state) {
+        return AbstractImageState.compute(LookupDescriptor.create(state.source, state.table, 0,
+                state.roi, state.noData, false, null));
+    }
+
+    private static LookupTable createTable(int dataType) {
+        switch (dataType) {
+        case DataBuffer.TYPE_BYTE:
+            byte[] dataB = new byte[256];
+            for (int i = 0; i < dataB.length; i++) {
+                dataB[i] = (byte) (255 - i);
+            }
+            return LookupTableFactory.create(dataB, 0);
+        case DataBuffer.TYPE_USHORT:
+            short[] dataUS = new short[65536];
+            for (int i = 0; i < dataUS.length; i++) {
+                dataUS[i] = (short) (65535 - i);
+            }
+            return LookupTableFactory.create(dataUS, 0, true);
+        case DataBuffer.TYPE_SHORT:
+            short[] dataS = new short[65536];
+            for (int i = 0; i < dataS.length; i++) {
+                dataS[i] = (short) (Short.MAX_VALUE - i);
+            }
+            return LookupTableFactory.create(dataS, Short.MIN_VALUE, false);
+        case DataBuffer.TYPE_INT:
+            int[] dataI = new int[65536];
+            for (int i = 0; i < dataI.length; i++) {
+                dataI[i] = -i;
+            }
+            return LookupTableFactory.create(dataI, Short.MIN_VALUE);
+        default:
+            throw new IllegalArgumentException("Wrong data type");
+        }
+    }
+}
@@ -0,0 +1,67 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.benchmarks;
+
+import it.geosolutions.jaiext.mosaic.MosaicDescriptor;
+import it.geosolutions.jaiext.range.Range;
+
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.concurrent.TimeUnit;
+
+import javax.media.jai.ROI;
+import javax.media.jai.operator.MosaicType;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the Mosaic operation of two overlapping sources, in overlay and blend mode. The NoData and the ROI of the scenario are set on the
+ * first source, so that the second source is used where the first one is not valid.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class MosaicBenchmark {
+
+    @Benchmark
+    public Raster[] overlay(ImageState state) {
+        return mosaic(state, javax.media.jai.operator.MosaicDescriptor.MOSAIC_TYPE_OVERLAY);
+    }
+
+    @Benchmark
+    public Raster[] blend(ImageState state) {
+        return mosaic(state, javax.media.jai.operator.MosaicDescriptor.MOSAIC_TYPE_BLEND);
+    }
+
+    private Raster[] mosaic(ImageState state, MosaicType type) {
+        RenderedImage[] sources = new RenderedImage[] { state.source, state.source };
+        ROI[] rois = state.roi != null ? new ROI[] { state.roi, null } : null;
+        Range[] noData = state.noData != null ? new Range[] { state.noData, state.noData }
+                : null;
+        return AbstractImageState.compute(MosaicDescriptor.create(sources, type, null, rois, null,
+                new double[] { 0 }, noData, null));
+    }
+}
@@ -0,0 +1,63 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.benchmarks;
+
+import it.geosolutions.jaiext.range.RangeFactory;
+import it.geosolutions.jaiext.rlookup.RangeLookupDescriptor;
+import it.geosolutions.jaiext.rlookup.RangeLookupTable;
+
+import java.awt.image.Raster;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the RangeLookup operation, classifying the source values in four intervals. The NoData of the scenario is not used since the
+ * operation does not support it.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class RangeLookupBenchmark {
+
+    /** Lookup table mapping the source values to four classes */
+    private static final RangeLookupTable<Double, Integer> TABLE;
+
+    static {
+        RangeLookupTable.Builder<Double, Integer> builder = new RangeLookupTable.Builder<Double, Integer>();
+        builder.add(RangeFactory.create(Double.NEGATIVE_INFINITY, false, 50d, false), 1);
+        builder.add(RangeFactory.create(50d, true, 150d, false), 2);
+        builder.add(RangeFactory.create(150d, true, 1000d, false), 3);
+        builder.add(RangeFactory.create(1000d, true, Double.POSITIVE_INFINITY, false), 4);
+        TABLE = builder.build();
+    }
+
+    @Benchmark
+    public Raster[] rangeLookup(ImageState state) {
+        return AbstractImageState.compute(RangeLookupDescriptor.create(state.source, TABLE,
+                Integer.valueOf(0), state.roi, null));
+    }
+}
@@ -0,0 +1,73 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.benchmarks;
+
+import it.geosolutions.jaiext.stats.Statistics;
+import it.geosolutions.jaiext.stats.Statistics.StatsType;
+import it.geosolutions.jaiext.stats.StatisticsDescriptor;
+
+import java.util.concurrent.TimeUnit;
+
+import javax.media.jai.RenderedOp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the Stats operation, computing the simple statistics and the histogram of the source.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class StatsBenchmark {
+
+    private static final int[] BANDS = new int[] { 0 };
+
+    private static final StatsType[] SIMPLE_STATS = new StatsType[] { StatsType.MEAN,
+            StatsType.EXTREMA, StatsType.VARIANCE };
+
+    private static final StatsType[] HISTOGRAM = new StatsType[] { StatsType.HISTOGRAM };
+
+    @Benchmark
+    public Object simpleStats(ImageState state) {
+        return compute(StatisticsDescriptor.create(state.source, 1, 1, state.roi, state.noData,
+                false, BANDS, SIMPLE_STATS, null));
+    }
+
+    @Benchmark
+    public Object histogram(ImageState state) {
+        return compute(StatisticsDescriptor.create(state.source, 1, 1, state.roi, state.noData,
+                false, BANDS, HISTOGRAM, new double[] { 0 }, new double[] { 1000 },
+                new int[] { 100 }, null));
+    }
+
+    private static Object compute(RenderedOp op) {
+        try {
+            return op.getProperty(Statistics.STATS_PROPERTY);
+        } finally {
+            op.dispose();
+        }
+    }
+}
@@ -0,0 +1,79 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.benchmarks;
+
+import it.geosolutions.jaiext.stats.Statistics.StatsType;
+import it.geosolutions.jaiext.testclasses.TestBase;
+import it.geosolutions.jaiext.zonal.ZonalStatsDescriptor;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import javax.media.jai.ROI;
+import javax.media.jai.ROIShape;
+import javax.media.jai.RenderedOp;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Warmup;
+
+/**
+ * Benchmark of the Zonal operation on four zones covering the quadrants of the source. The ROI of the scenario is used as mask.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5)
+@Measurement(iterations = 10)
+@Fork(1)
+public class ZonalBenchmark {
+
+    private static final int[] BANDS = new int[] { 0 };
+
+    private static final StatsType[] STATS = new StatsType[] { StatsType.MEAN, StatsType.MIN,
+            StatsType.MAX, StatsType.VARIANCE };
+
+    /** Zones covering the four quadrants of the source */
+    private static final List<ROI> ZONES = new ArrayList<ROI>();
+
+    static {
+        int w = TestBase.DEFAULT_WIDTH / 2;
+        int h = TestBase.DEFAULT_HEIGHT / 2;
+        for (int y = 0; y < 2; y++) {
+            for (int x = 0; x < 2; x++) {
+                ZONES.add(new ROIShape(new Rectangle(x * w, y * h, w, h)));
+            }
+        }
+    }
+
+    @Benchmark
+    public Object zonal(ImageState state) {
+        RenderedOp op = ZonalStatsDescriptor.create(state.source, null, null, ZONES,
+                state.noData, state.roi, false, BANDS, STATS, null, false, null);
+        try {
+            return op.getProperty(ZonalStatsDescriptor.ZS_PROPERTY);
+        } finally {
+            op.dispose();
+        }
+    }
+}
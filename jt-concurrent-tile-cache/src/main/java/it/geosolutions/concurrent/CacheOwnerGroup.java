@@ -0,0 +1,115 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.concurrent;
+
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A group of tile owners sharing a memory quota and a priority class inside a {@link ConcurrentTileCacheMultiMap}. When the cache memory is
+ * exceeded, the tiles of the groups over quota are evicted first, then the tiles of the groups with the lowest priority. The quota is a soft limit:
+ * a group may exceed it as long as the cache has free memory.
+ * <p>
+ * A group is notified to the cache observers, when diagnostic is enabled, each time it goes over or back within its quota.
+ */
+public final class CacheOwnerGroup {
+
+    /** Quota value for a group without memory limits */
+    public static final long UNLIMITED_QUOTA = Long.MAX_VALUE;
+
+    /** The default priority */
+    public static final int DEFAULT_PRIORITY = 0;
+
+    /** Name of the group */
+    private final String name;
+
+    /** Memory quota in bytes */
+    private final long quota;
+
+    /** Priority class, the tiles of the groups with higher priority are kept longer */
+    private final int priority;
+
+    /** Memory used by the cached tiles of the group */
+    private final AtomicLong memoryUsed = new AtomicLong();
+
+    /** Number of cached tiles of the group */
+    private final AtomicLong tileCount = new AtomicLong();
+
+    /**
+     * Creates a new group of tile owners.
+     * 
+     * @param name the group name
+     * @param quota the memory quota in bytes, or {@link #UNLIMITED_QUOTA}
+     * @param priority the priority class, tiles of the groups with higher priority are kept longer
+     */
+    public CacheOwnerGroup(String name, long quota, int priority) {
+        if (quota < 0) {
+            throw new IllegalArgumentException("Memory quota too small");
+        }
+        this.name = name;
+        this.quota = quota;
+        this.priority = priority;
+    }
+
+    /** Returns the group name */
+    public String getName() {
+        return name;
+    }
+
+    /** Returns the memory quota in bytes */
+    public long getQuota() {
+        return quota;
+    }
+
+    /** Returns the priority class */
+    public int getPriority() {
+        return priority;
+    }
+
+    /** Returns the memory used by the cached tiles of the group */
+    public long getMemoryUsed() {
+        return memoryUsed.get();
+    }
+
+    /** Returns the number of cached tiles of the group */
+    public long getTileCount() {
+        return tileCount.get();
+    }
+
+    /** Returns true if the memory used by the group is greater than its quota */
+    public boolean isOverQuota() {
+        return memoryUsed.get() > quota;
+    }
+
+    /**
+     * Accounts a tile added to or removed from the cache.
+     * 
+     * @return true if the group went over or back within its quota
+     */
+    boolean update(long tileSize, int tiles) {
+        tileCount.addAndGet(tiles);
+        long used = memoryUsed.addAndGet(tileSize);
+        long previous = used - tileSize;
+        return (previous > quota) != (used > quota);
+    }
+
+    @Override
+    public String toString() {
+        return "CacheOwnerGroup[" + name + ", quota=" + quota + ", priority=" + priority
+                + ", memoryUsed=" + memoryUsed.get() + "]";
+    }
+}
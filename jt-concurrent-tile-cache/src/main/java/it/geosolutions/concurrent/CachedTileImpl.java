@@ -23,21 +23,34 @@ import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.lang.ref.WeakReference;
-import java.math.BigInteger;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import javax.media.jai.CachedTile;
 import javax.media.jai.PlanarImage;
 import javax.media.jai.remote.SerializableRenderedImage;
 
+import com.google.common.collect.MapMaker;
+
 /**
  * This class is used by ConcurrentTileCache to create an object that includes all the information associated with a tile, and is put into the cache.
  */
-public final class CachedTileImpl implements CachedTile {
+public final class CachedTileImpl implements CachedTile, OwnerTileIndex.IndexedTile {
     
     /*
-     * The shallow size of this object, the weak reference, the typical big integer keys
+     * The shallow size of this object, the weak reference to the owner and the tile key. The image key is shared by all the tiles of the image
      */
-    private static final long CACHED_TILE_OVERHEAD = 64 + 32 + 96 + 96;
+    private static final long CACHED_TILE_OVERHEAD = 96 + 32 + 32;
+
+    /**
+     * Keys assigned to the images which do not provide an image ID. The images are weakly referenced in order to not prevent their disposal and
+     * compared by identity, and the map is concurrent so that the key lookups of different threads do not contend on a lock.
+     */
+    private static final ConcurrentMap<RenderedImage, Object> FOREIGN_IMAGE_KEYS = new MapMaker()
+            .weakKeys().makeMap();
+
+    /** Counter used for creating the keys of the images which do not provide an image ID */
+    private static final AtomicLong FOREIGN_IMAGE_COUNTER = new AtomicLong();
 
     final Raster tile; // the tile
 
@@ -47,11 +60,13 @@ public final class CachedTileImpl implements CachedTile {
 
     final int tileY; // tile Y index
 
+    final long tileIndex; // tile X and Y indices packed together
+
     final Object tileCacheMetric; // Metric for weighting tile computation cost
 
     private long timeStamp; // the last time this tile is accessed (if diagnosticEnable==false it is set only at the creation time)
 
-    final Object key; // the key used to hash this tile
+    final TileKey key; // the key used to hash this tile
     
     private final Object imageKey; // Key of the associated image
 
@@ -59,6 +74,16 @@ public final class CachedTileImpl implements CachedTile {
 
     private Actions action; // every action done by the tile cache
 
+    private long computeCost; // the cost of computing this tile, in nanoseconds
+
+    private volatile double priority; // the eviction priority, tiles with lower priority are evicted first
+
+    CacheOwnerGroup group; // the owner group the tile is accounted to, if any
+
+    volatile boolean evicted; // set when the tile is evicted by the memory control of the cache
+
+    volatile boolean referenced; // set when the tile is accessed, cleared when it gets a second chance before being evicted
+
     /**
      * Constructor that takes a tile cache metric
      * 
@@ -71,13 +96,14 @@ public final class CachedTileImpl implements CachedTile {
         this.tile = tile;
         this.tileX = tileX;
         this.tileY = tileY;
+        this.tileIndex = tileIndex(tileX, tileY);
 
         this.tileCacheMetric = tileCacheMetric; // may be null
 
-        key = hashKey(owner, tileX, tileY);
-        
         imageKey = hashKey(owner);
 
+        key = new TileKey(imageKey, tileIndex);
+
         DataBuffer db = tile.getDataBuffer();
         tileSize = db.getDataTypeSize(db.getDataType()) / 8L * db.getSize() * db.getNumBanks() + CACHED_TILE_OVERHEAD;
         updateTileTimeStamp();
@@ -88,7 +114,7 @@ public final class CachedTileImpl implements CachedTile {
      * Returns the key associated to the tile.
      * @return
      */
-    public Object getKey() {
+    public TileKey getKey() {
         return key;
     }
 
@@ -101,32 +127,56 @@ public final class CachedTileImpl implements CachedTile {
     }
     
     /**
-     * Returns the hash table "key" as a <code>Object</code> for this tile.
+     * Returns the hash table "key" as a <code>Object</code> for this tile. The key is made of the image key and of the tile index, so that tiles
+     * of different images never collide.
      */
     public static Object hashKey(RenderedImage owner, int tileX, int tileY) {
-        long idx = tileY * (long) owner.getNumXTiles() + tileX;
-
-        idx = idx & 0x00000000ffffffffL;
-        return Long.valueOf((((long) owner.hashCode() << 32) | idx));
+        return new TileKey(hashKey(owner), tileIndex(tileX, tileY));
     }
 
     /**
-     * Returns the hash table "key" as a <code>Object</code> for this image.
+     * Returns the hash table "key" as a <code>Object</code> for this image. The image ID is used when available, otherwise a unique key is
+     * assigned to the image.
      */
     public static Object hashKey(RenderedImage owner) {
 
-        BigInteger imageID = null;
+        Object imageID = null;
         if (owner instanceof PlanarImage)
-            imageID = (BigInteger) ((PlanarImage) owner).getImageID();
+            imageID = ((PlanarImage) owner).getImageID();
         else if (owner instanceof SerializableRenderedImage)
-            imageID = (BigInteger) ((SerializableRenderedImage) owner).getImageID();
+            imageID = ((SerializableRenderedImage) owner).getImageID();
 
         if (imageID != null) {
-            byte[] buf = imageID.toByteArray();
-            return new BigInteger(buf);
+            return imageID;
         }
 
-        return owner.hashCode();
+        Object imageKey = FOREIGN_IMAGE_KEYS.get(owner);
+        if (imageKey == null) {
+            imageKey = Long.valueOf(FOREIGN_IMAGE_COUNTER.incrementAndGet());
+            // another thread may have assigned a key in the meantime
+            Object previous = FOREIGN_IMAGE_KEYS.putIfAbsent(owner, imageKey);
+            if (previous != null) {
+                imageKey = previous;
+            }
+        }
+        return imageKey;
+    }
+
+    /**
+     * Returns the index of the tile inside its image, obtained by packing the tile X and Y indices together.
+     */
+    public static long tileIndex(int tileX, int tileY) {
+        return ((long) tileX << 32) | (tileY & 0xffffffffL);
+    }
+
+    /** Returns the tile X index from the tile index */
+    public static int tileX(long tileIndex) {
+        return (int) (tileIndex >> 32);
+    }
+
+    /** Returns the tile Y index from the tile index */
+    public static int tileY(long tileIndex) {
+        return (int) tileIndex;
     }
 
     /** Returns the value of the cached tile. */
@@ -149,6 +199,31 @@ public final class CachedTileImpl implements CachedTile {
         return tileCacheMetric;
     }
 
+    /** Returns the tile index inside the owner image */
+    public long getTileIndex() {
+        return tileIndex;
+    }
+
+    /** Returns the cost of computing this tile, in nanoseconds */
+    public long getComputeCost() {
+        return computeCost;
+    }
+
+    /** Sets the cost of computing this tile, in nanoseconds */
+    public void setComputeCost(long computeCost) {
+        this.computeCost = computeCost;
+    }
+
+    /** Returns the eviction priority of this tile */
+    public double getPriority() {
+        return priority;
+    }
+
+    /** Sets the eviction priority of this tile */
+    public void setPriority(double priority) {
+        this.priority = priority;
+    }
+
     /** Returns the tile memory size */
     public long getTileSize() {
         return tileSize;
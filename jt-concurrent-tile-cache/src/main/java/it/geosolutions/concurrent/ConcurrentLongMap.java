@@ -0,0 +1,189 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.concurrent;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * A concurrent hash map using primitive <code>long</code> keys. Lookups are lock-free and do not allocate any object, while the updates are
+ * serialized on the map itself. It is used for storing the tiles of a single image, which are read far more often than they are added or removed.
+ * 
+ * @param <V> the type of the mapped values
+ */
+final class ConcurrentLongMap<V> {
+
+    /** Initial number of buckets, must be a power of 2 */
+    private static final int INITIAL_CAPACITY = 16;
+
+    /** Maximum ratio between the number of entries and the number of buckets */
+    private static final float LOAD_FACTOR = 0.75f;
+
+    /**
+     * A map entry. The chain is immutable, so that readers can traverse it without locking; only the value can be updated in place.
+     */
+    private static final class Entry<V> {
+
+        final long key;
+
+        volatile V value;
+
+        final Entry<V> next;
+
+        Entry(long key, V value, Entry<V> next) {
+            this.key = key;
+            this.value = value;
+            this.next = next;
+        }
+    }
+
+    /** The buckets, replaced when the map is resized */
+    private volatile AtomicReferenceArray<Entry<V>> table = new AtomicReferenceArray<Entry<V>>(
+            INITIAL_CAPACITY);
+
+    /** Number of entries */
+    private volatile int size;
+
+    private static int bucket(long key, int length) {
+        int h = (int) (key ^ (key >>> 32)) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & (length - 1);
+    }
+
+    /** Returns the value mapped to the key or <code>null</code> if not present */
+    public V get(long key) {
+        AtomicReferenceArray<Entry<V>> tab = table;
+        Entry<V> e = tab.get(bucket(key, tab.length()));
+        while (e != null) {
+            if (e.key == key) {
+                return e.value;
+            }
+            e = e.next;
+        }
+        return null;
+    }
+
+    /** Maps the value to the key, returning the previous value if any */
+    public synchronized V put(long key, V value) {
+        if (value == null) {
+            throw new NullPointerException("Null values are not allowed");
+        }
+        AtomicReferenceArray<Entry<V>> tab = table;
+        int index = bucket(key, tab.length());
+        Entry<V> first = tab.get(index);
+        for (Entry<V> e = first; e != null; e = e.next) {
+            if (e.key == key) {
+                V old = e.value;
+                e.value = value;
+                return old;
+            }
+        }
+        tab.set(index, new Entry<V>(key, value, first));
+        if (++size > tab.length() * LOAD_FACTOR) {
+            resize(tab);
+        }
+        return null;
+    }
+
+    /** Removes the value mapped to the key, returning it if any */
+    public synchronized V remove(long key) {
+        return removeEntry(key, null);
+    }
+
+    /** Removes the entry only if the key is currently mapped to the given value */
+    public synchronized boolean remove(long key, V value) {
+        return value != null && removeEntry(key, value) != null;
+    }
+
+    /** Returns the number of entries */
+    public int size() {
+        return size;
+    }
+
+    /** Returns <code>true</code> if the map contains no entry */
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    /** Returns a snapshot of the keys of the map */
+    public synchronized long[] keys() {
+        long[] keys = new long[size];
+        int i = 0;
+        AtomicReferenceArray<Entry<V>> tab = table;
+        for (int b = 0; b < tab.length(); b++) {
+            for (Entry<V> e = tab.get(b); e != null; e = e.next) {
+                keys[i++] = e.key;
+            }
+        }
+        return keys;
+    }
+
+    /** Returns a snapshot of the values of the map */
+    public synchronized List<V> values() {
+        List<V> values = new ArrayList<V>(size);
+        AtomicReferenceArray<Entry<V>> tab = table;
+        for (int b = 0; b < tab.length(); b++) {
+            for (Entry<V> e = tab.get(b); e != null; e = e.next) {
+                values.add(e.value);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Removes the entry associated to the key. If the expected value is not null, the entry is removed only if it maps to that value. Callers must
+     * hold the lock on this map.
+     */
+    private V removeEntry(long key, V expected) {
+        AtomicReferenceArray<Entry<V>> tab = table;
+        int index = bucket(key, tab.length());
+        Entry<V> first = tab.get(index);
+        Entry<V> e = first;
+        while (e != null && e.key != key) {
+            e = e.next;
+        }
+        if (e == null) {
+            return null;
+        }
+        V old = e.value;
+        if (expected != null && old != expected) {
+            return null;
+        }
+        // The entries preceding the removed one are cloned, the following ones are shared
+        Entry<V> newFirst = e.next;
+        for (Entry<V> p = first; p != e; p = p.next) {
+            newFirst = new Entry<V>(p.key, p.value, newFirst);
+        }
+        tab.set(index, newFirst);
+        size--;
+        return old;
+    }
+
+    /** Doubles the number of buckets. Callers must hold the lock on this map. */
+    private void resize(AtomicReferenceArray<Entry<V>> oldTab) {
+        int length = oldTab.length() << 1;
+        AtomicReferenceArray<Entry<V>> newTab = new AtomicReferenceArray<Entry<V>>(length);
+        for (int b = 0; b < oldTab.length(); b++) {
+            for (Entry<V> e = oldTab.get(b); e != null; e = e.next) {
+                int index = bucket(e.key, length);
+                newTab.set(index, new Entry<V>(e.key, e.value, newTab.get(index)));
+            }
+        }
+        table = newTab;
+    }
+}
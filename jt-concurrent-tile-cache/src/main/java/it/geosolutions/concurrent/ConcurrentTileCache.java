@@ -20,10 +20,17 @@ package it.geosolutions.concurrent;
 import java.awt.Point;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.Comparator;
 import java.util.Iterator;
+import java.util.List;
 import java.util.Observable;
+import java.util.PriorityQueue;
 import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
 
 import javax.media.jai.TileCache;
 
@@ -49,10 +56,62 @@ public class ConcurrentTileCache extends Observable implements TileCache, CacheD
     /** The default concurrency settings */
     public static final int DEFAULT_CONCURRENCY_LEVEL = 4;
 
+    /**
+     * Upper bounds, in nanoseconds, of the compute cost classes used for reporting the hit ratio: less than 1 ms, less than 10 ms, less than
+     * 100 ms and the remaining ones.
+     */
+    private static final long[] COST_CLASS_BOUNDS = new long[] { 1000000L, 10000000L, 100000000L };
+
+    /** Number of compute cost classes */
+    public static final int COST_CLASSES = COST_CLASS_BOUNDS.length + 1;
+
+    /** Maximum number of pending misses waiting for the computed tile */
+    private static final int MAX_PENDING_MISSES = 10000;
+
+    /** Number of tiles compared for choosing each tile to evict, when the comparator is not a {@link GreedyDualSizeComparator} */
+    private static final int EVICTION_SAMPLE_SIZE = 8;
+
+    /** Size of the eviction queue under which its discarded entries are not purged */
+    private static final int MIN_EVICTION_QUEUE_SIZE = 1024;
+
+    /**
+     * Entry of the eviction queue. The entries are ordered by the tile priority at the time they were queued and then by queue order; the tile is
+     * weakly referenced, so that the entries of the tiles already discarded do not keep their rasters alive.
+     */
+    private static final class EvictionEntry implements Comparable<EvictionEntry> {
+
+        final WeakReference<CachedTileImpl> tile;
+
+        final double priority;
+
+        final long sequence;
+
+        EvictionEntry(CachedTileImpl tile, double priority, long sequence) {
+            this.tile = new WeakReference<CachedTileImpl>(tile);
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        public int compareTo(EvictionEntry other) {
+            int result = Double.compare(priority, other.priority);
+            if (result != 0) {
+                return result;
+            }
+            return sequence < other.sequence ? -1 : (sequence == other.sequence ? 0 : 1);
+        }
+    }
+
     /**
      * The tile cache. A Guava Cache is used to cache the tiles. The "key" is a <code>Object</code>. The "value" is a CachedTileImpl.
      */
-    private Cache<Object, CachedTileImpl> cacheObject;
+    private volatile Cache<Object, CachedTileImpl> cacheObject;
+
+    /**
+     * Secondary index of the cached tiles, mapping each image key to the tiles of that image currently stored in the cache, keyed by primitive tile
+     * index. It is kept up to date by the removal listener, so that tile lookups allocate no key and the operations working on a whole image only
+     * visit the resident tiles of that image.
+     */
+    private final OwnerTileIndex<CachedTileImpl> ownerIndex = new OwnerTileIndex<CachedTileImpl>();
 
     /** The memory capacity of the cache. */
     private long memoryCacheCapacity;
@@ -66,29 +125,85 @@ public class ConcurrentTileCache extends Observable implements TileCache, CacheD
     /** diagnosticEnabled enable/disable */
     private volatile boolean diagnosticEnabled = DEFAULT_DIAGNOSTIC;
 
+    /** Optional second level cache receiving the tiles evicted for size constraints */
+    private volatile TileCache secondLevelCache;
+
+    /** Comparator selecting the tiles to evict, if null the cache uses a size-weighted LRU policy */
+    private volatile Comparator tileComparator;
+
+    /** Memory used by the cached tiles */
+    private final AtomicLong memoryUsed = new AtomicLong();
+
+    /** Inflation value of the GreedyDual-Size policy, raised to the priority of each evicted tile */
+    private volatile double inflation;
+
+    /** Lock used for serializing the memory control and guarding the eviction queue */
+    private final Object evictionLock = new Object();
+
+    /**
+     * Queue of the tiles to evict when a comparator is set, each cached tile having one entry. With a {@link GreedyDualSizeComparator} the
+     * entries are ordered by priority; since the priority of a tile only grows when it is accessed, the accesses do not touch the queue and an
+     * entry whose tile has been accessed meanwhile is queued again with the new priority when it reaches the head. With any other comparator the
+     * entries are in insertion order, and each evicted tile is chosen by the comparator among the first entries.
+     */
+    private PriorityQueue<EvictionEntry> evictionQueue = new PriorityQueue<EvictionEntry>();
+
+    /** Sequence number of the next entry of the eviction queue */
+    private long evictionSequence;
+
+    /** Time of the misses of the tiles not yet added to the cache, used for measuring their compute cost */
+    private final ConcurrentHashMap<Object, Long> pendingMisses = new ConcurrentHashMap<Object, Long>();
+
+    /** Hit and miss counts of each compute cost class */
+    private final AtomicLongArray costClassHits = new AtomicLongArray(COST_CLASSES);
+
+    private final AtomicLongArray costClassMisses = new AtomicLongArray(COST_CLASSES);
+
     /**
-     * The listener is used for receiving notification about the removal of a tile for size constraints
+     * The listener is used for receiving notification about the removal of a tile. It keeps the owner index consistent with the cache content and,
+     * if diagnostic is enabled, notifies the observers about the tiles removed for size constraints
      */
     private final RemovalListener<Object, CachedTileImpl> listener = new RemovalListener<Object, CachedTileImpl>() {
         public void onRemoval(RemovalNotification<Object, CachedTileImpl> n) {
+            CachedTileImpl cti = n.getValue();
+            if (cti == null) {
+                return;
+            }
+            memoryUsed.addAndGet(-cti.getTileSize());
+            // a replaced tile has already been substituted inside the owner index
+            ownerIndex.remove(cti);
+
             // if a tile is manually removed, the diagnosticEnabled already consider
             // it in
             // the remove() method
-
-            if (diagnosticEnabled) {
-                synchronized (this) {
-                    if (n.wasEvicted() && n.getCause() == RemovalCause.SIZE) {
-                        CachedTileImpl cti = n.getValue();
-                        cti.setAction(Actions.REMOVAL_FROM_EVICTION);
-                        setChanged();
-                        notifyObservers(cti);
-                    }
-                }
-
+            if (n.getCause() == RemovalCause.SIZE) {
+                tileEvicted(cti);
             }
         }
     };
 
+    /**
+     * Handles a tile evicted for size constraints: the tile is demoted to the second level cache and, if diagnostic is enabled, the observers are
+     * notified.
+     */
+    private void tileEvicted(CachedTileImpl cti) {
+        TileCache secondLevel = secondLevelCache;
+        if (secondLevel != null) {
+            RenderedImage owner = cti.getOwner();
+            if (owner != null) {
+                secondLevel.add(owner, cti.tileX, cti.tileY, cti.getTile(),
+                        cti.getTileCacheMetric());
+            }
+        }
+        if (diagnosticEnabled) {
+            synchronized (this) {
+                cti.setAction(Actions.REMOVAL_FROM_EVICTION);
+                setChanged();
+                notifyObservers(cti);
+            }
+        }
+    }
+
     // diagnostic actions
     /** A list of all the possible diagnostic actions */
     public enum Actions {
@@ -110,12 +225,18 @@ public class ConcurrentTileCache extends Observable implements TileCache, CacheD
     /** Private cache creation method */
     private Cache<Object, CachedTileImpl> buildCache() {
         CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
-        builder.maximumWeight((long) (memoryCacheCapacity * memoryCacheThreshold))
-                .concurrencyLevel(concurrencyLevel).weigher(new Weigher<Object, CachedTileImpl>() {
-                    public int weigh(Object o, CachedTileImpl cti) {
-                        return (int) cti.getTileSize();
-                    }
-                });
+        builder.concurrencyLevel(concurrencyLevel);
+        // When a comparator is set, the eviction is done by the memoryControl() method
+        if (tileComparator == null) {
+            builder.maximumWeight((long) (memoryCacheCapacity * memoryCacheThreshold)).weigher(
+                    new Weigher<Object, CachedTileImpl>() {
+                        public int weigh(Object o, CachedTileImpl cti) {
+                            return (int) cti.getTileSize();
+                        }
+                    });
+        }
+        // Setting of the listener
+        builder.removalListener(listener);
 
         return builder.build();
 
@@ -156,11 +277,16 @@ public class ConcurrentTileCache extends Observable implements TileCache, CacheD
         
         // This tile is not in the cache; create a new CachedTileImpl.
         // else just update.
-        Object key = CachedTileImpl.hashKey(owner, tileX, tileY);
         // old tile
         CachedTileImpl cti;
         // create a new tile
         CachedTileImpl cti_new = new CachedTileImpl(owner, tileX, tileY, data, tileCacheMetric);
+        Object key = cti_new.getKey();
+        updateComputeCost(cti_new);
+        // the tile is indexed before being cached, so that an immediate eviction
+        // cannot leave a stale index entry behind
+        ownerIndex.add(cti_new);
+        memoryUsed.addAndGet(cti_new.getTileSize());
 
         // if the tile is already cached
         if (diagnosticEnabled) {
@@ -171,23 +297,79 @@ public class ConcurrentTileCache extends Observable implements TileCache, CacheD
                     cti.setAction(Actions.SUBSTITUTION_FROM_ADD);
                     setChanged();
                     notifyObservers(cti);
-                    return;
+                } else {
+                    cti_new.setAction(Actions.ADDITION);
+                    setChanged();
+                    notifyObservers(cti_new);
                 }
-
-                cti_new.setAction(Actions.ADDITION);
-                setChanged();
-                notifyObservers(cti_new);
             }
         } else {
             // new tile insertion
             cacheObject.put(key, cti_new);
 
         }
+        // With a comparator the memory is controlled by the cache itself
+        Comparator comparator = tileComparator;
+        if (comparator != null) {
+            queueTile(cti_new, comparator instanceof GreedyDualSizeComparator);
+            if (memoryUsed.get() > memoryCacheCapacity) {
+                memoryControl();
+            }
+        }
+    }
+
+    /**
+     * Sets the compute cost and the eviction priority of a new tile. The cost is taken from the tile cache metric if it is a {@link Number},
+     * otherwise it is the time elapsed since the miss of the tile.
+     */
+    private void updateComputeCost(CachedTileImpl cti) {
+        long cost = 0;
+        if (isCostTracked()) {
+            Long missTime = pendingMisses.remove(cti.getKey());
+            if (missTime != null) {
+                cost = System.nanoTime() - missTime.longValue();
+                // the miss is accounted when the compute cost is known
+                costClassMisses.incrementAndGet(costClass(cost));
+            }
+        }
+        Object metric = cti.getTileCacheMetric();
+        if (metric instanceof Number) {
+            cost = ((Number) metric).longValue();
+        }
+        cti.setComputeCost(cost);
+        cti.setPriority(inflation + cost / (double) cti.getTileSize());
+    }
+
+    /** Returns true if the compute cost of the tiles is measured */
+    private boolean isCostTracked() {
+        return tileComparator != null || diagnosticEnabled;
+    }
+
+    /** Returns the cost class of the selected compute cost */
+    private static int costClass(long cost) {
+        for (int i = 0; i < COST_CLASS_BOUNDS.length; i++) {
+            if (cost < COST_CLASS_BOUNDS[i]) {
+                return i;
+            }
+        }
+        return COST_CLASS_BOUNDS.length;
     }
 
     /** Removes the selected tile from the cache */
     public void remove(RenderedImage owner, int tileX, int tileY) {
-        Object key = CachedTileImpl.hashKey(owner, tileX, tileY);
+        removeTileByKey(CachedTileImpl.hashKey(owner, tileX, tileY));
+        TileCache secondLevel = secondLevelCache;
+        if (secondLevel != null) {
+            secondLevel.remove(owner, tileX, tileY);
+        }
+    }
+
+    /**
+     * Removes the tile associated to the key.
+     * 
+     * @param key
+     */
+    private void removeTileByKey(Object key) {
         // check if the tile is still in cache
         CachedTileImpl cti = (CachedTileImpl) cacheObject.getIfPresent(key);
         // if so the tile is deleted (even if another thread write on it)
@@ -217,15 +399,64 @@ public class ConcurrentTileCache extends Observable implements TileCache, CacheD
 
     /** Retrieves the selected tile from the cache */
     public Raster getTile(RenderedImage owner, int tileX, int tileY) {
+        // the owner index is queried with the primitive tile index, without
+        // allocating any key
+        CachedTileImpl cti = ownerIndex.get(CachedTileImpl.hashKey(owner),
+                CachedTileImpl.tileIndex(tileX, tileY));
+        Raster tileData = cti != null ? getTile(cti) : null;
+        if (tileData == null && secondLevelCache != null) {
+            tileData = promoteTile(owner, tileX, tileY);
+        }
+        if (tileData == null && isCostTracked()) {
+            // the miss time is kept for measuring the compute cost of the tile
+            if (pendingMisses.size() > MAX_PENDING_MISSES) {
+                // tiles requested but never added are discarded
+                pendingMisses.clear();
+            }
+            pendingMisses.putIfAbsent(CachedTileImpl.hashKey(owner, tileX, tileY),
+                    Long.valueOf(System.nanoTime()));
+        }
+        return tileData;
+    }
+
+    /**
+     * Searches the tile inside the second level cache. If found, the tile is moved back to this cache.
+     */
+    private Raster promoteTile(RenderedImage owner, int tileX, int tileY) {
+        TileCache secondLevel = secondLevelCache;
+        if (secondLevel == null) {
+            return null;
+        }
+        Raster tileData = secondLevel.getTile(owner, tileX, tileY);
+        if (tileData != null) {
+            secondLevel.remove(owner, tileX, tileY);
+            add(owner, tileX, tileY, tileData);
+        }
+        return tileData;
+    }
+
+    /**
+     * Retrieves the tile from the cache, checking that the indexed tile has not been discarded in the meantime
+     * 
+     * @param indexed the tile found in the owner index
+     * @return
+     */
+    private Raster getTile(CachedTileImpl indexed) {
         // instantiation of the result raster
         Raster tileData = null;
 
-        Object key = CachedTileImpl.hashKey(owner, tileX, tileY);
-        // check if the tile is present
-        CachedTileImpl cti = (CachedTileImpl) cacheObject.getIfPresent(key);
+        // check if the tile is present, updating its access order
+        CachedTileImpl cti = (CachedTileImpl) cacheObject.getIfPresent(indexed.getKey());
         if (cti == null) {
+            // stale entry, it must not keep the raster alive
+            ownerIndex.remove(indexed);
             return null;
         }
+        if (isCostTracked()) {
+            costClassHits.incrementAndGet(costClass(cti.getComputeCost()));
+            // the priority is refreshed on each access
+            cti.setPriority(inflation + cti.getComputeCost() / (double) cti.getTileSize());
+        }
         if (diagnosticEnabled) {
             synchronized (this) {
 
@@ -248,30 +479,20 @@ public class ConcurrentTileCache extends Observable implements TileCache, CacheD
     public Raster[] getTiles(RenderedImage owner) {
         // instantiation of the result array
         Raster[] tilesData = null;
-        // total number of tiles present in the cache
-        int tileCount = (int) cacheObject.size();
-
-        int size = Math.min(owner.getNumXTiles() * owner.getNumYTiles(), tileCount);
-
-        if (size > 0) {
-            int minTx = owner.getMinTileX();
-            int minTy = owner.getMinTileY();
-            int maxTx = minTx + owner.getNumXTiles();
-            int maxTy = minTy + owner.getNumYTiles();
+        // tiles of the image present in the cache
+        List<CachedTileImpl> tiles = ownerIndex.getTiles(CachedTileImpl.hashKey(owner));
 
+        if (!tiles.isEmpty()) {
             // arbitrarily set a temporary vector size
             Vector<Raster> tempData = new Vector<Raster>(10, 20);
-            // cycle through all the tile in the image and check if they are in the
-            // cache...
-            for (int y = minTy; y < maxTy; y++) {
-                for (int x = minTx; x < maxTx; x++) {
-
-                    Raster rasterTile = getTile(owner, x, y);
-
-                    // ...then add to the vector if present
-                    if (rasterTile != null) {
-                        tempData.add(rasterTile);
-                    }
+            // cycle through the resident tiles of the image and check if they are
+            // still in the cache...
+            for (CachedTileImpl cti : tiles) {
+                Raster rasterTile = getTile(cti);
+
+                // ...then add to the vector if present
+                if (rasterTile != null) {
+                    tempData.add(rasterTile);
                 }
             }
 
@@ -289,29 +510,14 @@ public class ConcurrentTileCache extends Observable implements TileCache, CacheD
      * Removes all tiles in the cache which are owned by the image.
      */
     public void removeTiles(RenderedImage owner) {
-
-        if (diagnosticEnabled) {
-            int minTx = owner.getMinTileX();
-            int minTy = owner.getMinTileY();
-            int maxTx = minTx + owner.getNumXTiles();
-            int maxTy = minTy + owner.getNumYTiles();
-
-            for (int y = minTy; y < maxTy; y++) {
-                for (int x = minTx; x < maxTx; x++) {
-                    remove(owner, x, y);
-                }
-            }
-        } else {
-            int minTx = owner.getMinTileX();
-            int minTy = owner.getMinTileY();
-            int maxTx = minTx + owner.getNumXTiles();
-            int maxTy = minTy + owner.getNumYTiles();
-
-            for (int y = minTy; y < maxTy; y++) {
-                for (int x = minTx; x < maxTx; x++) {
-                    remove(owner, x, y);
-                }
-            }
+        // the whole set is detached from the index, the removal listener
+        // will not find it anymore
+        for (CachedTileImpl cti : ownerIndex.removeTiles(CachedTileImpl.hashKey(owner))) {
+            removeTileByKey(cti.getKey());
+        }
+        TileCache secondLevel = secondLevelCache;
+        if (secondLevel != null) {
+            secondLevel.removeTiles(owner);
         }
     }
 
@@ -358,40 +564,155 @@ public class ConcurrentTileCache extends Observable implements TileCache, CacheD
     }
 
     /** Removes all tiles present in the cache without checking for the image owner */
-    public synchronized void flush() {
+    public void flush() {
         // It is necessary to clear all the elements
-        // from the old cache.
+        // from the cache. The owner index is emptied by the removal listener.
+        Cache<Object, CachedTileImpl> cache = cacheObject;
         if (diagnosticEnabled) {
             // Creation of an iterator for accessing to every tile in the cache
-            Iterator<Object> keys = cacheObject.asMap().keySet().iterator();
+            Iterator<Object> keys = cache.asMap().keySet().iterator();
             // cycle across the cache for removing and updating every tile
             while (keys.hasNext()) {
                 Object key = keys.next();
-                CachedTileImpl cti = (CachedTileImpl) cacheObject.asMap().remove(key);
-
+                CachedTileImpl cti = (CachedTileImpl) cache.asMap().remove(key);
+                // the tile may have been concurrently removed
+                if (cti == null) {
+                    continue;
+                }
                 // diagnosticEnabled
-
-                cti.setAction(Actions.REMOVAL_FROM_FLUSH);
-                setChanged();
-                notifyObservers(cti);
-
+                synchronized (this) {
+                    cti.setAction(Actions.REMOVAL_FROM_FLUSH);
+                    setChanged();
+                    notifyObservers(cti);
+                }
             }
         } else {
-            cacheObject.invalidateAll();
+            cache.invalidateAll();
+        }
+        TileCache secondLevel = secondLevelCache;
+        if (secondLevel != null) {
+            secondLevel.flush();
         }
-        // cache.invalidateAll();
+    }
+
+    /**
+     * Flushes the cache and then rebuilds it with the current settings. Callers must hold the lock on this object.
+     */
+    private void rebuildCache() {
+        flush();
         cacheObject = buildCache();
+        synchronized (evictionLock) {
+            evictionQueue = new PriorityQueue<EvictionEntry>();
+        }
+    }
 
+    /**
+     * Adds the tile to the eviction queue. The entries of the discarded tiles are purged when they are more than the cached tiles.
+     */
+    private void queueTile(CachedTileImpl cti, boolean byPriority) {
+        synchronized (evictionLock) {
+            evictionQueue.add(new EvictionEntry(cti, byPriority ? cti.getPriority() : 0,
+                    evictionSequence++));
+            int size = evictionQueue.size();
+            if (size > MIN_EVICTION_QUEUE_SIZE && size > 2 * cacheObject.size()) {
+                PriorityQueue<EvictionEntry> purged = new PriorityQueue<EvictionEntry>();
+                for (EvictionEntry entry : evictionQueue) {
+                    if (isCached(entry.tile.get())) {
+                        purged.add(entry);
+                    }
+                }
+                evictionQueue = purged;
+            }
+        }
+    }
+
+    /** Returns true if the selected tile is currently stored inside the cache */
+    private boolean isCached(CachedTileImpl cti) {
+        return cti != null && cacheObject.asMap().get(cti.getKey()) == cti;
+    }
+
+    /** Removes and returns the next entry of the eviction queue whose tile is still cached, or null if the queue is empty */
+    private EvictionEntry pollCachedEntry() {
+        EvictionEntry entry;
+        while ((entry = evictionQueue.poll()) != null) {
+            if (isCached(entry.tile.get())) {
+                return entry;
+            }
+        }
+        return null;
+    }
+
+    /** Evicts the selected tile, raising the inflation value to its priority */
+    private void evictTile(CachedTileImpl cti) {
+        if (cacheObject.asMap().remove(cti.getKey(), cti)) {
+            if (cti.getPriority() > inflation) {
+                inflation = cti.getPriority();
+            }
+            tileEvicted(cti);
+        }
     }
 
     /**
-     * Not Supported
-     * 
-     * @throws UnsupportedOperationException
+     * Evicts the tiles in the order defined by the tile comparator, until the memory used is not greater than the memory capacity multiplied by
+     * the memory threshold. If no comparator is set, the eviction is already done by the underlying cache and this method does nothing. Each
+     * eviction only takes the head of the eviction queue, so the cost does not depend on the number of cached tiles.
      */
     public void memoryControl() {
-        throw new UnsupportedOperationException("Memory Control not supported");
-
+        Comparator comparator = tileComparator;
+        if (comparator == null) {
+            return;
+        }
+        boolean byPriority = comparator instanceof GreedyDualSizeComparator;
+        long target = (long) (memoryCacheCapacity * memoryCacheThreshold);
+        synchronized (evictionLock) {
+            while (memoryUsed.get() > target) {
+                if (byPriority) {
+                    EvictionEntry entry = pollCachedEntry();
+                    if (entry == null) {
+                        return;
+                    }
+                    CachedTileImpl cti = entry.tile.get();
+                    if (cti == null) {
+                        continue;
+                    }
+                    double priority = cti.getPriority();
+                    if (priority > entry.priority) {
+                        // accessed after being queued
+                        evictionQueue.add(new EvictionEntry(cti, priority, evictionSequence++));
+                    } else {
+                        evictTile(cti);
+                    }
+                } else {
+                    // The tile to evict is chosen by the comparator among the oldest tiles
+                    List<EvictionEntry> sample = new ArrayList<EvictionEntry>(
+                            EVICTION_SAMPLE_SIZE);
+                    EvictionEntry selected = null;
+                    CachedTileImpl victim = null;
+                    EvictionEntry entry;
+                    while (sample.size() < EVICTION_SAMPLE_SIZE
+                            && (entry = pollCachedEntry()) != null) {
+                        CachedTileImpl cti = entry.tile.get();
+                        if (cti == null) {
+                            continue;
+                        }
+                        sample.add(entry);
+                        if (victim == null || comparator.compare(cti, victim) < 0) {
+                            selected = entry;
+                            victim = cti;
+                        }
+                    }
+                    if (victim == null) {
+                        return;
+                    }
+                    for (EvictionEntry other : sample) {
+                        if (other != selected) {
+                            evictionQueue.add(other);
+                        }
+                    }
+                    evictTile(victim);
+                }
+            }
+        }
     }
 
     /**
@@ -418,7 +739,7 @@ public class ConcurrentTileCache extends Observable implements TileCache, CacheD
             throw new IllegalArgumentException("Memory capacity too small");
         } else {
             this.memoryCacheCapacity = memoryCacheCapacity;
-            flush();
+            rebuildCache();
 
         }
 
@@ -435,7 +756,7 @@ public class ConcurrentTileCache extends Observable implements TileCache, CacheD
             throw new IllegalArgumentException("Memory threshold should be between 0 and 1");
         } else {
             memoryCacheThreshold = mt;
-            flush();
+            rebuildCache();
 
         }
 
@@ -452,7 +773,7 @@ public class ConcurrentTileCache extends Observable implements TileCache, CacheD
             throw new IllegalArgumentException("ConcurrencyLevel must be at least 1");
         } else {
             concurrencyLevel = concurrency;
-            flush();
+            rebuildCache();
 
         }
 
@@ -464,35 +785,49 @@ public class ConcurrentTileCache extends Observable implements TileCache, CacheD
     }
 
     /**
-     * Not Supported
-     * 
-     * @throws UnsupportedOperationException
+     * Sets the second level cache, for example an {@link OffHeapTileCache}. The tiles evicted from this cache for size constraints are added to
+     * the second level cache and moved back to this cache when requested again. A <code>null</code> value disables the second level.
      */
-    public void setTileComparator(Comparator comparator) {
-        throw new UnsupportedOperationException("Comparator not supported");
+    public void setSecondLevelCache(TileCache secondLevelCache) {
+        if (secondLevelCache == this) {
+            throw new IllegalArgumentException("The cache cannot be its own second level");
+        }
+        this.secondLevelCache = secondLevelCache;
+    }
 
+    /** Retrieve the second level cache, if any */
+    public TileCache getSecondLevelCache() {
+        return secondLevelCache;
     }
 
     /**
-     * Not Supported
-     * 
-     * @throws UnsupportedOperationException
+     * Sets the comparator used for choosing the tiles to evict, the tiles coming first being evicted first, and then flush and rebuild the cache.
+     * The comparator receives {@link CachedTileImpl} instances; {@link GreedyDualSizeComparator} implements a compute cost aware policy. If the
+     * comparator is <code>null</code>, the default size-weighted LRU policy is used.
      */
+    public synchronized void setTileComparator(Comparator comparator) {
+        tileComparator = comparator;
+        inflation = 0;
+        rebuildCache();
+
+    }
+
+    /** Retrieve the tile comparator, or <code>null</code> if the default policy is used */
     public Comparator getTileComparator() {
-        throw new UnsupportedOperationException("Comparator not supported");
+        return tileComparator;
     }
 
     /** Disables diagnosticEnabled for the observers */
     public synchronized void disableDiagnostics() {
         diagnosticEnabled = false;
-        flush();
+        rebuildCache();
 
     }
 
     /** Enables diagnosticEnabled for the observers */
     public synchronized void enableDiagnostics() {
         diagnosticEnabled = true;
-        flush();
+        rebuildCache();
 
     }
 
@@ -505,15 +840,38 @@ public class ConcurrentTileCache extends Observable implements TileCache, CacheD
     }
 
     /** Retrieves the current memory size of the cache */
-    public synchronized long getCacheMemoryUsed() {
-        Iterator<Object> keys = cacheObject.asMap().keySet().iterator();
-        long memoryUsed = 0;
-        while (keys.hasNext()) {
-            Object key = keys.next();
-            CachedTileImpl cti = (CachedTileImpl) cacheObject.getIfPresent(key);
-            memoryUsed += cti.getTileSize();
-        }
-        return memoryUsed;
+    public long getCacheMemoryUsed() {
+        return memoryUsed.get();
+    }
+
+    /**
+     * Retrieves the hit count of the tiles of the selected compute cost class. The cost classes are measured only if diagnostic is enabled or a
+     * tile comparator is set.
+     * 
+     * @param costClass a value between 0 (tiles computed in less than 1 ms) and {@link #COST_CLASSES} - 1 (tiles computed in 100 ms or more)
+     */
+    public long getCostClassHitCount(int costClass) {
+        return costClassHits.get(costClass);
+    }
+
+    /**
+     * Retrieves the miss count of the tiles of the selected compute cost class. A miss is accounted when the missing tile is added to the cache.
+     * 
+     * @param costClass a value between 0 and {@link #COST_CLASSES} - 1
+     */
+    public long getCostClassMissCount(int costClass) {
+        return costClassMisses.get(costClass);
+    }
+
+    /**
+     * Retrieves the hit ratio of the tiles of the selected compute cost class, or 0 if no request has been accounted.
+     * 
+     * @param costClass a value between 0 and {@link #COST_CLASSES} - 1
+     */
+    public double getCostClassHitRatio(int costClass) {
+        long hits = costClassHits.get(costClass);
+        long requests = hits + costClassMisses.get(costClass);
+        return requests > 0 ? hits / (double) requests : 0;
     }
 
     /** Retrieves the miss count from the cache statistics */
@@ -22,14 +22,18 @@ import it.geosolutions.concurrent.ConcurrentTileCache.Actions;
 import java.awt.Point;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Comparator;
+import java.util.HashMap;
 import java.util.Iterator;
+import java.util.LinkedList;
+import java.util.List;
 import java.util.Map;
 import java.util.Observable;
-import java.util.Set;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
-import java.util.concurrent.ConcurrentSkipListSet;
 import java.util.concurrent.atomic.AtomicLong;
 import java.util.logging.Level;
 import java.util.logging.Logger;
@@ -50,6 +54,11 @@ import com.sun.media.jai.util.CacheDiagnostics;
  * {@link CacheDiagnostics} in order to get the statistics associated to the {@link TileCache}. The user can define the cache memory capacity, the
  * concurrency level (which indicates in how many segments the cache must be divided), the threshold of the total memory to use and a boolean
  * indicating if the diagnostic must be enabled.
+ * <p>
+ * The tile owners can be assigned to {@link CacheOwnerGroup}s, each one with its own memory quota and priority class. When the quotas are enabled,
+ * the tiles of the groups over quota are evicted first, then the tiles of the groups with the lowest priority, in least recently used order. The
+ * occupancy of each group is always tracked and, if diagnostic is enabled, the observers are notified with the {@link CacheOwnerGroup} each time
+ * a group goes over or back within its quota.
  * 
  * @author Nicola Lagomarsini GeoSolutions S.A.S.
  * 
@@ -74,9 +83,9 @@ public class ConcurrentTileCacheMultiMap extends Observable implements TileCache
     private Cache<Object, CachedTileImpl> cacheObject;
 
     /**
-     * A concurrent multimap used for mapping the tile keys for each image
+     * A concurrent multimap used for mapping the tiles for each image, keyed by their primitive tile index
      */
-    private ConcurrentHashMap<Object, Set<Object>> multimap;
+    private final OwnerTileIndex<CachedTileImpl> multimap = new OwnerTileIndex<CachedTileImpl>();
 
     /** The memory capacity of the cache. */
     private long memoryCacheCapacity;
@@ -90,6 +99,44 @@ public class ConcurrentTileCacheMultiMap extends Observable implements TileCache
     /** diagnosticEnabled enable/disable */
     private volatile boolean diagnosticEnabled = DEFAULT_DIAGNOSTIC;
 
+    /** Optional second level cache receiving the tiles evicted for size constraints */
+    private volatile TileCache secondLevelCache;
+
+    /** Memory used by the cached tiles */
+    private final AtomicLong memoryUsed = new AtomicLong();
+
+    /** Groups of the tile owners, keyed by the image key */
+    private final ConcurrentHashMap<Object, CacheOwnerGroup> ownerGroups = new ConcurrentHashMap<Object, CacheOwnerGroup>();
+
+    /** Group of the tile owners without an explicit group */
+    private volatile CacheOwnerGroup defaultGroup = new CacheOwnerGroup("default",
+            CacheOwnerGroup.UNLIMITED_QUOTA, CacheOwnerGroup.DEFAULT_PRIORITY);
+
+    /** quotas enable/disable, when enabled the eviction is done by the memoryControl() method */
+    private volatile boolean quotasEnabled;
+
+    /** Lock used for serializing the memory control and guarding the eviction queues */
+    private final Object evictionLock = new Object();
+
+    /**
+     * Eviction queue of each group when the quotas are enabled, containing its tiles in insertion order. The tiles are evicted with a second
+     * chance policy approximating the least recently used order: a tile accessed since it was queued is queued again instead of being evicted.
+     * The tiles are weakly referenced, so that the entries of the tiles already discarded do not keep their rasters alive.
+     */
+    private final Map<CacheOwnerGroup, LinkedList<WeakReference<CachedTileImpl>>> evictionQueues = new HashMap<CacheOwnerGroup, LinkedList<WeakReference<CachedTileImpl>>>();
+
+    /** Size of an eviction queue under which its discarded entries are not purged */
+    private static final int MIN_EVICTION_QUEUE_SIZE = 1024;
+
+    /** Order of the groups during the eviction, lowest priority first */
+    private static final Comparator<CacheOwnerGroup> GROUP_ORDER = new Comparator<CacheOwnerGroup>() {
+        public int compare(CacheOwnerGroup g1, CacheOwnerGroup g2) {
+            int p1 = g1.getPriority();
+            int p2 = g2.getPriority();
+            return p1 < p2 ? -1 : (p1 == p2 ? 0 : 1);
+        }
+    };
+
     /**
      * Logger to use for reporting the informations about the TileCache operations.
      */
@@ -118,9 +165,6 @@ public class ConcurrentTileCacheMultiMap extends Observable implements TileCache
 
         // cache creation
         cacheObject = buildCache();
-
-        // multimap creation
-        multimap = new ConcurrentHashMap<Object, Set<Object>>();
     }
 
     /** Add a new tile to the cache */
@@ -146,10 +190,17 @@ public class ConcurrentTileCacheMultiMap extends Observable implements TileCache
         CachedTileImpl cti;
         // create a new tile
         CachedTileImpl cti_new = new CachedTileImpl(owner, tileX, tileY, data, tileCacheMetric);
+        CacheOwnerGroup group = ownerGroups.get(imageKey);
+        cti_new.group = group != null ? group : defaultGroup;
+
+        // The tile is added to the MultiMap before being cached, so that the removal listener
+        // always finds it. A replaced tile is only removed from the MultiMap if it is still there.
+        multimap.add(cti_new);
+        updateMemoryUsed(cti_new, 1);
 
         if (diagnosticEnabled) {
             // if the tile is already cached
-            cti = (CachedTileImpl) cacheObject.asMap().putIfAbsent(cti_new.key, cti_new);
+            cti = (CachedTileImpl) cacheObject.asMap().put(cti_new.key, cti_new);
             synchronized (cacheObject) {
                 if (cti != null) {
                     cti.updateTileTimeStamp();
@@ -162,16 +213,45 @@ public class ConcurrentTileCacheMultiMap extends Observable implements TileCache
                 cti_new.setAction(Actions.ADDITION);
                 setChanged();
                 notifyObservers(cti_new);
-                updateMultiMap(cti_new.key, imageKey);
             }
         } else {
             if (LOGGER.isLoggable(Level.FINE)) {
                 LOGGER.fine("Added new Tile Image key " + imageKey);
             }
             // new tile insertion
-            cacheObject.asMap().putIfAbsent(cti_new.key, cti_new);
-            // Atomically adds a new Map if needed and then adds a new tile inside the MultiMap.
-            updateMultiMap(cti_new.key, imageKey);
+            cacheObject.put(cti_new.key, cti_new);
+        }
+        // With the quotas enabled the memory is controlled by the cache itself
+        if (quotasEnabled) {
+            queueTile(cti_new);
+            if (memoryUsed.get() > memoryCacheCapacity) {
+                memoryControl();
+            }
+        }
+    }
+
+    /**
+     * Adds the tile to the eviction queue of its group. The entries of the discarded tiles are purged when they are more than the cached tiles of
+     * the group.
+     */
+    private void queueTile(CachedTileImpl cti) {
+        synchronized (evictionLock) {
+            LinkedList<WeakReference<CachedTileImpl>> queue = evictionQueues.get(cti.group);
+            if (queue == null) {
+                queue = new LinkedList<WeakReference<CachedTileImpl>>();
+                evictionQueues.put(cti.group, queue);
+            }
+            queue.add(new WeakReference<CachedTileImpl>(cti));
+            if (queue.size() > MIN_EVICTION_QUEUE_SIZE
+                    && queue.size() > 2 * cti.group.getTileCount()) {
+                Map<Object, CachedTileImpl> cached = cacheObject.asMap();
+                for (Iterator<WeakReference<CachedTileImpl>> it = queue.iterator(); it.hasNext();) {
+                    CachedTileImpl queued = it.next().get();
+                    if (queued == null || cached.get(queued.key) != queued) {
+                        it.remove();
+                    }
+                }
+            }
         }
     }
 
@@ -179,20 +259,75 @@ public class ConcurrentTileCacheMultiMap extends Observable implements TileCache
         return cti.getTileSize() + TILE_TRACKING_OVERHEAD;
     }
 
+    /**
+     * Accounts a tile added to (sign = 1) or removed from (sign = -1) the cache, notifying the observers if its group goes over or back within
+     * its quota.
+     */
+    private void updateMemoryUsed(CachedTileImpl cti, int sign) {
+        long tileSize = sign * getTileSize(cti);
+        memoryUsed.addAndGet(tileSize);
+        CacheOwnerGroup group = cti.group;
+        if (group != null && group.update(tileSize, sign) && diagnosticEnabled) {
+            synchronized (cacheObject) {
+                setChanged();
+                notifyObservers(group);
+            }
+        }
+    }
+
     /** Removes the selected tile from the cache */
     public void remove(RenderedImage owner, int tileX, int tileY) {
         // Calculation of the tile key
         Object key = CachedTileImpl.hashKey(owner, tileX, tileY);
         // remove operation
         removeTileByKey(key);
+        TileCache secondLevel = secondLevelCache;
+        if (secondLevel != null) {
+            secondLevel.remove(owner, tileX, tileY);
+        }
     }
 
     /** Retrieves the selected tile from the cache */
     public Raster getTile(RenderedImage owner, int tileX, int tileY) {
-        // Calculation of the tile key
-        Object key = CachedTileImpl.hashKey(owner, tileX, tileY);
+        // Search of the tile inside the MultiMap with the primitive tile index,
+        // without allocating any key
+        CachedTileImpl cti = multimap.get(CachedTileImpl.hashKey(owner),
+                CachedTileImpl.tileIndex(tileX, tileY));
+        if (cti == null) {
+            if (diagnosticEnabled) {
+                // The cache is queried anyway for recording the miss
+                cacheObject.getIfPresent(CachedTileImpl.hashKey(owner, tileX, tileY));
+            }
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Null Tile returned");
+            }
+            return promoteTile(owner, tileX, tileY);
+        }
         // Get operation
-        return getTileFromKey(key);
+        Raster tileData = getTileFromKey(cti);
+        if (tileData == null) {
+            tileData = promoteTile(owner, tileX, tileY);
+        }
+        return tileData;
+    }
+
+    /**
+     * Searches the tile inside the second level cache. If found, the tile is moved back to this cache.
+     */
+    private Raster promoteTile(RenderedImage owner, int tileX, int tileY) {
+        TileCache secondLevel = secondLevelCache;
+        if (secondLevel == null) {
+            return null;
+        }
+        Raster tileData = secondLevel.getTile(owner, tileX, tileY);
+        if (tileData != null) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Tile promoted from the second level cache");
+            }
+            secondLevel.remove(owner, tileX, tileY);
+            add(owner, tileX, tileY, tileData);
+        }
+        return tileData;
     }
 
     /**
@@ -209,26 +344,26 @@ public class ConcurrentTileCacheMultiMap extends Observable implements TileCache
         if (LOGGER.isLoggable(Level.FINE)) {
             LOGGER.fine("Getting image Tiles Image key " + imageKey);
         }
-        // Selection of the tile keys for the image
-        Set<Object> keys = multimap.get(imageKey);
+        // Selection of the tiles for the image
+        List<CachedTileImpl> tiles = multimap.getTiles(imageKey);
 
-        // If no key is found then a null object is returned
-        if (keys == null || keys.isEmpty()) {
+        // If no tile is found then a null object is returned
+        if (tiles.isEmpty()) {
             return tilesData;
         }
 
-        // Else it is created an iterator on the tile keys
-        Iterator<Object> it = keys.iterator();
+        // Else it is created an iterator on the tiles
+        Iterator<CachedTileImpl> it = tiles.iterator();
         // Another check on the iterator
         if (it.hasNext()) {
             // arbitrarily set a temporary vector size
             Vector<Raster> tempData = new Vector<Raster>(10, 20);
-            // cycle through all the tile keys present in the multimap and check if they are in the
+            // cycle through all the tiles present in the multimap and check if they are in the
             // cache...
             while (it.hasNext()) {
-                Object key = it.next();
+                CachedTileImpl cti = it.next();
                 // get the tile from the key
-                Raster rasterTile = getTileFromKey(key);
+                Raster rasterTile = getTileFromKey(cti);
 
                 // ...then add to the vector if present
                 if (rasterTile != null) {
@@ -252,26 +387,31 @@ public class ConcurrentTileCacheMultiMap extends Observable implements TileCache
         // Calculation of the key associated to the image
         Object imageKey = CachedTileImpl.hashKey(owner);
 
+        // The image is going to be disposed, its group assignment is dropped
+        ownerGroups.remove(imageKey);
+
+        // Selection of the tiles associated to the image and removal of each of them
+        List<CachedTileImpl> tiles = multimap.removeTiles(imageKey);
         if (diagnosticEnabled) {
-            // Selection of the keys associated to the image and removal of each of them
-            Set<Object> keys = multimap.remove(imageKey);
-            if (keys != null) {
-                Iterator<Object> it = keys.iterator();
-                while (it.hasNext()) {
-                    Object key = it.next();
-                    removeTileByKey(key);
-                }
+            Iterator<CachedTileImpl> it = tiles.iterator();
+            while (it.hasNext()) {
+                removeTileByKey(it.next().getKey());
             }
-        } else {
-            // Get the keys associated to the image and remove them
-            Set<Object> keys = multimap.remove(imageKey);
-            if (keys != null) {
-                if (LOGGER.isLoggable(Level.FINE)) {
-                    LOGGER.fine("Removing image Tiles Image key " + imageKey);
-                }
-                cacheObject.invalidateAll(keys);
+        } else if (!tiles.isEmpty()) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Removing image Tiles Image key " + imageKey);
+            }
+            for (CachedTileImpl cti : tiles) {
+                cacheObject.invalidate(cti.getKey());
+            }
+            for (CachedTileImpl cti : tiles) {
+                dropEvictionQueue(cti.group);
             }
         }
+        TileCache secondLevel = secondLevelCache;
+        if (secondLevel != null) {
+            secondLevel.removeTiles(owner);
+        }
     }
 
     /**
@@ -351,18 +491,122 @@ public class ConcurrentTileCacheMultiMap extends Observable implements TileCache
 
             // Cache creation
             cacheObject = buildCache();
-            // multimap creation
-            multimap = new ConcurrentHashMap<Object, Set<Object>>();
+            // multimap cleanup
+            multimap.clear();
+        }
+        synchronized (evictionLock) {
+            evictionQueues.clear();
+        }
+        TileCache secondLevel = secondLevelCache;
+        if (secondLevel != null) {
+            secondLevel.flush();
         }
     }
 
     /**
-     * Not Supported
-     * 
-     * @throws UnsupportedOperationException
+     * Evicts the tiles until the memory used is not greater than the memory capacity multiplied by the memory threshold. The tiles of the groups
+     * over quota are evicted first, then the tiles of the groups with the lowest priority, in least recently used order. If the quotas are not
+     * enabled, the eviction is already done by the underlying cache and this method does nothing. The tiles are taken from the head of the
+     * eviction queue of each group, so the cost does not depend on the number of cached tiles.
      */
     public void memoryControl() {
-        throw new UnsupportedOperationException("Memory Control not supported");
+        if (!quotasEnabled) {
+            return;
+        }
+        long target = (long) (memoryCacheCapacity * memoryCacheThreshold);
+        synchronized (evictionLock) {
+            if (memoryUsed.get() <= target) {
+                return;
+            }
+            Cache<Object, CachedTileImpl> cache = cacheObject;
+            // The groups are copied since the emptied queues are dropped during the eviction
+            List<CacheOwnerGroup> groups = new ArrayList<CacheOwnerGroup>(evictionQueues.keySet());
+            // Tiles of the groups over quota
+            for (CacheOwnerGroup group : groups) {
+                while (memoryUsed.get() > target && group.isOverQuota() && evictNext(cache, group)) {
+                }
+            }
+            // Remaining tiles, the groups with the same priority being evicted in turn
+            Collections.sort(groups, GROUP_ORDER);
+            int start = 0;
+            while (start < groups.size() && memoryUsed.get() > target) {
+                int end = start + 1;
+                while (end < groups.size()
+                        && GROUP_ORDER.compare(groups.get(start), groups.get(end)) == 0) {
+                    end++;
+                }
+                boolean evicted = true;
+                while (evicted && memoryUsed.get() > target) {
+                    evicted = false;
+                    for (int i = start; i < end && memoryUsed.get() > target; i++) {
+                        evicted |= evictNext(cache, groups.get(i));
+                    }
+                }
+                start = end;
+            }
+        }
+    }
+
+    /**
+     * Evicts the first tile of the group queue not accessed since it was queued, giving a second chance to the others. Returns false if the queue
+     * contains no cached tile, dropping it.
+     */
+    private boolean evictNext(Cache<Object, CachedTileImpl> cache, CacheOwnerGroup group) {
+        LinkedList<WeakReference<CachedTileImpl>> queue = evictionQueues.get(group);
+        if (queue == null) {
+            // dropped when the last tile of the group has been removed
+            return false;
+        }
+        // each tile gets at most one second chance, so that the queue is visited at most twice
+        int chances = queue.size();
+        WeakReference<CachedTileImpl> ref;
+        while ((ref = queue.poll()) != null) {
+            CachedTileImpl cti = ref.get();
+            if (cti == null) {
+                continue;
+            }
+            if (cti.referenced && chances-- > 0) {
+                cti.referenced = false;
+                queue.add(ref);
+            } else if (evictTile(cache, cti)) {
+                if (group.getTileCount() == 0) {
+                    // the last tile of the group has been evicted
+                    evictionQueues.remove(group);
+                }
+                return true;
+            }
+        }
+        evictionQueues.remove(group);
+        return false;
+    }
+
+    /**
+     * Drops the eviction queue of the group if it has no cached tile, so that the queues of the groups no longer used are not kept. It must not be
+     * called by the removal listener, which may run while the cache is locked.
+     */
+    private void dropEvictionQueue(CacheOwnerGroup group) {
+        if (group == null || group.getTileCount() > 0) {
+            return;
+        }
+        synchronized (evictionLock) {
+            if (group.getTileCount() == 0) {
+                evictionQueues.remove(group);
+            }
+        }
+    }
+
+    /** Evicts the selected tile if it is still cached, returning true if it has been evicted */
+    private boolean evictTile(Cache<Object, CachedTileImpl> cache, CachedTileImpl cti) {
+        if (cti.evicted) {
+            return false;
+        }
+        cti.evicted = true;
+        if (!cache.asMap().remove(cti.key, cti)) {
+            // already removed or replaced
+            cti.evicted = false;
+            return false;
+        }
+        return true;
     }
 
     /**
@@ -439,6 +683,83 @@ public class ConcurrentTileCacheMultiMap extends Observable implements TileCache
         return concurrencyLevel;
     }
 
+    /**
+     * Sets the second level cache, for example a {@link DiskSpillTileCache}. The tiles evicted from this cache for size constraints are added to
+     * the second level cache and moved back to this cache when requested again. A <code>null</code> value disables the second level.
+     */
+    public void setSecondLevelCache(TileCache secondLevelCache) {
+        if (secondLevelCache == this) {
+            throw new IllegalArgumentException("The cache cannot be its own second level");
+        }
+        this.secondLevelCache = secondLevelCache;
+    }
+
+    /** Retrieve the second level cache, if any */
+    public TileCache getSecondLevelCache() {
+        return secondLevelCache;
+    }
+
+    /**
+     * Enables or disables the group quotas and priorities, and then flush and rebuild the cache. When enabled, the eviction is done by
+     * {@link #memoryControl()} each time the memory capacity is exceeded.
+     */
+    public void setQuotasEnabled(boolean quotasEnabled) {
+        synchronized (cacheObject) {
+            this.quotasEnabled = quotasEnabled;
+            // The flush is done in order to rebuild the cache with the new settings
+            flush();
+        }
+    }
+
+    /** Returns true if the group quotas and priorities are enabled */
+    public boolean isQuotasEnabled() {
+        return quotasEnabled;
+    }
+
+    /**
+     * Assigns the owner to the selected group, or to the default group if <code>null</code>. Only the tiles added afterwards are accounted to the
+     * new group. The assignment is dropped when the tiles of the owner are removed by {@link #removeTiles(RenderedImage)}.
+     */
+    public void setOwnerGroup(RenderedImage owner, CacheOwnerGroup group) {
+        Object imageKey = CachedTileImpl.hashKey(owner);
+        if (group == null) {
+            ownerGroups.remove(imageKey);
+        } else {
+            ownerGroups.put(imageKey, group);
+        }
+    }
+
+    /** Retrieve the group of the owner */
+    public CacheOwnerGroup getOwnerGroup(RenderedImage owner) {
+        CacheOwnerGroup group = ownerGroups.get(CachedTileImpl.hashKey(owner));
+        return group != null ? group : defaultGroup;
+    }
+
+    /** Sets the group of the owners without an explicit group. Only the tiles added afterwards are accounted to the new group. */
+    public void setDefaultGroup(CacheOwnerGroup defaultGroup) {
+        if (defaultGroup == null) {
+            throw new IllegalArgumentException("The default group cannot be null");
+        }
+        this.defaultGroup = defaultGroup;
+    }
+
+    /** Retrieve the group of the owners without an explicit group */
+    public CacheOwnerGroup getDefaultGroup() {
+        return defaultGroup;
+    }
+
+    /** Retrieves the default group and the groups currently assigned to an owner, for reporting their occupancy */
+    public List<CacheOwnerGroup> getOwnerGroups() {
+        List<CacheOwnerGroup> groups = new ArrayList<CacheOwnerGroup>();
+        groups.add(defaultGroup);
+        for (CacheOwnerGroup group : ownerGroups.values()) {
+            if (!groups.contains(group)) {
+                groups.add(group);
+            }
+        }
+        return groups;
+    }
+
     /**
      * Not Supported
      * 
@@ -486,12 +807,7 @@ public class ConcurrentTileCacheMultiMap extends Observable implements TileCache
 
     /** Retrieves the current memory size of the cache */
     public long getCacheMemoryUsed() {
-        long memoryUsed = 0;
-        for (Object object : cacheObject.asMap().values()) {
-            CachedTileImpl cti = (CachedTileImpl) object;
-            memoryUsed += getTileSize(cti);
-        }
-        return memoryUsed;
+        return memoryUsed.get();
     }
 
     /** Retrieves the miss count from the cache statistics */
@@ -525,80 +841,67 @@ public class ConcurrentTileCacheMultiMap extends Observable implements TileCache
     private RemovalListener<Object, CachedTileImpl> createListener(final boolean diagnostic) {
         return new RemovalListener<Object, CachedTileImpl>() {
             public void onRemoval(RemovalNotification<Object, CachedTileImpl> n) {
+                if (n.getValue() == null) {
+                    return;
+                }
+                updateMemoryUsed(n.getValue(), -1);
+                // tiles evicted by the memory control are removed explicitly
+                boolean evictedTile = n.wasEvicted() || n.getValue().evicted;
+                // The tiles evicted for size constraints are moved to the second level cache
+                TileCache secondLevel = secondLevelCache;
+                if (secondLevel != null && evictedTile) {
+                    CachedTileImpl evicted = n.getValue();
+                    RenderedImage owner = evicted.getOwner();
+                    if (owner != null) {
+                        secondLevel.add(owner, evicted.tileX, evicted.tileY, evicted.getTile(),
+                                evicted.getTileCacheMetric());
+                    }
+                }
                 // if a tile is manually removed, the diagnosticEnabled already consider
                 // it in
-                // the remove() method
+                // the remove() method. A replaced tile has already been notified by the add() method
 
-                if (diagnostic) {
+                if (diagnostic && n.getCause() != RemovalCause.REPLACED) {
                     synchronized (cacheObject) {
                         CachedTileImpl cti = n.getValue();
                         // Update of the tile action
-                        if (n.wasEvicted()) {
+                        if (evictedTile) {
                             cti.setAction(Actions.REMOVAL_FROM_EVICTION);
                         } else {
                             cti.setAction(Actions.MANUAL_REMOVAL);
                         }
                         // Removal from the multimap
-                        removeTileFromMultiMap(cti);
+                        multimap.remove(cti);
                         setChanged();
                         notifyObservers(cti);
                     }
                 } else {
                     CachedTileImpl cti = n.getValue();
-                    if (n.getCause() == RemovalCause.SIZE) {
+                    if (evictedTile) {
                         // Logging if the tile is removed because the size is exceeded
                         if (LOGGER.isLoggable(Level.FINE)) {
                             LOGGER.fine("Removing from MultiMap for size");
                         }
                     }
-                    removeTileFromMultiMap(cti);
+                    multimap.remove(cti);
                 }
             }
         };
     }
 
-    /**
-     * Method for removing the tile keys from the multimap. If the KeySet associated to the image is empty, it is removed from the multimap.
-     * 
-     * @param cti
-     */
-    private void removeTileFromMultiMap(CachedTileImpl cti) {
-        // Tile key
-        Object key = cti.getKey();
-        // Image key
-        Object imageKey = cti.getImageKey();
-        // KeySet associated to the image
-        Set<Object> tileKeys = multimap.get(imageKey);
-
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("Removing tile from MultiMap Image key " + imageKey);
-        }
-
-        if (tileKeys != null) {
-            // Removal of the keys
-            tileKeys.remove(key);
-            if (LOGGER.isLoggable(Level.FINE)) {
-                LOGGER.fine("Removed Tile Image key " + imageKey);
-            }
-            // If the KeySet is empty then it is removed from the multimap
-            if (tileKeys.isEmpty()) {
-                multimap.remove(imageKey);
-                if (LOGGER.isLoggable(Level.FINE)) {
-                    LOGGER.fine("Removed image SET Image key " + imageKey);
-                }
-            }
-        }
-    }
-
     /** Private cache creation method */
     private Cache<Object, CachedTileImpl> buildCache() {
         CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
-        builder.maximumWeight((long) (memoryCacheCapacity * memoryCacheThreshold))
-                .concurrencyLevel(concurrencyLevel).weigher(new Weigher<Object, CachedTileImpl>() {
-                    public int weigh(Object o, CachedTileImpl cti) {
-                        return (int) getTileSize(cti);
-                    }
-                });
+        builder.concurrencyLevel(concurrencyLevel);
+        // When the quotas are enabled, the eviction is done by the memoryControl() method
+        if (!quotasEnabled) {
+            builder.maximumWeight((long) (memoryCacheCapacity * memoryCacheThreshold)).weigher(
+                    new Weigher<Object, CachedTileImpl>() {
+                        public int weigh(Object o, CachedTileImpl cti) {
+                            return (int) getTileSize(cti);
+                        }
+                    });
+        }
         // Setting of the listener
         builder.removalListener(createListener(diagnosticEnabled));
         // Enable statistics only when the diagnostic flag is set to true;
@@ -613,34 +916,6 @@ public class ConcurrentTileCacheMultiMap extends Observable implements TileCache
         return builder.build();
     }
 
-    /**
-     * Update of the multimap when a tile is added.
-     * 
-     * @param key
-     * @param imageKey
-     */
-    private void updateMultiMap(Object key, Object imageKey) {
-        Set<Object> tileKeys = null;
-        // Check if the multimap contains the keys for the image
-        tileKeys = multimap.get(imageKey);
-        if (tileKeys == null) {
-            // If no key is present then a new KeySet is created and then added to the multimap
-            tileKeys = new ConcurrentSkipListSet<Object>();
-            Set<Object> previousTileKeys = multimap.putIfAbsent(imageKey, tileKeys);
-            if(previousTileKeys != null) {
-                tileKeys = previousTileKeys;
-            }
-            if (LOGGER.isLoggable(Level.FINE)) {
-                LOGGER.fine("Created new Set for the image Image key " + imageKey);
-            }
-        }
-        if (LOGGER.isLoggable(Level.FINE)) {
-            LOGGER.fine("Added Tile to the set Image key " + imageKey);
-        }
-        // Finally the tile key is added.
-        tileKeys.add(key);
-    }
-
     /**
      * Removes the tile associated to the key.
      * 
@@ -651,6 +926,7 @@ public class ConcurrentTileCacheMultiMap extends Observable implements TileCache
         CachedTileImpl cti = (CachedTileImpl) cacheObject.getIfPresent(key);
         // if so the tile is deleted (even if another thread write on it)
         if (cti != null) {
+            CacheOwnerGroup group = cti.group;
             if (diagnosticEnabled) {
                 synchronized (cacheObject) {
                     // Upgrade the tile action
@@ -673,26 +949,33 @@ public class ConcurrentTileCacheMultiMap extends Observable implements TileCache
                 // Discard the tile from the cache
                 cacheObject.invalidate(key);
             }
+            dropEvictionQueue(group);
         }
     }
 
     /**
-     * Gets the tile associated to the key.
+     * Gets the tile associated to the key of the tile found in the multimap.
      * 
-     * @param key
+     * @param indexed
      * @return
      */
-    private Raster getTileFromKey(Object key) {
+    private Raster getTileFromKey(CachedTileImpl indexed) {
         Raster tileData = null;
         // check if the tile is present
-        CachedTileImpl cti = (CachedTileImpl) cacheObject.getIfPresent(key);
+        CachedTileImpl cti = (CachedTileImpl) cacheObject.getIfPresent(indexed.getKey());
         // If not tile is found, null is returned
         if (cti == null) {
+            // The tile has been discarded, the stale entry must not keep the raster alive
+            multimap.remove(indexed);
             if (LOGGER.isLoggable(Level.FINE)) {
                 LOGGER.fine("Null Tile returned");
             }
             return null;
         }
+        if (quotasEnabled) {
+            // the tile gets a second chance before being evicted
+            cti.referenced = true;
+        }
         if (diagnosticEnabled) {
             synchronized (cacheObject) {
 
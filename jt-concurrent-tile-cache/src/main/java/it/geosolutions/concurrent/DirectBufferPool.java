@@ -0,0 +1,190 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.concurrent;
+
+import java.nio.ByteBuffer;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Pool of direct {@link ByteBuffer}s used by {@link OffHeapTileCache}. The memory is allocated by regions, which are split in blocks with a buddy
+ * allocation: each block size is a power of 2 between {@link #MIN_BLOCK_SIZE} and the region size, larger free blocks are halved for serving
+ * smaller requests and the released blocks are merged with their free halves, so that the memory released by the tiles of a size is reused by the
+ * tiles of any other size. The regions which become completely free are dropped, keeping only one spare region. Requests bigger than a region are
+ * served by a dedicated buffer, which is dropped when released.
+ */
+final class DirectBufferPool {
+
+    /** The minimum size of a block (4 KB) */
+    static final int MIN_BLOCK_SIZE = 4096;
+
+    /** The default size of each region (4 MB) */
+    static final int DEFAULT_REGION_SIZE = 4 * 1024 * 1024;
+
+    /** A block of memory allocated by the pool */
+    static final class Block {
+
+        /** The block memory, limited to the requested size */
+        final ByteBuffer buffer;
+
+        /** Address of the block inside the regions, or -1 for a dedicated buffer */
+        final long address;
+
+        /** Size class of the block */
+        final int sizeClass;
+
+        Block(ByteBuffer buffer, long address, int sizeClass) {
+            this.buffer = buffer;
+            this.address = address;
+            this.sizeClass = sizeClass;
+        }
+
+        /** Returns the memory held by the block */
+        long getSize() {
+            return address < 0 ? buffer.capacity() : blockSize(sizeClass);
+        }
+    }
+
+    /** The size of each region */
+    private final int regionSize;
+
+    /** The allocated regions, null for the dropped ones, guarded by this pool */
+    private ByteBuffer[] regions = new ByteBuffer[0];
+
+    /** The free blocks of each size class, guarded by this pool */
+    private final List<Set<Long>> freeBlocks;
+
+    /** The memory held by the regions and the dedicated buffers, guarded by this pool */
+    private long allocatedMemory;
+
+    DirectBufferPool() {
+        this(DEFAULT_REGION_SIZE);
+    }
+
+    /**
+     * @param regionSize size of each region, must be a power of 2 not smaller than {@link #MIN_BLOCK_SIZE}
+     */
+    DirectBufferPool(int regionSize) {
+        if (regionSize < MIN_BLOCK_SIZE || Integer.bitCount(regionSize) != 1) {
+            throw new IllegalArgumentException("Region size must be a power of 2 not smaller than "
+                    + MIN_BLOCK_SIZE);
+        }
+        this.regionSize = regionSize;
+        int numClasses = Integer.numberOfTrailingZeros(regionSize / MIN_BLOCK_SIZE) + 1;
+        freeBlocks = new ArrayList<Set<Long>>(numClasses);
+        for (int i = 0; i < numClasses; i++) {
+            freeBlocks.add(new LinkedHashSet<Long>());
+        }
+    }
+
+    /** Returns the size of the blocks of the selected class */
+    private static int blockSize(int sizeClass) {
+        return MIN_BLOCK_SIZE << sizeClass;
+    }
+
+    /** Returns the smallest size class able to contain the selected number of bytes */
+    private static int sizeClass(int size) {
+        int sizeClass = 0;
+        while (blockSize(sizeClass) < size) {
+            sizeClass++;
+        }
+        return sizeClass;
+    }
+
+    /** Returns a block of at least the selected size, halving a larger free block or allocating a new region if needed */
+    synchronized Block allocate(int size) {
+        if (size > regionSize) {
+            allocatedMemory += size;
+            return new Block(ByteBuffer.allocateDirect(size), -1, -1);
+        }
+        int sizeClass = sizeClass(size);
+        int topClass = freeBlocks.size() - 1;
+        int blockClass = sizeClass;
+        while (blockClass <= topClass && freeBlocks.get(blockClass).isEmpty()) {
+            blockClass++;
+        }
+        long address;
+        if (blockClass <= topClass) {
+            Iterator<Long> it = freeBlocks.get(blockClass).iterator();
+            address = it.next().longValue();
+            it.remove();
+        } else {
+            address = (long) addRegion() * regionSize;
+            blockClass = topClass;
+        }
+        // The upper halves of the block are given back until the requested size is reached
+        while (blockClass > sizeClass) {
+            blockClass--;
+            freeBlocks.get(blockClass).add(Long.valueOf(address + blockSize(blockClass)));
+        }
+        ByteBuffer view = regions[(int) (address / regionSize)].duplicate();
+        int offset = (int) (address % regionSize);
+        view.limit(offset + size);
+        view.position(offset);
+        return new Block(view.slice(), address, sizeClass);
+    }
+
+    /** Gives back the block, merging it with its free buddies and dropping its region if completely free */
+    synchronized void release(Block block) {
+        if (block.address < 0) {
+            allocatedMemory -= block.buffer.capacity();
+            return;
+        }
+        long address = block.address;
+        int sizeClass = block.sizeClass;
+        int topClass = freeBlocks.size() - 1;
+        // The regions are aligned to their size, so the buddy of a block is found by flipping
+        // the bit of the block size
+        while (sizeClass < topClass
+                && freeBlocks.get(sizeClass).remove(Long.valueOf(address ^ blockSize(sizeClass)))) {
+            address &= ~((long) blockSize(sizeClass));
+            sizeClass++;
+        }
+        if (sizeClass == topClass && !freeBlocks.get(topClass).isEmpty()) {
+            // A spare region is already present
+            regions[(int) (address / regionSize)] = null;
+            allocatedMemory -= regionSize;
+        } else {
+            freeBlocks.get(sizeClass).add(Long.valueOf(address));
+        }
+    }
+
+    /** Allocates a new region, reusing the index of a dropped one, and returns its index */
+    private int addRegion() {
+        int index = 0;
+        while (index < regions.length && regions[index] != null) {
+            index++;
+        }
+        if (index == regions.length) {
+            ByteBuffer[] newRegions = new ByteBuffer[regions.length + 1];
+            System.arraycopy(regions, 0, newRegions, 0, regions.length);
+            regions = newRegions;
+        }
+        regions[index] = ByteBuffer.allocateDirect(regionSize);
+        allocatedMemory += regionSize;
+        return index;
+    }
+
+    /** Returns the memory held by the pool */
+    synchronized long getAllocatedMemory() {
+        return allocatedMemory;
+    }
+}
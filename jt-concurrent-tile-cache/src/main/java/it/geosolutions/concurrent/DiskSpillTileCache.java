@@ -0,0 +1,899 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.concurrent;
+
+import it.geosolutions.concurrent.ConcurrentTileCache.Actions;
+
+import java.awt.Point;
+import java.awt.RenderingHints;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Observable;
+import java.util.Set;
+import java.util.Vector;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.media.jai.CachedTile;
+import javax.media.jai.TileCache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.sun.media.jai.util.CacheDiagnostics;
+
+/**
+ * This implementation of the TileCache class stores the tiles inside a local scratch file, mapped in memory by regions. It is meant to be used as
+ * second level of a {@link ConcurrentTileCacheMultiMap} or of a {@link ConcurrentTileCache}, receiving the tiles evicted from the heap, so that
+ * expensive tiles are read back from the disk instead of being computed again.
+ * <p>
+ * The tile data are written in their raw form, with the element size of the {@link java.awt.image.SampleModel} data type. The file is split in
+ * regions, which are split in slots with a buddy allocation: each slot size is a power of 2 between {@link #MIN_SLOT_SIZE} and the region size,
+ * larger free slots are halved for serving smaller tiles and the slots of the discarded tiles are merged with their free halves, so that the space
+ * freed by the tiles of a size can be reused by the tiles of any other size. If the scratch file is full, the tiles occupying a block of the
+ * needed size are evicted for making room to the new one. When a tile is requested, its data are copied with a single bulk operation from the
+ * mapped region directly inside the arrays of the returned {@link Raster}. Tiles bigger than a region are not stored.
+ * <p>
+ * The cache can be configured with the {@link RenderingHints} keys defined by this class: {@link #KEY_SPILL_DIRECTORY},
+ * {@link #KEY_SPILL_CAPACITY}, {@link #KEY_SPILL_REGION_SIZE} and {@link #KEY_SPILL_CONCURRENCY_LEVEL}.
+ */
+public class DiskSpillTileCache extends Observable implements TileCache, CacheDiagnostics {
+
+    /**
+     * {@link RenderingHints} key used for configuring the spill cache.
+     */
+    public static final class SpillHintKey extends RenderingHints.Key {
+
+        private final Class<?> valueClass;
+
+        private final String name;
+
+        private SpillHintKey(int privateKey, Class<?> valueClass, String name) {
+            super(privateKey);
+            this.valueClass = valueClass;
+            this.name = name;
+        }
+
+        public boolean isCompatibleValue(Object val) {
+            return valueClass.isInstance(val);
+        }
+
+        public String toString() {
+            return name;
+        }
+    }
+
+    /** Hint for the directory containing the scratch file (a {@link File}), the temporary directory by default */
+    public static final RenderingHints.Key KEY_SPILL_DIRECTORY = new SpillHintKey(1000,
+            File.class, "SpillDirectory");
+
+    /** Hint for the maximum size in bytes of the scratch file (a {@link Long}) */
+    public static final RenderingHints.Key KEY_SPILL_CAPACITY = new SpillHintKey(1001,
+            Long.class, "SpillCapacity");
+
+    /** Hint for the size in bytes of the mapped regions (an {@link Integer} power of 2) */
+    public static final RenderingHints.Key KEY_SPILL_REGION_SIZE = new SpillHintKey(1002,
+            Integer.class, "SpillRegionSize");
+
+    /** Hint for the concurrency level of the cache (an {@link Integer}) */
+    public static final RenderingHints.Key KEY_SPILL_CONCURRENCY_LEVEL = new SpillHintKey(1003,
+            Integer.class, "SpillConcurrencyLevel");
+
+    /** The default capacity of the scratch file (1 GB). */
+    public static final long DEFAULT_SPILL_CAPACITY = 1024L * 1024L * 1024L;
+
+    /** The default size of each mapped region (16 MB). */
+    public static final int DEFAULT_REGION_SIZE = 16 * 1024 * 1024;
+
+    /** The default concurrency settings */
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 4;
+
+    /** The size of the smallest slots */
+    public static final int MIN_SLOT_SIZE = 4096;
+
+    /** The maximum number of blocks evicted for making room to a new tile */
+    private static final int MAX_RECLAIM_ATTEMPTS = 4;
+
+    /**
+     * Logger to use for reporting the informations about the TileCache operations.
+     */
+    private final static Logger LOGGER = Logger.getLogger(DiskSpillTileCache.class.toString());
+
+    /**
+     * A tile stored inside a slot of the scratch file. The slot is given back only when the tile has been discarded and no reader is using it.
+     */
+    private final class SpilledTile implements CachedTile, OwnerTileIndex.IndexedTile {
+
+        final WeakReference owner;
+
+        final int tileX;
+
+        final int tileY;
+
+        final Object tileCacheMetric;
+
+        final TileKey key;
+
+        final RasterCodec.Layout layout;
+
+        final long slot;
+
+        final int sizeClass;
+
+        /** One reference held by the cache plus one for each reader */
+        private final AtomicInteger references = new AtomicInteger(1);
+
+        private long timeStamp;
+
+        private Actions action;
+
+        SpilledTile(RenderedImage owner, int tileX, int tileY, Object tileCacheMetric,
+                RasterCodec.Layout layout, long slot, int sizeClass) {
+            this.owner = new WeakReference(owner);
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.tileCacheMetric = tileCacheMetric;
+            this.key = new TileKey(CachedTileImpl.hashKey(owner), CachedTileImpl.tileIndex(tileX,
+                    tileY));
+            this.layout = layout;
+            this.slot = slot;
+            this.sizeClass = sizeClass;
+            updateTileTimeStamp();
+        }
+
+        /** Acquires a reference on the slot, if it has not been released yet */
+        boolean retain() {
+            while (true) {
+                int count = references.get();
+                if (count <= 0) {
+                    return false;
+                }
+                if (references.compareAndSet(count, count + 1)) {
+                    return true;
+                }
+            }
+        }
+
+        /** Releases a reference on the slot, giving the slot back when no reference is left */
+        void release() {
+            if (references.decrementAndGet() == 0) {
+                freeSlot(slot, sizeClass);
+            }
+        }
+
+        public Object getImageKey() {
+            return key.getImageKey();
+        }
+
+        public long getTileIndex() {
+            return key.getTileIndex();
+        }
+
+        public Raster getTile() {
+            return readTile(this);
+        }
+
+        public RenderedImage getOwner() {
+            return (RenderedImage) owner.get();
+        }
+
+        public long getTileTimeStamp() {
+            return timeStamp;
+        }
+
+        public Object getTileCacheMetric() {
+            return tileCacheMetric;
+        }
+
+        public long getTileSize() {
+            return slotSize(sizeClass);
+        }
+
+        public int getAction() {
+            return action.valueAction();
+        }
+
+        void setAction(Actions newAction) {
+            action = newAction;
+        }
+
+        void updateTileTimeStamp() {
+            timeStamp = System.currentTimeMillis();
+        }
+    }
+
+    /** The scratch file */
+    private final File file;
+
+    /** Access to the scratch file */
+    private final RandomAccessFile randomAccessFile;
+
+    private final FileChannel channel;
+
+    /** The size of each mapped region */
+    private final int regionSize;
+
+    /** The maximum size of the scratch file */
+    private volatile long capacity;
+
+    /** The fraction of the capacity which can be used by the tiles */
+    private volatile float memoryThreshold = 1.0F;
+
+    /** The concurrency level of the cache. */
+    private int concurrencyLevel;
+
+    /** The mapped regions, replaced by a larger array when a new region is mapped */
+    private volatile MappedByteBuffer[] regions = new MappedByteBuffer[0];
+
+    /** Set when the scratch file is closed, after which the tiles are not read or written anymore */
+    private volatile boolean disposed;
+
+    /** The free slots of each size class, guarded by the region lock */
+    private final List<Set<Long>> freeSlots;
+
+    /** Lock used when allocating or freeing slots and when mapping new regions */
+    private final Object regionLock = new Object();
+
+    /**
+     * The tile cache. A Guava Cache is used to cache the tiles. The "key" is a <code>Object</code>. The "value" is a SpilledTile.
+     */
+    private volatile Cache<Object, SpilledTile> cacheObject;
+
+    /** The cached tiles indexed by their slot, used for evicting the tiles of a block */
+    private final ConcurrentHashMap<Long, SpilledTile> slotOwners = new ConcurrentHashMap<Long, SpilledTile>();
+
+    /** Index of the tiles of each image */
+    private final OwnerTileIndex<SpilledTile> ownerIndex = new OwnerTileIndex<SpilledTile>();
+
+    /** diagnosticEnabled enable/disable */
+    private volatile boolean diagnosticEnabled = false;
+
+    /**
+     * The listener keeps the tile index consistent with the cache content and gives back the slots of the discarded tiles
+     */
+    private final RemovalListener<Object, SpilledTile> listener = new RemovalListener<Object, SpilledTile>() {
+        public void onRemoval(RemovalNotification<Object, SpilledTile> n) {
+            SpilledTile tile = n.getValue();
+            if (tile == null) {
+                return;
+            }
+            ownerIndex.remove(tile);
+            slotOwners.remove(Long.valueOf(tile.slot), tile);
+            if (diagnosticEnabled && n.getCause() == RemovalCause.SIZE) {
+                synchronized (DiskSpillTileCache.this) {
+                    tile.setAction(Actions.REMOVAL_FROM_EVICTION);
+                    setChanged();
+                    notifyObservers(tile);
+                }
+            }
+            tile.release();
+        }
+    };
+
+    /**
+     * Creates a new cache using the default settings
+     * 
+     * @throws IOException if the scratch file cannot be created
+     */
+    public DiskSpillTileCache() throws IOException {
+        this(null);
+    }
+
+    /**
+     * Creates a new cache configured with the hints defined by this class. Missing hints are replaced by the default values.
+     * 
+     * @param hints
+     * @throws IOException if the scratch file cannot be created
+     */
+    public DiskSpillTileCache(RenderingHints hints) throws IOException {
+        this((File) getHint(hints, KEY_SPILL_DIRECTORY, null), ((Long) getHint(hints,
+                KEY_SPILL_CAPACITY, DEFAULT_SPILL_CAPACITY)).longValue(), ((Integer) getHint(
+                hints, KEY_SPILL_REGION_SIZE, DEFAULT_REGION_SIZE)).intValue(),
+                ((Integer) getHint(hints, KEY_SPILL_CONCURRENCY_LEVEL, DEFAULT_CONCURRENCY_LEVEL))
+                        .intValue());
+    }
+
+    /**
+     * Creates a new cache
+     * 
+     * @param directory directory of the scratch file, the temporary directory if <code>null</code>
+     * @param capacity maximum size of the scratch file
+     * @param regionSize size of each mapped region, must be a power of 2 not smaller than {@link #MIN_SLOT_SIZE}
+     * @param concurrencyLevel concurrency level of the cache
+     * @throws IOException if the scratch file cannot be created
+     */
+    public DiskSpillTileCache(File directory, long capacity, int regionSize, int concurrencyLevel)
+            throws IOException {
+        if (capacity < 0) {
+            throw new IllegalArgumentException("Spill capacity too small");
+        }
+        if (regionSize < MIN_SLOT_SIZE || Integer.bitCount(regionSize) != 1) {
+            throw new IllegalArgumentException("Region size must be a power of 2 not smaller than "
+                    + MIN_SLOT_SIZE);
+        }
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("ConcurrencyLevel must be at least 1");
+        }
+        this.capacity = capacity;
+        this.regionSize = regionSize;
+        this.concurrencyLevel = concurrencyLevel;
+
+        int numClasses = Integer.numberOfTrailingZeros(regionSize / MIN_SLOT_SIZE) + 1;
+        freeSlots = new ArrayList<Set<Long>>(numClasses);
+        for (int i = 0; i < numClasses; i++) {
+            freeSlots.add(new LinkedHashSet<Long>());
+        }
+
+        file = File.createTempFile("jaiext-tiles", ".spill", directory);
+        file.deleteOnExit();
+        randomAccessFile = new RandomAccessFile(file, "rw");
+        channel = randomAccessFile.getChannel();
+
+        // cache creation
+        cacheObject = buildCache();
+    }
+
+    private static Object getHint(RenderingHints hints, RenderingHints.Key key, Object defaultValue) {
+        Object value = hints != null ? hints.get(key) : null;
+        return value != null ? value : defaultValue;
+    }
+
+    /** Private cache creation method */
+    private Cache<Object, SpilledTile> buildCache() {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        builder.maximumWeight((long) (capacity * memoryThreshold))
+                .concurrencyLevel(concurrencyLevel).weigher(new Weigher<Object, SpilledTile>() {
+                    public int weigh(Object o, SpilledTile tile) {
+                        return slotSize(tile.sizeClass);
+                    }
+                });
+        // Setting of the listener
+        builder.removalListener(listener);
+        // Enable statistics only when the diagnostic flag is set to true;
+        if (diagnosticEnabled) {
+            builder.recordStats();
+        }
+        return builder.build();
+    }
+
+    /** Returns the size of the slots of the selected class */
+    private static int slotSize(int sizeClass) {
+        return MIN_SLOT_SIZE << sizeClass;
+    }
+
+    /** Returns the smallest size class able to contain the selected number of bytes */
+    private static int sizeClass(int size) {
+        int sizeClass = 0;
+        while (slotSize(sizeClass) < size) {
+            sizeClass++;
+        }
+        return sizeClass;
+    }
+
+    /**
+     * Returns a free slot of the selected size class, halving a larger free slot or mapping a new region if needed. Returns -1 if the scratch file
+     * is full.
+     */
+    private long allocateSlot(int sizeClass) throws IOException {
+        synchronized (regionLock) {
+            if (disposed) {
+                return -1;
+            }
+            int topClass = freeSlots.size() - 1;
+            int blockClass = sizeClass;
+            while (blockClass <= topClass && freeSlots.get(blockClass).isEmpty()) {
+                blockClass++;
+            }
+            long slot;
+            if (blockClass <= topClass) {
+                Iterator<Long> it = freeSlots.get(blockClass).iterator();
+                slot = it.next().longValue();
+                it.remove();
+            } else {
+                MappedByteBuffer[] current = regions;
+                long fileSize = (long) current.length * regionSize;
+                if (fileSize + regionSize > capacity) {
+                    return -1;
+                }
+                MappedByteBuffer region = channel.map(FileChannel.MapMode.READ_WRITE, fileSize,
+                        regionSize);
+                MappedByteBuffer[] newRegions = new MappedByteBuffer[current.length + 1];
+                System.arraycopy(current, 0, newRegions, 0, current.length);
+                newRegions[current.length] = region;
+                regions = newRegions;
+                slot = fileSize;
+                blockClass = topClass;
+            }
+            // The upper halves of the block are given back until the requested size is reached
+            while (blockClass > sizeClass) {
+                blockClass--;
+                freeSlots.get(blockClass).add(Long.valueOf(slot + slotSize(blockClass)));
+            }
+            return slot;
+        }
+    }
+
+    /** Gives back the slot, merging it with its free buddies */
+    private void freeSlot(long slot, int sizeClass) {
+        synchronized (regionLock) {
+            int topClass = freeSlots.size() - 1;
+            // The regions are aligned to their size, so the buddy of a slot is found by flipping
+            // the bit of the slot size
+            while (sizeClass < topClass
+                    && freeSlots.get(sizeClass).remove(Long.valueOf(slot ^ slotSize(sizeClass)))) {
+                slot &= ~((long) slotSize(sizeClass));
+                sizeClass++;
+            }
+            freeSlots.get(sizeClass).add(Long.valueOf(slot));
+        }
+    }
+
+    /**
+     * Evicts the tiles occupying a block of the selected size class, when the scratch file is full. Each block is chosen around a cached tile,
+     * and its slots are given back as soon as they are not read anymore. Returns a free slot, or -1 if no room has been found.
+     */
+    private long reclaimSlot(int sizeClass) throws IOException {
+        int attempts = 0;
+        for (SpilledTile victim : cacheObject.asMap().values()) {
+            if (attempts++ >= MAX_RECLAIM_ATTEMPTS) {
+                break;
+            }
+            // Block of the requested size containing the victim, or the victim slot if larger
+            int blockClass = Math.max(sizeClass, victim.sizeClass);
+            long block = victim.slot & ~((long) slotSize(blockClass) - 1);
+            for (long offset = block; offset < block + slotSize(blockClass); offset += MIN_SLOT_SIZE) {
+                SpilledTile tile = slotOwners.get(Long.valueOf(offset));
+                if (tile != null) {
+                    cacheObject.asMap().remove(tile.key, tile);
+                }
+            }
+            long slot = allocateSlot(sizeClass);
+            if (slot >= 0) {
+                return slot;
+            }
+        }
+        return -1;
+    }
+
+    /**
+     * Returns a view of the file content for the selected slot, or null if the cache has been disposed. A region taken before the disposal stays
+     * mapped until it is garbage collected, so a concurrent read does not fail.
+     */
+    private ByteBuffer slotView(long slot, int length) {
+        MappedByteBuffer[] current = regions;
+        int index = (int) (slot / regionSize);
+        if (disposed || index >= current.length) {
+            return null;
+        }
+        MappedByteBuffer region = current[index];
+        int offset = (int) (slot % regionSize);
+        ByteBuffer view = region.duplicate();
+        view.limit(offset + length);
+        view.position(offset);
+        return view.slice();
+    }
+
+    /**
+     * Rebuilds the raster stored inside the tile slot, or returns null if the slot has been given back or the cache has been disposed
+     */
+    private Raster readTile(SpilledTile tile) {
+        if (!tile.retain()) {
+            return null;
+        }
+        try {
+            ByteBuffer view = slotView(tile.slot, tile.layout.getEncodedSize());
+            return view != null ? RasterCodec.decode(tile.layout, view) : null;
+        } finally {
+            tile.release();
+        }
+    }
+
+    /** Add a new tile to the cache */
+    public void add(RenderedImage owner, int tileX, int tileY, Raster data) {
+        add(owner, tileX, tileY, data, null);
+    }
+
+    /** Add a new tile to the cache, writing its data inside the scratch file */
+    public void add(RenderedImage owner, int tileX, int tileY, Raster data, Object tileCacheMetric) {
+        // when computation fails this method is called with a null raster
+        if (data == null || disposed) {
+            return;
+        }
+        Raster raster = RasterCodec.normalize(data);
+        RasterCodec.Layout layout = RasterCodec.getLayout(raster);
+        int encodedSize = layout.getEncodedSize();
+        if (encodedSize > regionSize) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("Tile too big for being spilled: " + encodedSize + " bytes");
+            }
+            return;
+        }
+        int sizeClass = sizeClass(encodedSize);
+        long slot;
+        try {
+            slot = allocateSlot(sizeClass);
+            if (slot < 0) {
+                slot = reclaimSlot(sizeClass);
+            }
+        } catch (IOException e) {
+            if (LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.log(Level.WARNING, "Unable to map a new region of the scratch file", e);
+            }
+            return;
+        }
+        if (slot < 0) {
+            if (LOGGER.isLoggable(Level.FINE)) {
+                LOGGER.fine("No free slot for a tile of " + encodedSize + " bytes");
+            }
+            return;
+        }
+        ByteBuffer view = slotView(slot, encodedSize);
+        if (view == null) {
+            // disposed in the meantime
+            return;
+        }
+        RasterCodec.encode(raster, layout, view);
+
+        SpilledTile tile = new SpilledTile(owner, tileX, tileY, tileCacheMetric, layout, slot,
+                sizeClass);
+        // the tile is indexed before being cached, so that an immediate eviction
+        // cannot leave a stale index entry behind
+        ownerIndex.add(tile);
+        slotOwners.put(Long.valueOf(slot), tile);
+        SpilledTile old = cacheObject.asMap().put(tile.key, tile);
+        if (diagnosticEnabled) {
+            synchronized (this) {
+                if (old != null) {
+                    old.setAction(Actions.SUBSTITUTION_FROM_ADD);
+                    setChanged();
+                    notifyObservers(old);
+                }
+                tile.setAction(Actions.ADDITION);
+                setChanged();
+                notifyObservers(tile);
+            }
+        }
+    }
+
+    /** Removes the selected tile from the cache */
+    public void remove(RenderedImage owner, int tileX, int tileY) {
+        removeTileByKey(CachedTileImpl.hashKey(owner, tileX, tileY));
+    }
+
+    /**
+     * Removes the tile associated to the key.
+     * 
+     * @param key
+     */
+    private void removeTileByKey(Object key) {
+        SpilledTile tile = cacheObject.asMap().remove(key);
+        if (tile != null && diagnosticEnabled) {
+            synchronized (this) {
+                tile.setAction(Actions.MANUAL_REMOVAL);
+                setChanged();
+                notifyObservers(tile);
+            }
+        }
+    }
+
+    /** Retrieves the selected tile from the cache */
+    public Raster getTile(RenderedImage owner, int tileX, int tileY) {
+        SpilledTile tile = ownerIndex.get(CachedTileImpl.hashKey(owner),
+                CachedTileImpl.tileIndex(tileX, tileY));
+        if (tile == null) {
+            if (diagnosticEnabled) {
+                // The cache is queried anyway for recording the miss
+                cacheObject.getIfPresent(CachedTileImpl.hashKey(owner, tileX, tileY));
+            }
+            return null;
+        }
+        return getTile(tile);
+    }
+
+    /**
+     * Retrieves the tile from the cache, checking that the indexed tile has not been discarded in the meantime
+     * 
+     * @param indexed the tile found in the tile index
+     * @return
+     */
+    private Raster getTile(SpilledTile indexed) {
+        // check if the tile is present, updating its access order
+        SpilledTile tile = cacheObject.getIfPresent(indexed.key);
+        if (tile == null) {
+            ownerIndex.remove(indexed);
+            return null;
+        }
+        if (diagnosticEnabled) {
+            synchronized (this) {
+                // Update last-access time for diagnosticEnabled
+                tile.updateTileTimeStamp();
+                tile.setAction(Actions.UPDATING_TILE_FROM_GETTILE);
+                setChanged();
+                notifyObservers(tile);
+            }
+        }
+        return readTile(tile);
+    }
+
+    /**
+     * Retrieves an array of all tiles in the cache which are owned by the image. May be <code>null</code> if there were no tiles in the cache. The
+     * array contains no null entries.
+     */
+    public Raster[] getTiles(RenderedImage owner) {
+        List<SpilledTile> tiles = ownerIndex.getTiles(CachedTileImpl.hashKey(owner));
+        if (tiles.isEmpty()) {
+            return null;
+        }
+        Vector<Raster> tempData = new Vector<Raster>(tiles.size());
+        for (SpilledTile tile : tiles) {
+            Raster rasterTile = getTile(tile);
+            if (rasterTile != null) {
+                tempData.add(rasterTile);
+            }
+        }
+        int tmpsize = tempData.size();
+        return tmpsize > 0 ? tempData.toArray(new Raster[tmpsize]) : null;
+    }
+
+    /**
+     * Removes all tiles in the cache which are owned by the image.
+     */
+    public void removeTiles(RenderedImage owner) {
+        for (SpilledTile tile : ownerIndex.removeTiles(CachedTileImpl.hashKey(owner))) {
+            removeTileByKey(tile.key);
+        }
+    }
+
+    /**
+     * Adds all tiles in the Point array which are owned by the image.
+     */
+    public void addTiles(RenderedImage owner, Point[] tileIndices, Raster[] tiles,
+            Object tileCacheMetric) {
+        for (int i = 0; i < tileIndices.length; i++) {
+            add(owner, tileIndices[i].x, tileIndices[i].y, tiles[i], tileCacheMetric);
+        }
+    }
+
+    /**
+     * Retrieves an array of tiles in the cache which are specified by the Point array and owned by the image. The array contains null entries for
+     * the tiles not present.
+     */
+    public Raster[] getTiles(RenderedImage owner, Point[] tileIndices) {
+        Raster[] tilesData = new Raster[tileIndices.length];
+        for (int i = 0; i < tilesData.length; i++) {
+            tilesData[i] = getTile(owner, tileIndices[i].x, tileIndices[i].y);
+        }
+        return tilesData;
+    }
+
+    /** Removes all tiles present in the cache without checking for the image owner */
+    public void flush() {
+        Cache<Object, SpilledTile> cache = cacheObject;
+        if (diagnosticEnabled) {
+            for (Object key : cache.asMap().keySet()) {
+                SpilledTile tile = cache.asMap().remove(key);
+                // the tile may have been concurrently removed
+                if (tile == null) {
+                    continue;
+                }
+                synchronized (this) {
+                    tile.setAction(Actions.REMOVAL_FROM_FLUSH);
+                    setChanged();
+                    notifyObservers(tile);
+                }
+            }
+        } else {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Flushes the cache, closes the scratch file and deletes it. The cache cannot be used anymore after this call: the tiles are not added and
+     * the lookups return null.
+     */
+    public synchronized void dispose() {
+        if (disposed) {
+            return;
+        }
+        // The flag is set first, so that the concurrent reads return a cache miss instead of using the closed file.
+        // Setting it under the region lock also prevents a concurrent mapping of a new region
+        synchronized (regionLock) {
+            disposed = true;
+        }
+        flush();
+        try {
+            channel.close();
+            randomAccessFile.close();
+        } catch (IOException e) {
+            if (LOGGER.isLoggable(Level.WARNING)) {
+                LOGGER.log(Level.WARNING, "Unable to close the scratch file", e);
+            }
+        }
+        regions = new MappedByteBuffer[0];
+        if (!file.delete() && LOGGER.isLoggable(Level.FINE)) {
+            LOGGER.fine("Scratch file " + file + " will be deleted on exit");
+        }
+    }
+
+    /** Returns the scratch file */
+    public File getFile() {
+        return file;
+    }
+
+    /** Returns the number of bytes of the scratch file currently mapped */
+    public long getMappedSize() {
+        return (long) regions.length * regionSize;
+    }
+
+    /**
+     * Not Supported
+     * 
+     * @throws UnsupportedOperationException
+     */
+    public void memoryControl() {
+        throw new UnsupportedOperationException("Memory Control not supported");
+    }
+
+    /**
+     * Not Supported
+     * 
+     * @throws UnsupportedOperationException
+     */
+    public void setTileCapacity(int tileCapacity) {
+        throw new UnsupportedOperationException("Deprecated Operation");
+    }
+
+    /**
+     * Not Supported
+     * 
+     * @throws UnsupportedOperationException
+     */
+    public int getTileCapacity() {
+        throw new UnsupportedOperationException("Deprecated Operation");
+    }
+
+    /**
+     * Sets the maximum size of the scratch file and then flush and rebuild the cache. The regions already mapped are kept, so a smaller capacity
+     * only limits the space used by the tiles.
+     */
+    public synchronized void setMemoryCapacity(long memoryCacheCapacity) {
+        if (memoryCacheCapacity < 0) {
+            throw new IllegalArgumentException("Spill capacity too small");
+        }
+        this.capacity = memoryCacheCapacity;
+        rebuildCache();
+    }
+
+    /** Retrieve the capacity of the scratch file */
+    public long getMemoryCapacity() {
+        return capacity;
+    }
+
+    /** Sets the fraction of the capacity which can be used by the tiles and then flush and rebuild the cache */
+    public synchronized void setMemoryThreshold(float mt) {
+        if (mt < 0.0F || mt > 1.0F) {
+            throw new IllegalArgumentException("Memory threshold should be between 0 and 1");
+        }
+        memoryThreshold = mt;
+        rebuildCache();
+    }
+
+    /** Retrieve the fraction of the capacity which can be used by the tiles */
+    public float getMemoryThreshold() {
+        return memoryThreshold;
+    }
+
+    /** Flush and rebuild the cache */
+    private void rebuildCache() {
+        flush();
+        cacheObject = buildCache();
+    }
+
+    /** Retrieve the cache concurrency level */
+    public int getConcurrencyLevel() {
+        return concurrencyLevel;
+    }
+
+    /**
+     * Not Supported
+     * 
+     * @throws UnsupportedOperationException
+     */
+    public void setTileComparator(Comparator comparator) {
+        throw new UnsupportedOperationException("Comparator not supported");
+    }
+
+    /**
+     * Not Supported
+     * 
+     * @throws UnsupportedOperationException
+     */
+    public Comparator getTileComparator() {
+        throw new UnsupportedOperationException("Comparator not supported");
+    }
+
+    /** Disables diagnosticEnabled for the observers */
+    public synchronized void disableDiagnostics() {
+        diagnosticEnabled = false;
+        flush();
+        cacheObject = buildCache();
+    }
+
+    /** Enables diagnosticEnabled for the observers */
+    public synchronized void enableDiagnostics() {
+        diagnosticEnabled = true;
+        flush();
+        cacheObject = buildCache();
+    }
+
+    /** Retrieves the hit count from the cache statistics */
+    public long getCacheHitCount() {
+        if (diagnosticEnabled) {
+            return cacheObject.stats().hitCount();
+        }
+        return 0;
+    }
+
+    /** Retrieves the number of bytes of the scratch file used by the cached tiles */
+    public long getCacheMemoryUsed() {
+        long memoryUsed = 0;
+        for (SpilledTile tile : cacheObject.asMap().values()) {
+            memoryUsed += tile.getTileSize();
+        }
+        return memoryUsed;
+    }
+
+    /** Retrieves the miss count from the cache statistics */
+    public long getCacheMissCount() {
+        if (diagnosticEnabled) {
+            return cacheObject.stats().missCount();
+        }
+        return 0;
+    }
+
+    /** Retrieves the number of tiles in the cache */
+    public long getCacheTileCount() {
+        return cacheObject.size();
+    }
+
+    /**
+     * Not Supported
+     * 
+     * @throws UnsupportedOperationException
+     */
+    public void resetCounts() {
+        throw new UnsupportedOperationException("Operation not supported");
+    }
+}
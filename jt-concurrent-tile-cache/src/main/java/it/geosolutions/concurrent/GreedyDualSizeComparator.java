@@ -0,0 +1,51 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.concurrent;
+
+import java.util.Comparator;
+
+import javax.media.jai.CachedTile;
+
+/**
+ * Tile comparator implementing the GreedyDual-Size eviction policy. When it is set on a {@link ConcurrentTileCache} through
+ * {@link ConcurrentTileCache#setTileComparator(Comparator)}, each tile gets a priority equal to the cache inflation value plus its compute cost
+ * divided by its size; the priority is refreshed on each access and the inflation value is raised to the priority of each evicted tile. Cheap and
+ * big tiles are therefore evicted before expensive and small ones, while tiles not used for a long time are eventually evicted too.
+ * <p>
+ * The compute cost is the value of the <code>tileCacheMetric</code> when it is a {@link Number}, otherwise the time elapsed between the cache miss
+ * of the tile and its addition to the cache, which measures the <code>computeTile</code> call of the owner image.
+ */
+public class GreedyDualSizeComparator implements Comparator<CachedTile> {
+
+    /** Shared instance, the comparator has no state */
+    public static final GreedyDualSizeComparator INSTANCE = new GreedyDualSizeComparator();
+
+    public int compare(CachedTile t1, CachedTile t2) {
+        if (t1 instanceof CachedTileImpl && t2 instanceof CachedTileImpl) {
+            int result = Double.compare(((CachedTileImpl) t1).getPriority(),
+                    ((CachedTileImpl) t2).getPriority());
+            if (result != 0) {
+                return result;
+            }
+        }
+        // Least recently used tiles first
+        long s1 = t1.getTileTimeStamp();
+        long s2 = t2.getTileTimeStamp();
+        return s1 < s2 ? -1 : (s1 == s2 ? 0 : 1);
+    }
+}
@@ -0,0 +1,167 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.concurrent;
+
+import it.geosolutions.concurrent.ConcurrentTileCache.Actions;
+
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.lang.ref.WeakReference;
+import java.nio.ByteBuffer;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.media.jai.CachedTile;
+
+/**
+ * This class is used by {@link OffHeapTileCache} for storing a tile whose data are kept inside a direct {@link ByteBuffer}, outside the Java heap.
+ * The buffer is a block taken from the {@link DirectBufferPool} of the cache and given back when the tile leaves the cache and is not read anymore.
+ * The {@link Raster} is rebuilt each time the tile is requested.
+ */
+public final class OffHeapTile implements CachedTile, OwnerTileIndex.IndexedTile {
+
+    /*
+     * The shallow size of this object, the weak reference, the key, the layout and the direct buffer
+     */
+    private static final long OFF_HEAP_TILE_OVERHEAD = 64 + 32 + 48 + 96 + 64;
+
+    final WeakReference owner; // the RenderedImage of this tile
+
+    final int tileX; // tile X index
+
+    final int tileY; // tile Y index
+
+    final Object tileCacheMetric; // Metric for weighting tile computation cost
+
+    final TileKey key; // the key used to hash this tile
+
+    private final RasterCodec.Layout layout; // the raster layout
+
+    private final DirectBufferPool pool; // the pool of the raster data
+
+    private final DirectBufferPool.Block data; // the raster data
+
+    private final AtomicInteger references = new AtomicInteger(1); // one held by the cache plus one for each reader
+
+    private long timeStamp; // the last time this tile is accessed
+
+    private Actions action; // every action done by the tile cache
+
+    OffHeapTile(RenderedImage owner, int tileX, int tileY, Raster tile, Object tileCacheMetric,
+            DirectBufferPool pool) {
+        this.owner = new WeakReference(owner);
+        this.tileX = tileX;
+        this.tileY = tileY;
+        this.tileCacheMetric = tileCacheMetric; // may be null
+        this.key = new TileKey(CachedTileImpl.hashKey(owner), CachedTileImpl.tileIndex(tileX,
+                tileY));
+
+        Raster raster = RasterCodec.normalize(tile);
+        layout = RasterCodec.getLayout(raster);
+        this.pool = pool;
+        data = pool.allocate(layout.getEncodedSize());
+        RasterCodec.encode(raster, layout, data.buffer);
+        updateTileTimeStamp();
+    }
+
+    /** Returns the key associated to the tile. */
+    public TileKey getKey() {
+        return key;
+    }
+
+    /** Returns the key associated to the tile owner */
+    public Object getImageKey() {
+        return key.getImageKey();
+    }
+
+    /** Returns the tile index inside the owner image */
+    public long getTileIndex() {
+        return key.getTileIndex();
+    }
+
+    /** Returns a new {@link Raster} containing the data of the cached tile, or null if the data have been given back to the pool. */
+    public Raster getTile() {
+        if (!retain()) {
+            return null;
+        }
+        try {
+            // each reader works on its own view of the buffer
+            ByteBuffer view = data.buffer.duplicate();
+            view.clear();
+            return RasterCodec.decode(layout, view);
+        } finally {
+            release();
+        }
+    }
+
+    /** Acquires a reference on the data, if they have not been given back yet */
+    private boolean retain() {
+        while (true) {
+            int count = references.get();
+            if (count <= 0) {
+                return false;
+            }
+            if (references.compareAndSet(count, count + 1)) {
+                return true;
+            }
+        }
+    }
+
+    /** Releases a reference on the data, giving them back to the pool when no reference is left */
+    void release() {
+        if (references.decrementAndGet() == 0) {
+            pool.release(data);
+        }
+    }
+
+    /** Returns the owner of the cached tile. */
+    public RenderedImage getOwner() {
+        return (RenderedImage) owner.get();
+    }
+
+    /** Returns the current time stamp */
+    public long getTileTimeStamp() {
+        return timeStamp;
+    }
+
+    /** Returns the tileCacheMetric object */
+    public Object getTileCacheMetric() {
+        return tileCacheMetric;
+    }
+
+    /** Returns the tile memory size, including the off-heap data */
+    public long getTileSize() {
+        return data.getSize() + OFF_HEAP_TILE_OVERHEAD;
+    }
+
+    /**
+     * Returns information about the status of the tile
+     */
+    public int getAction() {
+        return action.valueAction();
+    }
+
+    /** Sets the status of the tile */
+    public void setAction(Actions newAction) {
+        action = newAction;
+    }
+
+    /** Sets the timestamp to the new current value */
+    public void updateTileTimeStamp() {
+        timeStamp = System.currentTimeMillis();
+    }
+}
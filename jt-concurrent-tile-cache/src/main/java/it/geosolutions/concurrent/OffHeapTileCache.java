@@ -0,0 +1,465 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.concurrent;
+
+import it.geosolutions.concurrent.ConcurrentTileCache.Actions;
+
+import java.awt.Point;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Observable;
+import java.util.Vector;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.media.jai.TileCache;
+
+import com.google.common.cache.Cache;
+import com.google.common.cache.CacheBuilder;
+import com.google.common.cache.RemovalCause;
+import com.google.common.cache.RemovalListener;
+import com.google.common.cache.RemovalNotification;
+import com.google.common.cache.Weigher;
+import com.sun.media.jai.util.CacheDiagnostics;
+
+/**
+ * This implementation of the TileCache class stores the tile data outside the Java heap, inside direct {@link java.nio.ByteBuffer}s, so that large
+ * amounts of cached tiles do not increase the garbage collection pauses. The tiles are kept inside a Guava Cache weighted by the size of their
+ * off-heap data, while a tile index grouped by image provides the lookups. Each request of a tile returns a new {@link Raster} containing a copy of
+ * the stored data. The direct buffers are blocks of regions allocated by a pool: the block of a tile is given back to the pool as soon as the
+ * tile leaves the cache and is not read anymore, so that it is reused by the next tiles instead of waiting for the garbage collector.
+ * <p>
+ * This cache is mainly meant to be used as second level of a {@link ConcurrentTileCache} (see {@link ConcurrentTileCache#setSecondLevelCache}):
+ * the tiles evicted from the heap are demoted to this cache and promoted back when requested again.
+ */
+public class OffHeapTileCache extends Observable implements TileCache, CacheDiagnostics {
+
+    /** The default memory capacity of the cache (256 MB). */
+    public static final long DEFAULT_MEMORY_CACHE = 256L * 1024L * 1024L;
+
+    /** The default diagnostic settings */
+    public static final boolean DEFAULT_DIAGNOSTIC = false;
+
+    /** The default concurrency settings */
+    public static final int DEFAULT_CONCURRENCY_LEVEL = 4;
+
+    /**
+     * Logger to use for reporting the informations about the TileCache operations.
+     */
+    private final static Logger LOGGER = Logger.getLogger(OffHeapTileCache.class.toString());
+
+    /**
+     * The tile cache. A Guava Cache is used to cache the tiles. The "key" is a <code>Object</code>. The "value" is an OffHeapTile.
+     */
+    private volatile Cache<Object, OffHeapTile> cacheObject;
+
+    /** Pool of the direct buffers containing the tile data */
+    private final DirectBufferPool pool = new DirectBufferPool();
+
+    /** Index of the tiles of each image */
+    private final OwnerTileIndex<OffHeapTile> ownerIndex = new OwnerTileIndex<OffHeapTile>();
+
+    /** The memory capacity of the cache. */
+    private long memoryCacheCapacity;
+
+    /** The concurrency level of the cache. */
+    private int concurrencyLevel;
+
+    /** diagnosticEnabled enable/disable */
+    private volatile boolean diagnosticEnabled = DEFAULT_DIAGNOSTIC;
+
+    /**
+     * The listener keeps the tile index consistent with the cache content, gives the data of the removed tiles back to the pool and, if diagnostic
+     * is enabled, notifies the observers about the evicted tiles
+     */
+    private final RemovalListener<Object, OffHeapTile> listener = new RemovalListener<Object, OffHeapTile>() {
+        public void onRemoval(RemovalNotification<Object, OffHeapTile> n) {
+            OffHeapTile tile = n.getValue();
+            if (tile == null) {
+                return;
+            }
+            ownerIndex.remove(tile);
+            // the data are given back when the last reader has finished
+            tile.release();
+            if (n.getCause() == RemovalCause.SIZE) {
+                if (LOGGER.isLoggable(Level.FINE)) {
+                    LOGGER.fine("Removing off-heap tile for size " + tile.getKey());
+                }
+                if (diagnosticEnabled) {
+                    synchronized (OffHeapTileCache.this) {
+                        tile.setAction(Actions.REMOVAL_FROM_EVICTION);
+                        setChanged();
+                        notifyObservers(tile);
+                    }
+                }
+            }
+        }
+    };
+
+    public OffHeapTileCache() {
+        this(DEFAULT_MEMORY_CACHE, DEFAULT_DIAGNOSTIC, DEFAULT_CONCURRENCY_LEVEL);
+    }
+
+    public OffHeapTileCache(long memoryCacheCapacity, boolean diagnostic, int concurrencyLevel) {
+        if (memoryCacheCapacity < 0) {
+            throw new IllegalArgumentException("Memory capacity too small");
+        }
+        if (concurrencyLevel < 1) {
+            throw new IllegalArgumentException("ConcurrencyLevel must be at least 1");
+        }
+        this.diagnosticEnabled = diagnostic;
+        this.memoryCacheCapacity = memoryCacheCapacity;
+        this.concurrencyLevel = concurrencyLevel;
+
+        // cache creation
+        cacheObject = buildCache();
+    }
+
+    /** Private cache creation method */
+    private Cache<Object, OffHeapTile> buildCache() {
+        CacheBuilder<Object, Object> builder = CacheBuilder.newBuilder();
+        builder.maximumWeight(memoryCacheCapacity).concurrencyLevel(concurrencyLevel)
+                .weigher(new Weigher<Object, OffHeapTile>() {
+                    public int weigh(Object o, OffHeapTile tile) {
+                        return (int) tile.getTileSize();
+                    }
+                });
+        // Setting of the listener
+        builder.removalListener(listener);
+        // Enable statistics only when the diagnostic flag is set to true;
+        if (diagnosticEnabled) {
+            builder.recordStats();
+        }
+        return builder.build();
+    }
+
+    /** Add a new tile to the cache */
+    public void add(RenderedImage owner, int tileX, int tileY, Raster data) {
+        add(owner, tileX, tileY, data, null);
+    }
+
+    /** Add a new tile to the cache, copying its data outside the heap */
+    public void add(RenderedImage owner, int tileX, int tileY, Raster data, Object tileCacheMetric) {
+        // when computation fails this method is called with a null raster
+        if (data == null) {
+            return;
+        }
+        OffHeapTile tile = new OffHeapTile(owner, tileX, tileY, data, tileCacheMetric, pool);
+        // the tile is indexed before being cached, so that an immediate eviction
+        // cannot leave a stale index entry behind
+        ownerIndex.add(tile);
+        OffHeapTile old = cacheObject.asMap().put(tile.getKey(), tile);
+        if (diagnosticEnabled) {
+            synchronized (this) {
+                if (old != null) {
+                    old.setAction(Actions.SUBSTITUTION_FROM_ADD);
+                    setChanged();
+                    notifyObservers(old);
+                }
+                tile.setAction(Actions.ADDITION);
+                setChanged();
+                notifyObservers(tile);
+            }
+        }
+    }
+
+    /** Removes the selected tile from the cache */
+    public void remove(RenderedImage owner, int tileX, int tileY) {
+        removeTileByKey(CachedTileImpl.hashKey(owner, tileX, tileY));
+    }
+
+    /**
+     * Removes the tile associated to the key.
+     * 
+     * @param key
+     */
+    private void removeTileByKey(Object key) {
+        OffHeapTile tile = cacheObject.asMap().remove(key);
+        if (tile != null && diagnosticEnabled) {
+            synchronized (this) {
+                tile.setAction(Actions.MANUAL_REMOVAL);
+                setChanged();
+                notifyObservers(tile);
+            }
+        }
+    }
+
+    /** Retrieves a copy of the selected tile from the cache */
+    public Raster getTile(RenderedImage owner, int tileX, int tileY) {
+        OffHeapTile tile = ownerIndex.get(CachedTileImpl.hashKey(owner),
+                CachedTileImpl.tileIndex(tileX, tileY));
+        if (tile == null) {
+            if (diagnosticEnabled) {
+                // The cache is queried anyway for recording the miss
+                cacheObject.getIfPresent(CachedTileImpl.hashKey(owner, tileX, tileY));
+            }
+            return null;
+        }
+        return getTile(tile);
+    }
+
+    /**
+     * Retrieves the tile from the cache, checking that the indexed tile has not been discarded in the meantime
+     * 
+     * @param indexed the tile found in the tile index
+     * @return
+     */
+    private Raster getTile(OffHeapTile indexed) {
+        // check if the tile is present, updating its access order
+        OffHeapTile tile = cacheObject.getIfPresent(indexed.getKey());
+        if (tile == null) {
+            ownerIndex.remove(indexed);
+            return null;
+        }
+        if (diagnosticEnabled) {
+            synchronized (this) {
+                // Update last-access time for diagnosticEnabled
+                tile.updateTileTimeStamp();
+                tile.setAction(Actions.UPDATING_TILE_FROM_GETTILE);
+                setChanged();
+                notifyObservers(tile);
+            }
+        }
+        return tile.getTile();
+    }
+
+    /**
+     * Retrieves an array of all tiles in the cache which are owned by the image. May be <code>null</code> if there were no tiles in the cache. The
+     * array contains no null entries.
+     */
+    public Raster[] getTiles(RenderedImage owner) {
+        List<OffHeapTile> tiles = ownerIndex.getTiles(CachedTileImpl.hashKey(owner));
+        if (tiles.isEmpty()) {
+            return null;
+        }
+        Vector<Raster> tempData = new Vector<Raster>(tiles.size());
+        for (OffHeapTile tile : tiles) {
+            Raster rasterTile = getTile(tile);
+            if (rasterTile != null) {
+                tempData.add(rasterTile);
+            }
+        }
+        int tmpsize = tempData.size();
+        return tmpsize > 0 ? tempData.toArray(new Raster[tmpsize]) : null;
+    }
+
+    /**
+     * Removes all tiles in the cache which are owned by the image.
+     */
+    public void removeTiles(RenderedImage owner) {
+        for (OffHeapTile tile : ownerIndex.removeTiles(CachedTileImpl.hashKey(owner))) {
+            removeTileByKey(tile.getKey());
+        }
+    }
+
+    /**
+     * Adds all tiles in the Point array which are owned by the image.
+     */
+    public void addTiles(RenderedImage owner, Point[] tileIndices, Raster[] tiles,
+            Object tileCacheMetric) {
+        for (int i = 0; i < tileIndices.length; i++) {
+            add(owner, tileIndices[i].x, tileIndices[i].y, tiles[i], tileCacheMetric);
+        }
+    }
+
+    /**
+     * Retrieves an array of tiles in the cache which are specified by the Point array and owned by the image. The array contains null entries for
+     * the tiles not present.
+     */
+    public Raster[] getTiles(RenderedImage owner, Point[] tileIndices) {
+        Raster[] tilesData = new Raster[tileIndices.length];
+        for (int i = 0; i < tilesData.length; i++) {
+            tilesData[i] = getTile(owner, tileIndices[i].x, tileIndices[i].y);
+        }
+        return tilesData;
+    }
+
+    /** Removes all tiles present in the cache without checking for the image owner */
+    public void flush() {
+        Cache<Object, OffHeapTile> cache = cacheObject;
+        if (diagnosticEnabled) {
+            for (Object key : cache.asMap().keySet()) {
+                OffHeapTile tile = cache.asMap().remove(key);
+                // the tile may have been concurrently removed
+                if (tile == null) {
+                    continue;
+                }
+                synchronized (this) {
+                    tile.setAction(Actions.REMOVAL_FROM_FLUSH);
+                    setChanged();
+                    notifyObservers(tile);
+                }
+            }
+        } else {
+            cache.invalidateAll();
+        }
+    }
+
+    /**
+     * Flushes the cache and then rebuilds it with the current settings. Callers must hold the lock on this object.
+     */
+    private void rebuildCache() {
+        flush();
+        cacheObject = buildCache();
+    }
+
+    /**
+     * Not Supported
+     * 
+     * @throws UnsupportedOperationException
+     */
+    public void memoryControl() {
+        throw new UnsupportedOperationException("Memory Control not supported");
+    }
+
+    /**
+     * Not Supported
+     * 
+     * @throws UnsupportedOperationException
+     */
+    public void setTileCapacity(int tileCapacity) {
+        throw new UnsupportedOperationException("Deprecated Operation");
+    }
+
+    /**
+     * Not Supported
+     * 
+     * @throws UnsupportedOperationException
+     */
+    public int getTileCapacity() {
+        throw new UnsupportedOperationException("Deprecated Operation");
+    }
+
+    /** Sets the cache memory capacity and then flush and rebuild the cache */
+    public synchronized void setMemoryCapacity(long memoryCacheCapacity) {
+        if (memoryCacheCapacity < 0) {
+            throw new IllegalArgumentException("Memory capacity too small");
+        }
+        this.memoryCacheCapacity = memoryCacheCapacity;
+        rebuildCache();
+    }
+
+    /** Retrieve the cache memory capacity */
+    public long getMemoryCapacity() {
+        return memoryCacheCapacity;
+    }
+
+    /** Returns the direct memory currently allocated for the tile data, including the free blocks kept for reuse */
+    public long getAllocatedMemory() {
+        return pool.getAllocatedMemory();
+    }
+
+    /**
+     * Not Supported, the whole capacity is always used
+     * 
+     * @throws UnsupportedOperationException
+     */
+    public void setMemoryThreshold(float mt) {
+        throw new UnsupportedOperationException("Memory threshold not supported");
+    }
+
+    /** Returns 1, the whole capacity is always used */
+    public float getMemoryThreshold() {
+        return 1.0F;
+    }
+
+    /** Sets the cache ConcurrencyLevel and then flush and rebuild the cache */
+    public synchronized void setConcurrencyLevel(int concurrency) {
+        if (concurrency < 1) {
+            throw new IllegalArgumentException("ConcurrencyLevel must be at least 1");
+        }
+        concurrencyLevel = concurrency;
+        rebuildCache();
+    }
+
+    /** Retrieve the cache concurrency level */
+    public int getConcurrencyLevel() {
+        return concurrencyLevel;
+    }
+
+    /**
+     * Not Supported
+     * 
+     * @throws UnsupportedOperationException
+     */
+    public void setTileComparator(Comparator comparator) {
+        throw new UnsupportedOperationException("Comparator not supported");
+    }
+
+    /**
+     * Not Supported
+     * 
+     * @throws UnsupportedOperationException
+     */
+    public Comparator getTileComparator() {
+        throw new UnsupportedOperationException("Comparator not supported");
+    }
+
+    /** Disables diagnosticEnabled for the observers */
+    public synchronized void disableDiagnostics() {
+        diagnosticEnabled = false;
+        rebuildCache();
+    }
+
+    /** Enables diagnosticEnabled for the observers */
+    public synchronized void enableDiagnostics() {
+        diagnosticEnabled = true;
+        rebuildCache();
+    }
+
+    /** Retrieves the hit count from the cache statistics */
+    public long getCacheHitCount() {
+        if (diagnosticEnabled) {
+            return cacheObject.stats().hitCount();
+        }
+        return 0;
+    }
+
+    /** Retrieves the current memory size of the cache, including the off-heap data */
+    public long getCacheMemoryUsed() {
+        long memoryUsed = 0;
+        for (OffHeapTile tile : cacheObject.asMap().values()) {
+            memoryUsed += tile.getTileSize();
+        }
+        return memoryUsed;
+    }
+
+    /** Retrieves the miss count from the cache statistics */
+    public long getCacheMissCount() {
+        if (diagnosticEnabled) {
+            return cacheObject.stats().missCount();
+        }
+        return 0;
+    }
+
+    /** Retrieves the number of tiles in the cache */
+    public long getCacheTileCount() {
+        return cacheObject.size();
+    }
+
+    /**
+     * Not Supported
+     * 
+     * @throws UnsupportedOperationException
+     */
+    public void resetCounts() {
+        throw new UnsupportedOperationException("Operation not supported");
+    }
+}
@@ -0,0 +1,124 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.concurrent;
+
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Index of the cached tiles grouped by owner image. Each image key is mapped to a {@link ConcurrentLongMap} containing the tiles of that image
+ * keyed by their tile index, so that a tile lookup does not need to allocate any key object and the operations on a whole image only visit the
+ * tiles of that image. The tile caches keep this index consistent by removing the tiles when they are discarded.
+ */
+final class OwnerTileIndex<T extends OwnerTileIndex.IndexedTile> {
+
+    /**
+     * A tile which can be stored inside the index
+     */
+    interface IndexedTile {
+
+        /** Returns the key of the image owning the tile */
+        Object getImageKey();
+
+        /** Returns the tile index inside the owner image */
+        long getTileIndex();
+    }
+
+    /** Tiles of each image */
+    private final ConcurrentHashMap<Object, ConcurrentLongMap<T>> owners = new ConcurrentHashMap<Object, ConcurrentLongMap<T>>();
+
+    /**
+     * Returns the tile of the selected image at the selected tile index, or <code>null</code> if not present.
+     */
+    public T get(Object imageKey, long tileIndex) {
+        ConcurrentLongMap<T> tiles = owners.get(imageKey);
+        if (tiles == null) {
+            return null;
+        }
+        return tiles.get(tileIndex);
+    }
+
+    /**
+     * Adds the tile to the set of tiles of its image, creating the set if needed.
+     */
+    public void add(T cti) {
+        Object imageKey = cti.getImageKey();
+        while (true) {
+            ConcurrentLongMap<T> tiles = owners.get(imageKey);
+            if (tiles == null) {
+                ConcurrentLongMap<T> newTiles = new ConcurrentLongMap<T>();
+                tiles = owners.putIfAbsent(imageKey, newTiles);
+                if (tiles == null) {
+                    tiles = newTiles;
+                }
+            }
+            tiles.put(cti.getTileIndex(), cti);
+            // If the set has been concurrently dropped because it was empty, try again
+            if (owners.get(imageKey) == tiles) {
+                return;
+            }
+        }
+    }
+
+    /**
+     * Removes the tile from the set of its image, only if the tile is still the one indexed at its position. Empty sets are dropped.
+     */
+    public void remove(T cti) {
+        Object imageKey = cti.getImageKey();
+        ConcurrentLongMap<T> tiles = owners.get(imageKey);
+        if (tiles == null) {
+            return;
+        }
+        if (tiles.remove(cti.getTileIndex(), cti) && tiles.isEmpty()
+                && owners.remove(imageKey, tiles)) {
+            // A concurrent addition may have happened before the removal of the set:
+            // its tiles are published again
+            for (T added : tiles.values()) {
+                add(added);
+            }
+        }
+    }
+
+    /**
+     * Returns the tiles of the selected image
+     */
+    public List<T> getTiles(Object imageKey) {
+        ConcurrentLongMap<T> tiles = owners.get(imageKey);
+        if (tiles == null) {
+            return Collections.emptyList();
+        }
+        return tiles.values();
+    }
+
+    /**
+     * Detaches all the tiles of the selected image from the index and returns them
+     */
+    public List<T> removeTiles(Object imageKey) {
+        ConcurrentLongMap<T> tiles = owners.remove(imageKey);
+        if (tiles == null) {
+            return Collections.emptyList();
+        }
+        return tiles.values();
+    }
+
+    /** Removes all the tiles from the index */
+    public void clear() {
+        owners.clear();
+    }
+}
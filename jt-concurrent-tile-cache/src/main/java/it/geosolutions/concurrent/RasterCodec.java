@@ -0,0 +1,287 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.concurrent;
+
+import java.awt.Point;
+import java.awt.image.DataBuffer;
+import java.awt.image.DataBufferByte;
+import java.awt.image.DataBufferDouble;
+import java.awt.image.DataBufferFloat;
+import java.awt.image.DataBufferInt;
+import java.awt.image.DataBufferShort;
+import java.awt.image.DataBufferUShort;
+import java.awt.image.Raster;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+
+/**
+ * Utility class used for storing the data of a {@link Raster} outside the Java heap. The banks of the {@link DataBuffer} are written in their raw
+ * form, using the native byte order and the element size of the data type, while the {@link SampleModel} and the raster position are kept inside a
+ * small {@link Layout} object.
+ */
+final class RasterCodec {
+
+    private RasterCodec() {
+    }
+
+    /**
+     * Description of the raw data of an encoded {@link Raster}, used for rebuilding it.
+     */
+    static final class Layout {
+
+        /** Sample model of the raster */
+        final SampleModel sampleModel;
+
+        /** Raster origin */
+        final int minX;
+
+        final int minY;
+
+        /** DataBuffer size, offsets and length of each bank */
+        final int size;
+
+        final int[] offsets;
+
+        final int[] bankLengths;
+
+        Layout(SampleModel sampleModel, int minX, int minY, int size, int[] offsets,
+                int[] bankLengths) {
+            this.sampleModel = sampleModel;
+            this.minX = minX;
+            this.minY = minY;
+            this.size = size;
+            this.offsets = offsets;
+            this.bankLengths = bankLengths;
+        }
+
+        /** Returns the data type of the raster */
+        int getDataType() {
+            return sampleModel.getDataType();
+        }
+
+        /** Returns the number of bytes needed for storing the raster data */
+        int getEncodedSize() {
+            int elements = 0;
+            for (int i = 0; i < bankLengths.length; i++) {
+                elements += bankLengths[i];
+            }
+            return elements * (DataBuffer.getDataTypeSize(getDataType()) / 8);
+        }
+    }
+
+    /**
+     * Returns a raster whose {@link SampleModel} covers exactly the raster bounds, copying the input raster if it is a child of a larger one.
+     */
+    static Raster normalize(Raster raster) {
+        SampleModel sm = raster.getSampleModel();
+        if (raster.getSampleModelTranslateX() == raster.getMinX()
+                && raster.getSampleModelTranslateY() == raster.getMinY()
+                && sm.getWidth() == raster.getWidth() && sm.getHeight() == raster.getHeight()) {
+            return raster;
+        }
+        WritableRaster copy = raster.createCompatibleWritableRaster(raster.getMinX(),
+                raster.getMinY(), raster.getWidth(), raster.getHeight());
+        copy.setRect(raster);
+        return copy;
+    }
+
+    /**
+     * Returns the layout of the input raster, which must have been normalized.
+     */
+    static Layout getLayout(Raster raster) {
+        DataBuffer db = raster.getDataBuffer();
+        int numBanks = db.getNumBanks();
+        int[] bankLengths = new int[numBanks];
+        int[] offsets = new int[numBanks];
+        for (int b = 0; b < numBanks; b++) {
+            bankLengths[b] = getBankLength(db, b);
+            if (bankLengths[b] < 0) {
+                // Unknown DataBuffer implementation, only the accessible elements are stored
+                bankLengths[b] = db.getSize();
+            } else {
+                offsets[b] = db.getOffsets()[b];
+            }
+        }
+        return new Layout(raster.getSampleModel(), raster.getMinX(), raster.getMinY(),
+                db.getSize(), offsets, bankLengths);
+    }
+
+    /**
+     * Writes the raster data inside the buffer, starting from its current position. At the end the buffer position is set after the written data.
+     */
+    static void encode(Raster raster, Layout layout, ByteBuffer dst) {
+        DataBuffer db = raster.getDataBuffer();
+        dst.order(ByteOrder.nativeOrder());
+        int numBanks = layout.bankLengths.length;
+        for (int b = 0; b < numBanks; b++) {
+            int length = layout.bankLengths[b];
+            int position = dst.position();
+            switch (layout.getDataType()) {
+            case DataBuffer.TYPE_BYTE:
+                if (db instanceof DataBufferByte) {
+                    dst.put(((DataBufferByte) db).getData(b), 0, length);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        dst.put((byte) db.getElem(b, i));
+                    }
+                }
+                break;
+            case DataBuffer.TYPE_USHORT:
+                if (db instanceof DataBufferUShort) {
+                    dst.asShortBuffer().put(((DataBufferUShort) db).getData(b), 0, length);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        dst.putShort(position + i * 2, (short) db.getElem(b, i));
+                    }
+                }
+                break;
+            case DataBuffer.TYPE_SHORT:
+                if (db instanceof DataBufferShort) {
+                    dst.asShortBuffer().put(((DataBufferShort) db).getData(b), 0, length);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        dst.putShort(position + i * 2, (short) db.getElem(b, i));
+                    }
+                }
+                break;
+            case DataBuffer.TYPE_INT:
+                if (db instanceof DataBufferInt) {
+                    dst.asIntBuffer().put(((DataBufferInt) db).getData(b), 0, length);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        dst.putInt(position + i * 4, db.getElem(b, i));
+                    }
+                }
+                break;
+            case DataBuffer.TYPE_FLOAT:
+                if (db instanceof DataBufferFloat) {
+                    dst.asFloatBuffer().put(((DataBufferFloat) db).getData(b), 0, length);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        dst.putFloat(position + i * 4, db.getElemFloat(b, i));
+                    }
+                }
+                break;
+            case DataBuffer.TYPE_DOUBLE:
+                if (db instanceof DataBufferDouble) {
+                    dst.asDoubleBuffer().put(((DataBufferDouble) db).getData(b), 0, length);
+                } else {
+                    for (int i = 0; i < length; i++) {
+                        dst.putDouble(position + i * 8, db.getElemDouble(b, i));
+                    }
+                }
+                break;
+            default:
+                throw new IllegalArgumentException("Wrong data type: " + layout.getDataType());
+            }
+            // View buffers do not move the position of the main buffer
+            dst.position(position + length * (DataBuffer.getDataTypeSize(layout.getDataType()) / 8));
+        }
+    }
+
+    /**
+     * Rebuilds the raster from the data contained inside the buffer, starting from its current position. The data are copied with a single bulk
+     * operation for each bank directly inside the arrays of the new {@link DataBuffer}.
+     */
+    static WritableRaster decode(Layout layout, ByteBuffer src) {
+        src.order(ByteOrder.nativeOrder());
+        int numBanks = layout.bankLengths.length;
+        int[] offsets = layout.offsets;
+        int size = layout.size;
+        DataBuffer db;
+        switch (layout.getDataType()) {
+        case DataBuffer.TYPE_BYTE: {
+            byte[][] data = new byte[numBanks][];
+            for (int b = 0; b < numBanks; b++) {
+                data[b] = new byte[layout.bankLengths[b]];
+                src.get(data[b]);
+            }
+            db = new DataBufferByte(data, size, offsets);
+            break;
+        }
+        case DataBuffer.TYPE_USHORT:
+        case DataBuffer.TYPE_SHORT: {
+            short[][] data = new short[numBanks][];
+            for (int b = 0; b < numBanks; b++) {
+                data[b] = new short[layout.bankLengths[b]];
+                src.asShortBuffer().get(data[b]);
+                src.position(src.position() + data[b].length * 2);
+            }
+            db = layout.getDataType() == DataBuffer.TYPE_USHORT ? new DataBufferUShort(data,
+                    size, offsets) : new DataBufferShort(data, size, offsets);
+            break;
+        }
+        case DataBuffer.TYPE_INT: {
+            int[][] data = new int[numBanks][];
+            for (int b = 0; b < numBanks; b++) {
+                data[b] = new int[layout.bankLengths[b]];
+                src.asIntBuffer().get(data[b]);
+                src.position(src.position() + data[b].length * 4);
+            }
+            db = new DataBufferInt(data, size, offsets);
+            break;
+        }
+        case DataBuffer.TYPE_FLOAT: {
+            float[][] data = new float[numBanks][];
+            for (int b = 0; b < numBanks; b++) {
+                data[b] = new float[layout.bankLengths[b]];
+                src.asFloatBuffer().get(data[b]);
+                src.position(src.position() + data[b].length * 4);
+            }
+            db = new DataBufferFloat(data, size, offsets);
+            break;
+        }
+        case DataBuffer.TYPE_DOUBLE: {
+            double[][] data = new double[numBanks][];
+            for (int b = 0; b < numBanks; b++) {
+                data[b] = new double[layout.bankLengths[b]];
+                src.asDoubleBuffer().get(data[b]);
+                src.position(src.position() + data[b].length * 8);
+            }
+            db = new DataBufferDouble(data, size, offsets);
+            break;
+        }
+        default:
+            throw new IllegalArgumentException("Wrong data type: " + layout.getDataType());
+        }
+        return Raster.createWritableRaster(layout.sampleModel, db, new Point(layout.minX,
+                layout.minY));
+    }
+
+    /**
+     * Returns the number of elements of the selected bank, or -1 if the DataBuffer does not expose its arrays
+     */
+    private static int getBankLength(DataBuffer db, int bank) {
+        if (db instanceof DataBufferByte) {
+            return ((DataBufferByte) db).getData(bank).length;
+        } else if (db instanceof DataBufferUShort) {
+            return ((DataBufferUShort) db).getData(bank).length;
+        } else if (db instanceof DataBufferShort) {
+            return ((DataBufferShort) db).getData(bank).length;
+        } else if (db instanceof DataBufferInt) {
+            return ((DataBufferInt) db).getData(bank).length;
+        } else if (db instanceof DataBufferFloat) {
+            return ((DataBufferFloat) db).getData(bank).length;
+        } else if (db instanceof DataBufferDouble) {
+            return ((DataBufferDouble) db).getData(bank).length;
+        }
+        return -1;
+    }
+}
@@ -0,0 +1,76 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.concurrent;
+
+/**
+ * Key of a cached tile, made of the key of the owner image and of the tile index inside the image. Unlike a key packing a hash of the image, two
+ * tiles belonging to different images never have the same key.
+ */
+public final class TileKey {
+
+    /** Key of the image owning the tile */
+    private final Object imageKey;
+
+    /** Tile X and Y indices packed together */
+    private final long tileIndex;
+
+    /** Precomputed hash code */
+    private final int hash;
+
+    public TileKey(Object imageKey, long tileIndex) {
+        if (imageKey == null) {
+            throw new IllegalArgumentException("Image key cannot be null");
+        }
+        this.imageKey = imageKey;
+        this.tileIndex = tileIndex;
+        this.hash = 31 * imageKey.hashCode() + (int) (tileIndex ^ (tileIndex >>> 32));
+    }
+
+    /** Returns the key of the image owning the tile */
+    public Object getImageKey() {
+        return imageKey;
+    }
+
+    /** Returns the tile index inside the image */
+    public long getTileIndex() {
+        return tileIndex;
+    }
+
+    @Override
+    public int hashCode() {
+        return hash;
+    }
+
+    @Override
+    public boolean equals(Object obj) {
+        if (this == obj) {
+            return true;
+        }
+        if (!(obj instanceof TileKey)) {
+            return false;
+        }
+        TileKey other = (TileKey) obj;
+        return tileIndex == other.tileIndex && imageKey.equals(other.imageKey);
+    }
+
+    @Override
+    public String toString() {
+        return "TileKey[image=" + imageKey + ", tileX=" + CachedTileImpl.tileX(tileIndex)
+                + ", tileY=" + CachedTileImpl.tileY(tileIndex) + "]";
+    }
+}
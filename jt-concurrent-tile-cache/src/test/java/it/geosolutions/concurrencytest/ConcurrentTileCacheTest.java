@@ -0,0 +1,266 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.concurrencytest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+import it.geosolutions.concurrent.CacheOwnerGroup;
+import it.geosolutions.concurrent.CachedTileImpl;
+import it.geosolutions.concurrent.ConcurrentTileCache;
+import it.geosolutions.concurrent.ConcurrentTileCacheMultiMap;
+import it.geosolutions.concurrent.GreedyDualSizeComparator;
+
+import java.awt.image.BufferedImage;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+import java.util.Observable;
+import java.util.Observer;
+
+import javax.media.jai.CachedTile;
+import javax.media.jai.RasterFactory;
+import javax.media.jai.TileCache;
+import javax.media.jai.TiledImage;
+
+import org.junit.Test;
+
+/**
+ * This test class is used for checking if the {@link ConcurrentTileCache} keeps track of the tiles of each image.
+ */
+public class ConcurrentTileCacheTest {
+
+    /** Tile size of the test images */
+    private static final int TILE_SIZE = 100;
+
+    /** Number of tiles along each dimension of the test images */
+    private static final int NUM_TILES = 10;
+
+    private static TiledImage createImage() {
+        return new TiledImage(0, 0, TILE_SIZE * NUM_TILES, TILE_SIZE * NUM_TILES, 0, 0,
+                RasterFactory.createPixelInterleavedSampleModel(DataBuffer.TYPE_BYTE, TILE_SIZE,
+                        TILE_SIZE, 1), null);
+    }
+
+    @Test
+    public void testGetAndRemoveTiles() {
+        ConcurrentTileCache cache = new ConcurrentTileCache(64 * 1024 * 1024, false, 1f, 4);
+        TiledImage image = createImage();
+        TiledImage other = createImage();
+        // Adding a few tiles of both images
+        for (int i = 0; i < 5; i++) {
+            cache.add(image, i, i, image.getTile(i, i));
+            cache.add(other, i, 0, other.getTile(i, 0));
+        }
+        // Only the tiles of the selected image must be returned
+        Raster[] tiles = cache.getTiles(image);
+        assertEquals(5, tiles.length);
+
+        // Removal of the image tiles must not touch the other image
+        cache.removeTiles(image);
+        assertNull(cache.getTiles(image));
+        assertEquals(5, cache.getTiles(other).length);
+        assertEquals(5, cache.getCacheTileCount());
+
+        // Flushing the cache empties the index too
+        cache.flush();
+        assertNull(cache.getTiles(other));
+        assertEquals(0, cache.getCacheTileCount());
+    }
+
+    @Test
+    public void testEvictionUpdatesIndex() {
+        // Room for a few tiles only
+        ConcurrentTileCache cache = new ConcurrentTileCache(4 * (TILE_SIZE * TILE_SIZE + 1024),
+                false, 1f, 1);
+        TiledImage image = createImage();
+        for (int y = 0; y < NUM_TILES; y++) {
+            for (int x = 0; x < NUM_TILES; x++) {
+                cache.add(image, x, y, image.getTile(x, y));
+            }
+        }
+        long cached = cache.getCacheTileCount();
+        assertTrue(cached > 0 && cached < NUM_TILES * NUM_TILES);
+        // The evicted tiles must not be reported anymore
+        assertEquals(cached, cache.getTiles(image).length);
+        // The last added tile is still present
+        assertTrue(cache.getTile(image, NUM_TILES - 1, NUM_TILES - 1) != null);
+
+        cache.removeTiles(image);
+        assertEquals(0, cache.getCacheTileCount());
+    }
+
+    @Test
+    public void testCostAwareEviction() {
+        // Room for a few tiles only
+        ConcurrentTileCache cache = new ConcurrentTileCache(4 * (TILE_SIZE * TILE_SIZE + 1024),
+                false, 1f, 1);
+        cache.setTileComparator(GreedyDualSizeComparator.INSTANCE);
+        assertSame(GreedyDualSizeComparator.INSTANCE, cache.getTileComparator());
+        TiledImage image = createImage();
+        // An expensive tile followed by many cheap ones
+        cache.add(image, 0, 0, image.getTile(0, 0), Long.valueOf(1000000000L));
+        for (int y = 1; y < NUM_TILES; y++) {
+            for (int x = 0; x < NUM_TILES; x++) {
+                cache.add(image, x, y, image.getTile(x, y), Long.valueOf(1));
+            }
+        }
+        assertTrue(cache.getCacheMemoryUsed() <= cache.getMemoryCapacity());
+        // The expensive tile has survived the cheap ones
+        assertNotNull(cache.getTile(image, 0, 0));
+        assertEquals(1, cache.getCostClassHitCount(ConcurrentTileCache.COST_CLASSES - 1));
+        assertEquals(1d, cache.getCostClassHitRatio(ConcurrentTileCache.COST_CLASSES - 1), 0d);
+        assertEquals(cache.getCacheTileCount(), cache.getTiles(image).length);
+
+        cache.removeTiles(image);
+        assertEquals(0, cache.getCacheTileCount());
+        assertEquals(0, cache.getCacheMemoryUsed());
+    }
+
+    @Test
+    public void testComparatorEviction() {
+        // Room for a few tiles only
+        ConcurrentTileCache cache = new ConcurrentTileCache(4 * (TILE_SIZE * TILE_SIZE + 1024),
+                false, 1f, 1);
+        // The first tile is always evicted last
+        cache.setTileComparator(new Comparator<CachedTile>() {
+            public int compare(CachedTile t1, CachedTile t2) {
+                boolean first1 = ((CachedTileImpl) t1).getTileIndex() == 0;
+                boolean first2 = ((CachedTileImpl) t2).getTileIndex() == 0;
+                return first1 == first2 ? 0 : (first1 ? 1 : -1);
+            }
+        });
+        TiledImage image = createImage();
+        for (int y = 0; y < NUM_TILES; y++) {
+            for (int x = 0; x < NUM_TILES; x++) {
+                cache.add(image, x, y, image.getTile(x, y));
+            }
+        }
+        assertTrue(cache.getCacheMemoryUsed() <= cache.getMemoryCapacity());
+        assertNotNull(cache.getTile(image, 0, 0));
+        assertNotNull(cache.getTile(image, NUM_TILES - 1, NUM_TILES - 1));
+    }
+
+    @Test
+    public void testOwnerGroupQuotas() {
+        long tileMemory = TILE_SIZE * TILE_SIZE + 1024;
+        // Room for a few tiles only
+        ConcurrentTileCacheMultiMap cache = new ConcurrentTileCacheMultiMap(8 * tileMemory, true,
+                0.75f, 1);
+        cache.setQuotasEnabled(true);
+        final List<CacheOwnerGroup> notified = new ArrayList<CacheOwnerGroup>();
+        cache.addObserver(new Observer() {
+            public void update(Observable o, Object arg) {
+                if (arg instanceof CacheOwnerGroup) {
+                    notified.add((CacheOwnerGroup) arg);
+                }
+            }
+        });
+        TiledImage image = createImage();
+        TiledImage runaway = createImage();
+        CacheOwnerGroup limited = new CacheOwnerGroup("runaway", 2 * tileMemory,
+                CacheOwnerGroup.DEFAULT_PRIORITY);
+        cache.setOwnerGroup(runaway, limited);
+        assertSame(limited, cache.getOwnerGroup(runaway));
+        assertSame(cache.getDefaultGroup(), cache.getOwnerGroup(image));
+
+        for (int x = 0; x < 4; x++) {
+            cache.add(image, x, 0, image.getTile(x, 0));
+        }
+        for (int y = 0; y < 2; y++) {
+            for (int x = 0; x < NUM_TILES; x++) {
+                cache.add(runaway, x, y, runaway.getTile(x, y));
+            }
+        }
+        // The tiles over quota have been evicted first
+        for (int x = 0; x < 4; x++) {
+            assertNotNull(cache.getTile(image, x, 0));
+        }
+        assertTrue(cache.getCacheMemoryUsed() <= cache.getMemoryCapacity());
+        assertEquals(cache.getCacheMemoryUsed(), cache.getDefaultGroup().getMemoryUsed()
+                + limited.getMemoryUsed());
+        assertTrue(notified.contains(limited));
+        assertTrue(cache.getOwnerGroups().contains(limited));
+
+        cache.removeTiles(runaway);
+        assertEquals(0, limited.getMemoryUsed());
+        assertEquals(0, limited.getTileCount());
+        cache.flush();
+        assertEquals(0, cache.getCacheMemoryUsed());
+    }
+
+    @Test
+    public void testQuotaEvictionOrder() {
+        long tileMemory = TILE_SIZE * TILE_SIZE + 1024;
+        ConcurrentTileCacheMultiMap cache = new ConcurrentTileCacheMultiMap(8 * tileMemory, false,
+                0.75f, 1);
+        cache.setQuotasEnabled(true);
+        TiledImage image = createImage();
+        for (int x = 0; x < 8; x++) {
+            cache.add(image, x, 0, image.getTile(x, 0));
+        }
+        // The accessed tile gets a second chance, the oldest ones are evicted
+        assertNotNull(cache.getTile(image, 0, 0));
+        cache.add(image, 8, 0, image.getTile(8, 0));
+        assertTrue(cache.getCacheMemoryUsed() <= 0.75f * cache.getMemoryCapacity());
+        assertNotNull(cache.getTile(image, 0, 0));
+        assertNull(cache.getTile(image, 1, 0));
+        assertNotNull(cache.getTile(image, 8, 0));
+    }
+
+    @Test
+    public void testTilesOfDifferentImagesDoNotCollide() {
+        checkNoCollision(new ConcurrentTileCache(64 * 1024 * 1024, false, 1f, 4));
+        checkNoCollision(new ConcurrentTileCacheMultiMap(64 * 1024 * 1024, false, 1f, 4));
+    }
+
+    @Test
+    public void testForeignImageKeys() {
+        // Images without an image ID get a key of their own, kept for their whole life
+        BufferedImage image = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        BufferedImage other = new BufferedImage(TILE_SIZE, TILE_SIZE, BufferedImage.TYPE_BYTE_GRAY);
+        Object key = CachedTileImpl.hashKey(image);
+        assertEquals(key, CachedTileImpl.hashKey(image));
+        assertFalse(key.equals(CachedTileImpl.hashKey(other)));
+
+        ConcurrentTileCacheMultiMap cache = new ConcurrentTileCacheMultiMap(64 * 1024 * 1024,
+                false, 1f, 4);
+        cache.add(image, 0, 0, image.getTile(0, 0));
+        assertNotNull(cache.getTile(image, 0, 0));
+        assertNull(cache.getTile(other, 0, 0));
+    }
+
+    private void checkNoCollision(TileCache cache) {
+        TiledImage image = createImage();
+        TiledImage other = createImage();
+        Raster tile = image.getTile(3, 2);
+        cache.add(image, 3, 2, tile);
+        // Same tile index on another image must not be found
+        assertNull(cache.getTile(other, 3, 2));
+        assertSame(tile, cache.getTile(image, 3, 2));
+        // Negative and large tile indices are kept apart
+        cache.add(image, -1, 2, tile);
+        assertNull(cache.getTile(image, 2, -1));
+        assertSame(tile, cache.getTile(image, -1, 2));
+    }
+}
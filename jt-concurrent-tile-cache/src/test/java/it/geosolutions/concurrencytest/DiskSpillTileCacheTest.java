@@ -0,0 +1,217 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.concurrencytest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import it.geosolutions.concurrent.ConcurrentTileCacheMultiMap;
+import it.geosolutions.concurrent.DiskSpillTileCache;
+
+import java.awt.RenderingHints;
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+import java.io.IOException;
+
+import javax.media.jai.RasterFactory;
+import javax.media.jai.TiledImage;
+
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+
+/**
+ * This test class is used for checking if the {@link DiskSpillTileCache} preserves the tile data, reuses the file slots and works as second level
+ * of the {@link ConcurrentTileCacheMultiMap}.
+ */
+public class DiskSpillTileCacheTest {
+
+    private static final int TILE_SIZE = 64;
+
+    private static final int NUM_TILES = 4;
+
+    private DiskSpillTileCache cache;
+
+    @Before
+    public void setup() throws IOException {
+        RenderingHints hints = new RenderingHints(DiskSpillTileCache.KEY_SPILL_CAPACITY,
+                Long.valueOf(8L * 1024 * 1024));
+        hints.put(DiskSpillTileCache.KEY_SPILL_REGION_SIZE, Integer.valueOf(1024 * 1024));
+        cache = new DiskSpillTileCache(hints);
+    }
+
+    @After
+    public void dispose() {
+        cache.dispose();
+    }
+
+    private static TiledImage createImage(int dataType, int numBands) {
+        TiledImage image = new TiledImage(0, 0, TILE_SIZE * NUM_TILES, TILE_SIZE * NUM_TILES, 0,
+                0, RasterFactory.createPixelInterleavedSampleModel(dataType, TILE_SIZE,
+                        TILE_SIZE, numBands), null);
+        for (int y = 0; y < NUM_TILES; y++) {
+            for (int x = 0; x < NUM_TILES; x++) {
+                WritableRaster tile = image.getWritableTile(x, y);
+                for (int j = tile.getMinY(); j < tile.getMinY() + TILE_SIZE; j++) {
+                    for (int i = tile.getMinX(); i < tile.getMinX() + TILE_SIZE; i++) {
+                        for (int b = 0; b < numBands; b++) {
+                            tile.setSample(i, j, b, (i * 3 + j + b) % 200);
+                        }
+                    }
+                }
+                image.releaseWritableTile(x, y);
+            }
+        }
+        return image;
+    }
+
+    private static void assertSameData(Raster expected, Raster actual) {
+        assertEquals(expected.getMinX(), actual.getMinX());
+        assertEquals(expected.getMinY(), actual.getMinY());
+        assertEquals(expected.getTransferType(), actual.getTransferType());
+        double[] e = expected.getPixels(expected.getMinX(), expected.getMinY(),
+                expected.getWidth(), expected.getHeight(), (double[]) null);
+        double[] a = actual.getPixels(actual.getMinX(), actual.getMinY(), actual.getWidth(),
+                actual.getHeight(), (double[]) null);
+        assertEquals(e.length, a.length);
+        for (int i = 0; i < e.length; i++) {
+            assertEquals(e[i], a[i], 0d);
+        }
+    }
+
+    @Test
+    public void testAllDataTypes() {
+        int[] dataTypes = new int[] { DataBuffer.TYPE_BYTE, DataBuffer.TYPE_USHORT,
+                DataBuffer.TYPE_SHORT, DataBuffer.TYPE_INT, DataBuffer.TYPE_FLOAT,
+                DataBuffer.TYPE_DOUBLE };
+        for (int dataType : dataTypes) {
+            TiledImage image = createImage(dataType, 2);
+            for (int x = 0; x < NUM_TILES; x++) {
+                cache.add(image, x, 1, image.getTile(x, 1));
+            }
+            for (int x = 0; x < NUM_TILES; x++) {
+                Raster cached = cache.getTile(image, x, 1);
+                assertNotNull(cached);
+                assertSameData(image.getTile(x, 1), cached);
+            }
+            assertEquals(NUM_TILES, cache.getTiles(image).length);
+            cache.removeTiles(image);
+            assertNull(cache.getTile(image, 0, 1));
+        }
+        assertEquals(0, cache.getCacheTileCount());
+    }
+
+    @Test
+    public void testSlotReuse() {
+        TiledImage image = createImage(DataBuffer.TYPE_FLOAT, 1);
+        Raster tile = image.getTile(0, 0);
+        for (int i = 0; i < 100; i++) {
+            cache.add(image, 0, 0, tile);
+            cache.remove(image, 0, 0);
+        }
+        // A single region is enough since the slots are given back
+        assertEquals(1024 * 1024, cache.getMappedSize());
+    }
+
+    @Test
+    public void testSlotReuseAcrossSizes() throws IOException {
+        // Scratch file made of a single region
+        DiskSpillTileCache small = new DiskSpillTileCache(null, 1024 * 1024, 1024 * 1024, 1);
+        try {
+            // Small tiles filling the whole region
+            TiledImage byteImage = createImage(DataBuffer.TYPE_BYTE, 1);
+            int numSmall = 1024 * 1024 / (TILE_SIZE * TILE_SIZE);
+            for (int i = 0; i < numSmall; i++) {
+                small.add(byteImage, i % NUM_TILES, i / NUM_TILES, byteImage.getTile(0, 0));
+            }
+            assertEquals(numSmall, small.getCacheTileCount());
+            small.removeTiles(byteImage);
+
+            // The freed slots are merged and reused by bigger tiles
+            TiledImage doubleImage = createImage(DataBuffer.TYPE_DOUBLE, 2);
+            small.add(doubleImage, 0, 0, doubleImage.getTile(0, 0));
+            assertNotNull(small.getTile(doubleImage, 0, 0));
+
+            // If the file is full, other tiles are evicted for making room
+            for (int i = 0; i < numSmall; i++) {
+                small.add(byteImage, i % NUM_TILES, i / NUM_TILES, byteImage.getTile(0, 0));
+            }
+            small.add(doubleImage, 1, 0, doubleImage.getTile(1, 0));
+            assertNotNull(small.getTile(doubleImage, 1, 0));
+            assertEquals(1024 * 1024, small.getMappedSize());
+        } finally {
+            small.dispose();
+        }
+    }
+
+    @Test
+    public void testDispose() throws IOException {
+        DiskSpillTileCache disposed = new DiskSpillTileCache(null, 1024 * 1024, 1024 * 1024, 1);
+        TiledImage image = createImage(DataBuffer.TYPE_BYTE, 1);
+        disposed.add(image, 0, 0, image.getTile(0, 0));
+        assertNotNull(disposed.getTile(image, 0, 0));
+        disposed.dispose();
+        // The lookups are cache misses and the tiles are ignored
+        assertNull(disposed.getTile(image, 0, 0));
+        disposed.add(image, 1, 0, image.getTile(1, 0));
+        assertNull(disposed.getTile(image, 1, 0));
+        assertNull(disposed.getTiles(image));
+        assertEquals(0, disposed.getMappedSize());
+        disposed.dispose();
+    }
+
+    @Test
+    public void testMemoryCapacity() {
+        TiledImage image = createImage(DataBuffer.TYPE_BYTE, 1);
+        cache.add(image, 0, 0, image.getTile(0, 0));
+        cache.setMemoryThreshold(0.5f);
+        assertEquals(0.5f, cache.getMemoryThreshold(), 0f);
+        // The cache is flushed when rebuilt
+        assertEquals(0, cache.getCacheTileCount());
+        cache.setMemoryCapacity(2L * 1024 * 1024);
+        assertEquals(2L * 1024 * 1024, cache.getMemoryCapacity());
+        cache.add(image, 0, 0, image.getTile(0, 0));
+        assertNotNull(cache.getTile(image, 0, 0));
+    }
+
+    @Test
+    public void testSpillFromMultiMap() {
+        TiledImage image = createImage(DataBuffer.TYPE_BYTE, 1);
+        // Room for two tiles on the heap
+        ConcurrentTileCacheMultiMap heapCache = new ConcurrentTileCacheMultiMap(
+                2 * (TILE_SIZE * TILE_SIZE + 1024), false, 1f, 1);
+        heapCache.setSecondLevelCache(cache);
+        for (int y = 0; y < NUM_TILES; y++) {
+            for (int x = 0; x < NUM_TILES; x++) {
+                heapCache.add(image, x, y, image.getTile(x, y));
+            }
+        }
+        assertTrue(cache.getCacheTileCount() > 0);
+        for (int y = 0; y < NUM_TILES; y++) {
+            for (int x = 0; x < NUM_TILES; x++) {
+                Raster tile = heapCache.getTile(image, x, y);
+                assertNotNull(tile);
+                assertSameData(image.getTile(x, y), tile);
+            }
+        }
+        heapCache.removeTiles(image);
+        assertEquals(0, cache.getCacheTileCount());
+    }
+}
@@ -0,0 +1,166 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.concurrencytest;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+import it.geosolutions.concurrent.ConcurrentTileCache;
+import it.geosolutions.concurrent.OffHeapTileCache;
+
+import java.awt.image.DataBuffer;
+import java.awt.image.Raster;
+import java.awt.image.WritableRaster;
+
+import javax.media.jai.RasterFactory;
+import javax.media.jai.TiledImage;
+
+import org.junit.Test;
+
+/**
+ * This test class is used for checking if the {@link OffHeapTileCache} preserves the tile data and works as second level of the
+ * {@link ConcurrentTileCache}.
+ */
+public class OffHeapTileCacheTest {
+
+    private static final int TILE_SIZE = 64;
+
+    private static final int NUM_TILES = 4;
+
+    private static TiledImage createImage(int dataType, int numBands) {
+        TiledImage image = new TiledImage(0, 0, TILE_SIZE * NUM_TILES, TILE_SIZE * NUM_TILES, 0,
+                0, RasterFactory.createPixelInterleavedSampleModel(dataType, TILE_SIZE,
+                        TILE_SIZE, numBands), null);
+        for (int y = 0; y < NUM_TILES; y++) {
+            for (int x = 0; x < NUM_TILES; x++) {
+                WritableRaster tile = image.getWritableTile(x, y);
+                for (int j = tile.getMinY(); j < tile.getMinY() + TILE_SIZE; j++) {
+                    for (int i = tile.getMinX(); i < tile.getMinX() + TILE_SIZE; i++) {
+                        for (int b = 0; b < numBands; b++) {
+                            tile.setSample(i, j, b, (i + j + b) % 100);
+                        }
+                    }
+                }
+                image.releaseWritableTile(x, y);
+            }
+        }
+        return image;
+    }
+
+    private static void assertSameData(Raster expected, Raster actual) {
+        assertEquals(expected.getMinX(), actual.getMinX());
+        assertEquals(expected.getMinY(), actual.getMinY());
+        assertEquals(expected.getNumBands(), actual.getNumBands());
+        assertEquals(expected.getTransferType(), actual.getTransferType());
+        double[] e = expected.getPixels(expected.getMinX(), expected.getMinY(),
+                expected.getWidth(), expected.getHeight(), (double[]) null);
+        double[] a = actual.getPixels(actual.getMinX(), actual.getMinY(), actual.getWidth(),
+                actual.getHeight(), (double[]) null);
+        assertEquals(e.length, a.length);
+        for (int i = 0; i < e.length; i++) {
+            assertEquals(e[i], a[i], 0d);
+        }
+    }
+
+    @Test
+    public void testAllDataTypes() {
+        OffHeapTileCache cache = new OffHeapTileCache(16 * 1024 * 1024, true, 4);
+        int[] dataTypes = new int[] { DataBuffer.TYPE_BYTE, DataBuffer.TYPE_USHORT,
+                DataBuffer.TYPE_SHORT, DataBuffer.TYPE_INT, DataBuffer.TYPE_FLOAT,
+                DataBuffer.TYPE_DOUBLE };
+        for (int dataType : dataTypes) {
+            TiledImage image = createImage(dataType, 3);
+            Raster tile = image.getTile(1, 2);
+            cache.add(image, 1, 2, tile);
+            Raster cached = cache.getTile(image, 1, 2);
+            assertNotNull(cached);
+            assertSameData(tile, cached);
+            // Child rasters are stored with their own bounds
+            Raster child = tile.createChild(tile.getMinX() + 5, tile.getMinY() + 7, 10, 20,
+                    tile.getMinX() + 5, tile.getMinY() + 7, null);
+            cache.add(image, 2, 2, child);
+            assertSameData(child, cache.getTile(image, 2, 2));
+            cache.removeTiles(image);
+            assertNull(cache.getTile(image, 1, 2));
+        }
+        assertEquals(0, cache.getCacheTileCount());
+        assertTrue(cache.getCacheHitCount() > 0);
+    }
+
+    @Test
+    public void testDemotionAndPromotion() {
+        TiledImage image = createImage(DataBuffer.TYPE_BYTE, 1);
+        // Room for two tiles on the heap
+        ConcurrentTileCache cache = new ConcurrentTileCache(2 * (TILE_SIZE * TILE_SIZE + 1024),
+                false, 1f, 1);
+        OffHeapTileCache secondLevel = new OffHeapTileCache(16 * 1024 * 1024, false, 1);
+        cache.setSecondLevelCache(secondLevel);
+        for (int y = 0; y < NUM_TILES; y++) {
+            for (int x = 0; x < NUM_TILES; x++) {
+                cache.add(image, x, y, image.getTile(x, y));
+            }
+        }
+        // The evicted tiles have been demoted
+        assertTrue(secondLevel.getCacheTileCount() > 0);
+        assertEquals(NUM_TILES * NUM_TILES,
+                cache.getCacheTileCount() + secondLevel.getCacheTileCount());
+        // Every tile can be retrieved
+        for (int y = 0; y < NUM_TILES; y++) {
+            for (int x = 0; x < NUM_TILES; x++) {
+                Raster tile = cache.getTile(image, x, y);
+                assertNotNull(tile);
+                assertSameData(image.getTile(x, y), tile);
+            }
+        }
+        cache.removeTiles(image);
+        assertEquals(0, cache.getCacheTileCount());
+        assertEquals(0, secondLevel.getCacheTileCount());
+    }
+
+    @Test
+    public void testBufferReuse() {
+        OffHeapTileCache cache = new OffHeapTileCache(16 * 1024 * 1024, false, 1);
+        TiledImage small = createImage(DataBuffer.TYPE_BYTE, 1);
+        for (int y = 0; y < NUM_TILES; y++) {
+            for (int x = 0; x < NUM_TILES; x++) {
+                cache.add(small, x, y, small.getTile(x, y));
+            }
+        }
+        long allocated = cache.getAllocatedMemory();
+        assertTrue(allocated > 0);
+        // The memory released by the flushed tiles is reused by tiles of another size
+        cache.flush();
+        TiledImage large = createImage(DataBuffer.TYPE_DOUBLE, 3);
+        for (int y = 0; y < NUM_TILES; y++) {
+            for (int x = 0; x < NUM_TILES; x++) {
+                cache.add(large, x, y, large.getTile(x, y));
+            }
+        }
+        assertEquals(allocated, cache.getAllocatedMemory());
+        for (int y = 0; y < NUM_TILES; y++) {
+            for (int x = 0; x < NUM_TILES; x++) {
+                assertSameData(large.getTile(x, y), cache.getTile(large, x, y));
+            }
+        }
+        // The removed tiles give their memory back
+        cache.removeTiles(large);
+        assertEquals(0, cache.getCacheTileCount());
+        assertTrue(cache.getAllocatedMemory() <= allocated);
+    }
+}
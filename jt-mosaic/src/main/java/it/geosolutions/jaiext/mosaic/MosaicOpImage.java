@@ -856,7 +856,8 @@ public class MosaicOpImage extends OpImage {
 
     /**
      * This method overrides the OpImage compute tile method and calculates the mosaic operation for
-     * the selected tile.
+     * the selected tile. With the OVERLAY mosaic type the sources are fetched in order only until
+     * every pixel of the tile has been set by one of them, so the later sources are not computed.
      */
     public Raster computeTile(int tileX, int tileY) {
         // The destination raster is created as WritableRaster
@@ -876,9 +877,15 @@ public class MosaicOpImage extends OpImage {
         Raster[] roiRasters = new Raster[numSources];
         Range[] noDataRanges = new Range[numSources];
         ColorModel[] alphaChannelColorModels = new ColorModel[numSources];
+        int[] sourceIndices = new int[numSources];
+        // Coverage of the tile, used by the OVERLAY mosaic type for skipping the sources
+        // below the ones already filling the whole tile
+        boolean overlay = mosaicTypeSelected == MosaicDescriptor.MOSAIC_TYPE_OVERLAY;
+        boolean[] filled = null;
+        int unfilled = destRectangle.width * destRectangle.height;
         // The previous array is filled with the source raster data
         int intersectingSourceCount = 0;
-        for (int i = 0; i < numSources; i++) {
+        for (int i = 0; i < numSources && unfilled > 0; i++) {
             PlanarImage source = getSourceImage(i);
             Rectangle srcRect = mapDestRect(destRectangle, i);
             Raster data = null;
@@ -898,6 +905,7 @@ public class MosaicOpImage extends OpImage {
                 sourceTags[intersectingSourceCount] = imageBeans[i].getRasterFormatTag();
                 sourceColorModels[intersectingSourceCount] = imageBeans[i].getColorModel();
                 noDataRanges[intersectingSourceCount] = imageBeans[i].getSourceNoData();
+                sourceIndices[intersectingSourceCount] = i;
 
                 // Get the Alpha data from the padded alpha image if present
                 PlanarImage alpha = imageBeans[i].getAlphaChannel();
@@ -906,11 +914,21 @@ public class MosaicOpImage extends OpImage {
                     alphaChannelColorModels[intersectingSourceCount] = imageBeans[i].getAlphaChannel().getColorModel();
                 }
 
-                // Get the ROI data from the padded ROI image if present
+                // Get the ROI data from the padded ROI image if present, unless the ROI
+                // contains the whole tile
                 RenderedImage roi = imageBeans[i].getRoiImage();
-                if (roiPresent && roi != null) {
+                if (roiPresent && roi != null
+                        && !containsTile(imageBeans[i].getRoi(), destRectangle)) {
                     roiRasters[intersectingSourceCount] = roi.getData(destRectangle);
                 }
+
+                if (overlay) {
+                    if (filled == null) {
+                        filled = new boolean[unfilled];
+                    }
+                    unfilled = fillCoverage(i, data, alphaRasters[intersectingSourceCount],
+                            roiRasters[intersectingSourceCount], destRectangle, filled, unfilled);
+                }
                 
                 intersectingSourceCount++;
             }
@@ -919,13 +937,14 @@ public class MosaicOpImage extends OpImage {
         
         // For the given source destination rasters, the mosaic is calculated
         computeRect(sourceRasters, sourceTags, sourceColorModels, destRaster, destRectangle,
-                alphaRasters, roiRasters, noDataRanges, alphaChannelColorModels, intersectingSourceCount);
+                alphaRasters, roiRasters, noDataRanges, alphaChannelColorModels, sourceIndices,
+                intersectingSourceCount);
 
         // Tile recycling if the Recycle is present
         for (int i = 0; i < intersectingSourceCount; i++) {
             Raster sourceData = sourceRasters[i];
             if (sourceData != null) {
-                PlanarImage source = getSourceImage(i);
+                PlanarImage source = getSourceImage(sourceIndices[i]);
 
                 if (source.overlapsMultipleTiles(sourceData.getBounds())) {
                     recycleTile(sourceData);
@@ -937,9 +956,109 @@ public class MosaicOpImage extends OpImage {
 
     }
 
+    /**
+     * Tells if the ROI contains all the pixels of the tile, so that its raster is not needed.
+     */
+    private boolean containsTile(ROI roi, Rectangle destRectangle) {
+        // a ROI built on an image with a non positive threshold may contain pixels which are
+        // not set in the ROI image
+        return roi != null && roi.getThreshold() > 0 && roi.contains(destRectangle);
+    }
+
+    /**
+     * Marks the pixels of the tile which will be set by the selected source with the OVERLAY
+     * mosaic type, using the same tests of the mosaic loops: the pixel is not a NoData in any band,
+     * its alpha is not 0 and it is inside the ROI. A pixel is only marked when it is certainly
+     * set, so the coverage may miss pixels but never adds wrong ones.
+     * 
+     * @param source the source index
+     * @param data the source data
+     * @param alpha the source alpha data, if any
+     * @param roi the source ROI data, if any
+     * @param destRectangle the tile area
+     * @param filled the pixels already set by the previous sources, updated by this method
+     * @param unfilled the number of pixels not set by the previous sources
+     * 
+     * @return the number of pixels not set by this source or the previous ones
+     */
+    private int fillCoverage(int source, Raster data, Raster alpha, Raster roi,
+            Rectangle destRectangle, boolean[] filled, int unfilled) {
+        Range noData = hasNoData[source] ? imageBeans[source].getSourceNoData() : null;
+        if (noData == null && alpha == null && roi == null) {
+            // the source sets every pixel
+            return 0;
+        }
+        if (noData != null && data.getNumBands() != numBands) {
+            // the bands are expanded when accessed, no way to check them here
+            return unfilled;
+        }
+
+        final int x = destRectangle.x;
+        final int y = destRectangle.y;
+        final int w = destRectangle.width;
+        final int h = destRectangle.height;
+        final int size = w * h;
+        boolean[] valid = new boolean[size];
+        Arrays.fill(valid, true);
+        if (alpha != null) {
+            int[] alphaSamples = alpha.getSamples(x, y, w, h, 0, (int[]) null);
+            for (int p = 0; p < size; p++) {
+                valid[p] = alphaSamples[p] != 0;
+            }
+        }
+        if (roi != null) {
+            int[] roiSamples = roi.getSamples(x, y, w, h, 0, (int[]) null);
+            for (int p = 0; p < size; p++) {
+                valid[p] &= roiSamples[p] > 0;
+            }
+        }
+        if (noData != null) {
+            int dataType = sampleModel.getDataType();
+            for (int b = 0; b < numBands; b++) {
+                switch (dataType) {
+                case DataBuffer.TYPE_BYTE:
+                    int[] byteSamples = data.getSamples(x, y, w, h, b, (int[]) null);
+                    for (int p = 0; p < size; p++) {
+                        valid[p] &= byteLookupTable[source][b][byteSamples[p]
+                                & 0xFF] != destinationNoDataByte[b];
+                    }
+                    break;
+                case DataBuffer.TYPE_USHORT:
+                case DataBuffer.TYPE_SHORT:
+                case DataBuffer.TYPE_INT:
+                    int[] intSamples = data.getSamples(x, y, w, h, b, (int[]) null);
+                    for (int p = 0; p < size; p++) {
+                        valid[p] &= !noData.contains(intSamples[p]);
+                    }
+                    break;
+                case DataBuffer.TYPE_FLOAT:
+                    float[] floatSamples = data.getSamples(x, y, w, h, b, (float[]) null);
+                    for (int p = 0; p < size; p++) {
+                        valid[p] &= !noData.contains(floatSamples[p]);
+                    }
+                    break;
+                default:
+                    double[] doubleSamples = data.getSamples(x, y, w, h, b, (double[]) null);
+                    for (int p = 0; p < size; p++) {
+                        valid[p] &= !noData.contains(doubleSamples[p]);
+                    }
+                }
+            }
+        }
+
+        for (int p = 0; p < size; p++) {
+            if (valid[p] && !filled[p]) {
+                filled[p] = true;
+                unfilled--;
+            }
+        }
+        return unfilled;
+    }
+
     private void computeRect(Raster[] sourceRasters, RasterFormatTag[] rasterFormatTags,
             ColorModel[] sourceColorModels, WritableRaster destRaster, Rectangle destRectangle,
-            Raster[] alphaRasters, Raster[] roiRasters, Range[] noDataRanges, ColorModel[] alphaChannelColorModels, int sourcesNumber) {
+            Raster[] alphaRasters, Raster[] roiRasters, Range[] noDataRanges, ColorModel[] alphaChannelColorModels,
+            int[] sourceIndices, int sourcesNumber) {
 
         // if all null, just return a constant image
         if (sourcesNumber == 0) {
@@ -971,6 +1090,7 @@ public class MosaicOpImage extends OpImage {
 
             helpAccessor.setRoiRaster(roiRasters[i]);
             helpAccessor.setSourceNoDataRangeRasterAccessor(noDataRanges[i]);
+            helpAccessor.setSourceIndex(sourceIndices[i]);
 
             sourceAccessorsArrayBean[i] = helpAccessor;
         }
@@ -1185,8 +1305,8 @@ public class MosaicOpImage extends OpImage {
 
                             // the flag checks if the pixel is a noData
                             boolean isData = true;
-                            if (hasNoData[s]) {
-                                isData = !(byteLookupTable[s][b][sourceValueByte
+                            if (hasNoData[srcBean[s].getSourceIndex()]) {
+                                isData = !(byteLookupTable[srcBean[s].getSourceIndex()][b][sourceValueByte
                                         & 0xFF] == destinationNoDataByte[b]);
                             }
 
@@ -1287,8 +1407,8 @@ public class MosaicOpImage extends OpImage {
                             // If no alpha channel or Roi is present, the weight
                             // is set to 1 or 0 if the pixel has
                             // or not a No Data value
-                            if (hasNoData[s]) {
-                                isData = !(byteLookupTable[s][b][sourceValueByte
+                            if (hasNoData[srcBean[s].getSourceIndex()]) {
+                                isData = !(byteLookupTable[srcBean[s].getSourceIndex()][b][sourceValueByte
                                         & 0xFF] == destinationNoDataByte[b]);
                             }
                             if (!isData) {
@@ -1520,7 +1640,7 @@ public class MosaicOpImage extends OpImage {
 
                             // the flag checks if the pixel is a noData
                             boolean isData = true;
-                            if (hasNoData[s]) {
+                            if (hasNoData[srcBean[s].getSourceIndex()]) {
                                 Range noDataRangeUShort = (srcBean[s]
                                         .getSourceNoDataRangeRasterAccessor());
                                 ;
@@ -1625,7 +1745,7 @@ public class MosaicOpImage extends OpImage {
                             // If no alpha channel or Roi is present, the weight
                             // is set to 1 or 0 if the pixel has
                             // or not a No Data value
-                            if (hasNoData[s]) {
+                            if (hasNoData[srcBean[s].getSourceIndex()]) {
                                 Range noDataRangeUShort = (srcBean[s]
                                         .getSourceNoDataRangeRasterAccessor());
                                 isData = !noDataRangeUShort.contains(sourceValueUshort);
@@ -1857,7 +1977,7 @@ public class MosaicOpImage extends OpImage {
 
                             // the flag checks if the pixel is a noData
                             boolean isData = true;
-                            if (hasNoData[s]) {
+                            if (hasNoData[srcBean[s].getSourceIndex()]) {
                                 Range noDataRangeShort = (srcBean[s]
                                         .getSourceNoDataRangeRasterAccessor());
                                 isData = !noDataRangeShort.contains(sourceValueShort);
@@ -1960,7 +2080,7 @@ public class MosaicOpImage extends OpImage {
                             // If no alpha channel or Roi is present, the weight
                             // is set to 1 or 0 if the pixel has
                             // or not a No Data value
-                            if (hasNoData[s]) {
+                            if (hasNoData[srcBean[s].getSourceIndex()]) {
                                 Range noDataRangeShort = (srcBean[s]
                                         .getSourceNoDataRangeRasterAccessor());
                                 isData = !noDataRangeShort.contains(sourceValueShort);
@@ -2192,7 +2312,7 @@ public class MosaicOpImage extends OpImage {
 
                             // the flag checks if the pixel is a noData
                             boolean isData = true;
-                            if (hasNoData[s]) {
+                            if (hasNoData[srcBean[s].getSourceIndex()]) {
                                 Range noDataRangeInt = (srcBean[s]
                                         .getSourceNoDataRangeRasterAccessor());
                                 isData = !noDataRangeInt.contains(sourceValueInt);
@@ -2295,7 +2415,7 @@ public class MosaicOpImage extends OpImage {
                             // If no alpha channel or Roi is present, the weight
                             // is set to 1 or 0 if the pixel has
                             // or not a No Data value
-                            if (hasNoData[s]) {
+                            if (hasNoData[srcBean[s].getSourceIndex()]) {
                                 Range noDataRangeInt = (srcBean[s]
                                         .getSourceNoDataRangeRasterAccessor());
                                 isData = !noDataRangeInt.contains(sourceValueInt);
@@ -2528,7 +2648,7 @@ public class MosaicOpImage extends OpImage {
 
                             // the flag checks if the pixel is a noData
                             boolean isData = true;
-                            if (hasNoData[s]) {
+                            if (hasNoData[srcBean[s].getSourceIndex()]) {
                                 Range noDataRangeFloat = (srcBean[s]
                                         .getSourceNoDataRangeRasterAccessor());
                                 if (noDataRangeFloat != null) {
@@ -2633,7 +2753,7 @@ public class MosaicOpImage extends OpImage {
                             // If no alpha channel or Roi is present, the weight
                             // is set to 1 or 0 if the pixel has
                             // or not a No Data value
-                            if (hasNoData[s]) {
+                            if (hasNoData[srcBean[s].getSourceIndex()]) {
                                 Range noDataRangeFloat = (srcBean[s]
                                         .getSourceNoDataRangeRasterAccessor());
                                 if (noDataRangeFloat != null) {
@@ -2869,7 +2989,7 @@ public class MosaicOpImage extends OpImage {
 
                             // the flag checks if the pixel is a noData
                             boolean isData = true;
-                            if (hasNoData[s]) {
+                            if (hasNoData[srcBean[s].getSourceIndex()]) {
                                 Range noDataRangeDouble = (srcBean[s]
                                         .getSourceNoDataRangeRasterAccessor());
                                 if (noDataRangeDouble != null) {
@@ -2974,7 +3094,7 @@ public class MosaicOpImage extends OpImage {
                             // If no alpha channel or Roi is present, the weight
                             // is set to 1 or 0 if the pixel has
                             // or not a No Data value
-                            if (hasNoData[s]) {
+                            if (hasNoData[srcBean[s].getSourceIndex()]) {
                                 Range noDataRangeDouble = (srcBean[s]
                                         .getSourceNoDataRangeRasterAccessor());
                                 if (noDataRangeDouble != null) {
@@ -3099,6 +3219,9 @@ public class MosaicOpImage extends OpImage {
         // No data range
         private Range sourceNoDataRangeRasterAccessor;
 
+        // Index of the source image
+        private int sourceIndex;
+
         // No-argument constructor as requested for the java beans
         RasterBeanAccessor() {
         }
@@ -3137,6 +3260,14 @@ public class MosaicOpImage extends OpImage {
             this.sourceNoDataRangeRasterAccessor = sourceNoDataRangeRasterAccessor;
         }
 
+        public int getSourceIndex() {
+            return sourceIndex;
+        }
+
+        public void setSourceIndex(int sourceIndex) {
+            this.sourceIndex = sourceIndex;
+        }
+
     }
 
 }
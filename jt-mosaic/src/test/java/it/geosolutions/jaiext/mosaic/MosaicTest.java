@@ -22,9 +22,11 @@ import static org.junit.Assert.assertTrue;
 
 import java.awt.Rectangle;
 import java.awt.RenderingHints;
+import java.awt.image.BufferedImage;
 import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
+import java.awt.image.WritableRaster;
 import java.awt.image.renderable.ParameterBlock;
 import java.io.Serializable;
 import java.util.List;
@@ -38,6 +40,7 @@ import javax.media.jai.PlanarImage;
 import javax.media.jai.ROI;
 import javax.media.jai.ROIShape;
 import javax.media.jai.RenderedOp;
+import javax.media.jai.TiledImage;
 import javax.media.jai.operator.MosaicType;
 import javax.media.jai.operator.TranslateDescriptor;
 import javax.media.jai.util.ImagingException;
@@ -703,6 +706,79 @@ public class MosaicTest extends TestBase {
 				valideValueSource1, valideValueSource3, false, false, true);
 	}
 
+	// OVERLAY SOURCES SKIPPED WHEN THE TILE IS ALREADY FILLED
+
+	@Test
+	public void testOverlaySkipsFilledTiles() {
+		// first source: NoData on the left half, valid data on the right half
+		BufferedImage firstImage = new BufferedImage(64, 64,
+				BufferedImage.TYPE_BYTE_GRAY);
+		WritableRaster firstRaster = firstImage.getRaster();
+		for (int y = 0; y < 64; y++) {
+			for (int x = 0; x < 64; x++) {
+				firstRaster.setSample(x, y, 0, x < 32 ? 0 : 10);
+			}
+		}
+		CountingImage first = new CountingImage(firstImage);
+		CountingImage second = new CountingImage(constantImage(20));
+		CountingImage third = new CountingImage(constantImage(30));
+
+		List mosaicList = new Vector();
+		mosaicList.add(first);
+		mosaicList.add(second);
+		mosaicList.add(third);
+		Range[] nd = { RangeFactory.create((byte) 0, (byte) 0), null, null };
+
+		ImageLayout layout = new ImageLayout();
+		layout.setTileWidth(32);
+		layout.setTileHeight(32);
+		RenderedImage mosaic = new MosaicOpImage(mosaicList, layout, null,
+				DEFAULT_MOSAIC_TYPE, null, null, null, new double[] { 0 }, nd);
+		Raster result = mosaic.getData();
+
+		// the second source is only read for the left tiles, the third never
+		assertEquals(4, first.getRequests());
+		assertEquals(2, second.getRequests());
+		assertEquals(0, third.getRequests());
+		for (int y = 0; y < 64; y++) {
+			for (int x = 0; x < 64; x++) {
+				assertEquals(x < 32 ? 20 : 10, result.getSample(x, y, 0));
+			}
+		}
+	}
+
+	private static BufferedImage constantImage(int value) {
+		BufferedImage image = new BufferedImage(64, 64,
+				BufferedImage.TYPE_BYTE_GRAY);
+		WritableRaster raster = image.getRaster();
+		for (int y = 0; y < 64; y++) {
+			for (int x = 0; x < 64; x++) {
+				raster.setSample(x, y, 0, value);
+			}
+		}
+		return image;
+	}
+
+	/** Image counting the requests of its data */
+	private static class CountingImage extends TiledImage {
+
+		private int requests;
+
+		CountingImage(RenderedImage source) {
+			super(source, 32, 32);
+		}
+
+		@Override
+		public synchronized Raster getData(Rectangle rect) {
+			requests++;
+			return super.getData(rect);
+		}
+
+		synchronized int getRequests() {
+			return requests;
+		}
+	}
+
 	// ELEVENTH SERIES
 	// EXCEPTION TEST CLASS. THIS TESTS ARE USED FOR CHECKING IF THE MOSAIC
 	// NODATA OPIMAGE
@@ -17,17 +17,11 @@
 */
 package it.geosolutions.jaiext.stats;
 
-import java.awt.Rectangle;
 import java.awt.image.DataBuffer;
-import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 
 import javax.media.jai.ROI;
-import javax.media.jai.RasterAccessor;
-import javax.media.jai.RasterFormatTag;
-import javax.media.jai.iterator.RandomIter;
 
-import it.geosolutions.jaiext.iterators.RandomIterFactory;
 import it.geosolutions.jaiext.range.Range;
 import it.geosolutions.jaiext.stats.Statistics.StatsType;
 
@@ -37,16 +31,32 @@ import it.geosolutions.jaiext.stats.Statistics.StatsType;
  * together by adding entries in the definition array "statsTypes". A ROI object passed to the constructor is taken into account by counting only the
  * samples inside of it; an eventual No Data Range is considered by counting only values that are not No Data. The statistical calculation is
  * performed by calling the getProperty() method. The statistics are calculated for every image tile but the results are saved into only one global
- * container. For avoiding to compromise the thread-safety of the class, every statistics object should handle concurrent threads. At the end of the
+ * container: the statistics of each tile are calculated on separate objects and then accumulated in a synchronized block. At the end of the
  * calculation the statistics container is passed to the getProperty() method as a Result. For avoiding unnecessary operations the statistics can be
  * calculated only the first time; but if the user needs to re-calculate the statistics, they can be cleared with the clearStatistic() method and then
  * returned by calling again the getProperty() method.
  */
 public class ComplexStatsOpImage extends StatisticsOpImage {
 
+    /** Quantiles approximated by the {@link StatsType#QUANTILE} statistics */
+    private final double[] quantiles;
+
+    /** Bounds of each selected band, used for creating the statistics of each tile */
+    private final double[] lowValue;
+
+    private final double[] highValue;
+
     public ComplexStatsOpImage(RenderedImage source,
             int xPeriod, int yPeriod, ROI roi, Range noData, boolean useROIAccessor, int[] bands,
             StatsType[] statsTypes, double[] minBound, double[] maxBound, int[] numBins) {
+        this(source, xPeriod, yPeriod, roi, noData, useROIAccessor, bands, statsTypes, minBound,
+                maxBound, numBins, null);
+    }
+
+    public ComplexStatsOpImage(RenderedImage source,
+            int xPeriod, int yPeriod, ROI roi, Range noData, boolean useROIAccessor, int[] bands,
+            StatsType[] statsTypes, double[] minBound, double[] maxBound, int[] numBins,
+            double[] quantiles) {
         super(source, xPeriod, yPeriod, roi, noData, useROIAccessor, bands,
                 statsTypes, minBound, maxBound, numBins);
 
@@ -54,7 +64,7 @@ public class ComplexStatsOpImage extends StatisticsOpImage {
         // objects like Mean
         if (statsTypes != null) {
             for (int i = 0; i < statsTypes.length; i++) {
-                if (statsTypes[i].getStatsId() < 6) {
+                if (statsTypes[i].isSimple()) {
                     throw new IllegalArgumentException("Wrong statistic types");
                 }
             }
@@ -71,8 +81,9 @@ public class ComplexStatsOpImage extends StatisticsOpImage {
         this.bands = bands;
         
         int[] numB = new int[bandsNumber];
-        double[] lowValue = new double[bandsNumber];
-        double[] highValue = new double[bandsNumber];
+        lowValue = new double[bandsNumber];
+        highValue = new double[bandsNumber];
+        this.quantiles = quantiles;
         
         for (int b = 0; b < bandsNumber; b++) {
             numB[b] = numBins.length == 1 ? numBins[0] : numBins[b];
@@ -86,79 +97,45 @@ public class ComplexStatsOpImage extends StatisticsOpImage {
         for (int i = 0; i < selectedBands; i++) {
             for (int j = 0; j < statNum; j++) {
                 stats[i][j] = StatsFactory.createComplexStatisticsObjectFromInt(
-                        statsTypes[j].getStatsId(), lowValue[i], highValue[i], numB[i]);
+                        statsTypes[j].getStatsId(), lowValue[i], highValue[i], numB[i], quantiles);
             }
         }
-    }
 
-    /**
-     * Returns a tile for reading.
-     * 
-     * @param tileX The X index of the tile.
-     * @param tileY The Y index of the tile.
-     * @return The tile as a <code>Raster</code>.
-     */
-    public Raster computeTile(int tileX, int tileY) {
-        // STATISTICAL ELABORATIONS
-        // selection of the format tags
-        RasterFormatTag[] formatTags = getFormatTags();
-        // Selection of the RasterAccessor parameters
-        Raster source = getSourceImage(0).getTile(tileX, tileY);
-        // Control if the Period is bigger than the tile dimension, in that case, the
-        // statistics are not updated
-        if (xPeriod > getTileWidth() || yPeriod > getTileHeight()) {
-            return source;
+        // The partial statistics of the median contain all the tile samples, so they are not kept
+        for (int j = 0; j < statNum; j++) {
+            if (statsTypes[j] == StatsType.MEDIAN) {
+                cachePartials = false;
+            }
         }
 
-        Rectangle srcRect = getSourceImage(0).getBounds().intersection(source.getBounds());
-        // creation of the RasterAccessor
-        RasterAccessor src = new RasterAccessor(source, srcRect, formatTags[0], getSourceImage(0)
-                .getColorModel());
-
-        // ROI calculations if roiAccessor is used
-        RasterAccessor roi = null;
-        RandomIter roiIter = null;
-        if (useROIAccessor) {
-            // Note that the getExtendedData() method is not called because the input images are padded.
-            // For each image there is a check if the rectangle is contained inside the source image;
-            // if this not happen, the data is taken from the padded image.
-            Raster roiRaster = null;
-            if(srcROIImage.getBounds().contains(srcRect)){
-                roiRaster = srcROIImage.getData(srcRect);
-            }else{
-                roiRaster = srcROIImgExt.getData(srcRect);
+        // For byte and unsigned short images the histogram bins are taken from a lookup table
+        int dataType = getSourceImage(0).getSampleModel().getDataType();
+        if (dataType == DataBuffer.TYPE_BYTE || dataType == DataBuffer.TYPE_USHORT) {
+            int maxValue = dataType == DataBuffer.TYPE_BYTE ? 0xFF : 0xFFFF;
+            for (int i = 0; i < selectedBands; i++) {
+                for (int j = 0; j < statNum; j++) {
+                    if (stats[i][j] instanceof HistogramMode) {
+                        ((HistogramMode) stats[i][j]).initIntegralIndex(maxValue);
+                    }
+                }
             }
-
-            // creation of the rasterAccessor
-            roi = new RasterAccessor(roiRaster, srcRect, RasterAccessor.findCompatibleTags(
-                    new RenderedImage[] { srcROIImage }, srcROIImage)[0],
-                    srcROIImage.getColorModel());
-        } else if(hasROI) {
-            roiIter = RandomIterFactory.create(srcROIImage, srcROIImage.getBounds(), true, true);
         }
+    }
 
-        // Computation of the statistics
-        switch (src.getDataType()) {
-        case DataBuffer.TYPE_BYTE:
-            byteLoop(src, srcRect, roi, stats, roiIter);
-            break;
-        case DataBuffer.TYPE_USHORT:
-            ushortLoop(src, srcRect, roi, stats, roiIter);
-            break;
-        case DataBuffer.TYPE_SHORT:
-            shortLoop(src, srcRect, roi, stats, roiIter);
-            break;
-        case DataBuffer.TYPE_INT:
-            intLoop(src, srcRect, roi, stats, roiIter);
-            break;
-        case DataBuffer.TYPE_FLOAT:
-            floatLoop(src, srcRect, roi, stats, roiIter);
-            break;
-        case DataBuffer.TYPE_DOUBLE:
-            doubleLoop(src, srcRect, roi, stats, roiIter);
-            break;
+    protected Statistics[][] createTileStatistics() {
+        Statistics[][] statArray = new Statistics[selectedBands][statNum];
+        for (int i = 0; i < selectedBands; i++) {
+            for (int j = 0; j < statNum; j++) {
+                Statistics global = stats[i][j];
+                if (global instanceof HistogramMode) {
+                    // The lookup table of the global object is shared
+                    statArray[i][j] = ((HistogramMode) global).createTileStatistics();
+                } else {
+                    statArray[i][j] = StatsFactory.createComplexStatisticsObjectFromInt(
+                            statsTypes[j].getStatsId(), lowValue[i], highValue[i], 0, quantiles);
+                }
+            }
         }
-
-        return source;
+        return statArray;
     }
 }
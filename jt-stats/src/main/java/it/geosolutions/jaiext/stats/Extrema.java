@@ -88,6 +88,7 @@ public class Extrema extends Statistics {
     protected void clearStats() {
         this.max = Double.NEGATIVE_INFINITY;
         this.min = Double.POSITIVE_INFINITY;
+        this.samples = 0;
     }
 
 }
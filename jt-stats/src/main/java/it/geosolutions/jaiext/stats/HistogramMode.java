@@ -17,15 +17,17 @@
 */
 package it.geosolutions.jaiext.stats;
 
-import com.google.common.util.concurrent.AtomicDouble;
+import java.util.Arrays;
+
 import it.geosolutions.jaiext.range.Range;
 import it.geosolutions.jaiext.range.RangeFactory;
 
 /**
  * This subclass of {@link Statistics} is used for calculating the Histogram or the Mode of an image. These 2 operations are almost the same, the
  * difference is only at the final step when the histogram returns an array containing the number of pixels for every bin while the mode returns only
- * the most populated bean. This operation is achieved with the help of an AtomicDouble array, for avoiding thread-safety issues. There is no
- * statistic accumulation because multiple Histogram objects could bring to an {@link OutOfMemoryError}.
+ * the most populated bean. The bins are stored inside a primitive array which is not thread-safe: the statistics of each tile are calculated on a
+ * separate object created with {@link #createTileStatistics()} and then accumulated. For byte and unsigned short images a lookup table from the
+ * integral sample values to the bin indexes can be created with {@link #initIntegralIndex(int)}, avoiding the bin calculation for each sample.
  */
 public class HistogramMode extends Statistics {
     /** Boolean indicating if Histogram operation must be performed */
@@ -44,7 +46,10 @@ public class HistogramMode extends Statistics {
     private final double minBound;
 
     /** Array containing all the bins */
-    private final AtomicDouble[] bins;
+    private final long[] bins;
+
+    /** Lookup table from the integral samples to the bin indexes, -1 for the samples outside the bounds. Shared by the tile statistics */
+    private int[] integralIndex;
 
     HistogramMode(int numBins, double minBound, double maxBound, boolean histogramStat) {
         // Setting of the parameters
@@ -61,10 +66,7 @@ public class HistogramMode extends Statistics {
         this.binInterval = (maxBound - minBound) / numBins;
         this.minBound = minBound;
         // Creation of the bin array
-        this.bins = new AtomicDouble[numBins];
-        for (int i = 0; i < numBins; i++) {
-            bins[i] = new AtomicDouble(0);
-        }
+        this.bins = new long[numBins];
         // Definition of the statsType
         if (histogramStat) {
             this.type = StatsType.HISTOGRAM;
@@ -73,6 +75,38 @@ public class HistogramMode extends Statistics {
         }
     }
 
+    /** Constructor used for creating an empty object with the same parameters of the input one */
+    private HistogramMode(HistogramMode other) {
+        this.histogramStat = other.histogramStat;
+        this.numBins = other.numBins;
+        this.interval = other.interval;
+        this.binInterval = other.binInterval;
+        this.minBound = other.minBound;
+        this.bins = new long[numBins];
+        this.integralIndex = other.integralIndex;
+        this.type = other.type;
+    }
+
+    /**
+     * Creates an empty object with the same bins of this object, used for calculating the statistics of a single tile which are then
+     * accumulated inside this object. The lookup table of the integral samples is shared.
+     */
+    HistogramMode createTileStatistics() {
+        return new HistogramMode(this);
+    }
+
+    /**
+     * Creates the lookup table used by {@link #addIntegralSample(int)} for the samples between 0 and the selected maximum value. It must be
+     * called before creating the tile statistics.
+     */
+    void initIntegralIndex(int maxValue) {
+        int[] index = new int[maxValue + 1];
+        for (int i = 0; i <= maxValue; i++) {
+            index[i] = interval.contains(i) ? getIndex(i) : -1;
+        }
+        integralIndex = index;
+    }
+
     @Override
     public void addSample(double sample) {
         samples++;
@@ -80,13 +114,36 @@ public class HistogramMode extends Statistics {
             // Selection of the index
             int index = getIndex(sample);
             // Update of the bin count
-            bins[index].addAndGet(1);
+            bins[index]++;
+        }
+    }
+
+    @Override
+    public void addIntegralSample(int sample) {
+        int[] index = integralIndex;
+        if (index == null || sample < 0 || sample >= index.length) {
+            addSample(sample);
+            return;
+        }
+        samples++;
+        int binIndex = index[sample];
+        if (binIndex >= 0) {
+            bins[binIndex]++;
         }
     }
 
     @Override
     protected void accumulateStats(Statistics stats) {
-        throw new UnsupportedOperationException("Histogram statistics cannot be accumulated");
+        checkSameStats(stats);
+        HistogramMode other = (HistogramMode) stats;
+        if (other.numBins != numBins || other.minBound != minBound
+                || other.binInterval != binInterval) {
+            throw new IllegalArgumentException("These statistics have different bins");
+        }
+        samples += other.samples;
+        for (int i = 0; i < numBins; i++) {
+            bins[i] += other.bins[i];
+        }
     }
 
     @Override
@@ -95,16 +152,16 @@ public class HistogramMode extends Statistics {
             // If the operation is Histogram, the result is returned as a double array
             double[] array = new double[numBins];
             for (int i = 0; i < numBins; i++) {
-                array[i] = bins[i].doubleValue();
+                array[i] = bins[i];
             }
             return array;
         } else {
             // If the operation is Mode, the most present value is returned
-            double max = 0;
+            long max = 0;
             int indexMax = 0;
             for (int i = 0; i < numBins; i++) {
-                if (bins[i].doubleValue() > max) {
-                    max = bins[i].doubleValue();
+                if (bins[i] > max) {
+                    max = bins[i];
                     indexMax = i;
                 }
             }
@@ -123,11 +180,10 @@ public class HistogramMode extends Statistics {
     }
     
     @Override
-    protected synchronized void clearStats() {
+    protected void clearStats() {
         // All the bins are set to 0
-        for (int i = 0; i < numBins; i++) {
-            bins[i] = new AtomicDouble(0);
-        }
+        Arrays.fill(bins, 0);
+        samples = 0;
     }
 
     /** Private method for calculating the bin-index associated to the sample */
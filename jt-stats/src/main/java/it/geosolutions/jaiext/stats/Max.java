@@ -69,6 +69,7 @@ public class Max extends Statistics {
     @Override
     protected void clearStats() {
         this.max = Double.NEGATIVE_INFINITY;
+        this.samples = 0;
     }
 
 }
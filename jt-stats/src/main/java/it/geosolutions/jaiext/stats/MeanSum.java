@@ -19,7 +19,8 @@ package it.geosolutions.jaiext.stats;
 
 /**
  * This subclass of {@link Statistics} is used for calculating the mean or the sum of an image. These 2 operations are almost the same, the difference
- * is only at the final step when the sum is divided by the total number of samples for returning the mean value.
+ * is only at the final step when the sum is divided by the total number of samples for returning the mean value. The sum is compensated with the
+ * Kahan algorithm, so that adding many samples of similar magnitude does not lose the low order bits.
  */
 public class MeanSum extends Statistics {
 
@@ -29,6 +30,9 @@ public class MeanSum extends Statistics {
     /** Internal variable storing the sum of all samples */
     private double sumValues;
 
+    /** Internal variable storing the low order bits lost by the sum */
+    private double compensation;
+
     /** Internal variable storing the number of all samples */
     private long samples;
 
@@ -48,9 +52,17 @@ public class MeanSum extends Statistics {
         return sumValues;
     }
 
+    /** Adds a value to the compensated sum */
+    private void add(double value) {
+        double y = value - compensation;
+        double t = sumValues + y;
+        compensation = (t - sumValues) - y;
+        sumValues = t;
+    }
+
     @Override
     public void addSample(double sample) {
-            sumValues += sample;
+            add(sample);
             samples++;
     }
 
@@ -59,7 +71,8 @@ public class MeanSum extends Statistics {
         checkSameStats(stats);
         MeanSum msum = (MeanSum) stats;
         samples += msum.getNumSamples();
-        sumValues += msum.getSumValues();
+        add(msum.getSumValues());
+        add(-msum.compensation);
     }
 
     @Override
@@ -83,6 +96,7 @@ public class MeanSum extends Statistics {
     @Override
     protected void clearStats() {
         this.sumValues = 0;
+        this.compensation = 0;
         this.samples = 0;
     }
 }
@@ -59,7 +59,10 @@ public class Median extends Statistics {
 
     @Override
     protected void accumulateStats(Statistics stats) {
-        throw new UnsupportedOperationException("Median statistics cannot be accumulated");
+        checkSameStats(stats);
+        Median other = (Median) stats;
+        samples += other.samples;
+        listData.addAll(other.listData);
     }
 
     @Override
@@ -96,5 +99,6 @@ public class Median extends Statistics {
     protected void clearStats() {
         // The list is cleared by creating a new empty list
         listData = Collections.synchronizedList(new ArrayList<Double>());
+        this.samples = 0;
     }
 }
@@ -62,6 +62,7 @@ public class Min extends Statistics {
     @Override
     protected void clearStats() {
         this.min = Double.POSITIVE_INFINITY;
+        this.samples = 0;
     }
     
     @Override
@@ -0,0 +1,133 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.stats;
+
+/**
+ * Accumulator of the central moments of a set of samples, updated in a single pass with the Welford algorithm. Two accumulators can be merged
+ * with the pairwise formulas of Chan et al., so the moments of each tile can be calculated separately and then accumulated without losing
+ * precision. The third and fourth moments are updated only if requested.
+ */
+final class MomentAccumulator {
+
+    /** Boolean indicating if the third and fourth moments are calculated */
+    private final boolean higherOrders;
+
+    /** Number of samples */
+    private long n;
+
+    /** Mean of the samples */
+    private double mean;
+
+    /** Sums of the powers of the differences from the mean */
+    private double m2;
+
+    private double m3;
+
+    private double m4;
+
+    MomentAccumulator(boolean higherOrders) {
+        this.higherOrders = higherOrders;
+    }
+
+    /** Adds a sample to the accumulator */
+    void add(double sample) {
+        long n1 = n;
+        n++;
+        double delta = sample - mean;
+        double deltaN = delta / n;
+        if (higherOrders) {
+            double deltaN2 = deltaN * deltaN;
+            double term1 = delta * deltaN * n1;
+            double nd = n;
+            mean += deltaN;
+            m4 += term1 * deltaN2 * (nd * nd - 3 * nd + 3) + 6 * deltaN2 * m2 - 4 * deltaN * m3;
+            m3 += term1 * deltaN * (nd - 2) - 3 * deltaN * m2;
+            m2 += term1;
+        } else {
+            mean += deltaN;
+            m2 += delta * (sample - mean);
+        }
+    }
+
+    /** Adds the samples of another accumulator to this accumulator */
+    void merge(MomentAccumulator other) {
+        if (other.n == 0) {
+            return;
+        }
+        if (n == 0) {
+            n = other.n;
+            mean = other.mean;
+            m2 = other.m2;
+            m3 = other.m3;
+            m4 = other.m4;
+            return;
+        }
+        double na = n;
+        double nb = other.n;
+        double nn = na + nb;
+        double delta = other.mean - mean;
+        double delta2 = delta * delta;
+        double newM2 = m2 + other.m2 + delta2 * na * nb / nn;
+        if (higherOrders) {
+            double newM3 = m3 + other.m3 + delta * delta2 * na * nb * (na - nb) / (nn * nn) + 3
+                    * delta * (na * other.m2 - nb * m2) / nn;
+            double newM4 = m4 + other.m4 + delta2 * delta2 * na * nb * (na * na - na * nb + nb * nb)
+                    / (nn * nn * nn) + 6 * delta2 * (na * na * other.m2 + nb * nb * m2) / (nn * nn)
+                    + 4 * delta * (na * other.m3 - nb * m3) / nn;
+            m3 = newM3;
+            m4 = newM4;
+        }
+        m2 = newM2;
+        mean += delta * nb / nn;
+        n += other.n;
+    }
+
+    /** Returns the number of samples */
+    long getCount() {
+        return n;
+    }
+
+    /** Returns the mean of the samples */
+    double getMean() {
+        return n == 0 ? Double.NaN : mean;
+    }
+
+    /** Returns the unbiased variance of the samples, NaN if less than 2 samples are present */
+    double getVariance() {
+        return n < 2 ? Double.NaN : m2 / (n - 1);
+    }
+
+    /** Returns the skewness of the samples, computed from the population moments */
+    double getSkewness() {
+        return n == 0 || m2 == 0 ? Double.NaN : Math.sqrt((double) n) * m3 / Math.pow(m2, 1.5);
+    }
+
+    /** Returns the excess kurtosis of the samples, computed from the population moments */
+    double getKurtosis() {
+        return n == 0 || m2 == 0 ? Double.NaN : n * m4 / (m2 * m2) - 3;
+    }
+
+    /** Removes all the samples */
+    void clear() {
+        n = 0;
+        mean = 0;
+        m2 = 0;
+        m3 = 0;
+        m4 = 0;
+    }
+}
@@ -0,0 +1,106 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.stats;
+
+import it.geosolutions.jaiext.range.Range;
+import it.geosolutions.jaiext.range.RangeFactory;
+
+/**
+ * This class is used for approximating the quantiles of an image in bounded memory. The samples are collected inside a {@link QuantileSketch},
+ * so the statistics of each tile can be calculated separately and then accumulated. The result is an array containing the value of each
+ * requested quantile.
+ */
+public class Quantile extends Statistics {
+
+    /** Default quantiles: first quartile, median and third quartile */
+    public static final double[] DEFAULT_QUANTILES = { 0.25, 0.5, 0.75 };
+
+    /** Sketch of the image pixels */
+    private final QuantileSketch sketch;
+
+    /** Range of the accepted values */
+    private final Range interval;
+
+    /** Requested quantiles */
+    private final double[] quantiles;
+
+    Quantile(double minBound, double maxBound, double[] quantiles) {
+        // If the array bounds are infinite, the minimum and maximum values are taken
+        if (minBound == Double.NEGATIVE_INFINITY) {
+            minBound = -Double.MAX_VALUE;
+        }
+        if (maxBound == Double.POSITIVE_INFINITY) {
+            maxBound = Double.MAX_VALUE;
+        }
+        if (quantiles == null || quantiles.length == 0) {
+            quantiles = DEFAULT_QUANTILES;
+        }
+        for (double q : quantiles) {
+            if (q < 0 || q > 1) {
+                throw new IllegalArgumentException("Quantiles must be between 0 and 1");
+            }
+        }
+        // Setting of the parameters
+        this.interval = RangeFactory.create(minBound, true, maxBound, false, false);
+        this.quantiles = quantiles.clone();
+        this.sketch = new QuantileSketch();
+        this.type = StatsType.QUANTILE;
+    }
+
+    @Override
+    public void addSample(double sample) {
+        samples++;
+        if (interval.contains(sample)) {
+            sketch.add(sample);
+        }
+    }
+
+    @Override
+    protected void accumulateStats(Statistics stats) {
+        checkSameStats(stats);
+        Quantile other = (Quantile) stats;
+        samples += other.samples;
+        sketch.merge(other.sketch);
+    }
+
+    /** Returns the requested quantiles */
+    public double[] getQuantiles() {
+        return quantiles.clone();
+    }
+
+    @Override
+    public Object getResult() {
+        // If no value is saved, then Double.NaN is returned for each quantile
+        double[] result = new double[quantiles.length];
+        for (int i = 0; i < quantiles.length; i++) {
+            result[i] = sketch.quantile(quantiles[i]);
+        }
+        return result;
+    }
+
+    @Override
+    public Long getNumSamples() {
+        return Long.valueOf(samples);
+    }
+
+    @Override
+    protected void clearStats() {
+        sketch.clear();
+        samples = 0;
+    }
+}
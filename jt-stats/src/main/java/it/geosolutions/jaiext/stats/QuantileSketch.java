@@ -0,0 +1,260 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.stats;
+
+/**
+ * This class is a mergeable sketch used for approximating the quantiles of a stream of samples in bounded memory. The samples are collected
+ * inside a buffer and periodically compressed into a sorted list of weighted centroids (t-digest): the centroids are small near the tails and
+ * larger in the middle of the distribution, so the number of centroids depends only on the compression value and not on the number of samples.
+ * Two sketches can be merged by adding the centroids of one to the other. This class is not thread safe.
+ */
+public final class QuantileSketch {
+
+    /** Default compression value */
+    public static final double DEFAULT_COMPRESSION = 100;
+
+    /** Compression value, higher values give more accurate results using more memory */
+    private final double compression;
+
+    /** Means of the centroids, sorted */
+    private double[] means;
+
+    /** Weights of the centroids */
+    private double[] weights;
+
+    /** Number of centroids */
+    private int centroids;
+
+    /** Values of the buffered samples or centroids */
+    private final double[] bufferMeans;
+
+    /** Weights of the buffered samples or centroids */
+    private final double[] bufferWeights;
+
+    /** Number of buffered elements */
+    private int buffered;
+
+    /** Total weight of the sketch */
+    private double totalWeight;
+
+    /** Minimum sample value */
+    private double min = Double.POSITIVE_INFINITY;
+
+    /** Maximum sample value */
+    private double max = Double.NEGATIVE_INFINITY;
+
+    public QuantileSketch() {
+        this(DEFAULT_COMPRESSION);
+    }
+
+    public QuantileSketch(double compression) {
+        if (compression < 10) {
+            throw new IllegalArgumentException("Compression must be at least 10");
+        }
+        this.compression = compression;
+        int capacity = (int) Math.ceil(2 * compression) + 10;
+        this.means = new double[capacity];
+        this.weights = new double[capacity];
+        this.bufferMeans = new double[(int) (5 * compression)];
+        this.bufferWeights = new double[bufferMeans.length];
+    }
+
+    /** Adds a sample to the sketch */
+    public void add(double sample) {
+        add(sample, 1);
+    }
+
+    /** Adds a sample with the selected weight to the sketch */
+    public void add(double sample, double weight) {
+        if (buffered == bufferMeans.length) {
+            compress();
+        }
+        bufferMeans[buffered] = sample;
+        bufferWeights[buffered] = weight;
+        buffered++;
+        totalWeight += weight;
+        if (sample < min) {
+            min = sample;
+        }
+        if (sample > max) {
+            max = sample;
+        }
+    }
+
+    /** Adds all the samples summarized by the input sketch to this sketch */
+    public void merge(QuantileSketch other) {
+        other.compress();
+        for (int i = 0; i < other.centroids; i++) {
+            add(other.means[i], other.weights[i]);
+        }
+        // The extrema are kept even if they have been merged in the centroids
+        if (other.min < min) {
+            min = other.min;
+        }
+        if (other.max > max) {
+            max = other.max;
+        }
+    }
+
+    /** Returns the total weight of the added samples */
+    public double getTotalWeight() {
+        return totalWeight;
+    }
+
+    /**
+     * Returns an approximation of the selected quantile, or NaN if no sample has been added.
+     * 
+     * @param q quantile between 0 and 1
+     */
+    public double quantile(double q) {
+        if (q < 0 || q > 1) {
+            throw new IllegalArgumentException("Quantile must be between 0 and 1");
+        }
+        compress();
+        if (centroids == 0) {
+            return Double.NaN;
+        } else if (centroids == 1) {
+            return means[0];
+        }
+        double index = q * totalWeight;
+        // Tails, interpolated between the extrema and the first or last centroid
+        double firstCenter = weights[0] / 2;
+        if (index <= firstCenter) {
+            return min + (means[0] - min) * (firstCenter <= 0 ? 0 : index / firstCenter);
+        }
+        double lastCenter = totalWeight - weights[centroids - 1] / 2;
+        if (index >= lastCenter) {
+            double tail = totalWeight - lastCenter;
+            return means[centroids - 1] + (max - means[centroids - 1])
+                    * (tail <= 0 ? 0 : (index - lastCenter) / tail);
+        }
+        // Linear interpolation between the centers of the adjacent centroids
+        double center = firstCenter;
+        for (int i = 0; i < centroids - 1; i++) {
+            double step = (weights[i] + weights[i + 1]) / 2;
+            if (index <= center + step) {
+                return means[i] + (means[i + 1] - means[i]) * (index - center) / step;
+            }
+            center += step;
+        }
+        return means[centroids - 1];
+    }
+
+    /** Removes all the samples from the sketch */
+    public void clear() {
+        centroids = 0;
+        buffered = 0;
+        totalWeight = 0;
+        min = Double.POSITIVE_INFINITY;
+        max = Double.NEGATIVE_INFINITY;
+    }
+
+    /** Merges the buffered elements with the centroids */
+    private void compress() {
+        if (buffered == 0) {
+            return;
+        }
+        // Union of the centroids and of the buffer, sorted by mean
+        int n = centroids + buffered;
+        double[] m = new double[n];
+        double[] w = new double[n];
+        System.arraycopy(means, 0, m, 0, centroids);
+        System.arraycopy(weights, 0, w, 0, centroids);
+        System.arraycopy(bufferMeans, 0, m, centroids, buffered);
+        System.arraycopy(bufferWeights, 0, w, centroids, buffered);
+        sort(m, w, 0, n - 1);
+        buffered = 0;
+
+        // Greedy merge of the adjacent elements while the centroid size stays below the bound
+        // given by the position of the centroid inside the distribution
+        int count = 0;
+        double weightSoFar = 0;
+        double currentMean = m[0];
+        double currentWeight = w[0];
+        for (int i = 1; i < n; i++) {
+            double proposed = currentWeight + w[i];
+            double q = (weightSoFar + proposed / 2) / totalWeight;
+            double limit = 4 * totalWeight * q * (1 - q) / compression;
+            if (proposed <= limit) {
+                currentMean += (m[i] - currentMean) * w[i] / proposed;
+                currentWeight = proposed;
+            } else {
+                m[count] = currentMean;
+                w[count] = currentWeight;
+                count++;
+                weightSoFar += currentWeight;
+                currentMean = m[i];
+                currentWeight = w[i];
+            }
+        }
+        m[count] = currentMean;
+        w[count] = currentWeight;
+        count++;
+
+        if (count > means.length) {
+            means = new double[count];
+            weights = new double[count];
+        }
+        System.arraycopy(m, 0, means, 0, count);
+        System.arraycopy(w, 0, weights, 0, count);
+        centroids = count;
+    }
+
+    /** Sorts the two arrays by the values of the first one */
+    private static void sort(double[] keys, double[] values, int low, int high) {
+        while (high - low > 16) {
+            double pivot = keys[(low + high) >>> 1];
+            int i = low;
+            int j = high;
+            while (i <= j) {
+                while (keys[i] < pivot) {
+                    i++;
+                }
+                while (keys[j] > pivot) {
+                    j--;
+                }
+                if (i <= j) {
+                    swap(keys, values, i++, j--);
+                }
+            }
+            // Recursion on the smaller part
+            if (j - low < high - i) {
+                sort(keys, values, low, j);
+                low = i;
+            } else {
+                sort(keys, values, i, high);
+                high = j;
+            }
+        }
+        // Insertion sort for the small ranges
+        for (int i = low + 1; i <= high; i++) {
+            for (int j = i; j > low && keys[j - 1] > keys[j]; j--) {
+                swap(keys, values, j, j - 1);
+            }
+        }
+    }
+
+    private static void swap(double[] keys, double[] values, int i, int j) {
+        double key = keys[i];
+        keys[i] = keys[j];
+        keys[j] = key;
+        double value = values[i];
+        values[i] = values[j];
+        values[j] = value;
+    }
+}
@@ -0,0 +1,75 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.stats;
+
+/**
+ * This subclass of {@link Statistics} is used for calculating the skewness or the excess kurtosis of an image. These 2 operations are almost the
+ * same, the difference is only at the final step when the third or the fourth central moment is normalized. The moments are calculated in a single
+ * pass and can be accumulated without losing precision.
+ */
+public class SkewnessKurtosis extends Statistics {
+
+    /** Boolean indicating if the final result is the skewness of the data, otherwise the kurtosis is returned */
+    private final boolean skewness;
+
+    /** Accumulator of the central moments */
+    private final MomentAccumulator moments = new MomentAccumulator(true);
+
+    SkewnessKurtosis(boolean skewness) {
+        this.skewness = skewness;
+        if (skewness) {
+            this.type = StatsType.SKEWNESS;
+        } else {
+            this.type = StatsType.KURTOSIS;
+        }
+    }
+
+    @Override
+    public void addSample(double sample) {
+        moments.add(sample);
+        samples++;
+    }
+
+    @Override
+    protected synchronized void accumulateStats(Statistics stats) {
+        checkSameStats(stats);
+        SkewnessKurtosis other = (SkewnessKurtosis) stats;
+        samples += other.samples;
+        moments.merge(other.moments);
+    }
+
+    @Override
+    public Object getResult() {
+        if (skewness) {
+            return moments.getSkewness();
+        } else {
+            return moments.getKurtosis();
+        }
+    }
+
+    @Override
+    protected void clearStats() {
+        moments.clear();
+        this.samples = 0;
+    }
+
+    @Override
+    public Long getNumSamples() {
+        return Long.valueOf(samples);
+    }
+}
@@ -39,7 +39,10 @@ public abstract class Statistics {
         DEV_STD(6),
         HISTOGRAM(7),
         MODE(8),
-        MEDIAN(9);
+        MEDIAN(9),
+        QUANTILE(10),
+        SKEWNESS(11),
+        KURTOSIS(12);
 
         private int id;
 
@@ -50,6 +53,14 @@ public abstract class Statistics {
         public int getStatsId() {
             return id;
         }
+
+        /**
+         * Returns true if this statistic is created by {@link StatsFactory#createSimpleStatisticsObjectFromInt(int)} and does not require the
+         * minimum/maximum bounds and the number of bins.
+         */
+        public boolean isSimple() {
+            return id <= DEV_STD.id || this == SKEWNESS || this == KURTOSIS;
+        }
     }
 
     /** Statistics property name */
@@ -83,12 +94,33 @@ public abstract class Statistics {
      */
     public abstract void addSample(double sample);
 
+    /**
+     * This method adds an integral value, taken from a byte or unsigned short image, to the statistics. Subclasses can override it for
+     * avoiding the conversion to double.
+     * 
+     * @param sample sample value used for updating statistics
+     */
+    public void addIntegralSample(int sample) {
+        addSample(sample);
+    }
+
     /** This method is used for accumulating the statistics from another Statistics object 
      * 
      * @param stats Statistics object to add to the current object
      */
     protected abstract void accumulateStats(Statistics stats);
 
+    /**
+     * Accumulates the statistics of another Statistics object inside the target one; used by the operations merging partial statistics outside
+     * this package.
+     * 
+     * @param target Statistics object updated
+     * @param stats Statistics object to add to the target
+     */
+    public static void accumulate(Statistics target, Statistics stats) {
+        target.accumulateStats(stats);
+    }
+
     /** This method returns the statistic result */
     public abstract Object getResult();
     
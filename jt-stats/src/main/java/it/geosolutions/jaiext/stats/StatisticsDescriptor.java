@@ -24,6 +24,8 @@ import java.awt.Rectangle;
 import java.awt.RenderingHints;
 import java.awt.image.RenderedImage;
 import java.awt.image.renderable.ParameterBlock;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 
 import javax.media.jai.JAI;
 import javax.media.jai.OperationDescriptorImpl;
@@ -109,6 +111,9 @@ class StatisticsPropertyGenerator extends PropertyGeneratorImpl {
  * <li>Histogram</li>
  * <li>Mode</li>
  * <li>Median</li>
+ * <li>Quantile</li>
+ * <li>Skewness</li>
+ * <li>Kurtosis</li>
  * </ul>
  * </p>
  * 
@@ -194,6 +199,9 @@ class StatisticsPropertyGenerator extends PropertyGeneratorImpl {
  * <td>arg9Desc</td>
  * <td>Array indicating the number of bins for each statistic types (if needed).</td>
  * </tr>
+ * <td>arg10Desc</td>
+ * <td>Array indicating the quantiles to approximate, between 0 and 1 (if needed).</td>
+ * </tr>
  * </table>
  * </p>
  * 
@@ -246,6 +254,10 @@ class StatisticsPropertyGenerator extends PropertyGeneratorImpl {
  * <td>int[]</td>
  * <td>null</td>
  * <tr>
+ * <td>quantiles</td>
+ * <td>double[]</td>
+ * <td>{0.25, 0.5, 0.75}</td>
+ * <tr>
  * </table>
  * </p>
  * 
@@ -276,24 +288,27 @@ public class StatisticsDescriptor extends OperationDescriptorImpl {
             { "arg8Desc",
                     "Array indicating the maximum bounds for each statistic types (if needed)" },
             { "arg9Desc",
-                    "Array indicating the number of bins for each statistic types (if needed)" } };
+                    "Array indicating the number of bins for each statistic types (if needed)" },
+            { "arg10Desc",
+                    "Array indicating the quantiles to approximate, between 0 and 1 (if needed)" } };
 
     /** The parameter class list for this operation. */
     private static final Class[] paramClasses = { java.lang.Integer.class, java.lang.Integer.class,
             javax.media.jai.ROI.class, it.geosolutions.jaiext.range.Range.class,
             java.lang.Boolean.class, int[].class,
             it.geosolutions.jaiext.stats.Statistics.StatsType[].class, double[].class,
-            double[].class, int[].class, };
+            double[].class, int[].class, double[].class };
 
     /** The parameter name list for this operation. */
     private static final String[] paramNames = { "xPeriod", "yPeriod", "ROI", "noData",
-            "useRoiAccessor", "bands", "stats", "lowValue", "highValue", "numBins" };
+            "useRoiAccessor", "bands", "stats", "lowValue", "highValue", "numBins", "quantiles" };
 
     /** The parameter default value list for this operation. */
     private static final Object[] paramDefaults = { 1, 1, null, null, false, new int[] { 0 }, null,
         new double[] {0.0},
         new double[] {256.0},
-        new int[] {256}};
+        new int[] {256},
+        Quantile.DEFAULT_QUANTILES};
 
     public StatisticsDescriptor() {
         super(resources, 1, paramClasses, paramNames, paramDefaults);
@@ -339,6 +354,41 @@ public class StatisticsDescriptor extends OperationDescriptorImpl {
     public static RenderedOp create(RenderedImage source0, int xPeriod, int yPeriod, ROI roi,
             Range noData, boolean useRoiAccessor, int[] bands, StatsType[] stats,
             double[] minBounds, double[] maxBounds, int[] numBins, RenderingHints hints) {
+        return create(source0, xPeriod, yPeriod, roi, noData, useRoiAccessor, bands, stats,
+                minBounds, maxBounds, numBins, null, hints);
+    }
+
+    /**
+     * Performs a statistical operation on an image defined by its "stats type" parameter.
+     * 
+     * <p>
+     * Creates a <code>ParameterBlockJAI</code> from all supplied arguments except <code>hints</code> and invokes
+     * {@link JAI#create(String,ParameterBlock,RenderingHints)}.
+     * 
+     * @see JAI
+     * @see ParameterBlockJAI
+     * @see RenderedOp
+     * 
+     * @param source0 <code>RenderedImage</code> source 0.
+     * @param xPeriod Horizontal subsampling.
+     * @param yPeriod Vertical subsampling.
+     * @param ROI Roi object on which the calculation are performed.
+     * @param NoData No Data range used for calculation.
+     * @param useRoiAccessor Boolean indicating if ROI RasterAccessor must be used.
+     * @param bands Array indicating which band to consider.
+     * @param stats Array indicating which statistics to consider.
+     * @param minBounds Array indicating the minimum bounds for each statistic types .
+     * @param maxBounds Array indicating the maximum bounds for each statistic types.
+     * @param numBins Array indicating the number of bins for each statistic types.
+     * @param quantiles Array indicating the quantiles approximated by the Quantile statistic.
+     * @param hints The <code>RenderingHints</code> to use.
+     * @return The <code>RenderedOp</code> destination.
+     * @throws IllegalArgumentException if <code>source0</code> is <code>null</code>.
+     */
+    public static RenderedOp create(RenderedImage source0, int xPeriod, int yPeriod, ROI roi,
+            Range noData, boolean useRoiAccessor, int[] bands, StatsType[] stats,
+            double[] minBounds, double[] maxBounds, int[] numBins, double[] quantiles,
+            RenderingHints hints) {
         // Creation of a parameterBlockJAI containing all the operation parameters
         ParameterBlockJAI pb = new ParameterBlockJAI("Stats", RenderedRegistryMode.MODE_NAME);
         // Source image
@@ -358,6 +408,9 @@ public class StatisticsDescriptor extends OperationDescriptorImpl {
         } else if (minBounds != null || maxBounds != null || numBins != null) {
             throw new IllegalArgumentException("bounds and bins must be declared together");
         }
+        if (quantiles != null) {
+            pb.setParameter("quantiles", quantiles);
+        }
         // RenderedImage creation
         return JAI.create("Stats", pb, hints);
     }
@@ -392,4 +445,43 @@ public class StatisticsDescriptor extends OperationDescriptorImpl {
                 null, null, hints);
     }
 
+    /**
+     * Starts the asynchronous calculation of the statistics of an image, without blocking the calling thread. The statistics are calculated
+     * as described in {@link #create(RenderedImage, int, int, ROI, Range, boolean, int[], StatsType[], double[], double[], int[], double[],
+     * RenderingHints)}, using the selected subsampling and number of threads.
+     * 
+     * @param source0 <code>RenderedImage</code> source 0.
+     * @param xPeriod Horizontal subsampling.
+     * @param yPeriod Vertical subsampling.
+     * @param ROI Roi object on which the calculation are performed.
+     * @param NoData No Data range used for calculation.
+     * @param useRoiAccessor Boolean indicating if ROI RasterAccessor must be used.
+     * @param bands Array indicating which band to consider.
+     * @param stats Array indicating which statistics to consider.
+     * @param minBounds Array indicating the minimum bounds for each statistic types, may be null for the simple statistics.
+     * @param maxBounds Array indicating the maximum bounds for each statistic types, may be null for the simple statistics.
+     * @param numBins Array indicating the number of bins for each statistic types, may be null for the simple statistics.
+     * @param quantiles Array indicating the quantiles approximated by the Quantile statistic, may be null.
+     * @param parallelism Number of tasks analyzing the tiles.
+     * @param listener Listener notified after each analyzed tile, may be null.
+     * @param executor Executor running the tasks, or null for using a pool shared by all the requests.
+     * @param hints The <code>RenderingHints</code> to use.
+     * @return The {@link Future} statistics, which can be cancelled.
+     */
+    public static Future<Statistics[][]> computeStatistics(RenderedImage source0, int xPeriod,
+            int yPeriod, ROI roi, Range noData, boolean useRoiAccessor, int[] bands,
+            StatsType[] stats, double[] minBounds, double[] maxBounds, int[] numBins,
+            double[] quantiles, int parallelism, StatisticsProgressListener listener,
+            Executor executor, RenderingHints hints) {
+        RenderedOp op = create(source0, xPeriod, yPeriod, roi, noData, useRoiAccessor, bands,
+                stats, minBounds, maxBounds, numBins, quantiles, hints);
+        RenderedImage rendering = op.getRendering();
+        if (!(rendering instanceof StatisticsOpImage)) {
+            throw new IllegalArgumentException("The Stats operation is not rendered by a "
+                    + StatisticsOpImage.class.getSimpleName());
+        }
+        return ((StatisticsOpImage) rendering).computeStatistics(parallelism, listener,
+                executor);
+    }
+
 }
@@ -21,14 +21,21 @@ import it.geosolutions.jaiext.iterators.RandomIterFactory;
 import it.geosolutions.jaiext.range.Range;
 import it.geosolutions.jaiext.stats.Statistics.StatsType;
 
+import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.awt.image.renderable.ParameterBlock;
 import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Future;
 import java.util.concurrent.atomic.AtomicBoolean;
 
 import javax.media.jai.BorderExtender;
@@ -38,6 +45,7 @@ import javax.media.jai.OpImage;
 import javax.media.jai.PlanarImage;
 import javax.media.jai.ROI;
 import javax.media.jai.RasterAccessor;
+import javax.media.jai.RasterFormatTag;
 import javax.media.jai.RenderedOp;
 import javax.media.jai.iterator.RandomIter;
 
@@ -48,7 +56,11 @@ import com.sun.media.jai.util.PropertyUtil;
  * {@link SimpleStatsOpImage} and {@link ComplexStatsOpImage}. The first one is used for calculating simple statistics which does not requests the use
  * of an array for saving all the values, instead of the second class which stores the statistics on an array and then performs the final computations
  * when the result is requested. The 2 subclasses must only update their constructor for adding a control on which kind of statistics are calculated
- * and defining the computeTile() method which is used for calculating the statistics for each tile.
+ * and defining the createTileStatistics() method which is used for creating the statistics of each tile.
+ * 
+ * The statistics of the most recently used tiles are kept as partial results, up to {@link #setMaxCachedPartials(int)} tiles, so that the
+ * statistics of a sub-region of the image can be calculated by {@link #getStatistics(Rectangle)} by accumulating the partial results of the
+ * tiles it covers, calculating only the tiles which are not completely covered or whose partial results were discarded. A region can be invalidated with {@link #invalidate(Rectangle)}: only its tiles are calculated again.
  */
 public abstract class StatisticsOpImage extends OpImage {
 
@@ -116,6 +128,26 @@ public abstract class StatisticsOpImage extends OpImage {
     /** Extended ROI image*/
     protected RenderedOp srcROIImgExt;
 
+    /** Default maximum number of tile partial statistics kept */
+    public static final int DEFAULT_MAX_CACHED_PARTIALS = 1024;
+
+    /** Boolean indicating if the partial statistics of each tile are kept */
+    protected boolean cachePartials = true;
+
+    /** Maximum number of tile partial statistics kept, the least recently used are discarded and calculated again when requested */
+    protected volatile int maxCachedPartials = DEFAULT_MAX_CACHED_PARTIALS;
+
+    /** Partial statistics of the most recently used tiles, keyed by the tile index, guarded by itself */
+    private final Map<Long, Statistics[][]> tilePartials = new LinkedHashMap<Long, Statistics[][]>(
+            16, 0.75f, true) {
+        protected boolean removeEldestEntry(Map.Entry<Long, Statistics[][]> eldest) {
+            return size() > maxCachedPartials;
+        }
+    };
+
+    /** Indexes of the tiles already accumulated inside the global statistics, guarded by this image */
+    private final Set<Long> accumulatedTiles = new HashSet<Long>();
+
     public StatisticsOpImage(RenderedImage source,
             int xPeriod, int yPeriod, ROI roi, Range noData, boolean useROIAccessor, int[] bands,
             StatsType[] statsTypes, double[] minBound, double[] maxBound, int[] numBins) {
@@ -270,12 +302,41 @@ public abstract class StatisticsOpImage extends OpImage {
      * This method is used if the user needs to perform again the statistical calculations.
      */
     public synchronized void clearStatistic() {
+        // The partial statistics are removed too
+        synchronized (tilePartials) {
+            tilePartials.clear();
+        }
+        resetStatistics();
+    }
+
+    /**
+     * Removes the partial statistics of the tiles intersecting the selected region, which are calculated again at the next request. The other
+     * tiles are not calculated again.
+     * 
+     * @param region region of the image to calculate again
+     */
+    public synchronized void invalidate(Rectangle region) {
+        Rectangle area = region.intersection(getBounds());
+        if (!area.isEmpty()) {
+            Point[] tiles = getTileIndices(area);
+            synchronized (tilePartials) {
+                for (int i = 0; i < tiles.length; i++) {
+                    tilePartials.remove(tileKey(tiles[i].x, tiles[i].y));
+                }
+            }
+        }
+        resetStatistics();
+    }
+
+    /** Clears the global statistics, which are calculated again at the next request */
+    private void resetStatistics() {
         // Filling of the container
         for (int i = 0; i < stats.length; i++) {
             for (int j = 0; j < statNum; j++) {
                 stats[i][j].clearStats();
             }
         }
+        accumulatedTiles.clear();
         // Setting the calculations to be performed
         firstTime.getAndSet(true);
     }
@@ -298,15 +359,301 @@ public abstract class StatisticsOpImage extends OpImage {
      */
     public Raster[] getTiles() {
         if (firstTime.getAndSet(false)) {
-            if (hasROI) {
-                return getTiles(getTileIndices(roiBounds));
+            Point[] indices = getTileIndices(getStatisticsBounds());
+            if (indices == null) {
+                return null;
+            }
+            Raster[] tiles = null;
+            // The first time the tiles are calculated by JAI, later the statistics are built
+            // from the partial results of the tiles
+            if (!hasCachedPartials()) {
+                tiles = getTiles(indices);
+            }
+            // The tiles not calculated, e.g. because they were taken from the tile cache, are added
+            for (int i = 0; i < indices.length; i++) {
+                computeStatisticsTile(indices[i].x, indices[i].y);
             }
-            return getTiles(getTileIndices(getBounds()));
+            return tiles;
         } else {
             return null;
         }
     }
 
+    /**
+     * Starts the asynchronous calculation of the statistics, returned by the {@link Future} as the {@link Statistics#STATS_PROPERTY} property.
+     * The tiles are analyzed by the selected number of threads of a pool shared by all the requests, without using the JAI tile scheduler; the
+     * tiles already analyzed are not calculated again. Cancelling the {@link Future} stops the calculation after the tiles currently analyzed: the
+     * completed tiles are kept and are not calculated again by the next request.
+     * 
+     * @param parallelism number of threads analyzing the tiles
+     * @param listener listener notified after each analyzed tile, may be null
+     * @return the {@link Future} statistics
+     */
+    public Future<Statistics[][]> computeStatistics(int parallelism,
+            StatisticsProgressListener listener) {
+        return computeStatistics(parallelism, listener, null);
+    }
+
+    /**
+     * Starts the asynchronous calculation of the statistics as described in {@link #computeStatistics(int, StatisticsProgressListener)}, running
+     * the calculation tasks with the selected {@link Executor}.
+     * 
+     * @param parallelism number of tasks analyzing the tiles
+     * @param listener listener notified after each analyzed tile, may be null
+     * @param executor executor running the tasks, or null for using the shared pool
+     * @return the {@link Future} statistics
+     */
+    public Future<Statistics[][]> computeStatistics(int parallelism,
+            StatisticsProgressListener listener, Executor executor) {
+        StatisticsRequest request = new StatisticsRequest(this,
+                getTileIndices(getStatisticsBounds()), parallelism, listener);
+        request.start(executor);
+        return request;
+    }
+
+    /** Calculates the statistics of the selected tile, if not already accumulated inside the global statistics */
+    void computeStatisticsTile(int tileX, int tileY) {
+        synchronized (this) {
+            if (accumulatedTiles.contains(tileKey(tileX, tileY))) {
+                return;
+            }
+        }
+        accumulateTile(tileX, tileY, getTilePartial(tileX, tileY));
+    }
+
+    /** Returns the global statistics after all the tiles have been analyzed by an asynchronous request */
+    Statistics[][] getCompletedStatistics() {
+        firstTime.set(false);
+        return stats.clone();
+    }
+
+    /**
+     * Calculates the statistics of the source tile and accumulates them inside the global statistics.
+     * 
+     * @param tileX The X index of the tile.
+     * @param tileY The Y index of the tile.
+     * @return The tile as a <code>Raster</code>.
+     */
+    public Raster computeTile(int tileX, int tileY) {
+        Raster source = getSourceImage(0).getTile(tileX, tileY);
+        Statistics[][] partial = getCachedPartial(tileX, tileY);
+        if (partial == null) {
+            partial = computeTilePartial(source, tileX, tileY);
+        }
+        accumulateTile(tileX, tileY, partial);
+        return source;
+    }
+
+    /**
+     * Returns the statistics of the selected region of the image. The partial statistics of the tiles completely covered by the region are
+     * reused, or calculated and kept if not present; the tiles partially covered are calculated only on the covered area. The global statistics
+     * are not modified.
+     * 
+     * @param region region of the image to analyze
+     * @return the statistics for the selected bands and statistic types
+     */
+    public Statistics[][] getStatistics(Rectangle region) {
+        Statistics[][] result = createTileStatistics();
+        Rectangle area = region.intersection(getStatisticsBounds());
+        if (area.isEmpty()) {
+            return result;
+        }
+        PlanarImage sourceImage = getSourceImage(0);
+        Point[] tiles = getTileIndices(area);
+        if (tiles == null) {
+            return result;
+        }
+        for (int i = 0; i < tiles.length; i++) {
+            int tileX = tiles[i].x;
+            int tileY = tiles[i].y;
+            Rectangle tileRect = sourceImage.getBounds().intersection(getTileRect(tileX, tileY));
+            Statistics[][] partial;
+            if (area.contains(tileRect)) {
+                partial = getTilePartial(tileX, tileY);
+            } else {
+                // Calculation on the covered area, aligned to the sampling grid of the tile
+                Rectangle clip = tileRect.intersection(area);
+                int dx = (clip.x - tileRect.x) % xPeriod;
+                if (dx != 0) {
+                    clip.x += xPeriod - dx;
+                    clip.width -= xPeriod - dx;
+                }
+                int dy = (clip.y - tileRect.y) % yPeriod;
+                if (dy != 0) {
+                    clip.y += yPeriod - dy;
+                    clip.height -= yPeriod - dy;
+                }
+                if (clip.width <= 0 || clip.height <= 0
+                        || xPeriod > getTileWidth() || yPeriod > getTileHeight()) {
+                    continue;
+                }
+                partial = computeStatistics(sourceImage.getTile(tileX, tileY), clip);
+            }
+            accumulate(result, partial);
+        }
+        return result;
+    }
+
+    /**
+     * Creates the empty statistics used for calculating a single tile, with the same parameters of the global statistics.
+     */
+    protected abstract Statistics[][] createTileStatistics();
+
+    /** Returns the partial statistics of the selected tile, calculating them if not present */
+    private Statistics[][] getTilePartial(int tileX, int tileY) {
+        Statistics[][] partial = getCachedPartial(tileX, tileY);
+        if (partial == null) {
+            partial = computeTilePartial(getSourceImage(0).getTile(tileX, tileY), tileX, tileY);
+        }
+        return partial;
+    }
+
+    /** Calculates the partial statistics of the selected tile and keeps them if requested */
+    private Statistics[][] computeTilePartial(Raster source, int tileX, int tileY) {
+        Statistics[][] partial;
+        // Control if the Period is bigger than the tile dimension, in that case, the
+        // statistics are not updated
+        if (xPeriod > getTileWidth() || yPeriod > getTileHeight()) {
+            partial = createTileStatistics();
+        } else {
+            Rectangle srcRect = getSourceImage(0).getBounds().intersection(source.getBounds());
+            partial = computeStatistics(source, srcRect);
+        }
+        if (cachePartials && maxCachedPartials > 0) {
+            synchronized (tilePartials) {
+                tilePartials.put(tileKey(tileX, tileY), partial);
+            }
+        }
+        return partial;
+    }
+
+    /** Returns the kept partial statistics of the selected tile, or null if they are not present */
+    private Statistics[][] getCachedPartial(int tileX, int tileY) {
+        synchronized (tilePartials) {
+            return tilePartials.get(tileKey(tileX, tileY));
+        }
+    }
+
+    /** Indicates if the partial statistics of any tile are kept */
+    private boolean hasCachedPartials() {
+        synchronized (tilePartials) {
+            return !tilePartials.isEmpty();
+        }
+    }
+
+    /**
+     * Sets the maximum number of tile partial statistics kept; the least recently used ones are discarded and calculated again when requested.
+     * 
+     * @param maxCachedPartials maximum number of kept partial statistics, 0 for not keeping them
+     */
+    public void setMaxCachedPartials(int maxCachedPartials) {
+        if (maxCachedPartials < 0) {
+            throw new IllegalArgumentException("The maximum number of cached partials cannot be negative");
+        }
+        this.maxCachedPartials = maxCachedPartials;
+        synchronized (tilePartials) {
+            Iterator<Long> keys = tilePartials.keySet().iterator();
+            while (tilePartials.size() > maxCachedPartials && keys.hasNext()) {
+                keys.next();
+                keys.remove();
+            }
+        }
+    }
+
+    /** Accumulates the partial statistics of the tile inside the global ones, if not already accumulated (SYNCHRONIZED) */
+    private synchronized void accumulateTile(int tileX, int tileY, Statistics[][] partial) {
+        if (accumulatedTiles.add(tileKey(tileX, tileY))) {
+            accumulate(stats, partial);
+        }
+    }
+
+    /** Accumulates the partial statistics inside the target ones */
+    private void accumulate(Statistics[][] target, Statistics[][] partial) {
+        // Cycle on the selected Bands
+        for (int i = 0; i < selectedBands; i++) {
+            for (int j = 0; j < statNum; j++) {
+                // Accumulation for the selected band and the selected statistic
+                target[i][j].accumulateStats(partial[i][j]);
+            }
+        }
+    }
+
+    /**
+     * Calculates the statistics of the selected area of the source raster.
+     * 
+     * @param source source raster
+     * @param srcRect area to analyze, contained inside the raster
+     * @return the statistics of the area
+     */
+    protected Statistics[][] computeStatistics(Raster source, Rectangle srcRect) {
+        // Creation of local objects containing the same statistics as the initials
+        Statistics[][] statArray = createTileStatistics();
+
+        // selection of the format tags
+        RasterFormatTag[] formatTags = getFormatTags();
+        // creation of the RasterAccessor
+        RasterAccessor src = new RasterAccessor(source, srcRect, formatTags[0], getSourceImage(0)
+                .getColorModel());
+
+        // ROI calculations if roiAccessor is used
+        RasterAccessor roi = null;
+        RandomIter roiIter = null;
+        if (useROIAccessor) {
+            // Note that the getExtendedData() method is not called because the input images are padded.
+            // For each image there is a check if the rectangle is contained inside the source image;
+            // if this not happen, the data is taken from the padded image.
+            Raster roiRaster = null;
+            if(srcROIImage.getBounds().contains(srcRect)){
+                roiRaster = srcROIImage.getData(srcRect);
+            }else{
+                roiRaster = srcROIImgExt.getData(srcRect);
+            }
+
+            // creation of the rasterAccessor
+            roi = new RasterAccessor(roiRaster, srcRect, RasterAccessor.findCompatibleTags(
+                    new RenderedImage[] { srcROIImage }, srcROIImage)[0],
+                    srcROIImage.getColorModel());
+        } else if(hasROI) {
+            roiIter = RandomIterFactory.create(srcROIImage, srcROIImage.getBounds(), true, true);
+        }
+
+        // Computation of the statistics
+        switch (src.getDataType()) {
+        case DataBuffer.TYPE_BYTE:
+            byteLoop(src, srcRect, roi, statArray, roiIter);
+            break;
+        case DataBuffer.TYPE_USHORT:
+            ushortLoop(src, srcRect, roi, statArray, roiIter);
+            break;
+        case DataBuffer.TYPE_SHORT:
+            shortLoop(src, srcRect, roi, statArray, roiIter);
+            break;
+        case DataBuffer.TYPE_INT:
+            intLoop(src, srcRect, roi, statArray, roiIter);
+            break;
+        case DataBuffer.TYPE_FLOAT:
+            floatLoop(src, srcRect, roi, statArray, roiIter);
+            break;
+        case DataBuffer.TYPE_DOUBLE:
+            doubleLoop(src, srcRect, roi, statArray, roiIter);
+            break;
+        }
+        return statArray;
+    }
+
+    /** Returns the bounds of the image area to analyze */
+    private Rectangle getStatisticsBounds() {
+        if (hasROI) {
+            return roiBounds.intersection(getBounds());
+        }
+        return getBounds();
+    }
+
+    /** Returns the key associated to the selected tile */
+    private static Long tileKey(int tileX, int tileY) {
+        return Long.valueOf(((long) tileX << 32) | (tileY & 0xffffffffL));
+    }
+
     /**
      * Get the specified property.
      * <p>
@@ -373,7 +720,7 @@ public abstract class StatisticsOpImage extends OpImage {
                         int sample = srcData[bands[i]][posx + posy + srcBandOffsets[bands[i]]] & 0xFF;
                         for (int j = 0; j < statNum; j++) {
                             // Update of all the statistics
-                            statArray[i][j].addSample(sample);
+                            statArray[i][j].addIntegralSample(sample);
                         }
                     }
                 }
@@ -403,7 +750,7 @@ public abstract class StatisticsOpImage extends OpImage {
                                 int sample = srcData[bands[i]][posx + posy + srcBandOffsets[bands[i]]] & 0xFF;
                                 for (int j = 0; j < statNum; j++) {
                                     // Update of all the statistics
-                                    statArray[i][j].addSample(sample);
+                                    statArray[i][j].addIntegralSample(sample);
                                 }
                             }
                         }
@@ -432,7 +779,7 @@ public abstract class StatisticsOpImage extends OpImage {
                                     int sample = srcData[bands[i]][posx + posy + srcBandOffsets[bands[i]]] & 0xFF;
                                     for (int j = 0; j < statNum; j++) {
                                         // Update of all the statistics
-                                        statArray[i][j].addSample(sample);
+                                        statArray[i][j].addIntegralSample(sample);
                                     }
                                 }
                             }
@@ -457,7 +804,7 @@ public abstract class StatisticsOpImage extends OpImage {
                         if (booleanLookupTable[sample]) {
                             for (int j = 0; j < statNum; j++) {
                                 // Update of all the statistics
-                                statArray[i][j].addSample(sample);
+                                statArray[i][j].addIntegralSample(sample);
                             }
                         }
                     }
@@ -490,7 +837,7 @@ public abstract class StatisticsOpImage extends OpImage {
                                 if (booleanLookupTable[sample]) {
                                     for (int j = 0; j < statNum; j++) {
                                         // Update of all the statistics
-                                        statArray[i][j].addSample(sample);
+                                        statArray[i][j].addIntegralSample(sample);
                                     }
                                 }
                             }
@@ -522,7 +869,7 @@ public abstract class StatisticsOpImage extends OpImage {
                                     if (booleanLookupTable[sample]) {
                                         for (int j = 0; j < statNum; j++) {
                                             // Update of all the statistics
-                                            statArray[i][j].addSample(sample);
+                                            statArray[i][j].addIntegralSample(sample);
                                         }
                                     }
                                 }
@@ -580,7 +927,7 @@ public abstract class StatisticsOpImage extends OpImage {
                         int sample = srcData[bands[i]][posx + posy + srcBandOffsets[bands[i]]] & 0xFFFF;
                         for (int j = 0; j < statNum; j++) {
                             // Update of all the statistics
-                            statArray[i][j].addSample(sample);
+                            statArray[i][j].addIntegralSample(sample);
                         }
                     }
                 }
@@ -611,7 +958,7 @@ public abstract class StatisticsOpImage extends OpImage {
                                         + srcBandOffsets[bands[i]]] & 0xFFFF;
                                 for (int j = 0; j < statNum; j++) {
                                     // Update of all the statistics
-                                    statArray[i][j].addSample(sample);
+                                    statArray[i][j].addIntegralSample(sample);
                                 }
                             }
                         }
@@ -641,7 +988,7 @@ public abstract class StatisticsOpImage extends OpImage {
                                             + srcBandOffsets[bands[i]]] & 0xFFFF;
                                     for (int j = 0; j < statNum; j++) {
                                         // Update of all the statistics
-                                        statArray[i][j].addSample(sample);
+                                        statArray[i][j].addIntegralSample(sample);
                                     }
                                 }
                             }
@@ -667,7 +1014,7 @@ public abstract class StatisticsOpImage extends OpImage {
                         if (isData) {
                             for (int j = 0; j < statNum; j++) {
                                 // Update of all the statistics
-                                statArray[i][j].addSample(sample);
+                                statArray[i][j].addIntegralSample(sample);
                             }
                         }
                     }
@@ -702,7 +1049,7 @@ public abstract class StatisticsOpImage extends OpImage {
                                 if (isData) {
                                     for (int j = 0; j < statNum; j++) {
                                         // Update of all the statistics
-                                        statArray[i][j].addSample(sample);
+                                        statArray[i][j].addIntegralSample(sample);
                                     }
                                 }
                             }
@@ -736,7 +1083,7 @@ public abstract class StatisticsOpImage extends OpImage {
                                     if (isData) {
                                         for (int j = 0; j < statNum; j++) {
                                             // Update of all the statistics
-                                            statArray[i][j].addSample(sample);
+                                            statArray[i][j].addIntegralSample(sample);
                                         }
                                     }
                                 }
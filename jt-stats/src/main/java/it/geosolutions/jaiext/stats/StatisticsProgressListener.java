@@ -0,0 +1,34 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.stats;
+
+/**
+ * Listener notified about the progress of an asynchronous statistics calculation started with
+ * {@link StatisticsOpImage#computeStatistics(int, StatisticsProgressListener)}. The notifications are done by the calculation threads, so the
+ * implementations must be thread-safe.
+ */
+public interface StatisticsProgressListener {
+
+    /**
+     * Notifies that a tile has been analyzed.
+     * 
+     * @param completedTiles number of tiles already analyzed
+     * @param totalTiles number of tiles to analyze
+     */
+    public void progress(int completedTiles, int totalTiles);
+}
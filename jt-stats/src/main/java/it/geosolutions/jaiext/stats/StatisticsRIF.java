@@ -58,7 +58,7 @@ public class StatisticsRIF implements RenderedImageFactory {
         boolean isSimpleStat = true;
 
         for (int i = 0; i < statsTypes.length; i++) {
-            if (statsTypes[i].getStatsId() > 6) {
+            if (!statsTypes[i].isSimple()) {
                 isSimpleStat = false;
                 break;
             }
@@ -73,8 +73,10 @@ public class StatisticsRIF implements RenderedImageFactory {
             double[] minBounds = (double[]) pb.getObjectParameter(7);
             double[] maxBounds = (double[]) pb.getObjectParameter(8);
             int[] numBins = (int[]) pb.getObjectParameter(9);
+            double[] quantiles = pb.getNumParameters() > 10 ? (double[]) pb.getObjectParameter(10)
+                    : null;
             return new ComplexStatsOpImage(source, xPeriod, yPeriod, roi, noData,
-                    useROIAccessor, bands, statsTypes, minBounds, maxBounds, numBins);
+                    useROIAccessor, bands, statsTypes, minBounds, maxBounds, numBins, quantiles);
         }
     }
 
@@ -0,0 +1,186 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.stats;
+
+import java.awt.Point;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Asynchronous calculation of the statistics of a {@link StatisticsOpImage}. The tiles are analyzed by a fixed number of tasks, each one
+ * taking the next tile to analyze until all the tiles are done or the request is cancelled. The tasks are run by the selected {@link Executor}
+ * or, if not defined, by a pool of daemon threads shared by all the requests. The result is the statistics array returned by the
+ * {@link Statistics#STATS_PROPERTY} property.
+ */
+final class StatisticsRequest implements Future<Statistics[][]> {
+
+    /** {@link Logger} used for Logging any excpetion or warning */
+    private static final Logger LOGGER = Logger.getLogger(StatisticsRequest.class.toString());
+
+    /** Counter used for naming the calculation threads */
+    private static final AtomicInteger THREAD_COUNTER = new AtomicInteger();
+
+    /** Pool of threads shared by the requests without an executor; the idle threads are released after a while */
+    private static final Executor SHARED_EXECUTOR = Executors.newCachedThreadPool(new ThreadFactory() {
+        public Thread newThread(Runnable r) {
+            Thread thread = new Thread(r, "JAI-EXT Statistics " + THREAD_COUNTER.incrementAndGet());
+            thread.setDaemon(true);
+            return thread;
+        }
+    });
+
+    private final StatisticsOpImage image;
+
+    private final Point[] tiles;
+
+    private final StatisticsProgressListener listener;
+
+    /** Index of the next tile to analyze */
+    private final AtomicInteger nextTile = new AtomicInteger();
+
+    /** Number of tiles analyzed */
+    private final AtomicInteger completedTiles = new AtomicInteger();
+
+    /** Latch released when all the tasks have stopped */
+    private final CountDownLatch done;
+
+    private final int parallelism;
+
+    private volatile boolean cancelled;
+
+    private volatile Throwable failure;
+
+    StatisticsRequest(StatisticsOpImage image, Point[] tiles, int parallelism,
+            StatisticsProgressListener listener) {
+        if (parallelism < 1) {
+            throw new IllegalArgumentException("Parallelism must be at least 1");
+        }
+        this.image = image;
+        this.tiles = tiles != null ? tiles : new Point[0];
+        this.listener = listener;
+        this.parallelism = Math.max(1, Math.min(parallelism, this.tiles.length));
+        this.done = new CountDownLatch(this.parallelism);
+    }
+
+    /**
+     * Starts the calculation tasks
+     * 
+     * @param executor executor running the tasks, or null for using the shared pool
+     */
+    void start(Executor executor) {
+        if (executor == null) {
+            executor = SHARED_EXECUTOR;
+        }
+        for (int i = 0; i < parallelism; i++) {
+            try {
+                executor.execute(new Runnable() {
+                    public void run() {
+                        analyzeTiles();
+                    }
+                });
+            } catch (RejectedExecutionException e) {
+                failure = e;
+                cancelled = true;
+                // The tasks not submitted are done
+                for (int j = i; j < parallelism; j++) {
+                    done.countDown();
+                }
+                return;
+            }
+        }
+    }
+
+    private void analyzeTiles() {
+        try {
+            int index;
+            while (!cancelled && (index = nextTile.getAndIncrement()) < tiles.length) {
+                image.computeStatisticsTile(tiles[index].x, tiles[index].y);
+                int completed = completedTiles.incrementAndGet();
+                if (listener != null) {
+                    try {
+                        listener.progress(completed, tiles.length);
+                    } catch (RuntimeException e) {
+                        LOGGER.log(Level.WARNING, "Exception thrown by a progress listener", e);
+                    }
+                }
+            }
+        } catch (Throwable t) {
+            failure = t;
+            cancelled = true;
+        } finally {
+            done.countDown();
+        }
+    }
+
+    public boolean cancel(boolean mayInterruptIfRunning) {
+        if (isDone()) {
+            return false;
+        }
+        cancelled = true;
+        return true;
+    }
+
+    public boolean isCancelled() {
+        return cancelled && failure == null;
+    }
+
+    public boolean isDone() {
+        // A cancelled request is done even if its tasks are completing the tiles currently analyzed
+        return cancelled || done.getCount() == 0;
+    }
+
+    public Statistics[][] get() throws InterruptedException, ExecutionException {
+        if (isCancelled()) {
+            throw new CancellationException();
+        }
+        done.await();
+        return getResult();
+    }
+
+    public Statistics[][] get(long timeout, TimeUnit unit) throws InterruptedException,
+            ExecutionException, TimeoutException {
+        if (isCancelled()) {
+            throw new CancellationException();
+        }
+        if (!done.await(timeout, unit)) {
+            throw new TimeoutException();
+        }
+        return getResult();
+    }
+
+    private Statistics[][] getResult() throws ExecutionException {
+        if (failure != null) {
+            throw new ExecutionException(failure);
+        }
+        if (cancelled) {
+            throw new CancellationException();
+        }
+        return image.getCompletedStatistics();
+    }
+}
@@ -65,6 +65,16 @@ public class StatsFactory {
         return new VarianceStd(false);
     }
 
+    /** This method returns a statistic object for calculating the Skewness of an Image */
+    public static Statistics createSkewnessObject() {
+        return new SkewnessKurtosis(true);
+    }
+
+    /** This method returns a statistic object for calculating the excess Kurtosis of an Image */
+    public static Statistics createKurtosisObject() {
+        return new SkewnessKurtosis(false);
+    }
+
     /** This method returns a statistic object for calculating the Histogram of an Image */
     public static Statistics createHistogramObject(int numBins, double minBound, double maxBound) {
         return new HistogramMode(numBins, minBound, maxBound, true);
@@ -80,6 +90,12 @@ public class StatsFactory {
         return new Median(minBound, maxBound);
     }
 
+    /** This method returns a statistic object for approximating the selected quantiles of an Image */
+    public static Statistics createQuantileObject(double minBound, double maxBound,
+            double[] quantiles) {
+        return new Quantile(minBound, maxBound, quantiles);
+    }
+
     /** This method returns the simple statistic object associated to the Id returned */
     public static Statistics createSimpleStatisticsObjectFromInt(int value) {
         // Selection of the related StatsType
@@ -100,6 +116,10 @@ public class StatsFactory {
             return createVarianceObject();
         case DEV_STD:
             return createDevStdObject();
+        case SKEWNESS:
+            return createSkewnessObject();
+        case KURTOSIS:
+            return createKurtosisObject();
         default:
             throw new IllegalArgumentException("Wrong StatsType object selected");
         }
@@ -108,6 +128,15 @@ public class StatsFactory {
     /** This method returns the complex statistic object associated to the Id returned */
     public static Statistics createComplexStatisticsObjectFromInt(int value, double minBound,
             double maxBound, int numBins) {
+        return createComplexStatisticsObjectFromInt(value, minBound, maxBound, numBins, null);
+    }
+
+    /**
+     * This method returns the complex statistic object associated to the Id returned, using the selected quantiles for the
+     * {@link StatsType#QUANTILE} statistic
+     */
+    public static Statistics createComplexStatisticsObjectFromInt(int value, double minBound,
+            double maxBound, int numBins, double[] quantiles) {
         // Selection of the related StatsType
         StatsType type = StatsType.values()[value];
         // Creation of the statistical object
@@ -118,6 +147,8 @@ public class StatsFactory {
             return createModeObject(numBins, minBound, maxBound);
         case MEDIAN:
             return createMedianObject(minBound, maxBound);
+        case QUANTILE:
+            return createQuantileObject(minBound, maxBound, quantiles);
         default:
             throw new IllegalArgumentException("Wrong StatsType object selected");
         }
@@ -19,23 +19,20 @@ package it.geosolutions.jaiext.stats;
 
 /**
  * This subclass of {@link Statistics} is used for calculating the variance or the standard deviation of an image. These 2 operations are almost the
- * same, the difference is only at the final step when the second is returned by calculating the square root of the first parameter.
+ * same, the difference is only at the final step when the second is returned by calculating the square root of the first parameter. The variance is
+ * calculated in a single pass with the Welford algorithm, which does not lose precision like the difference between the sum of the squared samples
+ * and the squared sum, and the partial results are accumulated with the pairwise formulas of Chan et al.
  */
 public class VarianceStd extends Statistics {
 
     /** Boolean indicating if the final result is the variance the data, otherwise the standard deviation is returned */
     private boolean variance;
 
-    /** Internal variable storing the sum of all samples */
-    private double sumValues;
-
-    /** Internal variable storing the sum of all the squared samples */
-    private double sumSqrtValues;
+    /** Accumulator of the central moments */
+    private final MomentAccumulator moments = new MomentAccumulator(false);
 
     VarianceStd(boolean variance) {
         this.variance = variance;
-        this.sumValues = 0;
-        this.sumSqrtValues = 0;
         this.samples = 0;
         if (variance) {
             this.type = StatsType.VARIANCE;
@@ -44,20 +41,9 @@ public class VarianceStd extends Statistics {
         }
     }
 
-    /** This method returns the current state of the internal sum of the samples */
-    private double getSumValues() {
-        return sumValues;
-    }
-
-    /** This method returns the current state of the internal sum of the squared samples */
-    private double getSumSqrtValues() {
-        return sumSqrtValues;
-    }
-
     @Override
     public void addSample(double sample) {
-            sumValues += sample;
-            sumSqrtValues += (sample * sample);
+            moments.add(sample);
             samples++;
     }
 
@@ -66,14 +52,12 @@ public class VarianceStd extends Statistics {
         checkSameStats(stats);
         VarianceStd vstd = (VarianceStd) stats;
         samples += vstd.getNumSamples();
-        sumValues += vstd.getSumValues();
-        sumSqrtValues += vstd.getSumSqrtValues();
+        moments.merge(vstd.moments);
     }
 
     @Override
     public Object getResult() {
-        double varianceCalculated = (sumSqrtValues - (sumValues * sumValues) / samples)
-                / (samples - 1);
+        double varianceCalculated = moments.getVariance();
         if (variance) {
             return varianceCalculated;
         } else {
@@ -83,8 +67,7 @@ public class VarianceStd extends Statistics {
 
     @Override
     protected void clearStats() {
-        this.sumValues = 0;
-        this.sumSqrtValues = 0;
+        moments.clear();
         this.samples = 0;
     }
 
@@ -26,9 +26,19 @@ import java.awt.image.RenderedImage;
 import java.util.ArrayList;
 import java.util.Collections;
 import java.util.List;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
 
 import javax.media.jai.ROI;
 import javax.media.jai.ROIShape;
+import javax.media.jai.RenderedOp;
 
 import it.geosolutions.jaiext.range.Range;
 import it.geosolutions.jaiext.range.RangeFactory;
@@ -605,6 +615,156 @@ public class CompleteStatsTest extends TestBase {
         testStatistics(sourceIMG[5], band2, roiUsed, noDataRangeUsed, useROIAccessor);
     }
 
+    // This test checks if the statistics of the image regions are calculated from the partial statistics of the tiles
+    @Test
+    public void testRegionStatistics() {
+        RenderedOp dst = StatisticsDescriptor.create(sourceIMG[0], xPeriod, yPeriod, null, null,
+                false, band1, simpleStats, null);
+        Statistics[][] global = (Statistics[][]) dst.getProperty(Statistics.STATS_PROPERTY);
+        StatisticsOpImage op = (StatisticsOpImage) dst.getRendering();
+        double sum = (Double) global[0][1].getResult();
+
+        // The whole image gives the same results of the global statistics
+        Statistics[][] whole = op.getStatistics(op.getBounds());
+        assertEquals(sum, (Double) whole[0][1].getResult(), TOLERANCE);
+        assertEquals(global[0][1].getNumSamples(), whole[0][1].getNumSamples());
+
+        // Two regions not aligned with the tiles give the same results of the whole image
+        Rectangle bounds = op.getBounds();
+        int split = bounds.x + op.getTileWidth() / 2 + 1;
+        Rectangle left = new Rectangle(bounds.x, bounds.y, split - bounds.x, bounds.height);
+        Rectangle right = new Rectangle(split, bounds.y, bounds.x + bounds.width - split,
+                bounds.height);
+        Statistics[][] leftStats = op.getStatistics(left);
+        Statistics[][] rightStats = op.getStatistics(right);
+        assertEquals(sum, (Double) leftStats[0][1].getResult()
+                + (Double) rightStats[0][1].getResult(), TOLERANCE);
+        assertEquals(global[0][1].getNumSamples().longValue(), leftStats[0][1].getNumSamples()
+                + rightStats[0][1].getNumSamples());
+        assertEquals((long) left.width * left.height, leftStats[0][1].getNumSamples()
+                .longValue());
+
+        // After invalidating a region, the statistics are calculated again with the same results
+        op.invalidate(left);
+        Statistics[][] recalculated = (Statistics[][]) op.getProperty(Statistics.STATS_PROPERTY);
+        assertEquals(sum, (Double) recalculated[0][1].getResult(), TOLERANCE);
+        assertEquals(global[0][1].getNumSamples(), recalculated[0][1].getNumSamples());
+
+        // With a single kept partial the discarded tiles are calculated again with the same results
+        op.setMaxCachedPartials(1);
+        Statistics[][] bounded = op.getStatistics(op.getBounds());
+        assertEquals(sum, (Double) bounded[0][1].getResult(), TOLERANCE);
+        assertEquals(global[0][1].getNumSamples(), bounded[0][1].getNumSamples());
+    }
+
+    // This test checks if the asynchronous statistics are equal to the synchronous ones and if they can be cancelled
+    @Test
+    public void testAsyncStatistics() throws Exception {
+        RenderedOp dst = StatisticsDescriptor.create(sourceIMG[0], xPeriod, yPeriod, null, null,
+                false, band1, simpleStats, null);
+        Statistics[][] expected = (Statistics[][]) dst.getProperty(Statistics.STATS_PROPERTY);
+
+        final AtomicInteger progress = new AtomicInteger();
+        final AtomicInteger total = new AtomicInteger();
+        // The tasks are run by the selected executor
+        ExecutorService executor = Executors.newFixedThreadPool(2);
+        Future<Statistics[][]> future;
+        Statistics[][] result;
+        try {
+            future = StatisticsDescriptor.computeStatistics(sourceIMG[0], xPeriod, yPeriod, null,
+                    null, false, band1, simpleStats, null, null, null, null, 4,
+                    new StatisticsProgressListener() {
+                        public void progress(int completedTiles, int totalTiles) {
+                            progress.incrementAndGet();
+                            total.set(totalTiles);
+                        }
+                    }, executor, null);
+            result = future.get();
+        } finally {
+            executor.shutdown();
+        }
+        assertTrue(future.isDone());
+        assertEquals(total.get(), progress.get());
+        assertEquals((Double) expected[0][1].getResult(), (Double) result[0][1].getResult(),
+                TOLERANCE);
+        assertEquals(expected[0][1].getNumSamples(), result[0][1].getNumSamples());
+
+        // Cancellation after the first tile
+        final CountDownLatch cancelled = new CountDownLatch(1);
+        final AtomicInteger analyzed = new AtomicInteger();
+        RenderedOp dst2 = StatisticsDescriptor.create(sourceIMG[0], xPeriod, yPeriod, null,
+                null, false, band1, simpleStats, null);
+        StatisticsOpImage op = (StatisticsOpImage) dst2.getRendering();
+        Future<Statistics[][]> cancelledFuture = op.computeStatistics(1,
+                new StatisticsProgressListener() {
+                    public void progress(int completedTiles, int totalTiles) {
+                        analyzed.set(completedTiles);
+                        try {
+                            cancelled.await();
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        }
+                    }
+                });
+        assertTrue(cancelledFuture.cancel(true));
+        cancelled.countDown();
+        try {
+            cancelledFuture.get();
+            fail("The request should be cancelled");
+        } catch (CancellationException e) {
+            // expected
+        }
+        assertTrue(cancelledFuture.isCancelled());
+        assertTrue(cancelledFuture.isDone());
+        assertTrue(analyzed.get() < total.get());
+
+        // The statistics are completed by the next request
+        Statistics[][] completed = (Statistics[][]) dst2.getProperty(Statistics.STATS_PROPERTY);
+        assertEquals((Double) expected[0][1].getResult(), (Double) completed[0][1].getResult(),
+                TOLERANCE);
+        assertEquals(expected[0][1].getNumSamples(), completed[0][1].getNumSamples());
+    }
+
+    // This test checks if a request can be cancelled by its own progress listener without blocking the calculation thread
+    @Test
+    public void testCancelFromListener() throws Exception {
+        RenderedOp dst = StatisticsDescriptor.create(sourceIMG[0], xPeriod, yPeriod, null, null,
+                false, band1, simpleStats, null);
+        StatisticsOpImage op = (StatisticsOpImage) dst.getRendering();
+        final AtomicReference<Future<Statistics[][]>> reference = new AtomicReference<Future<Statistics[][]>>();
+        final CountDownLatch submitted = new CountDownLatch(1);
+        final CountDownLatch listenerDone = new CountDownLatch(1);
+        final AtomicBoolean doneInListener = new AtomicBoolean();
+        Future<Statistics[][]> future = op.computeStatistics(1, new StatisticsProgressListener() {
+            public void progress(int completedTiles, int totalTiles) {
+                if (completedTiles != 1) {
+                    return;
+                }
+                try {
+                    submitted.await();
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                    return;
+                }
+                Future<Statistics[][]> self = reference.get();
+                self.cancel(false);
+                doneInListener.set(self.isDone());
+                listenerDone.countDown();
+            }
+        });
+        reference.set(future);
+        submitted.countDown();
+        assertTrue(listenerDone.await(10, TimeUnit.SECONDS));
+        assertTrue(doneInListener.get());
+        assertTrue(future.isCancelled());
+        try {
+            future.get();
+            fail("The request should be cancelled");
+        } catch (CancellationException e) {
+            // expected
+        }
+    }
+
     // This method calculates the statistics with the SimpleStatsOpImage and then compares them with the already calculated values.
     public void testStatistics(RenderedImage source, int[] bands, boolean roiUsed,
             boolean noDataRangeUsed, boolean useRoiAccessor) {
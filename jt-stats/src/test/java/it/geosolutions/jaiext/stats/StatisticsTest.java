@@ -25,6 +25,7 @@ import java.util.List;
 
 import it.geosolutions.jaiext.range.Range;
 import it.geosolutions.jaiext.range.RangeFactory;
+import it.geosolutions.jaiext.stats.Statistics.StatsType;
 
 import org.junit.BeforeClass;
 import org.junit.Test;
@@ -257,6 +258,97 @@ public class StatisticsTest {
         assertEquals(median, median2, TOLERANCE);
     }
 
+    // This test is used for checking if the histogram and mode objects calculated on separate tiles
+    // can be accumulated, and if the integral samples give the same bins of the double ones
+    @Test
+    public void testHistModeAccumulation() {
+        int bins = 16;
+        HistogramMode global = (HistogramMode) StatsFactory.createHistogramObject(bins, 0, 256);
+        global.initIntegralIndex(0xFF);
+        Statistics expected = StatsFactory.createHistogramObject(bins, 0, 256);
+        Statistics mode = StatsFactory.createModeObject(bins, 0, 256);
+
+        for (int tile = 0; tile < 4; tile++) {
+            HistogramMode tileStats = global.createTileStatistics();
+            Statistics tileMode = StatsFactory.createModeObject(bins, 0, 256);
+            for (int i = 0; i < 256; i++) {
+                int sample = (i * (tile + 1)) & 0xFF;
+                tileStats.addIntegralSample(sample);
+                tileMode.addSample(sample);
+                expected.addSample(sample);
+            }
+            global.accumulateStats(tileStats);
+            mode.accumulateStats(tileMode);
+        }
+
+        assertEquals(expected.getNumSamples(), global.getNumSamples());
+        double[] hist = (double[]) global.getResult();
+        double[] hist2 = (double[]) expected.getResult();
+        for (int i = 0; i < bins; i++) {
+            assertEquals(hist2[i], hist[i], TOLERANCE);
+        }
+        assertEquals(1024, mode.getNumSamples().longValue());
+
+        // Statistics with different bins cannot be accumulated
+        try {
+            global.accumulateStats(StatsFactory.createHistogramObject(bins + 1, 0, 256));
+            fail("Histograms with different bins should not be accumulated");
+        } catch (IllegalArgumentException e) {
+            // expected
+        }
+    }
+
+    // This test is used for checking if the quantile object approximates the quantiles
+    // also when the statistics are calculated separately and then accumulated
+    @Test
+    public void testQuantile() {
+        double[] quantiles = new double[] { 0, 0.1, 0.5, 0.9, 1 };
+        Statistics quantileObj = StatsFactory.createQuantileObject(minBound, maxBound, quantiles);
+        Statistics quantileObj2 = StatsFactory.createQuantileObject(minBound, maxBound, quantiles);
+
+        List<Double> listData = new ArrayList<Double>();
+        for (int i = 0; i < ARRAY_DIMENSIONS; i++) {
+            if (interval.contains(testArray[i])) {
+                listData.add(testArray[i]);
+            }
+            if (i % 2 == 0) {
+                quantileObj.addSample(testArray[i]);
+            } else {
+                quantileObj2.addSample(testArray[i]);
+            }
+        }
+        quantileObj.accumulateStats(quantileObj2);
+        Collections.sort(listData);
+
+        assertEquals(ARRAY_DIMENSIONS, quantileObj.getNumSamples().longValue());
+        double[] result = (double[]) quantileObj.getResult();
+        assertEquals(quantiles.length, result.length);
+        int listSize = listData.size();
+        for (int i = 0; i < quantiles.length; i++) {
+            double exact = listData.get((int) Math.min(listSize - 1, quantiles[i] * listSize));
+            assertEquals(exact, result[i], TOLERANCE);
+        }
+
+        // The sketch memory does not depend on the number of samples
+        Statistics bigQuantileObj = StatsFactory.createQuantileObject(0, 1000, null);
+        for (int i = 0; i < 1000000; i++) {
+            bigQuantileObj.addSample(i % 1000);
+        }
+        double[] quartiles = (double[]) bigQuantileObj.getResult();
+        assertEquals(250, quartiles[0], 1);
+        assertEquals(500, quartiles[1], 1);
+        assertEquals(750, quartiles[2], 1);
+
+        quantileObj.clearStats();
+        assertTrue(Double.isNaN(((double[]) quantileObj.getResult())[1]));
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testQuantileException() {
+        Statistics quantileObj = StatsFactory.createQuantileObject(minBound, maxBound, null);
+        quantileObj.accumulateStats(sumObj);
+    }
+
     // This test is used for checking if the cumulation of the statistics continue to mantain
     // correct results
     @Test
@@ -436,6 +528,100 @@ public class StatisticsTest {
         assertEquals(Double.NaN, newMedianUpdated, TOLERANCE);
     }
 
+    // This test is used for checking that the mean and the variance do not lose precision
+    // when the samples have a large offset, also when the statistics are accumulated
+    @Test
+    public void testMomentsPrecision() {
+        double offset = 1e9;
+        Statistics meanAll = StatsFactory.createMeanObject();
+        Statistics varianceAll = StatsFactory.createVarianceObject();
+        Statistics varianceFirst = StatsFactory.createVarianceObject();
+        Statistics varianceSecond = StatsFactory.createVarianceObject();
+        for (int i = 0; i < ARRAY_DIMENSIONS; i++) {
+            double sample = offset + testArray[i];
+            meanAll.addSample(sample);
+            varianceAll.addSample(sample);
+            if (i < ARRAY_DIMENSIONS / 3) {
+                varianceFirst.addSample(sample);
+            } else {
+                varianceSecond.addSample(sample);
+            }
+        }
+        varianceFirst.accumulateStats(varianceSecond);
+
+        // Two pass calculation on the samples with the offset removed
+        double mean = 0;
+        for (int i = 0; i < ARRAY_DIMENSIONS; i++) {
+            mean += (offset + testArray[i]) - offset;
+        }
+        mean /= ARRAY_DIMENSIONS;
+        double sum2 = 0;
+        for (int i = 0; i < ARRAY_DIMENSIONS; i++) {
+            sum2 += Math.pow((offset + testArray[i]) - offset - mean, 2);
+        }
+        double variance = sum2 / (ARRAY_DIMENSIONS - 1);
+
+        // Comparison
+        assertEquals(offset + mean, (Double) meanAll.getResult(), 1e-6);
+        assertEquals(variance, (Double) varianceAll.getResult(), 1e-6 * variance);
+        assertEquals(variance, (Double) varianceFirst.getResult(), 1e-6 * variance);
+    }
+
+    // This test is used for checking if the skewness and kurtosis objects
+    // have a correct behavior, also when they are accumulated
+    @Test
+    public void testSkewnessKurtosis() {
+        Statistics skewnessObj = StatsFactory.createSimpleStatisticsObjectFromInt(11);
+        Statistics kurtosisObj = StatsFactory.createSimpleStatisticsObjectFromInt(12);
+        Statistics skewnessSecond = StatsFactory.createSkewnessObject();
+        Statistics kurtosisSecond = StatsFactory.createKurtosisObject();
+        for (int i = 0; i < ARRAY_DIMENSIONS; i++) {
+            if (i < ARRAY_DIMENSIONS / 2) {
+                skewnessObj.addSample(testArray[i]);
+                kurtosisObj.addSample(testArray[i]);
+            } else {
+                skewnessSecond.addSample(testArray[i]);
+                kurtosisSecond.addSample(testArray[i]);
+            }
+        }
+        skewnessObj.accumulateStats(skewnessSecond);
+        kurtosisObj.accumulateStats(kurtosisSecond);
+
+        // Two pass calculation of the central moments
+        double mean = 0;
+        for (int i = 0; i < ARRAY_DIMENSIONS; i++) {
+            mean += testArray[i];
+        }
+        mean /= ARRAY_DIMENSIONS;
+        double m2 = 0;
+        double m3 = 0;
+        double m4 = 0;
+        for (int i = 0; i < ARRAY_DIMENSIONS; i++) {
+            double diff = testArray[i] - mean;
+            m2 += diff * diff;
+            m3 += diff * diff * diff;
+            m4 += diff * diff * diff * diff;
+        }
+        m2 /= ARRAY_DIMENSIONS;
+        m3 /= ARRAY_DIMENSIONS;
+        m4 /= ARRAY_DIMENSIONS;
+        double skewness = m3 / Math.pow(m2, 1.5);
+        double kurtosis = m4 / (m2 * m2) - 3;
+
+        // Comparison
+        assertEquals(ARRAY_DIMENSIONS, skewnessObj.getNumSamples().longValue());
+        assertEquals(skewness, (Double) skewnessObj.getResult(), 1e-9);
+        assertEquals(kurtosis, (Double) kurtosisObj.getResult(), 1e-9);
+        assertTrue(StatsType.SKEWNESS.isSimple());
+        assertTrue(StatsType.KURTOSIS.isSimple());
+        assertFalse(StatsType.QUANTILE.isSimple());
+    }
+
+    @Test(expected = IllegalArgumentException.class)
+    public void testSkewnessException() {
+        StatsFactory.createSkewnessObject().accumulateStats(StatsFactory.createKurtosisObject());
+    }
+
     /*
      * These tests are used for checking if the accumulateStats() method returns an exception when the given statistical object does not belong to the
      * same StatsType of the receiver or if it is not supported
@@ -474,15 +660,15 @@ public class StatisticsTest {
     public void testDevStdException() {
         devstdObj.accumulateStats(sumObj);
     }
-    @Test(expected = UnsupportedOperationException.class)
+    @Test(expected = IllegalArgumentException.class)
     public void testHistException() {
         histogramObj.accumulateStats(sumObj);
     }
-    @Test(expected = UnsupportedOperationException.class)
+    @Test(expected = IllegalArgumentException.class)
     public void testModeException() {
         modeObj.accumulateStats(sumObj);
     }
-    @Test(expected = UnsupportedOperationException.class)
+    @Test(expected = IllegalArgumentException.class)
     public void testMedianException() {
         medianObj.accumulateStats(sumObj);
     }
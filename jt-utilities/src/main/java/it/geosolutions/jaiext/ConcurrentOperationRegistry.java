@@ -17,10 +17,13 @@
  */
 package it.geosolutions.jaiext;
 
+import it.geosolutions.jaiext.instrumentation.Instrumentation;
 import it.geosolutions.jaiext.interpolators.InterpolationBicubic;
 import it.geosolutions.jaiext.interpolators.InterpolationBilinear;
 import it.geosolutions.jaiext.interpolators.InterpolationNearest;
 
+import java.awt.image.RenderedImage;
+
 import java.awt.image.renderable.ParameterBlock;
 import java.io.IOException;
 import java.io.InputStream;
@@ -28,14 +31,18 @@ import java.io.ObjectInput;
 import java.io.ObjectOutput;
 import java.io.OutputStream;
 import java.net.URL;
+import java.util.ArrayList;
 import java.util.Collection;
+import java.util.Collections;
 import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.Vector;
 import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicReference;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -59,6 +66,15 @@ import com.sun.media.jai.util.PropertyUtil;
 /**
  * A thread safe implementation of OperationRegistry using Java 5 Concurrent {@link ReadWriteLock}
  * Also it is able to substitute JAI operations with JAI-EXT ones and vice versa.
+ * <p>
+ * The results of the most frequent lookups ({@link #getDescriptor(String, String)},
+ * {@link #getDescriptor(Class, String)}, {@link #getFactory(String, String)},
+ * {@link #getOrderedFactoryList(String, String, String)}, {@link #getOrderedProductList(String, String)}
+ * and {@link #getFactoryIterator(String, String)}, which resolves the factories of each
+ * <code>JAI.create</code> call) are kept inside an immutable snapshot, so that they are served by a
+ * single volatile read without touching the lock. Each write operation publishes a new empty
+ * snapshot, which is filled again by the following lookups, and increments the modification count
+ * of the registry.
  * 
  * @author Andrea Aime - GeoSolutions
  * @author Nicola Lagomarsini - GeoSolutions
@@ -165,6 +181,22 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
     /** Map of the JAI-EXT operations */
     private Map<String, OperationItem> jaiExtMap;
 
+    /** Immutable snapshot of the lookup results, replaced on each registry change */
+    private final AtomicReference<Map<LookupKey, Object>> snapshot = new AtomicReference<Map<LookupKey, Object>>(
+            Collections.<LookupKey, Object> emptyMap());
+
+    /** Boolean indicating if the lookups are served by the snapshot or by the locked registry */
+    private volatile boolean snapshotReads = true;
+
+    /** Value stored inside the snapshot for the null lookup results */
+    private static final Object NULL_VALUE = new Object();
+
+    /** Number of write operations done on the registry */
+    private volatile long modificationCount;
+
+    /** Instrumentation measuring the images created in Rendered Mode, or null if disabled */
+    private volatile Instrumentation instrumentation;
+
     public ConcurrentOperationRegistry() {
         super();
 
@@ -199,6 +231,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.initializeFromStream(in);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -209,6 +242,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.updateFromStream(in);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -219,6 +253,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.readExternal(in);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -240,6 +275,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.removeRegistryMode(modeName);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -285,6 +321,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
                 throw new RuntimeException(e);
             }
         }finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -311,16 +348,26 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
                 }
             }
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
 
     public RegistryElementDescriptor getDescriptor(Class descriptorClass, String descriptorName) {
+        LookupKey key = new LookupKey(LookupKey.DESCRIPTOR_BY_CLASS, descriptorClass,
+                descriptorName, null);
+        Object value = getSnapshotValue(key);
+        if (value != null) {
+            return (RegistryElementDescriptor) (value == NULL_VALUE ? null : value);
+        }
         Lock readLock = lock.readLock();
         try {
             readLock.lock();
-
-            return super.getDescriptor(descriptorClass, descriptorName);
+            Map<LookupKey, Object> current = snapshot.get();
+            RegistryElementDescriptor descriptor = super.getDescriptor(descriptorClass,
+                    descriptorName);
+            publishSnapshotValue(current, key, descriptor);
+            return descriptor;
         } finally {
             readLock.unlock();
         }
@@ -349,12 +396,19 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
     }
 
     public RegistryElementDescriptor getDescriptor(String modeName, String descriptorName) {
-
+        LookupKey key = new LookupKey(LookupKey.DESCRIPTOR_BY_MODE, modeName, descriptorName,
+                null);
+        Object value = getSnapshotValue(key);
+        if (value != null) {
+            return (RegistryElementDescriptor) (value == NULL_VALUE ? null : value);
+        }
         Lock readLock = lock.readLock();
         try {
             readLock.lock();
-
-            return super.getDescriptor(modeName, descriptorName);
+            Map<LookupKey, Object> current = snapshot.get();
+            RegistryElementDescriptor descriptor = super.getDescriptor(modeName, descriptorName);
+            publishSnapshotValue(current, key, descriptor);
+            return descriptor;
         } finally {
             readLock.unlock();
         }
@@ -390,6 +444,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             super.setProductPreference(modeName, descriptorName, preferredProductName,
                     otherProductName);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -402,6 +457,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             super.unsetProductPreference(modeName, descriptorName, preferredProductName,
                     otherProductName);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -412,6 +468,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.clearProductPreferences(modeName, descriptorName);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -428,11 +485,20 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
     }
 
     public Vector getOrderedProductList(String modeName, String descriptorName) {
+        LookupKey key = new LookupKey(LookupKey.PRODUCT_LIST, modeName, descriptorName, null);
+        Object value = getSnapshotValue(key);
+        if (value != null) {
+            // A copy is returned since the caller may modify the list
+            return value == NULL_VALUE ? null : new Vector((List) value);
+        }
         Lock readLock = lock.readLock();
         try {
             readLock.lock();
-
-            return super.getOrderedProductList(modeName, descriptorName);
+            Map<LookupKey, Object> current = snapshot.get();
+            Vector products = super.getOrderedProductList(modeName, descriptorName);
+            publishSnapshotValue(current, key,
+                    products == null ? null : Collections.unmodifiableList(new ArrayList(products)));
+            return products;
         } finally {
             readLock.unlock();
         }
@@ -457,6 +523,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
                 }
             }
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -480,6 +547,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
                 }
             }
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -491,6 +559,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.setFactoryPreference(modeName, descriptorName, productName, preferredOp, otherOp);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -503,6 +572,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             super.unsetFactoryPreference(modeName, descriptorName, productName, preferredOp,
                     otherOp);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -513,6 +583,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.clearFactoryPreferences(modeName, descriptorName, productName);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -530,33 +601,67 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
     }
 
     public List getOrderedFactoryList(String modeName, String descriptorName, String productName) {
+        LookupKey key = new LookupKey(LookupKey.FACTORY_LIST, modeName, descriptorName,
+                productName);
+        Object value = getSnapshotValue(key);
+        if (value != null) {
+            // A copy is returned since the caller may modify the list
+            return value == NULL_VALUE ? null : new Vector((List) value);
+        }
         Lock readLock = lock.readLock();
         try {
             readLock.lock();
-
-            return super.getOrderedFactoryList(modeName, descriptorName, productName);
+            Map<LookupKey, Object> current = snapshot.get();
+            List factories = super.getOrderedFactoryList(modeName, descriptorName, productName);
+            publishSnapshotValue(current, key,
+                    factories == null ? null : Collections.unmodifiableList(new ArrayList(factories)));
+            return factories;
         } finally {
             readLock.unlock();
         }
     }
 
     public Iterator getFactoryIterator(String modeName, String descriptorName) {
+        LookupKey key = new LookupKey(LookupKey.FACTORY_ITERATOR, modeName, descriptorName, null);
+        Object value = getSnapshotValue(key);
+        if (value != null) {
+            return value == NULL_VALUE ? null : ((List) value).iterator();
+        }
         Lock readLock = lock.readLock();
         try {
             readLock.lock();
-
-            return super.getFactoryIterator(modeName, descriptorName);
+            Map<LookupKey, Object> current = snapshot.get();
+            Iterator iterator = super.getFactoryIterator(modeName, descriptorName);
+            if (iterator == null || !snapshotReads) {
+                publishSnapshotValue(current, key, null);
+                return iterator;
+            }
+            // The factories are resolved once and stored in their preference order
+            List factories = new ArrayList();
+            while (iterator.hasNext()) {
+                factories.add(iterator.next());
+            }
+            factories = Collections.unmodifiableList(factories);
+            publishSnapshotValue(current, key, factories);
+            return factories.iterator();
         } finally {
             readLock.unlock();
         }
     }
 
     public Object getFactory(String modeName, String descriptorName) {
+        LookupKey key = new LookupKey(LookupKey.FACTORY, modeName, descriptorName, null);
+        Object value = getSnapshotValue(key);
+        if (value != null) {
+            return value == NULL_VALUE ? null : value;
+        }
         Lock readLock = lock.readLock();
         try {
             readLock.lock();
-
-            return super.getFactory(modeName, descriptorName);
+            Map<LookupKey, Object> current = snapshot.get();
+            Object factory = super.getFactory(modeName, descriptorName);
+            publishSnapshotValue(current, key, factory);
+            return factory;
         } finally {
             readLock.unlock();
         }
@@ -569,16 +674,53 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             // For Rendered Mode, a check on the interpolations objects is made
             // in order to convert each eventual JAI-EXT interpolation class
             // if the Factory belongs to the JAI API
-            if(modeName.equalsIgnoreCase(RenderedRegistryMode.MODE_NAME)){
+            boolean rendered = modeName.equalsIgnoreCase(RenderedRegistryMode.MODE_NAME);
+            if(rendered){
                 checkInterpolation(descriptorName, args);
             }
 
-            return super.invokeFactory(modeName, descriptorName, args);
+            Object result = super.invokeFactory(modeName, descriptorName, args);
+            // Instrument the tile cache of the created image if the instrumentation is enabled.
+            // Images returned unchanged from the sources are not instrumented
+            Instrumentation instr = instrumentation;
+            if (rendered && instr != null && result instanceof RenderedImage
+                    && !isSource(args, result)) {
+                instr.instrument(descriptorName, (RenderedImage) result);
+            }
+            return result;
         } finally {
             readLock.unlock();
         }
     }
 
+    /** Returns true if the selected object is one of the sources of the ParameterBlock passed to a factory */
+    private static boolean isSource(Object[] args, Object image) {
+        if (args != null && args.length > 0 && args[0] instanceof ParameterBlock) {
+            Vector<Object> sources = ((ParameterBlock) args[0]).getSources();
+            for (int i = 0; sources != null && i < sources.size(); i++) {
+                if (sources.get(i) == image) {
+                    return true;
+                }
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Returns the {@link Instrumentation} measuring the images created in Rendered Mode, or null if not installed.
+     */
+    public Instrumentation getInstrumentation() {
+        return instrumentation;
+    }
+
+    /**
+     * Sets the {@link Instrumentation} measuring the images created in Rendered Mode. A null value disables the instrumentation for the images
+     * created afterwards.
+     */
+    public void setInstrumentation(Instrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
     public void addPropertyGenerator(String modeName, String descriptorName,
             PropertyGenerator generator) {
         Lock writeLock = lock.writeLock();
@@ -586,6 +728,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.addPropertyGenerator(modeName, descriptorName, generator);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -597,6 +740,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.removePropertyGenerator(modeName, descriptorName, generator);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -608,6 +752,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.copyPropertyFromSource(modeName, descriptorName, propertyName, sourceIndex);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -618,6 +763,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.suppressProperty(modeName, descriptorName, propertyName);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -628,6 +774,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.suppressAllProperties(modeName, descriptorName);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -638,6 +785,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.clearPropertyState(modeName);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -682,6 +830,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.registerServices(cl);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -692,6 +841,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.unregisterOperationDescriptor(operationName);
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -702,6 +852,62 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             super.clearOperationPreferences(operationName, productName);
         } finally {
+            invalidateSnapshot();
+            writeLock.unlock();
+        }
+    }
+
+    /**
+     * Returns the value stored inside the current snapshot for the selected lookup, {@link #NULL_VALUE} for a null result, or null if the lookup
+     * is not present or the snapshot is disabled.
+     */
+    private Object getSnapshotValue(LookupKey key) {
+        if (!snapshotReads) {
+            return null;
+        }
+        return snapshot.get().get(key);
+    }
+
+    /**
+     * Publishes a new snapshot containing the result of the selected lookup. This method must be called while holding the read lock, with the
+     * snapshot read before the lookup: if a write operation has replaced it in the meantime, the result is discarded.
+     */
+    private void publishSnapshotValue(Map<LookupKey, Object> current, LookupKey key, Object value) {
+        if (!snapshotReads) {
+            return;
+        }
+        Map<LookupKey, Object> next = new HashMap<LookupKey, Object>(current);
+        next.put(key, value == null ? NULL_VALUE : value);
+        snapshot.compareAndSet(current, Collections.unmodifiableMap(next));
+    }
+
+    /**
+     * Replaces the snapshot with an empty one. This method must be called while holding the write lock.
+     */
+    private void invalidateSnapshot() {
+        snapshot.set(Collections.<LookupKey, Object> emptyMap());
+        modificationCount++;
+    }
+
+    /**
+     * Returns the number of write operations done on the registry. Any value computed from the registry content is still valid if the count has
+     * not changed since the value was computed.
+     */
+    long getModificationCount() {
+        return modificationCount;
+    }
+
+    /**
+     * Enables or disables the snapshot of the lookup results. When disabled, each lookup takes the read lock of the registry. Used for comparing
+     * the two strategies.
+     */
+    void setSnapshotReads(boolean snapshotReads) {
+        Lock writeLock = lock.writeLock();
+        try {
+            writeLock.lock();
+            this.snapshotReads = snapshotReads;
+        } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -717,6 +923,7 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
             writeLock.lock();
             this.collection = coll;
         } finally {
+            invalidateSnapshot();
             writeLock.unlock();
         }
     }
@@ -843,6 +1050,68 @@ public final class ConcurrentOperationRegistry extends OperationRegistry {
      * @author Nicola Lagomarsini GeoSolutions S.A.S.
      * 
      */
+    /**
+     * Key of a lookup whose result is stored inside the registry snapshot.
+     */
+    private static final class LookupKey {
+
+        static final int DESCRIPTOR_BY_MODE = 0;
+
+        static final int DESCRIPTOR_BY_CLASS = 1;
+
+        static final int FACTORY = 2;
+
+        static final int FACTORY_LIST = 3;
+
+        static final int PRODUCT_LIST = 4;
+
+        static final int FACTORY_ITERATOR = 5;
+
+        private final int kind;
+
+        private final Object mode;
+
+        private final String name;
+
+        private final String product;
+
+        private final int hash;
+
+        LookupKey(int kind, Object mode, String name, String product) {
+            this.kind = kind;
+            this.mode = mode;
+            this.name = name;
+            this.product = product;
+            int h = kind;
+            h = 31 * h + (mode != null ? mode.hashCode() : 0);
+            h = 31 * h + (name != null ? name.hashCode() : 0);
+            h = 31 * h + (product != null ? product.hashCode() : 0);
+            this.hash = h;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        @Override
+        public boolean equals(Object obj) {
+            if (this == obj) {
+                return true;
+            }
+            if (!(obj instanceof LookupKey)) {
+                return false;
+            }
+            LookupKey other = (LookupKey) obj;
+            return kind == other.kind && hash == other.hash && equal(mode, other.mode)
+                    && equal(name, other.name) && equal(product, other.product);
+        }
+
+        private static boolean equal(Object o1, Object o2) {
+            return o1 == null ? o2 == null : o1.equals(o2);
+        }
+    }
+
     public static class OperationItem {
         /** {@link OperationDescriptor} instance associated to the operation */
         private OperationDescriptor op;
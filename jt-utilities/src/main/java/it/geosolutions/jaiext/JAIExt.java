@@ -19,6 +19,7 @@ package it.geosolutions.jaiext;
 
 import it.geosolutions.jaiext.ConcurrentOperationRegistry.OperationCollection;
 import it.geosolutions.jaiext.ConcurrentOperationRegistry.OperationItem;
+import it.geosolutions.jaiext.instrumentation.Instrumentation;
 
 import java.lang.reflect.Method;
 import java.security.AccessController;
@@ -30,6 +31,7 @@ import java.util.List;
 import java.util.Map;
 import java.util.Set;
 import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
 import java.util.concurrent.locks.Lock;
 import java.util.concurrent.locks.ReadWriteLock;
 import java.util.concurrent.locks.ReentrantReadWriteLock;
@@ -61,11 +63,16 @@ public class JAIExt {
     private ReadWriteLock lock;
 
     /** The default instance of the {@link JAIExt} class */
-    private static JAIExt jaiext;
+    private static volatile JAIExt jaiext;
 
     /** {@link OperationRegistry} used by the {@link JAIExt} class */
     private ConcurrentOperationRegistry registry;
 
+    /**
+     * Operation names resolved by {@link #getOperationName(String)}, each one valid until the registry is modified
+     */
+    private final ConcurrentHashMap<String, ResolvedName> resolvedNames = new ConcurrentHashMap<String, ResolvedName>();
+
     /** {@link Logger} used for Logging any excpetion or warning */
     private static final Logger LOGGER = Logger.getLogger(JAIExt.class.toString());
 
@@ -188,7 +195,12 @@ public class JAIExt {
         }
     }
 
-    private synchronized static JAIExt getJAIEXT() {
+    private static JAIExt getJAIEXT() {
+        // Avoid synchronizing once the instance has been created
+        JAIExt je = jaiext;
+        if (je != null) {
+            return je;
+        }
         return getJAIEXT(true, false);
     }
 
@@ -335,6 +347,10 @@ public class JAIExt {
      * @return
      */
     public static String getOperationName(String name) {
+        return getJAIEXT().getResolvedName(name);
+    }
+
+    private static String resolveOperationName(String name) {
         if (isJAIExtOperation(STATS_NAME)
                 && NAME_MAPPING.get(STATS_NAME).contains(name)) {
             return STATS_NAME;
@@ -403,11 +419,64 @@ public class JAIExt {
         return getJAIEXT().isJAIAvailableOperation(descriptorName);
     }
 
+    /**
+     * Installs an {@link Instrumentation} measuring the tiles computed by the images created afterwards in Rendered Mode. A null value removes
+     * the current instrumentation.
+     * 
+     * @param instrumentation
+     */
+    public static void setInstrumentation(Instrumentation instrumentation) {
+        getRegistry().setInstrumentation(instrumentation);
+    }
+
+    /**
+     * Returns the installed {@link Instrumentation}, or null if the images are not instrumented.
+     * 
+     * @return
+     */
+    public static Instrumentation getInstrumentation() {
+        return getRegistry().getInstrumentation();
+    }
+
     private JAIExt(ConcurrentOperationRegistry registry) {
         this.registry = registry;
         this.lock = new ReentrantReadWriteLock();
     }
 
+    /**
+     * Returns the operation name resolved by {@link #resolveOperationName(String)}, memoized until the registry is modified by
+     * {@link #registerOperations(Set, boolean)}, {@link #setJAIAcceleration(String, boolean)} or any other registry write operation.
+     * 
+     * @param name
+     * @return
+     */
+    private String getResolvedName(String name) {
+        // The modification count is taken before resolving the name, so that a concurrent change invalidates it
+        long modificationCount = registry.getModificationCount();
+        ResolvedName resolved = resolvedNames.get(name);
+        if (resolved != null && resolved.modificationCount == modificationCount) {
+            return resolved.name;
+        }
+        String operationName = resolveOperationName(name);
+        resolvedNames.put(name, new ResolvedName(operationName, modificationCount));
+        return operationName;
+    }
+
+    /**
+     * An operation name resolved for a given registry modification count.
+     */
+    private static final class ResolvedName {
+
+        private final String name;
+
+        private final long modificationCount;
+
+        ResolvedName(String name, long modificationCount) {
+            this.name = name;
+            this.modificationCount = modificationCount;
+        }
+    }
+
     /**
      * Registers the operation defined by the descriptor name. The boolean indicates if the initial operation was a JAI or a JAI-EXT one.
      * 
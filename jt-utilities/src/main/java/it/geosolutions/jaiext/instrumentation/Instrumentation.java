@@ -0,0 +1,221 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+ *    http://www.geo-solutions.it/
+ *    Copyright 2014 - 2015 GeoSolutions
+
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.geosolutions.jaiext.instrumentation;
+
+import java.awt.image.RenderedImage;
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import javax.media.jai.OpImage;
+import javax.media.jai.TileCache;
+
+/**
+ * Collects per operation statistics about the tiles computed by the rendered operations. When installed through
+ * {@link it.geosolutions.jaiext.JAIExt#setInstrumentation(Instrumentation)}, the tile cache of each {@link OpImage} created by the registry
+ * for an instrumented operation is replaced by a cache forwarding all the calls to the original one and measuring the tile lookups and
+ * computations. The image itself is returned unchanged. The statistics are available through {@link #getStatistics(String)}, through the
+ * registered {@link TileComputationListener}s and, if enabled, as JMX MBeans.
+ * 
+ * When no instrumentation is installed, the images are not modified and no overhead is added.
+ */
+public class Instrumentation {
+
+    /** {@link Logger} used for Logging any excpetion or warning */
+    private static final Logger LOGGER = Logger.getLogger(Instrumentation.class.toString());
+
+    /** Domain of the JMX names of the operation statistics */
+    public static final String JMX_DOMAIN = "it.geosolutions.jaiext";
+
+    /** Statistics of each instrumented operation */
+    private final ConcurrentHashMap<String, OperationStatistics> statistics = new ConcurrentHashMap<String, OperationStatistics>();
+
+    /** Listeners notified for each tile request */
+    private final List<TileComputationListener> listeners = new CopyOnWriteArrayList<TileComputationListener>();
+
+    /** Names of the instrumented operations, or null for instrumenting all of them */
+    private volatile Set<String> operations;
+
+    /** Boolean indicating if the statistics are registered as JMX MBeans */
+    private volatile boolean jmxEnabled;
+
+    /**
+     * Instruments the tile cache of the selected image, if it is an {@link OpImage} created for an instrumented operation. The tiles of the
+     * image are measured from now on, while the image itself is not modified. Returns true if the image has been instrumented.
+     */
+    public boolean instrument(String operationName, RenderedImage image) {
+        if (!(image instanceof OpImage) || !isInstrumented(operationName)) {
+            return false;
+        }
+        OpImage opImage = (OpImage) image;
+        TileCache cache = opImage.getTileCache();
+        if (cache instanceof InstrumentedTileCache) {
+            return false;
+        }
+        opImage.setTileCache(new InstrumentedTileCache(this,
+                getOrCreateStatistics(operationName), cache));
+        return true;
+    }
+
+    /** Returns true if the tile cache of the selected image has been instrumented */
+    public static boolean isInstrumented(RenderedImage image) {
+        return image instanceof OpImage
+                && ((OpImage) image).getTileCache() instanceof InstrumentedTileCache;
+    }
+
+    /** Returns true if the selected operation is instrumented */
+    public boolean isInstrumented(String operationName) {
+        Set<String> ops = operations;
+        return ops == null || ops.contains(operationName.toLowerCase());
+    }
+
+    /**
+     * Sets the names of the instrumented operations. A null value instruments all the operations. Only the images created after this call are
+     * affected.
+     */
+    public void setOperations(Collection<String> operationNames) {
+        if (operationNames == null) {
+            operations = null;
+            return;
+        }
+        Set<String> ops = new HashSet<String>();
+        for (String name : operationNames) {
+            ops.add(name.toLowerCase());
+        }
+        operations = Collections.unmodifiableSet(ops);
+    }
+
+    public void addListener(TileComputationListener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(TileComputationListener listener) {
+        listeners.remove(listener);
+    }
+
+    /** Returns the statistics of the selected operation, or null if no tile of the operation has been measured */
+    public OperationStatistics getStatistics(String operationName) {
+        return statistics.get(operationName);
+    }
+
+    /** Returns the statistics of all the measured operations */
+    public List<OperationStatistics> getAllStatistics() {
+        return new ArrayList<OperationStatistics>(statistics.values());
+    }
+
+    /** Resets the statistics of all the operations */
+    public void reset() {
+        for (OperationStatistics stats : statistics.values()) {
+            stats.reset();
+        }
+    }
+
+    /**
+     * Enables or disables the registration of the operation statistics on the platform MBean server, under the {@link #JMX_DOMAIN} domain.
+     */
+    public synchronized void setJMXEnabled(boolean enabled) {
+        if (enabled == jmxEnabled) {
+            return;
+        }
+        jmxEnabled = enabled;
+        for (OperationStatistics stats : statistics.values()) {
+            if (enabled) {
+                registerMBean(stats);
+            } else {
+                unregisterMBean(stats);
+            }
+        }
+    }
+
+    public boolean isJMXEnabled() {
+        return jmxEnabled;
+    }
+
+    /** Notifies a tile request to the statistics and to the listeners */
+    void tileComputed(OperationStatistics stats, RenderedImage image, int tileX, int tileY,
+            boolean cacheHit, long latency, long sourceTime, long pixels) {
+        stats.record(cacheHit, latency, sourceTime, pixels);
+        for (TileComputationListener listener : listeners) {
+            try {
+                listener.tileComputed(stats.getOperationName(), image, tileX, tileY, cacheHit,
+                        latency, sourceTime, pixels);
+            } catch (RuntimeException e) {
+                LOGGER.log(Level.WARNING, "Exception thrown by a tile computation listener", e);
+            }
+        }
+    }
+
+    private OperationStatistics getOrCreateStatistics(String operationName) {
+        OperationStatistics stats = statistics.get(operationName);
+        if (stats == null) {
+            OperationStatistics newStats = new OperationStatistics(operationName);
+            stats = statistics.putIfAbsent(operationName, newStats);
+            if (stats == null) {
+                stats = newStats;
+                synchronized (this) {
+                    if (jmxEnabled) {
+                        registerMBean(stats);
+                    }
+                }
+            }
+        }
+        return stats;
+    }
+
+    private static ObjectName getObjectName(OperationStatistics stats) throws Exception {
+        return new ObjectName(JMX_DOMAIN + ":type=OperationStatistics,name="
+                + ObjectName.quote(stats.getOperationName()));
+    }
+
+    private static void registerMBean(OperationStatistics stats) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getObjectName(stats);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+            server.registerMBean(stats, name);
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Unable to register the statistics of the operation "
+                    + stats.getOperationName(), e);
+        }
+    }
+
+    private static void unregisterMBean(OperationStatistics stats) {
+        try {
+            MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+            ObjectName name = getObjectName(stats);
+            if (server.isRegistered(name)) {
+                server.unregisterMBean(name);
+            }
+        } catch (Exception e) {
+            LOGGER.log(Level.WARNING, "Unable to unregister the statistics of the operation "
+                    + stats.getOperationName(), e);
+        }
+    }
+}
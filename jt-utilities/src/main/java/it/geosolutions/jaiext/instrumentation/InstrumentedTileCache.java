@@ -0,0 +1,303 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+ *    http://www.geo-solutions.it/
+ *    Copyright 2014 - 2015 GeoSolutions
+
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.geosolutions.jaiext.instrumentation;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.image.Raster;
+import java.awt.image.RenderedImage;
+import java.util.ArrayList;
+import java.util.Comparator;
+import java.util.List;
+
+import javax.media.jai.TileCache;
+
+/**
+ * {@link TileCache} installed on the image of an instrumented operation. All the calls are forwarded to the cache originally used by the
+ * image, or ignored if the image had no cache. Since an {@link javax.media.jai.OpImage} looks up each requested tile inside its cache before
+ * computing it and adds the computed tile afterwards, the tile requests are measured without changing the image: a lookup returning a tile
+ * is a cache hit, while the time between a failed lookup and the addition of the same tile by the same thread is the tile computation
+ * time. The computation time of the instrumented source tiles requested meanwhile by the same thread is accounted as source fetch time.
+ * 
+ * Tiles computed by a thread different from the one which looked them up, like the tiles prefetched by the tile scheduler, are not measured.
+ */
+final class InstrumentedTileCache implements TileCache {
+
+    /** Computation of the tiles missed by a failed lookup of a thread, with the tiles not added yet */
+    private static final class Frame {
+
+        final InstrumentedTileCache cache;
+
+        final int[] tileX;
+
+        final int[] tileY;
+
+        final long start;
+
+        long sourceTime;
+
+        int pending;
+
+        Frame(InstrumentedTileCache cache, int[] tileX, int[] tileY, long start) {
+            this.cache = cache;
+            this.tileX = tileX;
+            this.tileY = tileY;
+            this.start = start;
+            this.pending = tileX.length;
+        }
+
+        /** Returns the position of the tile if it is still pending, or -1 */
+        int indexOf(int x, int y) {
+            for (int i = 0; i < tileX.length; i++) {
+                if (tileX[i] == x && tileY[i] == y) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+
+        /** Marks the tile at the given position as added */
+        void added(int i) {
+            // The tile indices are moved outside the image tile grid
+            tileX[i] = Integer.MIN_VALUE;
+            tileY[i] = Integer.MIN_VALUE;
+            pending--;
+        }
+    }
+
+    /** Maximum number of pending computations kept for each thread, for bounding the frames left by failed computations */
+    private static final int MAX_FRAMES = 256;
+
+    /** Tile computations currently measured by each thread, the innermost one being the last */
+    private static final ThreadLocal<List<Frame>> FRAMES = new ThreadLocal<List<Frame>>() {
+        protected List<Frame> initialValue() {
+            return new ArrayList<Frame>();
+        }
+    };
+
+    private final Instrumentation instrumentation;
+
+    private final OperationStatistics statistics;
+
+    private final TileCache cache;
+
+    InstrumentedTileCache(Instrumentation instrumentation, OperationStatistics statistics,
+            TileCache cache) {
+        this.instrumentation = instrumentation;
+        this.statistics = statistics;
+        this.cache = cache;
+    }
+
+    /** Returns the cache originally used by the image, or null if the image had no cache */
+    TileCache getWrappedCache() {
+        return cache;
+    }
+
+    public Raster getTile(RenderedImage owner, int tileX, int tileY) {
+        Raster tile = cache != null ? cache.getTile(owner, tileX, tileY) : null;
+        if (tile != null) {
+            instrumentation.tileComputed(statistics, owner, tileX, tileY, true, 0, 0,
+                    getPixels(owner, tile));
+        } else {
+            tilesMissed(new int[] { tileX }, new int[] { tileY });
+        }
+        return tile;
+    }
+
+    public Raster[] getTiles(RenderedImage owner, Point[] tileIndices) {
+        Raster[] tiles = cache != null ? cache.getTiles(owner, tileIndices) : null;
+        int missed = 0;
+        for (int i = 0; i < tileIndices.length; i++) {
+            if (tiles != null && tiles[i] != null) {
+                instrumentation.tileComputed(statistics, owner, tileIndices[i].x,
+                        tileIndices[i].y, true, 0, 0, getPixels(owner, tiles[i]));
+            } else {
+                missed++;
+            }
+        }
+        if (missed > 0) {
+            // The missing tiles are computed together, so they share a single frame
+            int[] tileX = new int[missed];
+            int[] tileY = new int[missed];
+            for (int i = 0, j = 0; i < tileIndices.length; i++) {
+                if (tiles == null || tiles[i] == null) {
+                    tileX[j] = tileIndices[i].x;
+                    tileY[j++] = tileIndices[i].y;
+                }
+            }
+            tilesMissed(tileX, tileY);
+        }
+        return tiles;
+    }
+
+    /** Starts the measure of the tiles missed by a lookup of the current thread */
+    private void tilesMissed(int[] tileX, int[] tileY) {
+        List<Frame> frames = FRAMES.get();
+        // Discard a previous lookup of the same tiles whose computation did not complete
+        int index = -1;
+        for (int i = 0; i < tileX.length && index < 0; i++) {
+            index = indexOf(frames, tileX[i], tileY[i]);
+        }
+        if (index >= 0) {
+            frames.subList(index, frames.size()).clear();
+        } else if (frames.size() >= MAX_FRAMES) {
+            frames.remove(0);
+        }
+        frames.add(new Frame(this, tileX, tileY, System.nanoTime()));
+    }
+
+    public void add(RenderedImage owner, int tileX, int tileY, Raster data) {
+        tileAdded(owner, tileX, tileY, data);
+        if (cache != null) {
+            cache.add(owner, tileX, tileY, data);
+        }
+    }
+
+    public void add(RenderedImage owner, int tileX, int tileY, Raster data, Object tileCacheMetric) {
+        tileAdded(owner, tileX, tileY, data);
+        if (cache != null) {
+            cache.add(owner, tileX, tileY, data, tileCacheMetric);
+        }
+    }
+
+    public void addTiles(RenderedImage owner, Point[] tileIndices, Raster[] tiles,
+            Object tileCacheMetric) {
+        for (int i = 0; i < tileIndices.length; i++) {
+            tileAdded(owner, tileIndices[i].x, tileIndices[i].y, tiles[i]);
+        }
+        if (cache != null) {
+            cache.addTiles(owner, tileIndices, tiles, tileCacheMetric);
+        }
+    }
+
+    /**
+     * Completes the measure of a tile computed after a failed lookup by the current thread. The time of a lookup missing several tiles is
+     * shared evenly by its tiles.
+     */
+    private void tileAdded(RenderedImage owner, int tileX, int tileY, Raster tile) {
+        List<Frame> frames = FRAMES.get();
+        int index = indexOf(frames, tileX, tileY);
+        if (index < 0) {
+            return;
+        }
+        Frame frame = frames.get(index);
+        long latency = System.nanoTime() - frame.start;
+        int tiles = frame.tileX.length;
+        frame.added(frame.indexOf(tileX, tileY));
+        // Computations started after this one and never completed are discarded
+        if (frame.pending > 0) {
+            frames.subList(index + 1, frames.size()).clear();
+        } else {
+            frames.subList(index, frames.size()).clear();
+            if (index > 0) {
+                frames.get(index - 1).sourceTime += latency;
+            }
+        }
+        instrumentation.tileComputed(statistics, owner, tileX, tileY, false, latency / tiles,
+                frame.sourceTime / tiles, getPixels(owner, tile));
+    }
+
+    private int indexOf(List<Frame> frames, int tileX, int tileY) {
+        for (int i = frames.size() - 1; i >= 0; i--) {
+            Frame frame = frames.get(i);
+            if (frame.cache == this && frame.indexOf(tileX, tileY) >= 0) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
+    private static long getPixels(RenderedImage owner, Raster tile) {
+        if (tile == null) {
+            return 0;
+        }
+        Rectangle bounds = new Rectangle(owner.getMinX(), owner.getMinY(), owner.getWidth(),
+                owner.getHeight()).intersection(tile.getBounds());
+        return bounds.isEmpty() ? 0 : (long) bounds.width * bounds.height;
+    }
+
+    public void remove(RenderedImage owner, int tileX, int tileY) {
+        if (cache != null) {
+            cache.remove(owner, tileX, tileY);
+        }
+    }
+
+    public Raster[] getTiles(RenderedImage owner) {
+        return cache != null ? cache.getTiles(owner) : null;
+    }
+
+    public void removeTiles(RenderedImage owner) {
+        if (cache != null) {
+            cache.removeTiles(owner);
+        }
+    }
+
+    public void flush() {
+        if (cache != null) {
+            cache.flush();
+        }
+    }
+
+    public void memoryControl() {
+        if (cache != null) {
+            cache.memoryControl();
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public void setTileCapacity(int tileCapacity) {
+        if (cache != null) {
+            cache.setTileCapacity(tileCapacity);
+        }
+    }
+
+    @SuppressWarnings("deprecation")
+    public int getTileCapacity() {
+        return cache != null ? cache.getTileCapacity() : 0;
+    }
+
+    public void setMemoryCapacity(long memoryCapacity) {
+        if (cache != null) {
+            cache.setMemoryCapacity(memoryCapacity);
+        }
+    }
+
+    public long getMemoryCapacity() {
+        return cache != null ? cache.getMemoryCapacity() : 0;
+    }
+
+    public void setMemoryThreshold(float memoryThreshold) {
+        if (cache != null) {
+            cache.setMemoryThreshold(memoryThreshold);
+        }
+    }
+
+    public float getMemoryThreshold() {
+        return cache != null ? cache.getMemoryThreshold() : 0;
+    }
+
+    public void setTileComparator(Comparator comparator) {
+        if (cache != null) {
+            cache.setTileComparator(comparator);
+        }
+    }
+
+    public Comparator getTileComparator() {
+        return cache != null ? cache.getTileComparator() : null;
+    }
+}
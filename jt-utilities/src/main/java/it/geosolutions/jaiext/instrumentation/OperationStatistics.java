@@ -0,0 +1,152 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+ *    http://www.geo-solutions.it/
+ *    Copyright 2014 - 2015 GeoSolutions
+
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.geosolutions.jaiext.instrumentation;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Statistics collected for a single operation. All the counters are updated without locking, so the values returned while tiles are being
+ * computed may be slightly inconsistent with each other.
+ */
+public final class OperationStatistics implements OperationStatisticsMBean {
+
+    /** Upper bounds of the latency histogram buckets, in nanoseconds */
+    private static final long[] BUCKET_BOUNDS = { 100000L, 1000000L, 10000000L, 100000000L, 1000000000L };
+
+    private static final double NANOS_PER_MILLI = 1000000d;
+
+    private final String operationName;
+
+    private final AtomicLong tileCount = new AtomicLong();
+
+    private final AtomicLong cacheHits = new AtomicLong();
+
+    private final AtomicLong cacheMisses = new AtomicLong();
+
+    private final AtomicLong computedPixels = new AtomicLong();
+
+    private final AtomicLong computeTime = new AtomicLong();
+
+    private final AtomicLong sourceFetchTime = new AtomicLong();
+
+    private final AtomicLong maxLatency = new AtomicLong();
+
+    private final AtomicLongArray histogram = new AtomicLongArray(BUCKET_BOUNDS.length + 1);
+
+    OperationStatistics(String operationName) {
+        this.operationName = operationName;
+    }
+
+    /**
+     * Records a tile request. Cached tiles only update the tile and hit counters, since their latency does not depend on the operation.
+     */
+    void record(boolean cacheHit, long latency, long sourceTime, long pixels) {
+        tileCount.incrementAndGet();
+        if (cacheHit) {
+            cacheHits.incrementAndGet();
+            return;
+        }
+        cacheMisses.incrementAndGet();
+        computedPixels.addAndGet(pixels);
+        computeTime.addAndGet(latency);
+        sourceFetchTime.addAndGet(sourceTime);
+
+        int bucket = 0;
+        while (bucket < BUCKET_BOUNDS.length && latency > BUCKET_BOUNDS[bucket]) {
+            bucket++;
+        }
+        histogram.incrementAndGet(bucket);
+
+        long max = maxLatency.get();
+        while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+            max = maxLatency.get();
+        }
+    }
+
+    public String getOperationName() {
+        return operationName;
+    }
+
+    public long getTileCount() {
+        return tileCount.get();
+    }
+
+    public long getCacheHitCount() {
+        return cacheHits.get();
+    }
+
+    public long getCacheMissCount() {
+        return cacheMisses.get();
+    }
+
+    public long getComputedPixels() {
+        return computedPixels.get();
+    }
+
+    public long getComputeTime() {
+        return computeTime.get();
+    }
+
+    public long getSourceFetchTime() {
+        return sourceFetchTime.get();
+    }
+
+    public double getMeanLatency() {
+        long misses = cacheMisses.get();
+        return misses == 0 ? 0 : computeTime.get() / NANOS_PER_MILLI / misses;
+    }
+
+    public double getMaxLatency() {
+        return maxLatency.get() / NANOS_PER_MILLI;
+    }
+
+    public double getPixelsPerSecond() {
+        long ownTime = computeTime.get() - sourceFetchTime.get();
+        return ownTime <= 0 ? 0 : computedPixels.get() * 1e9 / ownTime;
+    }
+
+    public double[] getLatencyBucketBounds() {
+        double[] bounds = new double[BUCKET_BOUNDS.length];
+        for (int i = 0; i < bounds.length; i++) {
+            bounds[i] = BUCKET_BOUNDS[i] / NANOS_PER_MILLI;
+        }
+        return bounds;
+    }
+
+    public long[] getLatencyHistogram() {
+        long[] values = new long[histogram.length()];
+        for (int i = 0; i < values.length; i++) {
+            values[i] = histogram.get(i);
+        }
+        return values;
+    }
+
+    public void reset() {
+        tileCount.set(0);
+        cacheHits.set(0);
+        cacheMisses.set(0);
+        computedPixels.set(0);
+        computeTime.set(0);
+        sourceFetchTime.set(0);
+        maxLatency.set(0);
+        for (int i = 0; i < histogram.length(); i++) {
+            histogram.set(i, 0);
+        }
+    }
+}
@@ -0,0 +1,63 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+ *    http://www.geo-solutions.it/
+ *    Copyright 2014 - 2015 GeoSolutions
+
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.geosolutions.jaiext.instrumentation;
+
+/**
+ * JMX management interface exposing the statistics collected by {@link Instrumentation} for a single operation.
+ */
+public interface OperationStatisticsMBean {
+
+    /** Returns the name of the instrumented operation */
+    public String getOperationName();
+
+    /** Returns the number of tiles requested to the operation images */
+    public long getTileCount();
+
+    /** Returns the number of tiles served by the tile cache */
+    public long getCacheHitCount();
+
+    /** Returns the number of tiles computed by the operation images */
+    public long getCacheMissCount();
+
+    /** Returns the number of pixels of the computed tiles */
+    public long getComputedPixels();
+
+    /** Returns the total time spent for computing the tiles, in nanoseconds */
+    public long getComputeTime();
+
+    /** Returns the part of the compute time spent for fetching the source tiles, in nanoseconds */
+    public long getSourceFetchTime();
+
+    /** Returns the mean latency of a tile computation, in milliseconds */
+    public double getMeanLatency();
+
+    /** Returns the maximum latency of a tile computation, in milliseconds */
+    public double getMaxLatency();
+
+    /** Returns the number of computed pixels per second, excluding the source fetch time */
+    public double getPixelsPerSecond();
+
+    /** Returns the upper bounds of the latency histogram buckets, in milliseconds; the last bucket is unbounded */
+    public double[] getLatencyBucketBounds();
+
+    /** Returns the number of tile computations for each latency bucket */
+    public long[] getLatencyHistogram();
+
+    /** Resets all the statistics */
+    public void reset();
+}
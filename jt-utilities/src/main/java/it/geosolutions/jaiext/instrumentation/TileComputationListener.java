@@ -0,0 +1,42 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+ *    http://www.geo-solutions.it/
+ *    Copyright 2014 - 2015 GeoSolutions
+
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.geosolutions.jaiext.instrumentation;
+
+import java.awt.image.RenderedImage;
+
+/**
+ * Listener notified by {@link Instrumentation} for each tile requested to an instrumented operation. Implementations are called by the
+ * threads computing the tiles, so they must be thread safe and should return quickly.
+ */
+public interface TileComputationListener {
+
+    /**
+     * Notifies a tile request.
+     * 
+     * @param operationName name of the operation
+     * @param image the operation image
+     * @param tileX tile X index
+     * @param tileY tile Y index
+     * @param cacheHit true if the tile was served by the tile cache
+     * @param latency time spent for returning the tile, in nanoseconds
+     * @param sourceFetchTime part of the latency spent for fetching the tiles of the instrumented sources, in nanoseconds
+     * @param pixels number of pixels of the tile inside the image bounds
+     */
+    public void tileComputed(String operationName, RenderedImage image, int tileX, int tileY,
+            boolean cacheHit, long latency, long sourceFetchTime, long pixels);
+}
@@ -0,0 +1,164 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+ *    http://www.geo-solutions.it/
+ *    Copyright 2014 GeoSolutions
+
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.geosolutions.jaiext;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+
+import javax.media.jai.OperationDescriptor;
+import javax.media.jai.registry.RenderedRegistryMode;
+
+import org.junit.Test;
+
+/**
+ * This test class checks that the lookups of the {@link ConcurrentOperationRegistry} served by its snapshot follow the registry changes, and
+ * compares the timing of concurrent lookups using the snapshot against the ones using the read lock. The number of benchmark cycles, of the not
+ * benchmark cycles and of the threads can be changed by setting the JAI.Ext.BenchmarkCycles, JAI.Ext.NotBenchmarkCycles and JAI.Ext.Threads JVM
+ * parameters.
+ */
+public class ConcurrentOperationRegistryTest {
+
+    /** Number of benchmark iterations (Default 1) */
+    private final static int BENCHMARK_ITERATION = Integer.getInteger("JAI.Ext.BenchmarkCycles", 1);
+
+    /** Number of not benchmark iterations (Default 0) */
+    private final static int NOT_BENCHMARK_ITERATION = Integer.getInteger(
+            "JAI.Ext.NotBenchmarkCycles", 0);
+
+    /** Number of concurrent threads (Default number of processors) */
+    private final static int THREADS = Integer.getInteger("JAI.Ext.Threads", Runtime
+            .getRuntime().availableProcessors());
+
+    /** Number of lookups done by each thread in a cycle */
+    private final static int LOOKUPS = 100000;
+
+    private final static String SCALE = "Scale";
+
+    private final static String MODE = RenderedRegistryMode.MODE_NAME;
+
+    private static ConcurrentOperationRegistry createRegistry() {
+        ConcurrentOperationRegistry registry = new ConcurrentOperationRegistry();
+        registry.registerDescriptor(new DummyScaleDescriptor());
+        registry.registerFactory(MODE, SCALE, ConcurrentOperationRegistry.JAIEXT_PRODUCT,
+                new DummyScaleCRIF());
+        return registry;
+    }
+
+    @Test
+    public void testSnapshotFollowsChanges() {
+        ConcurrentOperationRegistry registry = new ConcurrentOperationRegistry();
+        // The null results are stored too
+        assertNull(registry.getDescriptor(MODE, SCALE));
+        assertNull(registry.getDescriptor(MODE, SCALE));
+
+        OperationDescriptor descriptor = new DummyScaleDescriptor();
+        registry.registerDescriptor(descriptor);
+        assertSame(descriptor, registry.getDescriptor(MODE, SCALE));
+        assertSame(descriptor, registry.getDescriptor(OperationDescriptor.class, SCALE));
+        assertNull(registry.getFactory(MODE, SCALE));
+
+        DummyScaleCRIF factory = new DummyScaleCRIF();
+        registry.registerFactory(MODE, SCALE, ConcurrentOperationRegistry.JAIEXT_PRODUCT,
+                factory);
+        assertSame(factory, registry.getFactory(MODE, SCALE));
+        List factories = registry.getOrderedFactoryList(MODE, SCALE,
+                ConcurrentOperationRegistry.JAIEXT_PRODUCT);
+        assertNotNull(factories);
+        assertEquals(1, factories.size());
+        // The returned list can be modified without changing the registry
+        factories.clear();
+        assertEquals(1, registry.getOrderedFactoryList(MODE, SCALE,
+                ConcurrentOperationRegistry.JAIEXT_PRODUCT).size());
+
+        // The resolution used by JAI.create follows the changes too
+        Iterator iterator = registry.getFactoryIterator(MODE, SCALE);
+        assertSame(factory, iterator.next());
+        assertFalse(iterator.hasNext());
+        assertEquals(1, registry.getOrderedProductList(MODE, SCALE).size());
+
+        long modificationCount = registry.getModificationCount();
+        registry.unregisterFactory(MODE, SCALE, ConcurrentOperationRegistry.JAIEXT_PRODUCT,
+                factory);
+        assertTrue(registry.getModificationCount() > modificationCount);
+        assertNull(registry.getFactory(MODE, SCALE));
+        assertFalse(registry.getFactoryIterator(MODE, SCALE).hasNext());
+        registry.unregisterDescriptor(descriptor);
+        assertNull(registry.getDescriptor(MODE, SCALE));
+    }
+
+    @Test
+    public void testContention() throws InterruptedException {
+        ConcurrentOperationRegistry registry = createRegistry();
+        registry.setSnapshotReads(false);
+        double locked = testLookupTime(registry);
+        registry.setSnapshotReads(true);
+        double snapshot = testLookupTime(registry);
+        // Output print
+        System.out.println("\nMean value for " + THREADS + " threads with the read lock : "
+                + locked + " nsec.");
+        System.out.println("Mean value for " + THREADS + " threads with the snapshot : "
+                + snapshot + " nsec.");
+    }
+
+    private double testLookupTime(final ConcurrentOperationRegistry registry)
+            throws InterruptedException {
+        int totalCycles = NOT_BENCHMARK_ITERATION + BENCHMARK_ITERATION;
+        // Initialization of the statistics
+        long mean = 0;
+        for (int i = 0; i < totalCycles; i++) {
+            final CountDownLatch start = new CountDownLatch(1);
+            final CountDownLatch end = new CountDownLatch(THREADS);
+            for (int t = 0; t < THREADS; t++) {
+                new Thread() {
+                    public void run() {
+                        try {
+                            start.await();
+                            for (int j = 0; j < LOOKUPS; j++) {
+                                registry.getDescriptor(MODE, SCALE);
+                                registry.getFactory(MODE, SCALE);
+                            }
+                        } catch (InterruptedException e) {
+                            Thread.currentThread().interrupt();
+                        } finally {
+                            end.countDown();
+                        }
+                    }
+                }.start();
+            }
+            // Total calculation time
+            long startTime = System.nanoTime();
+            start.countDown();
+            end.await();
+            long time = System.nanoTime() - startTime;
+
+            // If the the first NOT_BENCHMARK_ITERATION cycles has been done, then the mean value is stored
+            if (i > NOT_BENCHMARK_ITERATION - 1) {
+                mean += time;
+            }
+        }
+        return mean / (double) BENCHMARK_ITERATION;
+    }
+}
@@ -0,0 +1,51 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+ *    http://www.geo-solutions.it/
+ *    Copyright 2014 GeoSolutions
+
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.geosolutions.jaiext;
+
+import javax.media.jai.OperationDescriptor;
+import javax.media.jai.OperationDescriptorImpl;
+
+/**
+ * Dummy {@link OperationDescriptor} for the JAI-EXT "algebric" operation used for testing the name resolution of the {@link JAIExt} class.
+ */
+public class DummyAlgebricDescriptor extends OperationDescriptorImpl {
+
+    /**
+     * The resource strings that provide the general documentation and specify the parameter list for this operation.
+     */
+    private static final String[][] resources = { { "GlobalName", JAIExt.ALGEBRIC_NAME },
+            { "LocalName", JAIExt.ALGEBRIC_NAME }, { "Vendor", "it.geosolutions.jaiext" },
+            { "Description", "null" }, { "DocURL", "null" }, { "Version", "0.0" }
+
+    };
+
+    /**
+     * Modes supported by the operation
+     */
+    private static final String[] supportedModes = { "rendered" };
+
+    /** Constructor. */
+    public DummyAlgebricDescriptor() {
+        super(resources, supportedModes, 1, null, null, null, null);
+    }
+
+    /** Returns <code>false</code> since renderable operation is supported but never tested. */
+    public boolean isRenderableSupported() {
+        return false;
+    }
+}
@@ -17,6 +17,7 @@
  */
 package it.geosolutions.jaiext;
 
+import static org.junit.Assert.assertEquals;
 import static org.junit.Assert.assertTrue;
 import it.geosolutions.jaiext.ConcurrentOperationRegistry.OperationCollection;
 import it.geosolutions.jaiext.ConcurrentOperationRegistry.OperationItem;
@@ -115,6 +116,35 @@ public class JAIEXTTest {
         }
     }
 
+    @Test
+    public void testOperationNameFollowsRegistry() {
+        // Getting the registry
+        ConcurrentOperationRegistry registry = JAIExt.getRegistry();
+        // No JAI-EXT algebric operation is registered, so the JAI name is kept
+        assertEquals("Add", JAIExt.getOperationName("Add"));
+        // The second lookup is served by the resolved name
+        assertEquals("Add", JAIExt.getOperationName("Add"));
+
+        // Registering the JAI-EXT operation must resolve the name again
+        DummyAlgebricDescriptor descriptor = new DummyAlgebricDescriptor();
+        registry.registerDescriptor(descriptor);
+        try {
+            assertEquals(JAIExt.ALGEBRIC_NAME, JAIExt.getOperationName("Add"));
+            assertEquals(JAIExt.ALGEBRIC_NAME, JAIExt.getOperationName("Subtract"));
+        } finally {
+            registry.unregisterDescriptor(descriptor);
+        }
+        // Unregistering it restores the JAI name
+        assertEquals("Add", JAIExt.getOperationName("Add"));
+        assertEquals("Subtract", JAIExt.getOperationName("Subtract"));
+
+        // Switching the Scale operation between JAI and JAI-EXT does not change its name
+        JAIExt.registerJAIEXTDescriptor(SCALE);
+        assertEquals(SCALE, JAIExt.getOperationName(SCALE));
+        JAIExt.registerJAIDescriptor(SCALE);
+        assertEquals(SCALE, JAIExt.getOperationName(SCALE));
+    }
+
     @Test
     public void testInterpolation() {
         // Getting the registry
@@ -0,0 +1,198 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+ *    http://www.geo-solutions.it/
+ *    Copyright 2014 GeoSolutions
+
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.geosolutions.jaiext.instrumentation;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertSame;
+import static org.junit.Assert.assertTrue;
+
+import java.awt.Point;
+import java.awt.Rectangle;
+import java.awt.RenderingHints;
+import java.awt.image.DataBuffer;
+import java.awt.image.RenderedImage;
+import java.awt.image.SampleModel;
+import java.awt.image.WritableRaster;
+import java.lang.management.ManagementFactory;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import javax.management.ObjectName;
+import javax.media.jai.ImageLayout;
+import javax.media.jai.JAI;
+import javax.media.jai.OpImage;
+import javax.media.jai.PlanarImage;
+import javax.media.jai.RasterFactory;
+import javax.media.jai.SourcelessOpImage;
+import javax.media.jai.TileCache;
+
+import org.junit.Test;
+
+/**
+ * This test class checks that the {@link Instrumentation} measures the tiles of the instrumented images through their tile cache.
+ */
+public class InstrumentationTest {
+
+    private static final int SIZE = 64;
+
+    private static final int TILE_SIZE = 32;
+
+    private static final String OPERATION = "Dummy";
+
+    private static OpImage createImage() {
+        return createImage(null);
+    }
+
+    /** Creates an image whose pixels are the sum of their coordinates, requesting the tiles of the selected source if not null */
+    private static OpImage createImage(final RenderedImage source) {
+        SampleModel sm = RasterFactory.createBandedSampleModel(DataBuffer.TYPE_BYTE, TILE_SIZE,
+                TILE_SIZE, 1);
+        ImageLayout layout = new ImageLayout(0, 0, SIZE, SIZE, 0, 0, TILE_SIZE, TILE_SIZE, sm, null);
+        RenderingHints hints = new RenderingHints(JAI.KEY_TILE_CACHE, JAI.createTileCache());
+        return new SourcelessOpImage(layout, hints, sm, 0, 0, SIZE, SIZE) {
+            protected void computeRect(PlanarImage[] sources, WritableRaster dest,
+                    Rectangle destRect) {
+                if (source != null) {
+                    source.getData(destRect);
+                }
+                for (int y = destRect.y; y < destRect.y + destRect.height; y++) {
+                    for (int x = destRect.x; x < destRect.x + destRect.width; x++) {
+                        dest.setSample(x, y, 0, x + y);
+                    }
+                }
+            }
+        };
+    }
+
+    @Test
+    public void testTileStatistics() {
+        Instrumentation instrumentation = new Instrumentation();
+        final AtomicInteger notifications = new AtomicInteger();
+        instrumentation.addListener(new TileComputationListener() {
+            public void tileComputed(String operationName, RenderedImage image, int tileX,
+                    int tileY, boolean cacheHit, long latency, long sourceFetchTime, long pixels) {
+                assertEquals(OPERATION, operationName);
+                assertEquals(TILE_SIZE * TILE_SIZE, pixels);
+                notifications.incrementAndGet();
+            }
+        });
+
+        OpImage image = createImage();
+        TileCache cache = image.getTileCache();
+        assertTrue(instrumentation.instrument(OPERATION, image));
+        assertTrue(Instrumentation.isInstrumented(image));
+        assertSame(cache, ((InstrumentedTileCache) image.getTileCache()).getWrappedCache());
+        assertFalse(instrumentation.instrument(OPERATION, image));
+
+        // Computed tiles
+        for (int i = 0; i < 4; i++) {
+            image.getTile(i % 2, i / 2);
+        }
+        // Cached tile
+        image.getTile(0, 0);
+        assertEquals(5, notifications.get());
+
+        OperationStatistics stats = instrumentation.getStatistics(OPERATION);
+        assertNotNull(stats);
+        assertEquals(5, stats.getTileCount());
+        assertEquals(1, stats.getCacheHitCount());
+        assertEquals(4, stats.getCacheMissCount());
+        assertEquals(4 * TILE_SIZE * TILE_SIZE, stats.getComputedPixels());
+        assertEquals(0, stats.getSourceFetchTime());
+        long histogramCount = 0;
+        for (long count : stats.getLatencyHistogram()) {
+            histogramCount += count;
+        }
+        assertEquals(4, histogramCount);
+        assertEquals(stats.getLatencyBucketBounds().length + 1, stats.getLatencyHistogram().length);
+
+        // Tiles are stored inside the original cache and pixel values are unchanged
+        assertNotNull(cache.getTile(image, 1, 1));
+        assertEquals(2, image.getData().getSample(1, 1, 0));
+
+        stats.reset();
+        assertEquals(0, stats.getTileCount());
+    }
+
+    @Test
+    public void testTilesRequestedTogether() {
+        Instrumentation instrumentation = new Instrumentation();
+        OpImage image = createImage();
+        instrumentation.instrument(OPERATION, image);
+        Point[] tileIndices = new Point[] { new Point(0, 0), new Point(1, 0), new Point(0, 1),
+                new Point(1, 1) };
+
+        // The tiles missing from the cache are computed and measured as misses
+        image.getTiles(tileIndices);
+        OperationStatistics stats = instrumentation.getStatistics(OPERATION);
+        assertEquals(4, stats.getTileCount());
+        assertEquals(0, stats.getCacheHitCount());
+        assertEquals(4, stats.getCacheMissCount());
+        assertEquals(4 * TILE_SIZE * TILE_SIZE, stats.getComputedPixels());
+
+        // Then they are served by the cache
+        image.getTiles(tileIndices);
+        assertEquals(8, stats.getTileCount());
+        assertEquals(4, stats.getCacheHitCount());
+        assertEquals(4, stats.getCacheMissCount());
+    }
+
+    @Test
+    public void testSourceFetchTime() {
+        Instrumentation instrumentation = new Instrumentation();
+        OpImage source = createImage();
+        instrumentation.instrument("Source", source);
+        // Image requesting the tiles of the instrumented source
+        OpImage sink = createImage(source);
+        instrumentation.instrument("Sink", sink);
+        sink.getTile(1, 1);
+
+        OperationStatistics sourceStats = instrumentation.getStatistics("Source");
+        OperationStatistics sinkStats = instrumentation.getStatistics("Sink");
+        assertEquals(1, sourceStats.getCacheMissCount());
+        assertEquals(1, sinkStats.getCacheMissCount());
+        assertEquals(sourceStats.getComputeTime(), sinkStats.getSourceFetchTime());
+        assertTrue(sinkStats.getComputeTime() >= sinkStats.getSourceFetchTime());
+    }
+
+    @Test
+    public void testOperationFilterAndJMX() throws Exception {
+        Instrumentation instrumentation = new Instrumentation();
+        instrumentation.setOperations(Collections.singleton(OPERATION));
+        OpImage image = createImage();
+        assertFalse(instrumentation.instrument("Other", image));
+        assertFalse(Instrumentation.isInstrumented(image));
+        assertTrue(instrumentation.isInstrumented(OPERATION.toUpperCase()));
+
+        instrumentation.setJMXEnabled(true);
+        try {
+            instrumentation.instrument(OPERATION, image);
+            ObjectName name = new ObjectName(Instrumentation.JMX_DOMAIN
+                    + ":type=OperationStatistics,name=" + ObjectName.quote(OPERATION));
+            assertTrue(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+            instrumentation.setJMXEnabled(false);
+            assertFalse(ManagementFactory.getPlatformMBeanServer().isRegistered(name));
+        } finally {
+            instrumentation.setJMXEnabled(false);
+        }
+        assertNull(instrumentation.getStatistics("Other"));
+    }
+}
@@ -0,0 +1,423 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+ *    http://www.geo-solutions.it/
+ *    Copyright 2014 GeoSolutions
+
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.geosolutions.jaiext.vectorbin;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.Comparator;
+
+import com.vividsolutions.jts.geom.CoordinateSequence;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.LineString;
+import com.vividsolutions.jts.geom.Polygon;
+
+/**
+ * Immutable edge table of a polygonal {@code Geometry}, used for answering containment and intersection queries without creating any JTS
+ * geometry. The edges of all the rings are indexed in horizontal buckets, so that a query only checks the edges near its y ordinate, and are also
+ * kept sorted by their minimum y, so that a whole area can be scan converted with an active edge list. Since the table is never modified after
+ * its creation, it can be shared between threads without any locking.
+ * <p>
+ * Point queries follow the JTS semantics: a point lying on the boundary is not contained. Scan conversion samples the pixel centers, with the same
+ * rules used by Java2D when filling a shape.
+ */
+final class GeometryEdgeTable {
+
+    /** Maximum number of buckets of the index */
+    private static final int MAX_BUCKETS = 1 << 16;
+
+    /** Edge coordinates, stored as x0, y0, x1, y1 for each edge */
+    private final double[] edges;
+
+    /** Number of edges, including the horizontal ones */
+    private final int numEdges;
+
+    /** Bounds of the geometry */
+    private final double minX;
+
+    private final double minY;
+
+    private final double maxX;
+
+    private final double maxY;
+
+    /** Height of each bucket */
+    private final double bucketHeight;
+
+    /** Number of buckets */
+    private final int numBuckets;
+
+    /** Index of the first edge of each bucket inside the bucketEdges array; the last element is the array length */
+    private final int[] bucketOffsets;
+
+    /** Edges of each bucket */
+    private final int[] bucketEdges;
+
+    /** Non horizontal edges, sorted by their minimum y */
+    private final int[] sortedEdges;
+
+    private GeometryEdgeTable(double[] edges, int numEdges) {
+        this.edges = edges;
+        this.numEdges = numEdges;
+
+        // Bounds calculation
+        double bMinX = Double.POSITIVE_INFINITY;
+        double bMinY = Double.POSITIVE_INFINITY;
+        double bMaxX = Double.NEGATIVE_INFINITY;
+        double bMaxY = Double.NEGATIVE_INFINITY;
+        for (int i = 0; i < numEdges * 4; i += 2) {
+            bMinX = Math.min(bMinX, edges[i]);
+            bMaxX = Math.max(bMaxX, edges[i]);
+            bMinY = Math.min(bMinY, edges[i + 1]);
+            bMaxY = Math.max(bMaxY, edges[i + 1]);
+        }
+        this.minX = bMinX;
+        this.minY = bMinY;
+        this.maxX = bMaxX;
+        this.maxY = bMaxY;
+
+        // Bucket index creation
+        int buckets = Math.max(1, Math.min(numEdges, MAX_BUCKETS));
+        if (!(bMaxY > bMinY)) {
+            buckets = 1;
+        }
+        this.numBuckets = buckets;
+        this.bucketHeight = buckets > 1 ? (bMaxY - bMinY) / buckets : 1;
+        int[] offsets = new int[buckets + 1];
+        for (int e = 0; e < numEdges; e++) {
+            int last = getBucket(getMaxY(e));
+            for (int b = getBucket(getMinY(e)); b <= last; b++) {
+                offsets[b + 1]++;
+            }
+        }
+        for (int b = 0; b < buckets; b++) {
+            offsets[b + 1] += offsets[b];
+        }
+        int[] cursors = new int[buckets];
+        System.arraycopy(offsets, 0, cursors, 0, buckets);
+        int[] indexed = new int[offsets[buckets]];
+        for (int e = 0; e < numEdges; e++) {
+            int last = getBucket(getMaxY(e));
+            for (int b = getBucket(getMinY(e)); b <= last; b++) {
+                indexed[cursors[b]++] = e;
+            }
+        }
+        this.bucketOffsets = offsets;
+        this.bucketEdges = indexed;
+
+        // Sorting of the non horizontal edges
+        int numSorted = 0;
+        Integer[] sorted = new Integer[numEdges];
+        for (int e = 0; e < numEdges; e++) {
+            if (edges[e * 4 + 1] != edges[e * 4 + 3]) {
+                sorted[numSorted++] = e;
+            }
+        }
+        Arrays.sort(sorted, 0, numSorted, new Comparator<Integer>() {
+            public int compare(Integer e1, Integer e2) {
+                return Double.compare(getMinY(e1), getMinY(e2));
+            }
+        });
+        this.sortedEdges = new int[numSorted];
+        for (int i = 0; i < numSorted; i++) {
+            sortedEdges[i] = sorted[i];
+        }
+    }
+
+    /**
+     * Creates the edge table of the rings of the input geometry, which must be a {@code Polygon} or a {@code MultiPolygon}.
+     */
+    static GeometryEdgeTable create(Geometry geom) {
+        EdgeBuilder builder = new EdgeBuilder();
+        for (int g = 0; g < geom.getNumGeometries(); g++) {
+            Polygon polygon = (Polygon) geom.getGeometryN(g);
+            builder.addRing(polygon.getExteriorRing());
+            for (int r = 0; r < polygon.getNumInteriorRing(); r++) {
+                builder.addRing(polygon.getInteriorRingN(r));
+            }
+        }
+        return new GeometryEdgeTable(builder.edges, builder.numEdges);
+    }
+
+    /**
+     * Tests if the point is inside the geometry interior. Points on the boundary are not contained.
+     */
+    boolean contains(double x, double y) {
+        if (numEdges == 0 || x < minX || x > maxX || y < minY || y > maxY) {
+            return false;
+        }
+        int b = getBucket(y);
+        boolean inside = false;
+        for (int i = bucketOffsets[b]; i < bucketOffsets[b + 1]; i++) {
+            int index = bucketEdges[i] * 4;
+            double x0 = edges[index];
+            double y0 = edges[index + 1];
+            double x1 = edges[index + 2];
+            double y1 = edges[index + 3];
+            if (y < Math.min(y0, y1) || y > Math.max(y0, y1)) {
+                continue;
+            }
+            // Position of the point with respect to the edge; 0 means collinear
+            double orientation = (x1 - x0) * (y - y0) - (x - x0) * (y1 - y0);
+            if (orientation == 0 && x >= Math.min(x0, x1) && x <= Math.max(x0, x1)) {
+                // The point is on the boundary
+                return false;
+            }
+            // The lower end of the edges is included and the upper one excluded, so that
+            // vertices are counted once and horizontal edges are ignored
+            if (y0 < y1 ? (y < y1 && orientation > 0) : (y < y0 && y >= y1 && orientation < 0)) {
+                inside = !inside;
+            }
+        }
+        return inside;
+    }
+
+    /**
+     * Tests if the rectangle is contained by the geometry. The rectangle boundary can touch the geometry boundary, but no part of the rectangle can
+     * be outside of the geometry.
+     */
+    boolean contains(double x, double y, double w, double h) {
+        if (numEdges == 0 || !(w > 0 && h > 0) || x < minX || x + w > maxX || y < minY
+                || y + h > maxY) {
+            return false;
+        }
+        // No edge must cross the rectangle interior
+        double[] t = new double[2];
+        int lastBucket = getBucket(y + h);
+        for (int b = getBucket(y); b <= lastBucket; b++) {
+            for (int i = bucketOffsets[b]; i < bucketOffsets[b + 1]; i++) {
+                if (crossesInterior(bucketEdges[i], x, y, w, h, t)) {
+                    return false;
+                }
+            }
+        }
+        // The rectangle is completely inside or outside the geometry
+        return contains(x + w / 2, y + h / 2);
+    }
+
+    /**
+     * Tests if the rectangle, boundary included, intersects the geometry.
+     */
+    boolean intersects(double x, double y, double w, double h) {
+        if (numEdges == 0 || w < 0 || h < 0 || x > maxX || x + w < minX || y > maxY
+                || y + h < minY) {
+            return false;
+        }
+        // Check if an edge touches the rectangle
+        double[] t = new double[2];
+        int lastBucket = getBucket(y + h);
+        for (int b = getBucket(y); b <= lastBucket; b++) {
+            for (int i = bucketOffsets[b]; i < bucketOffsets[b + 1]; i++) {
+                if (clip(bucketEdges[i], x, y, w, h, t)) {
+                    return true;
+                }
+            }
+        }
+        // The rectangle is completely inside or outside the geometry
+        return contains(x, y);
+    }
+
+    /**
+     * Scan converts the geometry inside the selected area, using an active edge list. A pixel is covered if its center is inside the geometry. The
+     * covered pixels are returned as runs, each one stored as 3 consecutive integers: the row, the first column and the column after the last one,
+     * all relative to the area origin. Runs are ordered by row and then by column.
+     */
+    int[] rasterize(Rectangle area) {
+        int numSorted = sortedEdges.length;
+        if (numSorted == 0 || area.isEmpty() || area.y + 0.5 > maxY
+                || area.y + area.height - 0.5 < minY) {
+            return new int[0];
+        }
+        final int minCol = area.x;
+        final int maxCol = area.x + area.width;
+
+        int[] runs = new int[48];
+        int numRuns = 0;
+        int[] active = new int[16];
+        int numActive = 0;
+        double[] crossings = new double[16];
+        int next = 0;
+        for (int row = 0; row < area.height; row++) {
+            double cy = area.y + row + 0.5;
+            // Addition of the edges starting before the scanline
+            while (next < numSorted && getMinY(sortedEdges[next]) <= cy) {
+                int e = sortedEdges[next++];
+                if (getMaxY(e) > cy) {
+                    if (numActive == active.length) {
+                        int[] grown = new int[numActive * 2];
+                        System.arraycopy(active, 0, grown, 0, numActive);
+                        active = grown;
+                        crossings = new double[numActive * 2];
+                    }
+                    active[numActive++] = e;
+                }
+            }
+            if (numActive == 0) {
+                if (next == numSorted) {
+                    break;
+                }
+                continue;
+            }
+            // Removal of the edges ending before the scanline and calculation of the crossings,
+            // sorted by x
+            int numCrossings = 0;
+            for (int a = 0; a < numActive; a++) {
+                int e = active[a];
+                if (getMaxY(e) <= cy) {
+                    active[a--] = active[--numActive];
+                    continue;
+                }
+                int index = e * 4;
+                double x0 = edges[index];
+                double y0 = edges[index + 1];
+                double x1 = edges[index + 2];
+                double y1 = edges[index + 3];
+                double cx = x0 + (cy - y0) * (x1 - x0) / (y1 - y0);
+                int c = numCrossings++;
+                while (c > 0 && crossings[c - 1] > cx) {
+                    crossings[c] = crossings[c - 1];
+                    c--;
+                }
+                crossings[c] = cx;
+            }
+            // Pixels whose center is between two crossings are covered
+            for (int c = 0; c + 1 < numCrossings; c += 2) {
+                int start = (int) Math.max(Math.ceil(crossings[c] - 0.5), minCol);
+                int end = (int) Math.min(Math.ceil(crossings[c + 1] - 0.5), maxCol);
+                if (start >= end) {
+                    continue;
+                }
+                // Contiguous runs are merged
+                if (numRuns > 0 && runs[numRuns - 3] == row && runs[numRuns - 1] == start - minCol) {
+                    runs[numRuns - 1] = end - minCol;
+                    continue;
+                }
+                if (numRuns + 3 > runs.length) {
+                    int[] grown = new int[runs.length * 2];
+                    System.arraycopy(runs, 0, grown, 0, numRuns);
+                    runs = grown;
+                }
+                runs[numRuns++] = row;
+                runs[numRuns++] = start - minCol;
+                runs[numRuns++] = end - minCol;
+            }
+        }
+        int[] result = new int[numRuns];
+        System.arraycopy(runs, 0, result, 0, numRuns);
+        return result;
+    }
+
+    /** Returns the bucket containing the selected y, clamped to the index */
+    private int getBucket(double y) {
+        int b = (int) ((y - minY) / bucketHeight);
+        return b < 0 ? 0 : (b >= numBuckets ? numBuckets - 1 : b);
+    }
+
+    private double getMinY(int e) {
+        return Math.min(edges[e * 4 + 1], edges[e * 4 + 3]);
+    }
+
+    private double getMaxY(int e) {
+        return Math.max(edges[e * 4 + 1], edges[e * 4 + 3]);
+    }
+
+    /**
+     * Clips the edge with the rectangle, boundary included, using the Liang-Barsky algorithm. The parameters of the clipped part of the edge are
+     * stored inside the t array. Returns false if the edge does not touch the rectangle.
+     */
+    private boolean clip(int e, double x, double y, double w, double h, double[] t) {
+        int index = e * 4;
+        double x0 = edges[index];
+        double y0 = edges[index + 1];
+        double dx = edges[index + 2] - x0;
+        double dy = edges[index + 3] - y0;
+        t[0] = 0;
+        t[1] = 1;
+        return clipT(-dx, x0 - x, t) && clipT(dx, x + w - x0, t) && clipT(-dy, y0 - y, t)
+                && clipT(dy, y + h - y0, t);
+    }
+
+    /** Clips the parametric interval t with a single boundary of the rectangle; returns false if the interval becomes empty */
+    private static boolean clipT(double p, double q, double[] t) {
+        if (p == 0) {
+            return q >= 0;
+        }
+        double r = q / p;
+        if (p < 0) {
+            if (r > t[1]) {
+                return false;
+            }
+            if (r > t[0]) {
+                t[0] = r;
+            }
+        } else {
+            if (r < t[0]) {
+                return false;
+            }
+            if (r < t[1]) {
+                t[1] = r;
+            }
+        }
+        return true;
+    }
+
+    /** Tests if the edge crosses the interior of the rectangle */
+    private boolean crossesInterior(int e, double x, double y, double w, double h, double[] t) {
+        if (!clip(e, x, y, w, h, t)) {
+            return false;
+        }
+        // The clipped part of the edge is a chord of the rectangle: it crosses the interior
+        // if and only if its middle point is not on the rectangle boundary
+        int index = e * 4;
+        double tm = (t[0] + t[1]) / 2;
+        double mx = edges[index] + tm * (edges[index + 2] - edges[index]);
+        double my = edges[index + 1] + tm * (edges[index + 3] - edges[index + 1]);
+        return mx > x && mx < x + w && my > y && my < y + h;
+    }
+
+    /** Growable storage of the edges of the geometry rings */
+    private static final class EdgeBuilder {
+
+        private double[] edges = new double[64];
+
+        private int numEdges;
+
+        void addRing(LineString ring) {
+            CoordinateSequence cs = ring.getCoordinateSequence();
+            for (int i = 1; i < cs.size(); i++) {
+                add(cs.getX(i - 1), cs.getY(i - 1), cs.getX(i), cs.getY(i));
+            }
+        }
+
+        void add(double x0, double y0, double x1, double y1) {
+            if (x0 == x1 && y0 == y1) {
+                return;
+            }
+            int index = numEdges * 4;
+            if (index + 4 > edges.length) {
+                double[] grown = new double[edges.length * 2];
+                System.arraycopy(edges, 0, grown, 0, index);
+                edges = grown;
+            }
+            edges[index] = x0;
+            edges[index + 1] = y0;
+            edges[index + 2] = x1;
+            edges[index + 3] = y1;
+            numEdges++;
+        }
+    }
+}
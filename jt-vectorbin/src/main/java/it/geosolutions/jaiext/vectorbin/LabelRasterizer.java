@@ -0,0 +1,231 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+ *    http://www.geo-solutions.it/
+ *    Copyright 2014 GeoSolutions
+
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.geosolutions.jaiext.vectorbin;
+
+import java.awt.Rectangle;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+
+/**
+ * Burns a collection of polygonal geometries, each one with its own label, into the tiles of an image. The geometries are indexed by the tiles
+ * their bounds overlap, so that a tile only scan converts the geometries touching it. Scan conversion is done with the {@link GeometryEdgeTable}
+ * of each geometry, without using Java2D: a pixel gets the label of the last geometry containing its center, following the collection order.
+ * <p>
+ * The edge tables of the geometries spanning more than one tile are cached and shared by all their tiles, the ones of the geometries contained in a
+ * single tile are created when the tile is computed and then discarded. Instances can be used by many threads at the same time.
+ */
+final class LabelRasterizer {
+
+    /** Geometries to burn */
+    private final Geometry[] geometries;
+
+    /** Label of each geometry */
+    private final int[] labels;
+
+    /** Pixel bounds of each geometry, stored as minX, minY, maxX, maxY (exclusive) */
+    private final int[] bounds;
+
+    /** Tile grid */
+    private final int minTileX;
+
+    private final int minTileY;
+
+    private final int numXTiles;
+
+    private final int tileGridXOffset;
+
+    private final int tileGridYOffset;
+
+    private final int tileWidth;
+
+    private final int tileHeight;
+
+    /** Index of the first geometry of each tile inside the tileGeometries array; the last element is the array length */
+    private final int[] tileOffsets;
+
+    /** Geometries overlapping each tile, in collection order */
+    private final int[] tileGeometries;
+
+    /** Cached edge tables of the geometries spanning more than one tile */
+    private final AtomicReferenceArray<GeometryEdgeTable> edgeTables;
+
+    /** Whether each geometry spans more than one tile */
+    private final boolean[] shared;
+
+    /**
+     * Builds the tile index of the geometries.
+     * 
+     * @param geometries polygonal geometries
+     * @param labels label of each geometry
+     * @param imageBounds bounds of the image
+     * @param minTileX minimum tile X index
+     * @param minTileY minimum tile Y index
+     * @param maxTileX maximum tile X index
+     * @param maxTileY maximum tile Y index
+     * @param tileGridXOffset X offset of the tile grid
+     * @param tileGridYOffset Y offset of the tile grid
+     * @param tileWidth tile width
+     * @param tileHeight tile height
+     */
+    LabelRasterizer(List<Geometry> geometries, int[] labels, Rectangle imageBounds, int minTileX,
+            int minTileY, int maxTileX, int maxTileY, int tileGridXOffset, int tileGridYOffset,
+            int tileWidth, int tileHeight) {
+        int numGeometries = geometries.size();
+        this.geometries = geometries.toArray(new Geometry[numGeometries]);
+        this.labels = labels;
+        this.minTileX = minTileX;
+        this.minTileY = minTileY;
+        this.numXTiles = maxTileX - minTileX + 1;
+        this.tileGridXOffset = tileGridXOffset;
+        this.tileGridYOffset = tileGridYOffset;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.bounds = new int[numGeometries * 4];
+        this.shared = new boolean[numGeometries];
+        this.edgeTables = new AtomicReferenceArray<GeometryEdgeTable>(numGeometries);
+
+        // Tile range of each geometry, an empty range is stored for the geometries outside the image
+        int[] tileRanges = new int[numGeometries * 4];
+        int numTiles = numXTiles * (maxTileY - minTileY + 1);
+        int[] offsets = new int[numTiles + 1];
+        for (int g = 0; g < numGeometries; g++) {
+            Envelope env = this.geometries[g].getEnvelopeInternal();
+            int index = g * 4;
+            if (env.isNull()) {
+                tileRanges[index] = 0;
+                tileRanges[index + 2] = -1;
+                continue;
+            }
+            Rectangle pixels = new Rectangle((int) Math.floor(env.getMinX()),
+                    (int) Math.floor(env.getMinY()), 0, 0);
+            pixels.add((int) Math.ceil(env.getMaxX()), (int) Math.ceil(env.getMaxY()));
+            pixels = pixels.intersection(imageBounds);
+            if (pixels.isEmpty()) {
+                tileRanges[index] = 0;
+                tileRanges[index + 2] = -1;
+                continue;
+            }
+            bounds[index] = pixels.x;
+            bounds[index + 1] = pixels.y;
+            bounds[index + 2] = pixels.x + pixels.width;
+            bounds[index + 3] = pixels.y + pixels.height;
+            tileRanges[index] = xToTile(pixels.x);
+            tileRanges[index + 1] = yToTile(pixels.y);
+            tileRanges[index + 2] = xToTile(pixels.x + pixels.width - 1);
+            tileRanges[index + 3] = yToTile(pixels.y + pixels.height - 1);
+            shared[g] = tileRanges[index] != tileRanges[index + 2]
+                    || tileRanges[index + 1] != tileRanges[index + 3];
+            for (int ty = tileRanges[index + 1]; ty <= tileRanges[index + 3]; ty++) {
+                for (int tx = tileRanges[index]; tx <= tileRanges[index + 2]; tx++) {
+                    offsets[getTileIndex(tx, ty) + 1]++;
+                }
+            }
+        }
+        for (int t = 0; t < numTiles; t++) {
+            offsets[t + 1] += offsets[t];
+        }
+        int[] cursors = new int[numTiles];
+        System.arraycopy(offsets, 0, cursors, 0, numTiles);
+        int[] indexed = new int[offsets[numTiles]];
+        for (int g = 0; g < numGeometries; g++) {
+            int index = g * 4;
+            for (int ty = tileRanges[index + 1]; ty <= tileRanges[index + 3]; ty++) {
+                for (int tx = tileRanges[index]; tx <= tileRanges[index + 2]; tx++) {
+                    indexed[cursors[getTileIndex(tx, ty)]++] = g;
+                }
+            }
+        }
+        this.tileOffsets = offsets;
+        this.tileGeometries = indexed;
+    }
+
+    /**
+     * Burns the labels of the geometries overlapping the selected tile into the data array, which holds the tile samples in row-major order and
+     * must be filled with zeros.
+     * 
+     * @param tileX tile X index
+     * @param tileY tile Y index
+     * @param data the tile samples
+     * 
+     * @return {@code false} if no pixel of the tile has been labelled
+     */
+    boolean rasterize(int tileX, int tileY, int[] data) {
+        int tile = getTileIndex(tileX, tileY);
+        int tileMinX = tileX * tileWidth + tileGridXOffset;
+        int tileMinY = tileY * tileHeight + tileGridYOffset;
+        boolean labelled = false;
+        for (int i = tileOffsets[tile]; i < tileOffsets[tile + 1]; i++) {
+            int g = tileGeometries[i];
+            int index = g * 4;
+            int minX = Math.max(bounds[index], tileMinX);
+            int minY = Math.max(bounds[index + 1], tileMinY);
+            int maxX = Math.min(bounds[index + 2], tileMinX + tileWidth);
+            int maxY = Math.min(bounds[index + 3], tileMinY + tileHeight);
+            Rectangle area = new Rectangle(minX, minY, maxX - minX, maxY - minY);
+            int[] runs = getEdgeTable(g).rasterize(area);
+            int label = labels[g];
+            for (int r = 0; r < runs.length; r += 3) {
+                int offset = (runs[r] + minY - tileMinY) * tileWidth + minX - tileMinX;
+                Arrays.fill(data, offset + runs[r + 1], offset + runs[r + 2], label);
+            }
+            labelled |= runs.length > 0;
+        }
+        return labelled;
+    }
+
+    /**
+     * Tells if no geometry overlaps the selected tile.
+     * 
+     * @param tileX tile X index
+     * @param tileY tile Y index
+     */
+    boolean isEmpty(int tileX, int tileY) {
+        int tile = getTileIndex(tileX, tileY);
+        return tileOffsets[tile] == tileOffsets[tile + 1];
+    }
+
+    /** Returns the edge table of a geometry, cached only if the geometry spans many tiles */
+    private GeometryEdgeTable getEdgeTable(int g) {
+        if (!shared[g]) {
+            return GeometryEdgeTable.create(geometries[g]);
+        }
+        GeometryEdgeTable table = edgeTables.get(g);
+        if (table == null) {
+            // concurrent creations build equivalent tables, one of them is kept
+            table = GeometryEdgeTable.create(geometries[g]);
+            edgeTables.set(g, table);
+        }
+        return table;
+    }
+
+    private int getTileIndex(int tileX, int tileY) {
+        return (tileY - minTileY) * numXTiles + tileX - minTileX;
+    }
+
+    private int xToTile(int x) {
+        return (int) Math.floor((x - tileGridXOffset) / (double) tileWidth);
+    }
+
+    private int yToTile(int y) {
+        return (int) Math.floor((y - tileGridYOffset) / (double) tileHeight);
+    }
+}
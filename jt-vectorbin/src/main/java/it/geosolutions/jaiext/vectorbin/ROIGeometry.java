@@ -43,7 +43,6 @@ import javax.media.jai.PlanarImage;
 import javax.media.jai.ROI;
 import javax.media.jai.ROIShape;
 import it.geosolutions.jaiext.utilities.shape.LiteShape;
-import it.geosolutions.jaiext.jts.CoordinateSequence2D;
 import com.vividsolutions.jts.awt.ShapeReader;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
@@ -124,11 +123,14 @@ public class ROIGeometry extends ROI {
     private final static PrecisionModel FLOAT_PRECISION = new PrecisionModel(PrecisionModel.FLOATING_SINGLE);
     private final static GeometryFactory FLOAT_PRECISION_FACTORY = new GeometryFactory(FLOAT_PRECISION);
 
-    private final CoordinateSequence2D testPointCS;
-    private final com.vividsolutions.jts.geom.Point testPoint;
-    
-    private final CoordinateSequence2D testRectCS;
-    private final Polygon testRect;
+    /** Edge table used for the containment tests, created when first needed */
+    private transient volatile GeometryEdgeTable edgeTable;
+
+    /** Maximum number of rows of the geometry bounds for which the run-length mask is cached */
+    private final static int MAX_CACHED_ROWS = 1 << 16;
+
+    /** Run-length mask of the whole geometry used for the window requests, created when first needed */
+    private transient volatile RunLengthMask runLengthMask;
     
     private RenderingHints hints;
 
@@ -270,12 +272,6 @@ public class ROIGeometry extends ROI {
         }
         
         theGeom = PreparedGeometryFactory.prepare(cloned);
-        
-        testPointCS = new CoordinateSequence2D(1);
-        testPoint = geomFactory.createPoint(testPointCS);
-
-        testRectCS = new CoordinateSequence2D(5);
-        testRect = geomFactory.createPolygon(geomFactory.createLinearRing(testRectCS), null);
     }
 
     /**
@@ -354,10 +350,7 @@ public class ROIGeometry extends ROI {
      */
     @Override
     public boolean contains(double x, double y) {
-        testPointCS.setX(0, x);
-        testPointCS.setY(0, y);
-        testPoint.geometryChanged();
-        return theGeom.contains(testPoint);
+        return getEdgeTable().contains(x, y);
     }
 
     /**
@@ -413,8 +406,7 @@ public class ROIGeometry extends ROI {
      */
     @Override
     public boolean contains(double x, double y, double w, double h) {
-        setTestRect(x, y, w, h);
-        return theGeom.contains(testRect);
+        return getEdgeTable().contains(x, y, w, h);
     }
 
     /**
@@ -442,12 +434,15 @@ public class ROIGeometry extends ROI {
 
     }
 
+    /**
+     * Returns a bitmask of the given area, scan converting the geometry directly. A pixel is set if its center is inside the geometry.
+     * 
+     * @return the bitmask, or {@code null} if no pixel of the area is inside this ROI
+     */
     @Override
     public int[][] getAsBitmask(int x, int y, int width, int height, int[][] mask) {
-        // go the cheap way, only TiledImage seems to be using this method
-        ROI roiImage = new ROI(getAsImage());
-        return roiImage.getAsBitmask(x, y, width, height, mask);
-
+        return RunLengthMask.toBitmask(getRuns(new Rectangle(x, y, width, height)), width,
+                height, mask);
     }
 
     /**
@@ -485,29 +480,46 @@ public class ROIGeometry extends ROI {
         return roiImage;
     }
 
+    /**
+     * Returns the rectangles covering the given area, scan converting the geometry directly
+     * instead of rendering it. A pixel is covered if its center is inside the geometry.
+     * 
+     * @return the list of rectangles, or {@code null} if no pixel of the area is inside this ROI
+     */
     @Override
     public LinkedList getAsRectangleList(int x, int y, int width, int height) {
         Rectangle rect = new Rectangle(x, y, width, height);
         if (!intersects(rect)) { 
             // no overlap
             return null;
-        } else if (theGeom.getGeometry().isRectangle()) {
-            // simple case, the geometry is a rectangle to start with
+        }
+        return RunLengthMask.toRectangleList(getRuns(rect), x, y);
+    }
+
+    /**
+     * Returns the runs of pixels of the given area inside the geometry. The runs are
+     * extracted from a run-length mask of the whole geometry, cached on first use, unless
+     * the geometry spans too many rows, in which case only the area is scan converted.
+     * 
+     * @param area the requested area
+     * @return the runs as (row, start, end) triples relative to the area origin
+     */
+    private int[] getRuns(Rectangle area) {
+        RunLengthMask mask = runLengthMask;
+        if (mask == null) {
             Envelope env = theGeom.getGeometry().getEnvelopeInternal();
-            Envelope intersection = env.intersection(new Envelope(x, x + width, y, y + width));
-            int rx = (int) Math.round(intersection.getMinX());
-            int ry = (int) Math.round(intersection.getMinY());
-            int rw = (int) Math.round(intersection.getMaxX() - rx);
-            int rh = (int) Math.round(intersection.getMaxY() - ry);
-            LinkedList result = new LinkedList();
-            result.add(new Rectangle(rx, ry, rw, rh));
-            return result;
-        } else {
-            // we cannot force the base class to use our image, but
-            // we can create a ROI around it
-            ROI roiImage = new ROI(getAsImage());
-            return roiImage.getAsRectangleList(x, y, width, height);
+            int minY = (int) Math.floor(env.getMinY());
+            int h = (int) Math.ceil(env.getMaxY()) - minY;
+            if (env.isNull() || h > MAX_CACHED_ROWS) {
+                return getEdgeTable().rasterize(area);
+            }
+            int minX = (int) Math.floor(env.getMinX());
+            int w = (int) Math.ceil(env.getMaxX()) - minX;
+            // same idiom as the edge table, concurrent creations are equivalent
+            mask = RunLengthMask.create(getEdgeTable(), new Rectangle(minX, minY, w, h));
+            runLengthMask = mask;
         }
+        return mask.getRuns(area);
     }
 
     /**
@@ -608,8 +620,7 @@ public class ROIGeometry extends ROI {
      */
     @Override
     public boolean intersects(Rectangle rect) {
-        setTestRect(rect.x, rect.y, rect.width, rect.height);
-        return theGeom.intersects(testRect);
+        return getEdgeTable().intersects(rect.x, rect.y, rect.width, rect.height);
     }
 
     /**
@@ -620,8 +631,8 @@ public class ROIGeometry extends ROI {
      */
     @Override
     public boolean intersects(Rectangle2D rect) {
-        setTestRect(rect.getMinX(), rect.getMinY(), rect.getWidth(), rect.getHeight());
-        return theGeom.intersects(testRect);
+        return getEdgeTable().intersects(rect.getMinX(), rect.getMinY(), rect.getWidth(),
+                rect.getHeight());
     }
 
     /**
@@ -635,8 +646,7 @@ public class ROIGeometry extends ROI {
      */
     @Override
     public boolean intersects(int x, int y, int w, int h) {
-        setTestRect(x, y, w, h);
-        return theGeom.intersects(testRect);
+        return getEdgeTable().intersects(x, y, w, h);
     }
 
     /**
@@ -650,8 +660,7 @@ public class ROIGeometry extends ROI {
      */
     @Override
     public boolean intersects(double x, double y, double w, double h) {
-        setTestRect(x, y, w, h);
-        return theGeom.intersects(testRect);
+        return getEdgeTable().intersects(x, y, w, h);
     }
 
     @Override
@@ -734,20 +743,20 @@ public class ROIGeometry extends ROI {
     }
 
     /**
-     * Helper function for contains and intersects methods.
-     * 
-     * @param x rectangle origin X ordinate
-     * @param y rectangle origin Y ordinate
-     * @param w rectangle width
-     * @param h rectangle height
-     */
-    private void setTestRect(double x, double y, double w, double h) {
-        testRectCS.setXY(0, x, y);
-        testRectCS.setXY(1, x, y + h);
-        testRectCS.setXY(2, x + w, y + h);
-        testRectCS.setXY(3, x + w, y);
-        testRectCS.setXY(4, x, y);
-        testRect.geometryChanged();
+     * Helper function for contains and intersects methods. Returns the edge table of
+     * the geometry, which is immutable and can be used by many threads at the same
+     * time. No lock is needed: if two threads create it concurrently, they build
+     * equivalent tables and one of them is kept.
+     * 
+     * @return the edge table
+     */
+    private GeometryEdgeTable getEdgeTable() {
+        GeometryEdgeTable table = edgeTable;
+        if (table == null) {
+            table = GeometryEdgeTable.create(theGeom.getGeometry());
+            edgeTable = table;
+        }
+        return table;
     }
     
     /**
@@ -0,0 +1,183 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+ *    http://www.geo-solutions.it/
+ *    Copyright 2014 GeoSolutions
+
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.geosolutions.jaiext.vectorbin;
+
+import java.awt.Rectangle;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedList;
+import java.util.List;
+
+/**
+ * Immutable run-length representation of a scan converted ROI. The runs of covered pixels of each row are stored contiguously, so that the runs of
+ * any window are extracted without scan converting the geometry again and without creating a raster. The class also contains the conversion of
+ * runs into the bitmask and rectangle list formats used by {@link javax.media.jai.ROI}.
+ * <p>
+ * Runs are exchanged as 3 consecutive integers: the row, the first column and the column after the last one, all relative to the origin of the
+ * requested area, ordered by row and then by column.
+ */
+final class RunLengthMask {
+
+    /** Bounds of the scan converted area */
+    private final Rectangle bounds;
+
+    /** Index of the first run of each row inside the runs array; the last element is the number of runs */
+    private final int[] rowOffsets;
+
+    /** Absolute first column and column after the last one of each run */
+    private final int[] runs;
+
+    private RunLengthMask(Rectangle bounds, int[] rowOffsets, int[] runs) {
+        this.bounds = bounds;
+        this.rowOffsets = rowOffsets;
+        this.runs = runs;
+    }
+
+    /** Scan converts the geometry of the edge table inside the selected bounds */
+    static RunLengthMask create(GeometryEdgeTable table, Rectangle bounds) {
+        int[] areaRuns = table.rasterize(bounds);
+        int numRuns = areaRuns.length / 3;
+        int[] rowOffsets = new int[bounds.height + 1];
+        int[] runs = new int[numRuns * 2];
+        for (int r = 0; r < numRuns; r++) {
+            rowOffsets[areaRuns[r * 3] + 1]++;
+            runs[r * 2] = areaRuns[r * 3 + 1] + bounds.x;
+            runs[r * 2 + 1] = areaRuns[r * 3 + 2] + bounds.x;
+        }
+        for (int row = 0; row < bounds.height; row++) {
+            rowOffsets[row + 1] += rowOffsets[row];
+        }
+        return new RunLengthMask(new Rectangle(bounds), rowOffsets, runs);
+    }
+
+    /** Returns the runs of covered pixels inside the selected area, relative to its origin */
+    int[] getRuns(Rectangle area) {
+        Rectangle window = area.intersection(bounds);
+        if (window.isEmpty()) {
+            return new int[0];
+        }
+        int minX = area.x;
+        int maxX = area.x + area.width;
+        int firstRow = window.y - bounds.y;
+        int lastRow = firstRow + window.height;
+        int[] result = new int[(rowOffsets[lastRow] - rowOffsets[firstRow]) * 3];
+        int numRuns = 0;
+        for (int row = firstRow; row < lastRow; row++) {
+            for (int r = rowOffsets[row]; r < rowOffsets[row + 1]; r++) {
+                int start = Math.max(runs[r * 2], minX);
+                int end = Math.min(runs[r * 2 + 1], maxX);
+                if (start < end) {
+                    result[numRuns++] = row + bounds.y - area.y;
+                    result[numRuns++] = start - minX;
+                    result[numRuns++] = end - minX;
+                }
+            }
+        }
+        if (numRuns == result.length) {
+            return result;
+        }
+        int[] trimmed = new int[numRuns];
+        System.arraycopy(result, 0, trimmed, 0, numRuns);
+        return trimmed;
+    }
+
+    /**
+     * Converts the runs of an area into a bitmask, as defined by {@link javax.media.jai.ROI#getAsBitmask(int, int, int, int, int[][])}. Returns null
+     * if no pixel is covered. The input mask is reused if it is large enough.
+     */
+    static int[][] toBitmask(int[] runs, int width, int height, int[][] mask) {
+        if (runs.length == 0) {
+            return null;
+        }
+        int words = (width + 31) / 32;
+        if (mask == null || mask.length < height || mask[0].length < words) {
+            mask = new int[height][words];
+        } else {
+            for (int r = 0; r < height; r++) {
+                Arrays.fill(mask[r], 0);
+            }
+        }
+        for (int r = 0; r < runs.length; r += 3) {
+            int[] line = mask[runs[r]];
+            int start = runs[r + 1];
+            int end = runs[r + 2];
+            // Partial first word, full words, partial last word
+            while (start < end && (start & 31) != 0) {
+                line[start >> 5] |= 0x80000000 >>> (start & 31);
+                start++;
+            }
+            while (start + 32 <= end) {
+                line[start >> 5] = -1;
+                start += 32;
+            }
+            while (start < end) {
+                line[start >> 5] |= 0x80000000 >>> (start & 31);
+                start++;
+            }
+        }
+        return mask;
+    }
+
+    /**
+     * Converts the runs of an area into a list of rectangles, as defined by {@link javax.media.jai.ROI#getAsRectangleList(int, int, int, int)}.
+     * Identical runs of consecutive rows are merged into a single rectangle. The rectangles are ordered by their first row and then by column.
+     * Returns null if no pixel is covered.
+     */
+    static LinkedList<Rectangle> toRectangleList(int[] runs, int x, int y) {
+        if (runs.length == 0) {
+            return null;
+        }
+        LinkedList<Rectangle> result = new LinkedList<Rectangle>();
+        // Rectangles ending on the previous row, which can be extended, ordered by column
+        List<Rectangle> open = new ArrayList<Rectangle>();
+        List<Rectangle> next = new ArrayList<Rectangle>();
+        int previousRow = Integer.MIN_VALUE;
+        int cursor = 0;
+        for (int r = 0; r < runs.length; r += 3) {
+            int row = runs[r];
+            if (row != previousRow) {
+                // Only the rectangles extended on the previous row can be extended again
+                List<Rectangle> tmp = open;
+                open = next;
+                next = tmp;
+                next.clear();
+                if (row != previousRow + 1) {
+                    open.clear();
+                }
+                cursor = 0;
+                previousRow = row;
+            }
+            int start = runs[r + 1] + x;
+            int width = runs[r + 2] - runs[r + 1];
+            while (cursor < open.size() && open.get(cursor).x < start) {
+                cursor++;
+            }
+            Rectangle rect;
+            if (cursor < open.size() && open.get(cursor).x == start
+                    && open.get(cursor).width == width) {
+                rect = open.get(cursor++);
+                rect.height++;
+            } else {
+                rect = new Rectangle(start, row + y, width, 1);
+                result.add(rect);
+            }
+            next.add(rect);
+        }
+        return result;
+    }
+}
@@ -0,0 +1,154 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+ *    http://www.geo-solutions.it/
+ *    Copyright 2014 GeoSolutions
+
+
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+
+ * http://www.apache.org/licenses/LICENSE-2.0
+
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package it.geosolutions.jaiext.vectorbin;
+
+import java.util.concurrent.atomic.AtomicReferenceArray;
+
+/**
+ * Classification of the tiles of an image against a polygonal geometry: each tile is either inside the geometry, outside of it, or crossed by its
+ * boundary. The classification is a quadtree over the tile grid, whose nodes are classified with the {@link GeometryEdgeTable} of the geometry
+ * and are only split when crossed by the boundary, so that large inside or outside areas are answered by a single node.
+ * <p>
+ * Nodes are created lazily, when a tile below them is first requested, and are never modified afterwards. New nodes are published with an atomic
+ * compare and set, so threads requesting different tiles build different parts of the tree in parallel, and no lock is ever taken.
+ */
+final class TileClassification {
+
+    /** The tile is outside the geometry */
+    static final int OUTSIDE = 0;
+
+    /** The tile is inside the geometry */
+    static final int INSIDE = 1;
+
+    /** The tile is crossed by the geometry boundary */
+    static final int BOUNDARY = 2;
+
+    /** The node is crossed by the geometry boundary and contains more than one tile */
+    private static final int SPLIT = 3;
+
+    private final GeometryEdgeTable table;
+
+    /** Tile grid */
+    private final int tileGridXOffset;
+
+    private final int tileGridYOffset;
+
+    private final int tileWidth;
+
+    private final int tileHeight;
+
+    /** Root of the quadtree, covering all the tiles */
+    private final Node root;
+
+    /**
+     * Builds the classification of the selected tiles. Only the root node is classified.
+     * 
+     * @param table the edge table of the geometry
+     * @param minTileX minimum tile X index
+     * @param minTileY minimum tile Y index
+     * @param maxTileX maximum tile X index
+     * @param maxTileY maximum tile Y index
+     * @param tileGridXOffset X offset of the tile grid
+     * @param tileGridYOffset Y offset of the tile grid
+     * @param tileWidth tile width
+     * @param tileHeight tile height
+     */
+    TileClassification(GeometryEdgeTable table, int minTileX, int minTileY, int maxTileX,
+            int maxTileY, int tileGridXOffset, int tileGridYOffset, int tileWidth, int tileHeight) {
+        this.table = table;
+        this.tileGridXOffset = tileGridXOffset;
+        this.tileGridYOffset = tileGridYOffset;
+        this.tileWidth = tileWidth;
+        this.tileHeight = tileHeight;
+        this.root = createNode(minTileX, minTileY, maxTileX, maxTileY);
+    }
+
+    /**
+     * Returns the classification of the selected tile, one of {@link #INSIDE}, {@link #OUTSIDE} and {@link #BOUNDARY}.
+     * 
+     * @param tileX tile X index
+     * @param tileY tile Y index
+     */
+    int classify(int tileX, int tileY) {
+        Node node = root;
+        while (node.state == SPLIT) {
+            int midX = (node.minTileX + node.maxTileX) >> 1;
+            int midY = (node.minTileY + node.maxTileY) >> 1;
+            boolean right = tileX > midX;
+            boolean bottom = tileY > midY;
+            int quadrant = (right ? 1 : 0) + (bottom ? 2 : 0);
+            Node child = node.children.get(quadrant);
+            if (child == null) {
+                child = createNode(right ? midX + 1 : node.minTileX,
+                        bottom ? midY + 1 : node.minTileY, right ? node.maxTileX : midX,
+                        bottom ? node.maxTileY : midY);
+                // if another thread got there first, its equivalent node is used
+                if (!node.children.compareAndSet(quadrant, null, child)) {
+                    child = node.children.get(quadrant);
+                }
+            }
+            node = child;
+        }
+        return node.state;
+    }
+
+    /** Creates a node classifying the union of the selected tiles */
+    private Node createNode(int minTileX, int minTileY, int maxTileX, int maxTileY) {
+        double x = minTileX * tileWidth + tileGridXOffset;
+        double y = minTileY * tileHeight + tileGridYOffset;
+        double w = (maxTileX - minTileX + 1) * (double) tileWidth;
+        double h = (maxTileY - minTileY + 1) * (double) tileHeight;
+        int state;
+        if (table.contains(x, y, w, h)) {
+            state = INSIDE;
+        } else if (!table.intersects(x, y, w, h)) {
+            state = OUTSIDE;
+        } else if (minTileX == maxTileX && minTileY == maxTileY) {
+            state = BOUNDARY;
+        } else {
+            state = SPLIT;
+        }
+        return new Node(minTileX, minTileY, maxTileX, maxTileY, state);
+    }
+
+    /** Immutable quadtree node, apart from the lazily created children */
+    private static final class Node {
+
+        final int minTileX;
+
+        final int minTileY;
+
+        final int maxTileX;
+
+        final int maxTileY;
+
+        final int state;
+
+        /** Children of a split node, ordered as top left, top right, bottom left and bottom right */
+        final AtomicReferenceArray<Node> children;
+
+        Node(int minTileX, int minTileY, int maxTileX, int maxTileY, int state) {
+            this.minTileX = minTileX;
+            this.minTileY = minTileY;
+            this.maxTileX = maxTileX;
+            this.maxTileY = maxTileY;
+            this.state = state;
+            this.children = state == SPLIT ? new AtomicReferenceArray<Node>(4) : null;
+        }
+    }
+}
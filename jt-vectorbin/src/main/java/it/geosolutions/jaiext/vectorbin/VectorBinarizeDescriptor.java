@@ -18,6 +18,7 @@
 package it.geosolutions.jaiext.vectorbin;
 
 import java.awt.image.renderable.ParameterBlock;
+import java.util.Collection;
 
 import javax.media.jai.OperationDescriptorImpl;
 import javax.media.jai.registry.RenderedRegistryMode;
@@ -53,6 +54,11 @@ import com.vividsolutions.jts.geom.prep.PreparedGeometry;
  * </code>
  * </pre>
  * 
+ * The "geometry" parameter can also be a {@code Collection} of polygonal geometries, which are burned in a single pass into a label image, each one
+ * with the value of the "labels" array at the same position (1 for all of them if no labels are provided). When geometries overlap, the last one
+ * in the collection wins, and pixels outside all the geometries are set to 0. This batch mode tests the pixel centers and does not support
+ * anti-aliasing; the destination image is BYTE, USHORT, SHORT or INT depending on the range of the labels.
+ * <p>
  * By default, the destination image is type BYTE, with a {@link java.awt.image.MultiPixelPackedSampleModel} and JAI's default tile size. If an
  * alternative image type is desired this can be specified via rendering hints as in this example:
  * 
@@ -105,9 +111,9 @@ import com.vividsolutions.jts.geom.prep.PreparedGeometry;
  * 
  * <tr>
  * <td>geometry</td>
- * <td>Geometry or PreparedGeometry</td>
+ * <td>Geometry, PreparedGeometry or Collection</td>
  * <td>No default</td>
- * <td>The reference polygonal geometry</td>
+ * <td>The reference polygonal geometry, or the geometries to burn in batch mode</td>
  * </tr>
  * 
  * <tr>
@@ -116,6 +122,13 @@ import com.vividsolutions.jts.geom.prep.PreparedGeometry;
  * <td>{@linkplain VectorBinarizeOpImage#DEFAULT_ANTIALIASING}</td>
  * <td>Whether to use anti-aliasing when rendering (pixellating) the reference geometry</td>
  * </tr>
+ * 
+ * <tr>
+ * <td>labels</td>
+ * <td>int[]</td>
+ * <td>null</td>
+ * <td>Label of each geometry in batch mode</td>
+ * </tr>
  * </table>
  * 
  * @author Michael Bedward.
@@ -135,15 +148,17 @@ public class VectorBinarizeDescriptor extends OperationDescriptorImpl {
 
     static final int ANTIALIASING_ARG = 5;
 
+    static final int LABELS_ARG = 6;
+
     private static final String[] paramNames = { "minx", "miny", "width", "height", "geometry",
-            "antiAliasing" };
+            "antiAliasing", "labels" };
 
     private static final Class[] paramClasses = { Integer.class, Integer.class, Integer.class,
-            Integer.class, Object.class, Boolean.class };
+            Integer.class, Object.class, Boolean.class, int[].class };
 
     private static final Object[] paramDefaults = { Integer.valueOf(0), Integer.valueOf(0),
             NO_PARAMETER_DEFAULT, NO_PARAMETER_DEFAULT, NO_PARAMETER_DEFAULT,
-            VectorBinarizeOpImage.DEFAULT_ANTIALIASING };
+            VectorBinarizeOpImage.DEFAULT_ANTIALIASING, null };
 
     /**
      * Creates a new instance.
@@ -173,13 +188,20 @@ public class VectorBinarizeDescriptor extends OperationDescriptorImpl {
                                 "arg4Desc",
                                 paramNames[GEOM_ARG]
                                         + " the reference Geometry: "
-                                        + "either a Polygon, a MultiPolygon or a polygonal PreparedGeometry" },
+                                        + "either a Polygon, a MultiPolygon or a polygonal PreparedGeometry, "
+                                        + "or a Collection of them to burn in batch mode" },
 
                         {
-                                "arg6Desc",
+                                "arg5Desc",
                                 paramNames[ANTIALIASING_ARG]
                                         + " (Boolean, default = false) "
-                                        + "Whether to use antiAliasing as Hints on geometry rendering" } },
+                                        + "Whether to use antiAliasing as Hints on geometry rendering" },
+
+                        {
+                                "arg6Desc",
+                                paramNames[LABELS_ARG]
+                                        + " (int[], default = null) "
+                                        + "Label of each geometry in batch mode, 1 if not provided" } },
 
                 new String[] { RenderedRegistryMode.MODE_NAME }, // supported
                                                                  // modes
@@ -207,7 +229,22 @@ public class VectorBinarizeDescriptor extends OperationDescriptorImpl {
 
         if (ok) {
             Object obj = pb.getObjectParameter(GEOM_ARG);
-            if (!(obj instanceof Polygonal || obj instanceof PreparedGeometry)) {
+            if (obj instanceof Collection) {
+                Collection geometries = (Collection) obj;
+                for (Object element : geometries) {
+                    if (!(element instanceof Polygonal || element instanceof PreparedGeometry)) {
+                        ok = false;
+                        msg.append("The geometries to burn must be either Polygon, MultiPolygon, "
+                                + "or polygonal PreparedGeometry");
+                        return ok;
+                    }
+                }
+                int[] labels = (int[]) pb.getObjectParameter(LABELS_ARG);
+                if (labels != null && labels.length != geometries.size()) {
+                    ok = false;
+                    msg.append("The number of labels must match the number of geometries");
+                }
+            } else if (!(obj instanceof Polygonal || obj instanceof PreparedGeometry)) {
                 ok = false;
                 msg.append("The reference geometry must be either Polygon, MultiPolygon, or a "
                         + "polygonal PreparedGeometry");
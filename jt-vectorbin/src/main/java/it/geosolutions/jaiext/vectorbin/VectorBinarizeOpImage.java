@@ -27,23 +27,23 @@ import java.awt.image.Raster;
 import java.awt.image.SampleModel;
 import java.awt.image.WritableRaster;
 import java.util.Arrays;
+import java.util.List;
 import java.util.Map;
 
 import javax.media.jai.ImageLayout;
 import javax.media.jai.RasterFactory;
 import javax.media.jai.SourcelessOpImage;
 
-import com.vividsolutions.jts.geom.GeometryFactory;
-import com.vividsolutions.jts.geom.Polygon;
-import com.vividsolutions.jts.geom.TopologyException;
+import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.prep.PreparedGeometry;
-import com.vividsolutions.jtsexample.geom.ExtendedCoordinate;
-import com.vividsolutions.jtsexample.geom.ExtendedCoordinateSequence;
 
 import it.geosolutions.jaiext.utilities.shape.LiteShape;
 
 /**
  * Creates a binary image based on tests of pixel inclusion in a polygonal {@code Geometry}. See {@link VectorBinarizeDescriptor} for details.
+ * <p>
+ * In batch mode a collection of geometries, each one with its own label, is burned into a label image by a {@link LabelRasterizer}, without using
+ * Java2D.
  * 
  * @author Michael Bedward
  * @author Andrea Aime
@@ -63,7 +63,11 @@ public class VectorBinarizeOpImage extends SourcelessOpImage {
 
     private boolean antiAliasing = DEFAULT_ANTIALIASING;
 
-    private GeometryFactory gf = new GeometryFactory();
+    /** Classification of the tiles against the geometry, created when first needed */
+    private volatile TileClassification tileClassification;
+
+    /** Rasterizer of the geometries in batch mode, null otherwise */
+    private final LabelRasterizer labelRasterizer;
 
     /**
      * Constructor.
@@ -85,6 +89,36 @@ public class VectorBinarizeOpImage extends SourcelessOpImage {
         this.geom = geom;
         this.shape = new LiteShape(geom.getGeometry());
         this.antiAliasing = antiAliasing;
+        this.labelRasterizer = null;
+    }
+
+    /**
+     * Constructor for the batch mode, where each geometry is burned with its own label. Pixels are labelled if their center is inside a geometry;
+     * when geometries overlap, the last one in the list wins. Pixels outside all the geometries are set to 0.
+     * 
+     * @param sm the {@code SampleModel} used to create tiles
+     * @param configuration rendering hints
+     * @param minX origin X ordinate
+     * @param minY origin Y ordinate
+     * @param width image width
+     * @param height image height
+     * @param geometries polygonal geometries
+     * @param labels label of each geometry
+     */
+    public VectorBinarizeOpImage(SampleModel sm, Map configuration, int minX, int minY, int width,
+            int height, List<Geometry> geometries, int[] labels) {
+        super(buildLayout(minX, minY, width, height, sm), configuration, sm, minX, minY, width,
+                height);
+        if (labels.length != geometries.size()) {
+            throw new IllegalArgumentException(
+                    "The number of labels must match the number of geometries");
+        }
+
+        this.geom = null;
+        this.shape = null;
+        this.labelRasterizer = new LabelRasterizer(geometries, labels, getBounds(), getMinTileX(),
+                getMinTileY(), getMaxTileX(), getMaxTileY(), getTileGridXOffset(),
+                getTileGridYOffset(), tileWidth, tileHeight);
     }
 
     /**
@@ -151,24 +185,62 @@ public class VectorBinarizeOpImage extends SourcelessOpImage {
      * @return the requested tile
      */
     protected Raster getTileRaster(int minX, int minY) {
-        // check relationship between geometry and the tile we're computing
-        Polygon testRect = getTestRect(minX, minY);
-        try {
-            // RasterOp need to be thread safe
-            synchronized (geom) {
-                if (geom.contains(testRect)) {
-                    return getSolidTile();
-                } else if (geom.disjoint(testRect)) {
-                    return getBlankTile();
-                }
-            }
-        } catch (TopologyException tpe) {
-            // In case a Topology Exception have been raised,
-            // use the standard rasterization instead of leveraging
-            // on the shared tiles
+        if (labelRasterizer != null) {
+            return burnGeometries(minX, minY);
         }
 
-        return drawGeometry(minX, minY);
+        // check relationship between geometry and the tile we're computing, no lock needed
+        switch (getTileClassification().classify(XToTileX(minX), YToTileY(minY))) {
+        case TileClassification.INSIDE:
+            return getSolidTile();
+        case TileClassification.OUTSIDE:
+            return getBlankTile();
+        default:
+            return drawGeometry(minX, minY);
+        }
+    }
+
+    /**
+     * Returns the classification of the tiles against the reference geometry, creating it if needed. The classification is immutable apart from
+     * its lazily created nodes, which are published atomically, so it is shared by the tile threads without locking. If two threads create it at
+     * the same time, they build equivalent classifications and one of them is kept.
+     * 
+     * @return the tile classification
+     */
+    private TileClassification getTileClassification() {
+        TileClassification classification = tileClassification;
+        if (classification == null) {
+            GeometryEdgeTable table = GeometryEdgeTable.create(geom.getGeometry());
+            classification = new TileClassification(table, getMinTileX(), getMinTileY(),
+                    getMaxTileX(), getMaxTileY(), getTileGridXOffset(), getTileGridYOffset(),
+                    tileWidth, tileHeight);
+            tileClassification = classification;
+        }
+        return classification;
+    }
+
+    /**
+     * Burns the labels of the geometries overlapping the tile, in batch mode
+     * 
+     * @return the labelled tile
+     */
+    private Raster burnGeometries(final int minX, final int minY) {
+        int tileX = XToTileX(minX);
+        int tileY = YToTileY(minY);
+        if (labelRasterizer.isEmpty(tileX, tileY)) {
+            return getBlankTile();
+        }
+        int[] data = new int[tileWidth * tileHeight];
+        if (!labelRasterizer.rasterize(tileX, tileY, data)) {
+            return getBlankTile();
+        }
+
+        SampleModel tileSampleModel = sampleModel
+                .createCompatibleSampleModel(tileWidth, tileHeight);
+        WritableRaster raster = RasterFactory.createWritableRaster(tileSampleModel,
+                new java.awt.Point(0, 0));
+        raster.setSamples(0, 0, tileWidth, tileHeight, 0, data);
+        return raster;
     }
 
     /**
@@ -227,7 +299,13 @@ public class VectorBinarizeOpImage extends SourcelessOpImage {
      */
     private Raster getBlankTile() {
         if (blankTile == null) {
-            blankTile = constantTile(0);
+            if (labelRasterizer != null) {
+                // new rasters are already filled with zeros, whatever their data type
+                blankTile = RasterFactory.createWritableRaster(sampleModel, new java.awt.Point(0,
+                        0));
+            } else {
+                blankTile = constantTile(0);
+            }
         }
         return blankTile;
     }
@@ -264,29 +342,4 @@ public class VectorBinarizeOpImage extends SourcelessOpImage {
 
         return raster;
     }
-
-    /**
-     * Builds the bounds of the rectangle used to test inclusion in the reference {@code PreparedGeometry}.
-     * 
-     * @param x origin X ordinate
-     * @param y origin Y ordinate
-     */
-    private Polygon getTestRect(int x, int y) {
-        ExtendedCoordinate[] copyCoords = new ExtendedCoordinate[5];
-        for (int i = 0; i < 5; i++) {
-            int xx = x;
-            int yy = y;
-            if (i == 1 || i == 2) {
-                yy = y + tileHeight;
-            }
-            if (i == 2 || i == 3) {
-                xx = x + tileWidth;
-            }
-            copyCoords[i] = new ExtendedCoordinate(xx, yy, 0, 0);
-        }
-
-        ExtendedCoordinateSequence seq = new ExtendedCoordinateSequence(copyCoords);
-
-        return gf.createPolygon(gf.createLinearRing(seq), null);
-    }
 }
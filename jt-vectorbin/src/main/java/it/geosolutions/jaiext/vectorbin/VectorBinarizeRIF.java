@@ -21,10 +21,15 @@ import java.awt.Dimension;
 import java.awt.RenderingHints;
 import java.awt.image.DataBuffer;
 import java.awt.image.MultiPixelPackedSampleModel;
+import java.awt.image.PixelInterleavedSampleModel;
 import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.renderable.ParameterBlock;
 import java.awt.image.renderable.RenderedImageFactory;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
 
 import javax.media.jai.ImageLayout;
 import javax.media.jai.JAI;
@@ -58,6 +63,12 @@ public class VectorBinarizeRIF implements RenderedImageFactory {
         int height = paramBlock.getIntParameter(VectorBinarizeDescriptor.HEIGHT_ARG);
 
         Object obj = paramBlock.getObjectParameter(VectorBinarizeDescriptor.GEOM_ARG);
+        Dimension tileSize = getTileSize(renderHints);
+        if (obj instanceof Collection) {
+            return createBatch((Collection) obj, paramBlock, renderHints, minx, miny, width,
+                    height, tileSize);
+        }
+
         PreparedGeometry pg = null;
 
         if (obj instanceof Polygonal) {
@@ -71,17 +82,6 @@ public class VectorBinarizeRIF implements RenderedImageFactory {
             throw new IllegalArgumentException("The geometry must be a JTS polygon or multipolygon");
         }
 
-        // get the tile size from the image layout
-        Dimension tileSize = null;
-        if (renderHints != null && renderHints.containsKey(JAI.KEY_IMAGE_LAYOUT)) {
-            ImageLayout il = (ImageLayout) renderHints.get(JAI.KEY_IMAGE_LAYOUT);
-            if (il != null) {
-                tileSize = new Dimension(il.getTileWidth(null), il.getTileHeight(null));
-            }
-        }
-        if (tileSize == null) {
-            tileSize = JAI.getDefaultTileSize();
-        }
         // sample model wise we only build bw images
         SampleModel sm = new MultiPixelPackedSampleModel(DataBuffer.TYPE_BYTE, tileSize.width,
                 tileSize.height, 1);
@@ -96,4 +96,77 @@ public class VectorBinarizeRIF implements RenderedImageFactory {
         return new VectorBinarizeOpImage(sm, renderHints, minx, miny, width, height, pg,
                 antiAliasing);
     }
+
+    /**
+     * Creates the image of the batch mode, burning each geometry of the collection with its own label. The data type of the image is the smallest
+     * one able to store all the labels.
+     */
+    private RenderedImage createBatch(Collection geometries, ParameterBlock paramBlock,
+            RenderingHints renderHints, int minx, int miny, int width, int height,
+            Dimension tileSize) {
+        List<Geometry> geoms = new ArrayList<Geometry>(geometries.size());
+        for (Object obj : geometries) {
+            if (obj instanceof Polygonal) {
+                // defensively copy the input Geometry
+                geoms.add((Geometry) ((Geometry) obj).clone());
+            } else if (obj instanceof PreparedGeometry) {
+                geoms.add(((PreparedGeometry) obj).getGeometry());
+            } else {
+                throw new IllegalArgumentException(
+                        "The geometries must be JTS polygons or multipolygons");
+            }
+        }
+
+        int[] labels = null;
+        if (paramBlock.getNumParameters() > VectorBinarizeDescriptor.LABELS_ARG) {
+            labels = (int[]) paramBlock.getObjectParameter(VectorBinarizeDescriptor.LABELS_ARG);
+        }
+        SampleModel sm;
+        if (labels == null) {
+            // a binary image of the union, as in the single geometry case
+            labels = new int[geoms.size()];
+            Arrays.fill(labels, 1);
+            sm = new MultiPixelPackedSampleModel(DataBuffer.TYPE_BYTE, tileSize.width,
+                    tileSize.height, 1);
+        } else {
+            int min = 0;
+            int max = 0;
+            for (int label : labels) {
+                min = Math.min(min, label);
+                max = Math.max(max, label);
+            }
+            int dataType;
+            if (min >= 0 && max <= 0xFF) {
+                dataType = DataBuffer.TYPE_BYTE;
+            } else if (min >= 0 && max <= 0xFFFF) {
+                dataType = DataBuffer.TYPE_USHORT;
+            } else if (min >= Short.MIN_VALUE && max <= Short.MAX_VALUE) {
+                dataType = DataBuffer.TYPE_SHORT;
+            } else {
+                dataType = DataBuffer.TYPE_INT;
+            }
+            sm = new PixelInterleavedSampleModel(dataType, tileSize.width, tileSize.height, 1,
+                    tileSize.width, new int[] { 0 });
+        }
+
+        return new VectorBinarizeOpImage(sm, renderHints, minx, miny, width, height, geoms,
+                labels);
+    }
+
+    /**
+     * Returns the tile size from the image layout, or the JAI default one
+     */
+    private Dimension getTileSize(RenderingHints renderHints) {
+        Dimension tileSize = null;
+        if (renderHints != null && renderHints.containsKey(JAI.KEY_IMAGE_LAYOUT)) {
+            ImageLayout il = (ImageLayout) renderHints.get(JAI.KEY_IMAGE_LAYOUT);
+            if (il != null) {
+                tileSize = new Dimension(il.getTileWidth(null), il.getTileHeight(null));
+            }
+        }
+        if (tileSize == null) {
+            tileSize = JAI.getDefaultTileSize();
+        }
+        return tileSize;
+    }
 }
@@ -63,6 +63,7 @@ import org.junit.Ignore;
 import org.junit.Test;
 
 import com.vividsolutions.jts.geom.Coordinate;
+import com.vividsolutions.jts.geom.Envelope;
 import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.MultiPolygon;
@@ -859,6 +860,107 @@ public class ROIGeometryTest extends TestBase {
         
     }
     
+    @Test
+    public void testContainsWithHole() throws Exception {
+        String wkt = "POLYGON ((0 0, 20 2, 24 18, 6 24, 0 0), (6 6, 14 8, 12 14, 6 6))";
+        Polygon poly = (Polygon) new WKTReader().read(wkt);
+        ROIGeometry roi = new ROIGeometry(poly);
+
+        // points, boundary included, must give the same results of the JTS geometry
+        for (double y = -1; y <= 25; y += 0.5) {
+            for (double x = -1; x <= 25; x += 0.5) {
+                boolean expected = poly.contains(gf.createPoint(new Coordinate(x, y)));
+                assertEquals("Point " + x + ", " + y, expected, roi.contains(x, y));
+            }
+        }
+
+        // rectangles
+        for (int y = -2; y <= 24; y += 2) {
+            for (int x = -2; x <= 24; x += 2) {
+                for (int size = 1; size <= 6; size += 5) {
+                    Geometry rect = gf.toGeometry(new Envelope(x, x + size, y, y + size));
+                    String message = "Rectangle " + x + ", " + y + ", " + size;
+                    assertEquals(message, poly.contains(rect), roi.contains(x, y, size, size));
+                    assertEquals(message, poly.intersects(rect), roi.intersects(x, y, size, size));
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testWindowMasks() throws Exception {
+        String wkt = "POLYGON ((0.5 0.5, 40 4, 44 36, 6 44, 0.5 0.5), (12 12, 28 16, 24 28, 12 12))";
+        Polygon poly = (Polygon) new WKTReader().read(wkt);
+        ROIGeometry roi = new ROIGeometry(poly);
+
+        // windows partially inside, fully inside and crossing the geometry bounds
+        int[][] windows = new int[][] { { -8, -8, 20, 20 }, { 10, 10, 8, 8 }, { 5, 20, 50, 7 },
+                { 30, -5, 40, 60 }, { 50, 50, 10, 10 } };
+        for (int[] w : windows) {
+            int[][] mask = roi.getAsBitmask(w[0], w[1], w[2], w[3], null);
+            LinkedList rects = roi.getAsRectangleList(w[0], w[1], w[2], w[3]);
+            boolean[] covered = new boolean[w[2] * w[3]];
+            if (rects != null) {
+                for (Object o : rects) {
+                    Rectangle r = (Rectangle) o;
+                    assertTrue(new Rectangle(w[0], w[1], w[2], w[3]).contains(r));
+                    for (int y = r.y; y < r.y + r.height; y++) {
+                        for (int x = r.x; x < r.x + r.width; x++) {
+                            int index = (y - w[1]) * w[2] + x - w[0];
+                            assertFalse(covered[index]);
+                            covered[index] = true;
+                        }
+                    }
+                }
+            }
+
+            // a pixel is inside if its center is inside the geometry
+            boolean any = false;
+            for (int y = 0; y < w[3]; y++) {
+                for (int x = 0; x < w[2]; x++) {
+                    boolean expected = roi.contains(w[0] + x + 0.5, w[1] + y + 0.5);
+                    any |= expected;
+                    assertEquals(expected, covered[y * w[2] + x]);
+                    if (mask != null) {
+                        assertEquals(expected, ((mask[y][x >> 5] >>> (31 - (x & 31))) & 1) == 1);
+                    }
+                }
+            }
+            assertEquals(any, mask != null);
+            assertEquals(any, rects != null);
+        }
+    }
+
+    @Test
+    public void testConcurrentContains() throws Exception {
+        String wkt = "MULTIPOLYGON (((0 0, 40 4, 36 40, 0 0)), ((50 50, 90 50, 70 90, 50 50)))";
+        final ROIGeometry roi = new ROIGeometry(new WKTReader().read(wkt));
+        final boolean[] expected = new boolean[100 * 100];
+        for (int i = 0; i < expected.length; i++) {
+            expected[i] = roi.contains(i % 100, i / 100);
+        }
+
+        // the same ROI is queried by many threads without any synchronization
+        final boolean[] failed = new boolean[1];
+        Thread[] threads = new Thread[8];
+        for (int t = 0; t < threads.length; t++) {
+            threads[t] = new Thread() {
+                public void run() {
+                    for (int i = 0; i < expected.length; i++) {
+                        if (roi.contains(i % 100, i / 100) != expected[i]) {
+                            failed[0] = true;
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertFalse(failed[0]);
+    }
+
     /**
      * Returns a ROI based on a binary image, 256x256, white in the left half, black in the right half
      * @return
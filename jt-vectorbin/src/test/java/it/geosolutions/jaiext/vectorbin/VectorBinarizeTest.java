@@ -22,12 +22,15 @@ import static org.junit.Assert.assertEquals;
 import it.geosolutions.jaiext.testclasses.TestBase;
 
 import java.awt.Dimension;
+import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
+import java.util.Arrays;
 
 import javax.media.jai.JAI;
 import javax.media.jai.ParameterBlockJAI;
 import javax.media.jai.RenderedOp;
 
+import com.vividsolutions.jts.geom.Geometry;
 import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.geom.Point;
 import com.vividsolutions.jts.geom.Polygon;
@@ -98,4 +101,97 @@ public class VectorBinarizeTest extends TestBase{
             }
         }
     }
+
+    @Test
+    public void holeTilesRequestedConcurrently() throws Exception {
+        final int Ntiles = 6;
+        // tiles fully inside the ring, inside the hole and crossed by the boundaries
+        final Polygon donut = (Polygon) reader.read("POLYGON((0 0, 0 48, 48 48, 48 0, 0 0), "
+                + "(13 11, 13 37, 37 37, 37 11, 13 11))");
+
+        ParameterBlockJAI pb = new ParameterBlockJAI("VectorBinarize");
+        pb.setParameter("width", Ntiles * TILE_WIDTH);
+        pb.setParameter("height", Ntiles * TILE_WIDTH);
+        pb.setParameter("geometry", donut);
+        final RenderedOp dest = JAI.create("VectorBinarize", pb);
+
+        final String[] failure = new String[1];
+        Thread[] threads = new Thread[4];
+        for (int t = 0; t < threads.length; t++) {
+            final int offset = t;
+            threads[t] = new Thread() {
+                public void run() {
+                    CoordinateSequence2D testPointCS = new CoordinateSequence2D(1);
+                    Point testPoint = gf.createPoint(testPointCS);
+                    for (int i = 0; i < Ntiles * Ntiles; i++) {
+                        int index = (i + offset * 7) % (Ntiles * Ntiles);
+                        Raster tile = dest.getTile(index % Ntiles, index / Ntiles);
+                        for (int y = tile.getMinY(); y < tile.getMinY() + tile.getHeight(); y++) {
+                            testPointCS.setY(0, y + 0.5);
+                            for (int x = tile.getMinX(); x < tile.getMinX() + tile.getWidth(); x++) {
+                                testPointCS.setX(0, x + 0.5);
+                                testPoint.geometryChanged();
+                                int expected = donut.intersects(testPoint) ? 1 : 0;
+                                if (expected != tile.getSample(x, y, 0)) {
+                                    synchronized (failure) {
+                                        failure[0] = "Failed test at position " + x + ", " + y;
+                                    }
+                                }
+                            }
+                        }
+                    }
+                }
+            };
+            threads[t].start();
+        }
+        for (Thread thread : threads) {
+            thread.join();
+        }
+        assertEquals(null, failure[0]);
+    }
+
+    @Test
+    public void batchLabelsAcrossTiles() throws Exception {
+        final int Ntiles = 3;
+        Polygon triangle = (Polygon) reader.read("POLYGON((1 1, 22 3, 3 21, 1 1))");
+        Polygon square = (Polygon) reader.read("POLYGON((10 10, 10 23, 23 23, 23 10, 10 10))");
+        Polygon small = (Polygon) reader.read("POLYGON((17 1, 17 6, 22 6, 22 1, 17 1))");
+        Polygon outside = (Polygon) reader.read("POLYGON((30 30, 30 40, 40 40, 40 30, 30 30))");
+        Polygon[] polygons = new Polygon[] { triangle, square, small, outside };
+        int[] labels = new int[] { 5, 300, 7, 9 };
+
+        ParameterBlockJAI pb = new ParameterBlockJAI("VectorBinarize");
+        pb.setParameter("width", Ntiles * TILE_WIDTH);
+        pb.setParameter("height", Ntiles * TILE_WIDTH);
+        pb.setParameter("geometry", Arrays.<Geometry> asList(polygons));
+        pb.setParameter("labels", labels);
+
+        RenderedOp dest = JAI.create("VectorBinarize", pb);
+        assertEquals(DataBuffer.TYPE_USHORT, dest.getSampleModel().getDataType());
+
+        CoordinateSequence2D testPointCS = new CoordinateSequence2D(1);
+        Point testPoint = gf.createPoint(testPointCS);
+
+        for (int ytile = 0; ytile < Ntiles; ytile++) {
+            for (int xtile = 0; xtile < Ntiles; xtile++) {
+                Raster tile = dest.getTile(xtile, ytile);
+                for (int y = tile.getMinY(), iy = 0; iy < tile.getHeight(); y++, iy++) {
+                    testPointCS.setY(0, y + 0.5);
+                    for (int x = tile.getMinX(), ix = 0; ix < tile.getWidth(); x++, ix++) {
+                        testPointCS.setX(0, x + 0.5);
+                        testPoint.geometryChanged();
+                        // the last geometry containing the pixel center wins
+                        int expected = 0;
+                        for (int i = 0; i < polygons.length; i++) {
+                            if (polygons[i].intersects(testPoint)) {
+                                expected = labels[i];
+                            }
+                        }
+                        assertEquals("Failed test at position " + x + ", " + y, expected,
+                                tile.getSample(x, y, 0));
+                    }
+                }
+            }
+        }
+    }
 }
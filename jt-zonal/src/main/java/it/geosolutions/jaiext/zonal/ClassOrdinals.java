@@ -0,0 +1,111 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.zonal;
+
+/**
+ * Tile-local mapping of the classifier values to dense class ordinals, shared by all the zones of a tile, so that each pixel class is resolved
+ * only once. If the class domain is known, the values inside it are mapped with a direct lookup table, otherwise (and for values outside the
+ * domain) an {@link IntOrdinalMap} is used. This class is not thread-safe.
+ */
+final class ClassOrdinals {
+
+    /** Minimum value of the class domain */
+    private final int domainMin;
+
+    /** Direct lookup table, indexed by class value minus domainMin, containing the ordinal + 1; null if the domain is not known */
+    private final int[] lookup;
+
+    /** Map used for the classes outside the domain, created when needed */
+    private IntOrdinalMap outliers;
+
+    /** Ordinal of each class found by the outliers map */
+    private int[] outlierOrdinals;
+
+    /** Class value associated to each ordinal */
+    private int[] classIds = new int[16];
+
+    /** Number of classes */
+    private int size;
+
+    /**
+     * Creates a new mapping for the selected class domain
+     * 
+     * @param domainMin minimum class value of the domain
+     * @param domainSize number of class values of the domain, 0 if the domain is not known
+     */
+    ClassOrdinals(int domainMin, int domainSize) {
+        this.domainMin = domainMin;
+        this.lookup = domainSize > 0 ? new int[domainSize] : null;
+    }
+
+    /** Returns the ordinal of the selected class, adding it if not present */
+    int getOrdinal(int classId) {
+        if (lookup != null) {
+            int index = classId - domainMin;
+            if (index >= 0 && index < lookup.length) {
+                int ordinal = lookup[index] - 1;
+                if (ordinal < 0) {
+                    ordinal = addClass(classId);
+                    lookup[index] = ordinal + 1;
+                }
+                return ordinal;
+            }
+        }
+        return getOutlierOrdinal(classId);
+    }
+
+    /** Returns the ordinal of a class outside the domain */
+    private int getOutlierOrdinal(int classId) {
+        if (outliers == null) {
+            outliers = new IntOrdinalMap();
+            outlierOrdinals = new int[8];
+        }
+        int local = outliers.getOrAdd(classId);
+        if (local == outlierOrdinals.length) {
+            int[] grown = new int[local * 2];
+            System.arraycopy(outlierOrdinals, 0, grown, 0, local);
+            outlierOrdinals = grown;
+        }
+        if (outlierOrdinals[local] == 0) {
+            // New class
+            outlierOrdinals[local] = addClass(classId) + 1;
+        }
+        return outlierOrdinals[local] - 1;
+    }
+
+    /** Adds a new class, returning its ordinal */
+    private int addClass(int classId) {
+        if (size == classIds.length) {
+            int[] grown = new int[size * 2];
+            System.arraycopy(classIds, 0, grown, 0, size);
+            classIds = grown;
+        }
+        classIds[size] = classId;
+        return size++;
+    }
+
+    /** Returns the number of classes */
+    int size() {
+        return size;
+    }
+
+    /** Returns the class value associated to the selected ordinal */
+    int getClassId(int ordinal) {
+        return classIds[ordinal];
+    }
+}
@@ -0,0 +1,142 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.zonal;
+
+/**
+ * Open addressing map associating integer keys to dense ordinals, assigned in insertion order. Keys and ordinals are stored in primitive arrays, so
+ * that no boxing is done. This class is not thread-safe.
+ */
+final class IntOrdinalMap {
+
+    /** Ordinals stored as ordinal + 1, so that 0 indicates an empty entry */
+    private int[] table;
+
+    /** Keys associated to the table entries */
+    private int[] tableKeys;
+
+    /** Key associated to each ordinal */
+    private int[] keys;
+
+    /** Number of keys */
+    private int size;
+
+    /** Last key found and its ordinal, since adjacent pixels usually share the same key */
+    private int lastKey;
+
+    private int lastOrdinal = -1;
+
+    IntOrdinalMap() {
+        this(8);
+    }
+
+    IntOrdinalMap(int expectedSize) {
+        int capacity = 16;
+        while (capacity < expectedSize * 2) {
+            capacity <<= 1;
+        }
+        table = new int[capacity];
+        tableKeys = new int[capacity];
+        keys = new int[Math.max(expectedSize, 8)];
+    }
+
+    /** Returns the ordinal of the selected key, or -1 if not present */
+    int get(int key) {
+        if (lastOrdinal >= 0 && key == lastKey) {
+            return lastOrdinal;
+        }
+        int mask = table.length - 1;
+        int pos = mix(key) & mask;
+        while (table[pos] != 0) {
+            if (tableKeys[pos] == key) {
+                lastKey = key;
+                lastOrdinal = table[pos] - 1;
+                return lastOrdinal;
+            }
+            pos = (pos + 1) & mask;
+        }
+        return -1;
+    }
+
+    /** Returns the ordinal of the selected key, adding it if not present */
+    int getOrAdd(int key) {
+        if (lastOrdinal >= 0 && key == lastKey) {
+            return lastOrdinal;
+        }
+        int mask = table.length - 1;
+        int pos = mix(key) & mask;
+        while (table[pos] != 0) {
+            if (tableKeys[pos] == key) {
+                lastKey = key;
+                lastOrdinal = table[pos] - 1;
+                return lastOrdinal;
+            }
+            pos = (pos + 1) & mask;
+        }
+        // New key
+        int ordinal = size++;
+        if (ordinal == keys.length) {
+            int[] grown = new int[keys.length * 2];
+            System.arraycopy(keys, 0, grown, 0, ordinal);
+            keys = grown;
+        }
+        keys[ordinal] = key;
+        table[pos] = ordinal + 1;
+        tableKeys[pos] = key;
+        if (size * 2 > table.length) {
+            rehash();
+        }
+        lastKey = key;
+        lastOrdinal = ordinal;
+        return ordinal;
+    }
+
+    /** Returns the number of keys */
+    int size() {
+        return size;
+    }
+
+    /** Returns the key associated to the selected ordinal */
+    int getKey(int ordinal) {
+        return keys[ordinal];
+    }
+
+    /** Doubles the table size */
+    private void rehash() {
+        int[] oldTable = table;
+        int[] oldKeys = tableKeys;
+        table = new int[oldTable.length * 2];
+        tableKeys = new int[oldTable.length * 2];
+        int mask = table.length - 1;
+        for (int i = 0; i < oldTable.length; i++) {
+            if (oldTable[i] != 0) {
+                int pos = mix(oldKeys[i]) & mask;
+                while (table[pos] != 0) {
+                    pos = (pos + 1) & mask;
+                }
+                table[pos] = oldTable[i];
+                tableKeys[pos] = oldKeys[i];
+            }
+        }
+    }
+
+    /** Spreads the bits of the key, since keys are often consecutive integers */
+    static int mix(int key) {
+        int h = key * 0x9E3779B9;
+        return h ^ (h >>> 16);
+    }
+}
@@ -0,0 +1,143 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.zonal;
+
+import it.geosolutions.jaiext.stats.Statistics;
+import it.geosolutions.jaiext.stats.Statistics.StatsType;
+
+/**
+ * Accumulator of the statistics of the zones defined by a label image. Labels are mapped to dense ordinals by an {@link IntOrdinalMap} and the
+ * statistics objects are stored inside a flat array indexed by label and band ordinals. This class is not thread-safe: each tile is accumulated in a
+ * new instance, which is then merged into the image accumulators, divided in stripes by label so that different tiles can be merged in parallel.
+ */
+final class LabelAccumulator {
+
+    /** Number of stripes of the image accumulators; must be a power of 2 */
+    static final int NUM_STRIPES = 16;
+
+    /** Array indicating the selected bands */
+    private final int[] bands;
+
+    /** Array indicating which statistics must be calculated */
+    private final StatsType[] statsTypes;
+
+    /** Array indicating the minimum bounds for each band */
+    private final double[] minBounds;
+
+    /** Array indicating the maximum bounds for each band */
+    private final double[] maxBounds;
+
+    /** Array indicating the number of bins for each band */
+    private final int[] numBins;
+
+    /** Number of statistics */
+    private final int numStats;
+
+    /** Map containing the label ordinals */
+    private final IntOrdinalMap labels = new IntOrdinalMap(64);
+
+    /** Statistics objects, indexed by label ordinal, band ordinal and statistic */
+    private Statistics[] statistics;
+
+    LabelAccumulator(int[] bands, StatsType[] statsTypes, double[] minBounds,
+            double[] maxBounds, int[] numBins) {
+        this.bands = bands;
+        this.statsTypes = statsTypes;
+        this.minBounds = minBounds;
+        this.maxBounds = maxBounds;
+        this.numBins = numBins;
+        this.numStats = statsTypes.length;
+        this.statistics = new Statistics[64 * bands.length * numStats];
+    }
+
+    /** Adds a sample of the selected band ordinal to the statistics of the selected label */
+    void add(int label, int bandOrdinal, double sample) {
+        int index = (getOrdinal(label) * bands.length + bandOrdinal) * numStats;
+        if (statistics[index] == null) {
+            Statistics[] created = ZoneGeometry.createStatistics(statsTypes, minBounds, maxBounds,
+                    numBins, bands[bandOrdinal]);
+            System.arraycopy(created, 0, statistics, index, numStats);
+        }
+        for (int st = 0; st < numStats; st++) {
+            statistics[index + st].addSample(sample);
+        }
+    }
+
+    /** Returns the ordinal of the selected label, adding it if not present */
+    private int getOrdinal(int label) {
+        int ordinal = labels.getOrAdd(label);
+        int size = (ordinal + 1) * bands.length * numStats;
+        if (size > statistics.length) {
+            Statistics[] grown = new Statistics[Math.max(size, statistics.length * 2)];
+            System.arraycopy(statistics, 0, grown, 0, statistics.length);
+            statistics = grown;
+        }
+        return ordinal;
+    }
+
+    /**
+     * Merges the labels of the input accumulator which belong to the selected stripe. The statistics objects of the input accumulator are moved
+     * when the label is not present, so the input accumulator must not be used anymore after all its stripes are merged.
+     */
+    void accumulate(LabelAccumulator other, int stripe) {
+        int numLabels = other.labels.size();
+        int numBands = bands.length;
+        for (int o = 0; o < numLabels; o++) {
+            int label = other.labels.getKey(o);
+            if (getStripe(label) != stripe) {
+                continue;
+            }
+            int ordinal = getOrdinal(label);
+            for (int b = 0; b < numBands; b++) {
+                int otherIndex = (o * numBands + b) * numStats;
+                if (other.statistics[otherIndex] == null) {
+                    continue;
+                }
+                int index = (ordinal * numBands + b) * numStats;
+                if (statistics[index] == null) {
+                    System.arraycopy(other.statistics, otherIndex, statistics, index, numStats);
+                } else {
+                    for (int st = 0; st < numStats; st++) {
+                        Statistics.accumulate(statistics[index + st],
+                                other.statistics[otherIndex + st]);
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns the stripe of the selected label. The higher bits are used, since the lower ones select the ordinal map entries */
+    static int getStripe(int label) {
+        return IntOrdinalMap.mix(label) >>> 28;
+    }
+
+    /** Returns the number of labels */
+    int getNumLabels() {
+        return labels.size();
+    }
+
+    /** Returns the label associated to the selected ordinal */
+    int getLabel(int ordinal) {
+        return labels.getKey(ordinal);
+    }
+
+    /** Returns the statistics array, indexed by label ordinal, band ordinal and statistic */
+    Statistics[] getStatistics() {
+        return statistics;
+    }
+}
@@ -0,0 +1,158 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.zonal;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+
+import javax.media.jai.ROI;
+import javax.media.jai.ROIShape;
+
+/**
+ * Scan converter of a {@link ROI} into runs of covered pixels, selecting the same pixels selected by {@link ROI#contains(int, int)}. The shape of
+ * a {@link ROIShape} is converted into a {@link ScanlineEdgeTable} on the first rasterization; ROIs which cannot be represented as a shape are
+ * converted by using their bitmask. The other ROI subclasses, like <code>ROIGeometry</code> which excludes the points lying on the geometry
+ * boundary, may define their own containment rules, so their pixels are selected by calling their containment test, which must be thread-safe.
+ * Since the edge table is immutable, this class can be used concurrently by multiple threads.
+ */
+final class ROIRasterizer {
+
+    /** ROI to rasterize */
+    private final ROI roi;
+
+    /** Scanline edge table of the ROI shape, built on the first rasterization */
+    private volatile ScanlineEdgeTable edgeTable;
+
+    /** Boolean indicating if the pixels are selected by the ROI containment test */
+    private final boolean useContainment;
+
+    ROIRasterizer(ROI roi) {
+        this.roi = roi;
+        this.useContainment = roi.getClass() != ROIShape.class && roi.getClass() != ROI.class;
+    }
+
+    /**
+     * Rasterizes the ROI inside the selected area. The covered pixels are returned as runs, as described in
+     * {@link ScanlineEdgeTable#rasterize(Rectangle)}. If the ROI cannot be represented as a shape, its bitmask is used.
+     */
+    int[] rasterize(Rectangle area) {
+        if (useContainment) {
+            return rasterizeContainment(area);
+        }
+        ScanlineEdgeTable table = edgeTable;
+        if (table == null) {
+            Shape shape = roi.getAsShape();
+            if (shape == null) {
+                return rasterizeBitmask(area);
+            }
+            // The table is immutable, so it does not matter if it is built twice by concurrent threads
+            table = ScanlineEdgeTable.create(shape);
+            edgeTable = table;
+        }
+        return table.rasterize(area);
+    }
+
+    /**
+     * Rasterizes the ROI inside the selected area, returning an array containing true for each covered pixel, in row-major order.
+     */
+    boolean[] rasterizeMask(Rectangle area) {
+        boolean[] mask = new boolean[area.width * area.height];
+        int[] runs = rasterize(area);
+        for (int r = 0; r < runs.length; r += 3) {
+            int rowOffset = runs[r] * area.width;
+            for (int x = runs[r + 1]; x < runs[r + 2]; x++) {
+                mask[rowOffset + x] = true;
+            }
+        }
+        return mask;
+    }
+
+    /** Converts the pixels of the selected area contained by the ROI into runs of covered pixels */
+    private int[] rasterizeContainment(Rectangle area) {
+        Rectangle bounds = area.intersection(roi.getBounds());
+        if (bounds.isEmpty()) {
+            return new int[0];
+        }
+        int[] runs = new int[48];
+        int numRuns = 0;
+        int maxX = bounds.x + bounds.width;
+        for (int y = bounds.y; y < bounds.y + bounds.height; y++) {
+            int x = bounds.x;
+            while (x < maxX) {
+                // Search of the first contained pixel and of the end of the run
+                while (x < maxX && !roi.contains(x, y)) {
+                    x++;
+                }
+                int start = x;
+                while (x < maxX && roi.contains(x, y)) {
+                    x++;
+                }
+                if (start < x) {
+                    if (numRuns + 3 > runs.length) {
+                        int[] grown = new int[runs.length * 2];
+                        System.arraycopy(runs, 0, grown, 0, numRuns);
+                        runs = grown;
+                    }
+                    runs[numRuns++] = y - area.y;
+                    runs[numRuns++] = start - area.x;
+                    runs[numRuns++] = x - area.x;
+                }
+            }
+        }
+        int[] result = new int[numRuns];
+        System.arraycopy(runs, 0, result, 0, numRuns);
+        return result;
+    }
+
+    /** Converts the ROI bitmask of the selected area into runs of covered pixels */
+    private int[] rasterizeBitmask(Rectangle area) {
+        int[][] mask = roi.getAsBitmask(area.x, area.y, area.width, area.height, null);
+        if (mask == null) {
+            return new int[0];
+        }
+        int[] runs = new int[48];
+        int numRuns = 0;
+        for (int y = 0; y < area.height; y++) {
+            int[] row = mask[y];
+            int x = 0;
+            while (x < area.width) {
+                // Search of the first covered pixel and of the end of the run
+                while (x < area.width && (row[x >> 5] & (0x80000000 >>> (x & 31))) == 0) {
+                    x++;
+                }
+                int start = x;
+                while (x < area.width && (row[x >> 5] & (0x80000000 >>> (x & 31))) != 0) {
+                    x++;
+                }
+                if (start < x) {
+                    if (numRuns + 3 > runs.length) {
+                        int[] grown = new int[runs.length * 2];
+                        System.arraycopy(runs, 0, grown, 0, numRuns);
+                        runs = grown;
+                    }
+                    runs[numRuns++] = y;
+                    runs[numRuns++] = start;
+                    runs[numRuns++] = x;
+                }
+            }
+        }
+        int[] result = new int[numRuns];
+        System.arraycopy(runs, 0, result, 0, numRuns);
+        return result;
+    }
+}
@@ -0,0 +1,214 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.zonal;
+
+import java.awt.Rectangle;
+import java.awt.Shape;
+import java.awt.geom.PathIterator;
+
+/**
+ * Immutable edge table of a flattened {@link Shape}, used for scan converting a zone geometry into runs of covered pixels. A pixel is covered if its
+ * upper left corner is inside the shape, with the same insideness rules of {@link Shape#contains(double, double)}, so that the rasterized zone selects
+ * the same pixels selected by a per-pixel containment test. Since the table is never modified after its creation, it can be shared between threads.
+ */
+final class ScanlineEdgeTable {
+
+    /** Flatness used for approximating curves with line segments */
+    private static final double FLATNESS = 0.1d;
+
+    /** Edge coordinates, stored as x0, y0, x1, y1 for each edge */
+    private final double[] edges;
+
+    /** Minimum y of each edge */
+    private final double[] minY;
+
+    /** Maximum y of each edge */
+    private final double[] maxY;
+
+    /** Number of edges */
+    private final int numEdges;
+
+    /** Boolean indicating if the even-odd winding rule is used, otherwise the non-zero rule is used */
+    private final boolean evenOdd;
+
+    private ScanlineEdgeTable(double[] edges, int numEdges, boolean evenOdd) {
+        this.edges = edges;
+        this.numEdges = numEdges;
+        this.evenOdd = evenOdd;
+        this.minY = new double[numEdges];
+        this.maxY = new double[numEdges];
+        for (int e = 0; e < numEdges; e++) {
+            double y0 = edges[e * 4 + 1];
+            double y1 = edges[e * 4 + 3];
+            minY[e] = Math.min(y0, y1);
+            maxY[e] = Math.max(y0, y1);
+        }
+    }
+
+    /**
+     * Creates the edge table of the input shape. Horizontal edges are ignored since they never cross a scanline, while open subpaths are implicitly
+     * closed.
+     */
+    static ScanlineEdgeTable create(Shape shape) {
+        PathIterator it = shape.getPathIterator(null, FLATNESS);
+        double[] coords = new double[6];
+        EdgeBuilder builder = new EdgeBuilder();
+        double startX = 0;
+        double startY = 0;
+        double lastX = 0;
+        double lastY = 0;
+        while (!it.isDone()) {
+            switch (it.currentSegment(coords)) {
+            case PathIterator.SEG_MOVETO:
+                builder.add(lastX, lastY, startX, startY);
+                startX = lastX = coords[0];
+                startY = lastY = coords[1];
+                break;
+            case PathIterator.SEG_LINETO:
+                builder.add(lastX, lastY, coords[0], coords[1]);
+                lastX = coords[0];
+                lastY = coords[1];
+                break;
+            case PathIterator.SEG_CLOSE:
+                builder.add(lastX, lastY, startX, startY);
+                lastX = startX;
+                lastY = startY;
+                break;
+            default:
+                throw new IllegalArgumentException("Shape is not flattened");
+            }
+            it.next();
+        }
+        builder.add(lastX, lastY, startX, startY);
+        return new ScanlineEdgeTable(builder.edges, builder.numEdges,
+                it.getWindingRule() == PathIterator.WIND_EVEN_ODD);
+    }
+
+    /**
+     * Scan converts the shape inside the selected area. The covered pixels are returned as runs, each one stored as 3 consecutive integers: the row,
+     * the first column and the column after the last one, all relative to the area origin. Runs are ordered by row and then by column.
+     */
+    int[] rasterize(Rectangle area) {
+        final int minX = area.x;
+        final int maxX = area.x + area.width;
+        final int firstRow = area.y;
+        final int lastRow = area.y + area.height - 1;
+
+        // Selection of the edges crossing at least one row of the area
+        int[] active = new int[numEdges];
+        int numActive = 0;
+        for (int e = 0; e < numEdges; e++) {
+            if (minY[e] <= lastRow && maxY[e] > firstRow) {
+                active[numActive++] = e;
+            }
+        }
+
+        int[] runs = new int[numActive > 0 ? 48 : 0];
+        int numRuns = 0;
+        if (numActive == 0) {
+            return runs;
+        }
+
+        double[] crossings = new double[numActive];
+        int[] directions = new int[numActive];
+        for (int y = firstRow; y <= lastRow; y++) {
+            // Intersections of the edges with the scanline, sorted by x. The upper end of the edges
+            // is included and the lower one excluded, so that vertices are counted once
+            int numCrossings = 0;
+            for (int a = 0; a < numActive; a++) {
+                int e = active[a];
+                if (y < minY[e] || y >= maxY[e]) {
+                    continue;
+                }
+                int index = e * 4;
+                double x0 = edges[index];
+                double y0 = edges[index + 1];
+                double x1 = edges[index + 2];
+                double y1 = edges[index + 3];
+                double x = x0 + (y - y0) * (x1 - x0) / (y1 - y0);
+                int direction = y0 < y1 ? 1 : -1;
+                int c = numCrossings++;
+                while (c > 0 && crossings[c - 1] > x) {
+                    crossings[c] = crossings[c - 1];
+                    directions[c] = directions[c - 1];
+                    c--;
+                }
+                crossings[c] = x;
+                directions[c] = direction;
+            }
+
+            // Pixels between two crossings are covered if the winding rule is satisfied
+            int winding = 0;
+            for (int c = 0; c < numCrossings - 1; c++) {
+                winding += evenOdd ? 1 : directions[c];
+                boolean inside = evenOdd ? (winding & 1) != 0 : winding != 0;
+                if (!inside) {
+                    continue;
+                }
+                int start = (int) Math.ceil(Math.max(crossings[c], minX));
+                int end = (int) Math.ceil(Math.min(crossings[c + 1], maxX));
+                if (start >= end) {
+                    continue;
+                }
+                int row = y - firstRow;
+                // Contiguous runs are merged
+                if (numRuns > 0 && runs[numRuns - 3] == row && runs[numRuns - 1] == start - minX) {
+                    runs[numRuns - 1] = end - minX;
+                    continue;
+                }
+                if (numRuns + 3 > runs.length) {
+                    int[] grown = new int[runs.length * 2];
+                    System.arraycopy(runs, 0, grown, 0, numRuns);
+                    runs = grown;
+                }
+                runs[numRuns++] = row;
+                runs[numRuns++] = start - minX;
+                runs[numRuns++] = end - minX;
+            }
+        }
+
+        int[] result = new int[numRuns];
+        System.arraycopy(runs, 0, result, 0, numRuns);
+        return result;
+    }
+
+    /** Growable storage of the edges of a shape. Horizontal edges are not stored */
+    private static final class EdgeBuilder {
+
+        private double[] edges = new double[64];
+
+        private int numEdges;
+
+        void add(double x0, double y0, double x1, double y1) {
+            if (y0 == y1) {
+                return;
+            }
+            int index = numEdges * 4;
+            if (index + 4 > edges.length) {
+                double[] grown = new double[edges.length * 2];
+                System.arraycopy(edges, 0, grown, 0, index);
+                edges = grown;
+            }
+            edges[index] = x0;
+            edges[index + 1] = y0;
+            edges[index + 2] = x1;
+            edges[index + 3] = y1;
+            numEdges++;
+        }
+    }
+}
@@ -0,0 +1,139 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.zonal;
+
+import java.awt.Rectangle;
+import java.util.List;
+
+/**
+ * Coverage of the zones inside the computable area of a tile. Every zone intersecting the area is rasterized once, and the zones covering each pixel
+ * are stored contiguously, so that the statistics loops can select them without any geometry test or lock. Each zone is represented by a
+ * tile-local {@link ZoneAccumulator}, merged into the zone by {@link #accumulate()} at the end of the tile computation. The class ordinals are
+ * shared by all the accumulators of the tile. If a ROI mask is provided, the pixels outside it are not covered by any zone. Pixel coordinates
+ * are relative to the area origin.
+ */
+final class TileZoneCoverage {
+
+    /** Width of the area */
+    private final int width;
+
+    /** Index of the first zone of each pixel inside the zones array; the last element is the zones array length */
+    private final int[] offsets;
+
+    /** Accumulators of the zones covering each pixel */
+    private final ZoneAccumulator[] zones;
+
+    /** Accumulators of all the zones intersecting the area */
+    private final ZoneAccumulator[] accumulators;
+
+    /** Class ordinals shared by the accumulators */
+    private final ClassOrdinals classes;
+
+    /**
+     * Creates the coverage of the selected area.
+     * 
+     * @param candidates zones intersecting the area
+     * @param area area to rasterize
+     * @param roiMask pixels of the area inside the ROI, in row-major order, or null if no ROI is used
+     * @param classes class ordinals shared by the zone accumulators
+     */
+    TileZoneCoverage(List<ZoneGeometry> candidates, Rectangle area, boolean[] roiMask,
+            ClassOrdinals classes) {
+        this.width = area.width;
+        this.classes = classes;
+        int size = area.width * area.height;
+        int numCandidates = candidates.size();
+
+        // Count of the zones covering each pixel
+        int[][] zoneRuns = new int[numCandidates][];
+        accumulators = new ZoneAccumulator[numCandidates];
+        int[] counts = new int[size + 1];
+        for (int i = 0; i < numCandidates; i++) {
+            int[] runs = candidates.get(i).rasterize(area);
+            zoneRuns[i] = runs;
+            accumulators[i] = new ZoneAccumulator(candidates.get(i), classes);
+            for (int r = 0; r < runs.length; r += 3) {
+                int rowOffset = runs[r] * width;
+                for (int x = runs[r + 1]; x < runs[r + 2]; x++) {
+                    if (roiMask == null || roiMask[rowOffset + x]) {
+                        counts[rowOffset + x + 1]++;
+                    }
+                }
+            }
+        }
+        for (int p = 0; p < size; p++) {
+            counts[p + 1] += counts[p];
+        }
+        this.offsets = counts;
+
+        // Storage of the zones, using a cursor for each pixel
+        zones = new ZoneAccumulator[counts[size]];
+        int[] cursors = new int[size];
+        System.arraycopy(counts, 0, cursors, 0, size);
+        for (int i = 0; i < numCandidates; i++) {
+            ZoneAccumulator zone = accumulators[i];
+            int[] runs = zoneRuns[i];
+            for (int r = 0; r < runs.length; r += 3) {
+                int rowOffset = runs[r] * width;
+                for (int x = runs[r + 1]; x < runs[r + 2]; x++) {
+                    if (roiMask == null || roiMask[rowOffset + x]) {
+                        zones[cursors[rowOffset + x]++] = zone;
+                    }
+                }
+            }
+        }
+    }
+
+    /** Returns true if no pixel of the area is covered by a zone */
+    boolean isEmpty() {
+        return zones.length == 0;
+    }
+
+    /** Returns true if the selected pixel is covered by at least one zone */
+    boolean isCovered(int x, int y) {
+        int pixel = x + y * width;
+        return offsets[pixel] != offsets[pixel + 1];
+    }
+
+    /** Returns the index of the first zone covering the selected pixel */
+    int getStart(int x, int y) {
+        return offsets[x + y * width];
+    }
+
+    /** Returns the index after the last zone covering the selected pixel */
+    int getEnd(int x, int y) {
+        return offsets[x + y * width + 1];
+    }
+
+    /** Returns the zone accumulator associated to the selected index */
+    ZoneAccumulator getZone(int index) {
+        return zones[index];
+    }
+
+    /** Returns the class ordinals shared by the zone accumulators */
+    ClassOrdinals getClasses() {
+        return classes;
+    }
+
+    /** Merges the statistics accumulated on the tile into their zones */
+    void accumulate() {
+        for (ZoneAccumulator accumulator : accumulators) {
+            accumulator.getZone().accumulate(accumulator);
+        }
+    }
+}
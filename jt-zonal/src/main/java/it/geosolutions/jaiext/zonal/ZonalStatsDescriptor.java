@@ -52,14 +52,15 @@ import javax.media.jai.registry.RenderedRegistryMode;
  * <li>Histogram</li>
  * <li>Mode</li>
  * <li>Median</li>
+ * <li>Skewness</li>
+ * <li>Kurtosis</li>
  * </ul>
  * </p>
  * 
  * <p>
  * It is important to remember that if the Median, Mode or Histogram operations must be executed, even their Bounds and Bin numbers must be defined.
- * The source can have all the possible JAI accepted data types. The statistical calculations are performed on every tile with an adequate
- * synchronization and stored inside an instance of the {@link ZoneGeometry} class. For avoiding concurrency issues, the statistic calculation is done
- * in a synchronized block. The statistical results are returned by calling the getProperty() method. The calculation happens only the first time for
+ * The source can have all the possible JAI accepted data types. The statistical calculations are performed on every tile inside tile-local
+ * accumulators, which are then merged into an instance of the {@link ZoneGeometry} class. The statistical results are returned by calling the getProperty() method. The calculation happens only the first time for
  * avoiding unnecessary loss of time.
  * </p>
  * 
@@ -71,6 +72,25 @@ import javax.media.jai.registry.RenderedRegistryMode;
  * getResult() method for having the result.
  * </p>
  * 
+ * <p>
+ * The zones can also be defined by an integral label image, instead of the geometry list: every pixel belongs to the zone identified by its label.
+ * In this case no geometry, classifier or range can be used, and the results are returned by the getProperty() method called with the
+ * {@link #ZS_TABLE_PROPERTY} name, as a {@link ZonalStatsTable} containing a row for each label.
+ * </p>
+ * 
+ * <p>
+ * The optional class domain is the Range of the values of the classifier. Classes inside the domain are mapped to their statistics by a direct
+ * lookup instead of a hash table. If it is not set, the domain of byte, ushort and short classifiers is taken from their data type. Values
+ * outside the domain are still accepted, but they are slower to accumulate.
+ * </p>
+ * 
+ * <p>
+ * If a {@link ZonalStatsListener} is set, the results are streamed: every zone is passed to the listener as soon as all the tiles intersecting its
+ * bounds have been computed, and then its statistics are released, so that very large zone sets can be processed with bounded memory. The
+ * calculation is still started by the getProperty() method, which returns only the zones not yet passed to the listener, so the returned list is
+ * empty once the calculation is complete. The listener cannot be used with the label image.
+ * </p>
+ * 
  * 
  * <p>
  * <table border=1>
@@ -155,6 +175,18 @@ import javax.media.jai.registry.RenderedRegistryMode;
  * <td>arg12Desc</td>
  * <td>Boolean indicating if the results must be calculated for each range.</td>
  * </tr>
+ * <tr>
+ * <td>arg13Desc</td>
+ * <td>Integral image whose values are the zone labels, used instead of the geometries.</td>
+ * </tr>
+ * <tr>
+ * <td>arg14Desc</td>
+ * <td>Range of the classifier values.</td>
+ * </tr>
+ * <tr>
+ * <td>arg15Desc</td>
+ * <td>Listener notified when the statistics of a zone are complete.</td>
+ * </tr>
  * </table>
  * </p>
  * 
@@ -218,6 +250,18 @@ import javax.media.jai.registry.RenderedRegistryMode;
  * <td>localStats</td>
  * <td>Boolean</td>
  * <td>false</td>
+ * <tr>
+ * <td>zoneImage</td>
+ * <td>RenderedImage</td>
+ * <td>null</td>
+ * <tr>
+ * <td>classDomain</td>
+ * <td>it.geosolutions.jaiext.range.Range</td>
+ * <td>null</td>
+ * <tr>
+ * <td>zoneListener</td>
+ * <td>it.geosolutions.jaiext.zonal.ZonalStatsListener</td>
+ * <td>null</td>
  * </table>
  * </p>
  * 
@@ -227,6 +271,9 @@ public class ZonalStatsDescriptor extends OperationDescriptorImpl {
     /** Zonal Statistics property name */
     public final static String ZS_PROPERTY = "JAI-EXT.zonalstats";
 
+    /** Zonal Statistics table property name, used when the zones are defined by a label image */
+    public final static String ZS_TABLE_PROPERTY = "JAI-EXT.zonalstats.table";
+
     /**
      * The resource strings that provide the general documentation and specify the parameter list for this operation.
      */
@@ -256,7 +303,11 @@ public class ZonalStatsDescriptor extends OperationDescriptorImpl {
             { "arg10Desc",
                     "Array indicating the number of bins for complex statistics on all the selected bands" },
             { "arg11Desc", "List of the possible ranges for dividing the statistics" },
-            { "arg12Desc", "Boolean indicating if the results must be calculated for each range" }
+            { "arg12Desc", "Boolean indicating if the results must be calculated for each range" },
+            { "arg13Desc",
+                    "Integral image whose values are the zone labels, used instead of the geometries" },
+            { "arg14Desc", "Range of the classifier values" },
+            { "arg15Desc", "Listener notified when the statistics of a zone are complete" }
 
     };
 
@@ -265,16 +316,17 @@ public class ZonalStatsDescriptor extends OperationDescriptorImpl {
             java.util.List.class, it.geosolutions.jaiext.range.Range.class,
             javax.media.jai.ROI.class, Boolean.class, int[].class,
             it.geosolutions.jaiext.stats.Statistics.StatsType[].class, double[].class,
-            double[].class, int[].class, java.util.List.class, Boolean.class };
+            double[].class, int[].class, java.util.List.class, Boolean.class, RenderedImage.class,
+            it.geosolutions.jaiext.range.Range.class, ZonalStatsListener.class };
 
     /** The parameter name list for this operation. */
     private static final String[] paramNames = { "classifier", "transform", "roilist", "noData",
             "mask", "useROIAccessor", "bands", "stats", "minbound", "maxbound", "numbin",
-            "rangeData", "localStats" };
+            "rangeData", "localStats", "zoneImage", "classDomain", "zoneListener" };
 
     /** The parameter default value list for this operation. */
     private static final Object[] paramDefaults = { null, null, null, null, null, false,
-            new int[] { 0 }, null, null, null, null, null, false };
+            new int[] { 0 }, null, null, null, null, null, false, null, null, null };
 
     public ZonalStatsDescriptor() {
         super(resources, 1, paramClasses, paramNames, paramDefaults);
@@ -370,4 +422,49 @@ public class ZonalStatsDescriptor extends OperationDescriptorImpl {
                 stats, null, null, null, rangeData, localStats, hints);
     }
 
+    /**
+     * Performs statistical operations on different image zones defined by the input label image. The results are returned by calling the
+     * getProperty() method with the {@link #ZS_TABLE_PROPERTY} name.
+     * 
+     * <p>
+     * Creates a <code>ParameterBlockJAI</code> from all supplied arguments except <code>hints</code> and invokes
+     * {@link JAI#create(String,ParameterBlock,RenderingHints)}.
+     * 
+     * @see JAI
+     * @see ParameterBlockJAI
+     * @see RenderedOp
+     * 
+     * @param source <code>RenderedImage</code> source image.
+     * @param zoneImage <code>RenderedImage</code> integral image containing the zone labels.
+     * @param NoData No Data range used for calculation.
+     * @param mask optional mask for reducing the computations on a selected ROI.
+     * @param bands Array indicating which band to consider.
+     * @param stats Array indicating which statistics to consider.
+     * @param minBound Array indicating minimum bounds for complex computations.
+     * @param maxBound Array indicating maximum bounds for complex computations.
+     * @param numBins Array indicating the number of bins for complex computations.
+     * @param hints The <code>RenderingHints</code> to use.
+     * @return The <code>RenderedOp</code> source image.
+     * @throws IllegalArgumentException if <code>source</code> is <code>null</code>.
+     */
+    public static RenderedOp create(RenderedImage source, RenderedImage zoneImage, Range noData,
+            ROI mask, int[] bands, StatsType[] stats, double[] minBound, double[] maxBound,
+            int[] numBins, RenderingHints hints) {
+        // Creation of a parameterBlockJAI containing all the operation parameters
+        ParameterBlockJAI pb = new ParameterBlockJAI("Zonal", RenderedRegistryMode.MODE_NAME);
+        // Source image
+        pb.setSource(source, 0);
+        // Image parameters
+        pb.setParameter("NoData", noData);
+        pb.setParameter("mask", mask);
+        pb.setParameter("bands", bands);
+        pb.setParameter("stats", stats);
+        pb.setParameter("minbound", minBound);
+        pb.setParameter("maxbound", maxBound);
+        pb.setParameter("numbin", numBins);
+        pb.setParameter("zoneImage", zoneImage);
+
+        // RenderedImage creation
+        return JAI.create("Zonal", pb, hints);
+    }
 }
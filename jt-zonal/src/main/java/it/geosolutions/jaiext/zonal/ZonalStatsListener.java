@@ -0,0 +1,34 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.zonal;
+
+/**
+ * Listener notified by the ZonalStats operation when the statistics of a zone are complete, that is when all the tiles intersecting the zone bounds
+ * have been computed. It is used for streaming the results of very large zone sets, since the statistics of each zone are released after the
+ * notification. The listener may be called concurrently by the threads computing the tiles, so it must be thread-safe.
+ */
+public interface ZonalStatsListener {
+
+    /**
+     * Called when the statistics of the zone are complete. The statistics must be read inside this method, since they are released when it
+     * returns.
+     * 
+     * @param zone the completed zone
+     */
+    void zoneCompleted(ZoneGeometry zone);
+}
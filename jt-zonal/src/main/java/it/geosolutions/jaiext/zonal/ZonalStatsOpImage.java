@@ -22,6 +22,7 @@ import it.geosolutions.jaiext.range.Range;
 import it.geosolutions.jaiext.range.Range.DataType;
 import it.geosolutions.jaiext.range.RangeFactory;
 import it.geosolutions.jaiext.stats.Statistics.StatsType;
+import java.awt.Image;
 import java.awt.Point;
 import java.awt.Rectangle;
 import java.awt.geom.AffineTransform;
@@ -32,6 +33,7 @@ import java.awt.image.RenderedImage;
 import java.awt.image.SampleModel;
 import java.awt.image.renderable.ParameterBlock;
 import java.util.ArrayList;
+import java.util.BitSet;
 import java.util.Collections;
 import java.util.List;
 import java.util.Map;
@@ -61,7 +63,8 @@ import com.vividsolutions.jts.index.strtree.STRtree;
  * on different locations, defined by their geometries, on the same image. In addition this operation supports the presence of ROI or No Data. The
  * calculations are performed only in a rectangle that contains the union of all the input geometries. For every input geometry, a
  * {@link ZoneGeometry} object is associated to it for storing its statistics. A spatial index is used for fast accessing the geometries that
- * intersects the selected image pixel (in the case of overlapping). The final results can be returned by calling the getProperty() method with the
+ * intersects each tile; these geometries are rasterized once per tile, so that the zones covering each pixel (more than one in the case of
+ * overlapping) are selected without any geometry test. The final results can be returned by calling the getProperty() method with the
  * ZonalStatsDescriptor.ZS_PROPERTY. This method returns a list containing all the ZoneGeometries objects associated with each input geometry object.
  * The statistic results can be returned for each band or for each Class(if the classifier is present). It is important to remember that the
  * classifier must be of integral data type.
@@ -75,6 +78,9 @@ public class ZonalStatsOpImage extends OpImage {
     /** Logger object */
     private static final Logger LOGGER = Logger.getLogger(ZonalStatsOpImage.class.getName());
 
+    /** Maximum size of a class domain mapped by a direct lookup table */
+    private static final int MAX_DENSE_CLASSES = 65536;
+
     /** Volatile variable indicating if the statistical computations has already been done or not */
     private AtomicBoolean firstTime = new AtomicBoolean(true);
 
@@ -126,6 +132,11 @@ public class ZonalStatsOpImage extends OpImage {
     /** Classifier image */
     private final RenderedImage classifier;
 
+    /** Minimum value and size of the classifier domain; the size is 0 if the domain is not known */
+    private int classDomainMin;
+
+    private int classDomainSize;
+
     private List<Range> rangeList;
 
     private final boolean ranges;
@@ -158,13 +169,74 @@ public class ZonalStatsOpImage extends OpImage {
 
     private RenderedOp srcROIImgExt;
 
+    /** Integral image whose values are the zone labels, used instead of the geometries if present */
+    private final RenderedImage zoneImage;
+
+    /** Array indicating which statistics must be calculated */
+    private final StatsType[] statsTypes;
+
+    /** Arrays indicating the bounds and the bin numbers of the complex statistics for each band */
+    private double[] minBounds;
+
+    private double[] maxBounds;
+
+    private int[] binNumbers;
+
+    /** Rasterizer of the ROI, used with the label image */
+    private ROIRasterizer maskRasterizer;
+
+    /** Accumulators of the label statistics, one for each stripe of labels */
+    private LabelAccumulator[] labelStripes;
+
+    /** Table containing the label statistics, created when requested */
+    private ZonalStatsTable labelTable;
+
+    /** Listener notified when the statistics of a zone are complete, used for streaming the results */
+    private final ZonalStatsListener zoneListener;
+
+    /** Tiles already computed, used for notifying every tile only once to the zones */
+    private BitSet completedTiles;
+
     public ZonalStatsOpImage(RenderedImage source, ImageLayout layout, Map configuration,
             RenderedImage classifier, AffineTransform transform, List<ROI> rois, Range noData,
             ROI mask, boolean useROIAccessor, int[] bands, StatsType[] statsTypes,
             double[] minBound, double[] maxBound, int[] numBins, List<Range> rangeData,
             boolean localStats) {
+        this(source, layout, configuration, classifier, transform, rois, noData, mask,
+                useROIAccessor, bands, statsTypes, minBound, maxBound, numBins, rangeData,
+                localStats, null, null, null);
+    }
+
+    public ZonalStatsOpImage(RenderedImage source, ImageLayout layout, Map configuration,
+            RenderedImage classifier, AffineTransform transform, List<ROI> rois, Range noData,
+            ROI mask, boolean useROIAccessor, int[] bands, StatsType[] statsTypes,
+            double[] minBound, double[] maxBound, int[] numBins, List<Range> rangeData,
+            boolean localStats, RenderedImage zoneImage, Range classDomain,
+            ZonalStatsListener zoneListener) {
         super(vectorize(source), layout, configuration, true);
 
+        // Check if the zone image is integral and is not used together with geometries,
+        // classifier or ranges
+        if (zoneImage != null) {
+            int zoneDataType = zoneImage.getSampleModel().getDataType();
+            if (!(zoneDataType == DataBuffer.TYPE_BYTE || zoneDataType == DataBuffer.TYPE_USHORT
+                    || zoneDataType == DataBuffer.TYPE_SHORT || zoneDataType == DataBuffer.TYPE_INT)) {
+                throw new IllegalArgumentException("Zone image must be integral");
+            }
+            if (rois != null || classifier != null
+                    || (rangeData != null && !rangeData.isEmpty())) {
+                throw new IllegalArgumentException(
+                        "Zone image cannot be used with geometries, classifier or ranges");
+            }
+            if (zoneListener != null) {
+                throw new IllegalArgumentException(
+                        "Zone image cannot be used with a zone listener");
+            }
+        }
+        this.zoneImage = zoneImage;
+        this.zoneListener = zoneListener;
+        this.statsTypes = statsTypes;
+
         // Check if the classifier is present
         classPresent = classifier != null && classifier instanceof RenderedImage;
         // Check if the classifier is integral
@@ -175,6 +247,7 @@ public class ZonalStatsOpImage extends OpImage {
                 throw new IllegalArgumentException("Classifier must be integral");
             }
             this.classifier = classifier;
+            setClassDomain(classDomain, classDataType);
         } else {
             this.classifier = null;
         }
@@ -251,8 +324,7 @@ public class ZonalStatsOpImage extends OpImage {
         boolean nullCondition = minBoundsNull || maxBoundsNull || numBinsNull;
         // Check if the bounds or the bins are not null
         for (int st = 0; st < statsTypes.length; st++) {
-            int statId = statsTypes[st].getStatsId();
-            if (statId > 6 && nullCondition) {
+            if (!statsTypes[st].isSimple() && nullCondition) {
                 throw new IllegalArgumentException(
                         "If complex statistics are used, Bounds and Bin number should be defined");
             }
@@ -324,10 +396,22 @@ public class ZonalStatsOpImage extends OpImage {
 
         rangesNoClass = ranges && !classPresent;
 
+        this.minBounds = minBounds;
+        this.maxBounds = maxBounds;
+        this.binNumbers = numBinss;
+
         // Creation of a ZoneGeometry list, for storing the results
         // Check if the rois are present. Otherwise the entire image statistics
         // are calculated
-        if (rois == null) {
+        if (zoneImage != null) {
+            // The zones are defined by the label image, so no geometry is used
+            this.zoneList = new ArrayList<ZoneGeometry>(0);
+            this.rois = new ArrayList<ROI>(0);
+            // Bounds Union
+            union = createBounds(source).intersection(createBounds(zoneImage));
+            // Creation of the label accumulators
+            labelStripes = createLabelStripes();
+        } else if (rois == null) {
 
             this.zoneList = new ArrayList<ZoneGeometry>(1);
 
@@ -405,6 +489,11 @@ public class ZonalStatsOpImage extends OpImage {
         // Query on the geometry list
         spatialIndex.query(searchEnv);
 
+        // Initialization of the tile counters of the zones, if the results are streamed
+        if (zoneListener != null) {
+            initTileCounters();
+        }
+
         // Check if No Data control must be done
         if (noData != null) {
             notHasNoData = false;
@@ -431,6 +520,7 @@ public class ZonalStatsOpImage extends OpImage {
             hasROI = true;
             // Roi object
             srcROI = mask;
+            maskRasterizer = new ROIRasterizer(mask);
             // The useRoiAccessor parameter is set
             this.useROIAccessor = useROIAccessor;
             if (useROIAccessor) {
@@ -483,7 +573,123 @@ public class ZonalStatsOpImage extends OpImage {
         return new Rectangle(source.getMinX(), source.getMinY(), source.getWidth(), source.getHeight());
     }
 
+    /**
+     * Sets the domain of the classifier values, taken from the input Range if present or from the classifier data type. Domains too large for a
+     * lookup table are ignored.
+     */
+    private void setClassDomain(Range classDomain, int classDataType) {
+        long min;
+        long max;
+        if (classDomain != null) {
+            double domainMin = classDomain.getMin().doubleValue();
+            double domainMax = classDomain.getMax().doubleValue();
+            min = (long) Math.ceil(domainMin);
+            max = (long) Math.floor(domainMax);
+            if (!classDomain.isMinIncluded() && min == domainMin) {
+                min++;
+            }
+            if (!classDomain.isMaxIncluded() && max == domainMax) {
+                max--;
+            }
+        } else {
+            switch (classDataType) {
+            case DataBuffer.TYPE_BYTE:
+                min = 0;
+                max = 255;
+                break;
+            case DataBuffer.TYPE_USHORT:
+                min = 0;
+                max = 65535;
+                break;
+            case DataBuffer.TYPE_SHORT:
+                min = Short.MIN_VALUE;
+                max = Short.MAX_VALUE;
+                break;
+            default:
+                return;
+            }
+        }
+        long size = max - min + 1;
+        if (size > 0 && size <= MAX_DENSE_CLASSES && min >= Integer.MIN_VALUE) {
+            classDomainMin = (int) min;
+            classDomainSize = (int) size;
+        }
+    }
+
+    /**
+     * Sets the range of the tiles intersecting each zone, so that the zone completion can be tracked while the tiles are computed.
+     */
+    private void initTileCounters() {
+        completedTiles = new BitSet(getNumXTiles() * getNumYTiles());
+        Rectangle bounds = getBounds();
+        for (ZoneGeometry zone : zoneList) {
+            Rectangle zoneBounds = zone.getROI().getBounds().intersection(bounds);
+            if (zoneBounds.isEmpty()) {
+                // No tile is computed for this zone
+                zone.setTileRange(0, 0, -1, -1);
+            } else {
+                zone.setTileRange(XToTileX(zoneBounds.x), YToTileY(zoneBounds.y),
+                        XToTileX(zoneBounds.x + zoneBounds.width - 1),
+                        YToTileY(zoneBounds.y + zoneBounds.height - 1));
+            }
+        }
+    }
+
+    /**
+     * Marks the selected tile as computed. Returns false if the tile was already computed, for example when it is computed again after being
+     * removed from the tile cache.
+     */
+    private boolean claimTile(int tileX, int tileY) {
+        synchronized (completedTiles) {
+            int index = (tileY - getMinTileY()) * getNumXTiles() + (tileX - getMinTileX());
+            if (completedTiles.get(index)) {
+                return false;
+            }
+            completedTiles.set(index);
+            return true;
+        }
+    }
+
+    /**
+     * Notifies the computed tile to the zones intersecting it. The completed zones are passed to the listener and then their statistics are released.
+     */
+    private void completeTile(int tileX, int tileY) {
+        Rectangle tileRect = getTileRect(tileX, tileY);
+        Envelope tileEnv = new Envelope(tileRect.getMinX(), tileRect.getMaxX(),
+                tileRect.getMinY(), tileRect.getMaxY());
+        List<ZoneGeometry> candidates = spatialIndex.query(tileEnv);
+        for (ZoneGeometry zone : candidates) {
+            if (zone.completeTile(tileX, tileY)) {
+                notifyZone(zone);
+            }
+        }
+    }
+
+    /** Passes the completed zone to the listener and releases its statistics, if not already done */
+    private void notifyZone(ZoneGeometry zone) {
+        if (zone.markNotified()) {
+            zoneListener.zoneCompleted(zone);
+            zone.releaseStatistics();
+        }
+    }
+
     public Raster computeTile(int tileX, int tileY) {
+        if (zoneListener == null) {
+            return computeZonalTile(tileX, tileY);
+        }
+        // A tile computed again must not be accumulated, since the statistics of its zones may
+        // have been already released
+        if (!claimTile(tileX, tileY)) {
+            return getSourceImage(0).getTile(tileX, tileY);
+        }
+        Raster tile = computeZonalTile(tileX, tileY);
+        // Notification of the completed zones
+        completeTile(tileX, tileY);
+        return tile;
+    }
+
+    /** Calculates the statistics of the selected tile and returns it */
+    private Raster computeZonalTile(int tileX, int tileY) {
         // Selection of the tile associated with the tile x and y indexes
         Raster tile = getSourceImage(0).getTile(tileX, tileY);
         // Selection of the tile bounds
@@ -495,12 +701,41 @@ public class ZonalStatsOpImage extends OpImage {
         }
         // Check if the tile is inside the geometry bound-union
         if (union.intersects(tileRect) && insideROIifPresent) {
+            // Zones defined by the label image
+            if (zoneImage != null) {
+                labelLoop(tile, union.intersection(tileRect));
+                return tile;
+            }
             // STATISTICAL ELABORATIONS
             // selection of the format tags
             RasterFormatTag[] formatTags = getFormatTags();
             // Selection of the active calculation area
             Rectangle computableArea = union.intersection(tileRect);
 
+            // Rasterization of the zones intersecting the active area, so that the containment of
+            // each pixel is checked without querying the spatial index and the zone geometries
+            Envelope areaEnv = new Envelope(computableArea.getMinX(), computableArea.getMaxX(),
+                    computableArea.getMinY(), computableArea.getMaxY());
+            List<ZoneGeometry> candidates = spatialIndex.query(areaEnv);
+            // The class values are mapped to dense ordinals shared by the zones of the tile; the
+            // lookup table of the domain is used only if it is not larger than the area
+            int areaSize = computableArea.width * computableArea.height;
+            ClassOrdinals classes = new ClassOrdinals(classDomainMin,
+                    classDomainSize <= areaSize ? classDomainSize : 0);
+            if (!classPresent) {
+                // All the samples belong to the class 0
+                classes.getOrdinal(0);
+            }
+            // Without the ROI accessor the ROI is rasterized once and applied to the zone coverage, so
+            // that the statistics loops do not query the ROI for each pixel
+            boolean[] roiMask = hasROI && !useROIAccessor ? maskRasterizer
+                    .rasterizeMask(computableArea) : null;
+            TileZoneCoverage zones = new TileZoneCoverage(candidates, computableArea, roiMask,
+                    classes);
+            if (zones.isEmpty()) {
+                return tile;
+            }
+
             // creation of the RasterAccessor
             RasterAccessor src = new RasterAccessor(tile, computableArea, formatTags[0],
                     getSourceImage(0).getColorModel());
@@ -529,34 +764,109 @@ public class ZonalStatsOpImage extends OpImage {
             // From the data type is possible to choose the right calculation method
             switch (dataType) {
             case DataBuffer.TYPE_BYTE:
-                byteLoop(src, computableArea, tileX, tileY, roi);
+                byteLoop(src, computableArea, tileX, tileY, roi, zones);
                 break;
             case DataBuffer.TYPE_USHORT:
-                ushortLoop(src, computableArea, tileX, tileY, roi);
+                ushortLoop(src, computableArea, tileX, tileY, roi, zones);
                 break;
             case DataBuffer.TYPE_SHORT:
-                shortLoop(src, computableArea, tileX, tileY, roi);
+                shortLoop(src, computableArea, tileX, tileY, roi, zones);
                 break;
             case DataBuffer.TYPE_INT:
-                intLoop(src, computableArea, tileX, tileY, roi);
+                intLoop(src, computableArea, tileX, tileY, roi, zones);
                 break;
             case DataBuffer.TYPE_FLOAT:
-                floatLoop(src, computableArea, tileX, tileY, roi);
+                floatLoop(src, computableArea, tileX, tileY, roi, zones);
                 break;
             case DataBuffer.TYPE_DOUBLE:
-                doubleLoop(src, computableArea, tileX, tileY, roi);
+                doubleLoop(src, computableArea, tileX, tileY, roi, zones);
                 break;
             default:
                 throw new IllegalArgumentException("Wrong data type");
             }
+            // Merge of the tile statistics into the zones
+            zones.accumulate();
         }
 
         return tile;
     }
 
-    // NOTE: the statistic calculation is done in a synchronized block for avoiding race conditions
+    /** Creates the accumulators of the label statistics, one for each stripe */
+    private LabelAccumulator[] createLabelStripes() {
+        LabelAccumulator[] stripes = new LabelAccumulator[LabelAccumulator.NUM_STRIPES];
+        for (int s = 0; s < stripes.length; s++) {
+            stripes[s] = new LabelAccumulator(bands, statsTypes, minBounds, maxBounds, binNumbers);
+        }
+        return stripes;
+    }
+
+    /**
+     * Statistics calculation when the zones are defined by the label image. No geometry is used: the samples of each row are added to a tile-local
+     * accumulator, keyed by the label of each pixel, which is then merged into the label accumulators. Each stripe of labels is locked separately, so
+     * that different tiles are merged in parallel.
+     */
+    private void labelLoop(Raster tile, Rectangle computableArea) {
+        final int minX = computableArea.x;
+        final int minY = computableArea.y;
+        final int width = computableArea.width;
+        final int height = computableArea.height;
+        final int dataType = tile.getSampleModel().getDataType();
+
+        // Labels and ROI of the active area
+        Raster labels = zoneImage.getData(computableArea);
+        boolean[] roiMask = hasROI ? maskRasterizer.rasterizeMask(computableArea) : null;
+
+        LabelAccumulator accumulator = new LabelAccumulator(bands, statsTypes, minBounds,
+                maxBounds, binNumbers);
+        int[] labelRow = new int[width];
+        double[] sampleRow = new double[width];
+        for (int y = 0; y < height; y++) {
+            labels.getSamples(minX, minY + y, width, 1, 0, labelRow);
+            int maskOffset = y * width;
+            for (int i = 0; i < bandNum; i++) {
+                tile.getSamples(minX, minY + y, width, 1, bands[i], sampleRow);
+                for (int x = 0; x < width; x++) {
+                    if (roiMask != null && !roiMask[maskOffset + x]) {
+                        continue;
+                    }
+                    double sample = sampleRow[x];
+                    if (!notHasNoData && isNoData(sample, dataType)) {
+                        continue;
+                    }
+                    accumulator.add(labelRow[x], i, sample);
+                }
+            }
+        }
+
+        // Merge of the tile statistics
+        for (int s = 0; s < LabelAccumulator.NUM_STRIPES; s++) {
+            LabelAccumulator stripe = labelStripes[s];
+            synchronized (stripe) {
+                stripe.accumulate(accumulator, s);
+            }
+        }
+    }
+
+    /** Checks if the sample is a NoData, using the same checks of the data type loops */
+    private boolean isNoData(double sample, int dataType) {
+        switch (dataType) {
+        case DataBuffer.TYPE_BYTE:
+            return !booleanLookupTable[(int) sample];
+        case DataBuffer.TYPE_USHORT:
+        case DataBuffer.TYPE_SHORT:
+            return noData.contains((short) sample);
+        case DataBuffer.TYPE_INT:
+            return noData.contains((int) sample);
+        case DataBuffer.TYPE_FLOAT:
+            return noData.contains((float) sample);
+        default:
+            return noData.contains(sample);
+        }
+    }
+
+    // NOTE: the statistics are added to tile-local accumulators, merged into the zones at the end of computeTile()
     private void byteLoop(RasterAccessor src, Rectangle computableArea, int tileX, int tileY,
-            RasterAccessor roi) {
+            RasterAccessor roi, TileZoneCoverage zones) {
 
         // Source RasterAccessor initial parameters
         final int srcX = src.getX();
@@ -573,6 +883,9 @@ public class ZonalStatsOpImage extends OpImage {
 
         RectIter rectIterator = null;
 
+        // Class ordinals of the tile
+        ClassOrdinals classes = zones.getClasses();
+
         if (updateIterator) {
             Raster ras = classifier.getTile(tileX, tileY);
             rectIterator = RectIterFactory.create(ras, computableArea);
@@ -612,8 +925,8 @@ public class ZonalStatsOpImage extends OpImage {
                     int x0 = srcX + x;
                     int y0 = srcY + y;
 
-                    // check on containment
-                    if (!union.contains(x0, y0)) {
+                    // check if the pixel is covered by a zone
+                    if (!zones.isCovered(x, y)) {
                         // Update of the RectIterator
                         if (updateIterator) {
                             rectIterator.nextPixel();
@@ -621,14 +934,8 @@ public class ZonalStatsOpImage extends OpImage {
                         continue;
                     }
 
-                    // Coordinate object creation for the spatial indexing
-                    Coordinate p1 = new Coordinate(x0, y0);
-                    // Envelope associated to the coordinate object
-                    Envelope searchEnv = new Envelope(p1);
-                    // Query on the geometry list
-                    List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                    // classId classifier initial value
-                    int classId = 0;
+                    // class ordinal initial value
+                    int classOrdinal = 0;
                     // If the classifier is present then the classId value is taken
                     if (classPresent) {
                         // Selection of the initial point
@@ -640,10 +947,10 @@ public class ZonalStatsOpImage extends OpImage {
                             if (isNotIdentity) {
                                 inverseTrans.inverseTransform(pointSrc, pointClass);
                                 // Selection of the classId point
-                                classId = randomIterator.getSample(pointClass.x, pointClass.y, 0);
+                                classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x, pointClass.y, 0));
                             } else {
                                 // Selection of the classId point
-                                classId = rectIterator.getSample();
+                                classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                 rectIterator.nextPixel();
                             }
 
@@ -651,42 +958,34 @@ public class ZonalStatsOpImage extends OpImage {
                             LOGGER.log(Level.SEVERE, e.getMessage(), e);
                         }
                     }
-                    // Cycle on all the geometries found
-                    for (ZoneGeometry zoneGeo : geomList) {
-
-                        ROI geometry = zoneGeo.getROI();
-                        // if every geometry really contains the selected point
-                        boolean contains = false;
-                        synchronized (zoneGeo) { // HACK
-                            contains = geometry.contains(x0, y0);
-                        }
-
-                        if (contains) {
-                            // Cycle on the selected Bands
-                            for (int i = 0; i < bandNum; i++) {
-                                byte value = srcData[bands[i]][posx + posy
-                                                               + srcBandOffsets[bands[i]]];
-                                
-                                int sample = value&0xFF;
-                                // Update of all the statistics
-                                // If a range list is present then the sample is checked if it is inside the range
-                                if (rangesNoClass) {
-                                    for (Range range : rangeList) {
-                                        if (range.contains(value)) {
-                                            // For local statistics the pixel is checked for every range
-                                            if (localStats) {
-                                                zoneGeo.add(sample, bands[i], classId, range);
-                                            } else {
-                                                // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                // it is added to the statistic container
-                                                zoneGeo.add(sample, bands[i], classId, rangeHelper);
-                                                break;
-                                            }
+                    // Cycle on all the zones covering the pixel
+                    int zoneEnd = zones.getEnd(x, y);
+                    for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                        ZoneAccumulator zoneAcc = zones.getZone(z);
+                        // Cycle on the selected Bands
+                        for (int i = 0; i < bandNum; i++) {
+                            byte value = srcData[bands[i]][posx + posy
+                                                           + srcBandOffsets[bands[i]]];
+                            
+                            int sample = value&0xFF;
+                            // Update of all the statistics
+                            // If a range list is present then the sample is checked if it is inside the range
+                            if (rangesNoClass) {
+                                for (Range range : rangeList) {
+                                    if (range.contains(value)) {
+                                        // For local statistics the pixel is checked for every range
+                                        if (localStats) {
+                                            zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                        } else {
+                                            // For non local statistics the pixel when the pixel is contained inside a singular range
+                                            // it is added to the statistic container
+                                            zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
+                                            break;
                                         }
                                     }
-                                } else {
-                                    zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                 }
+                            } else {
+                                zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                             }
                         }
                     }
@@ -718,8 +1017,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -739,14 +1038,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the classId value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -758,11 +1051,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -770,41 +1063,33 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-
-                            if (contains) {
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    int sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]]&0xFF;
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains((byte)sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                int sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]]&0xFF;
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains((byte)sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
                         }
@@ -831,8 +1116,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone inside the ROI (applied to the coverage)
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -840,27 +1125,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // ROI value
-                        boolean insideROI = false;
-                        synchronized (this) { // HACK
-                            insideROI = srcROI.contains(x0, y0);
-                        }
-
-                        if (!insideROI) {
-                            if (updateIterator) {
-                                rectIterator.nextPixel();
-                            }
-                            continue;
-                        }
-
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the classId value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -872,11 +1138,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -884,41 +1150,33 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-
-                            if (contains) {
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    int sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]]&0xFF;
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains((byte)sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                int sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]]&0xFF;
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains((byte)sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
                         }
@@ -945,8 +1203,8 @@ public class ZonalStatsOpImage extends OpImage {
                     int x0 = srcX + x;
                     int y0 = srcY + y;
 
-                    // check on containment
-                    if (!union.contains(x0, y0)) {
+                    // check if the pixel is covered by a zone
+                    if (!zones.isCovered(x, y)) {
                         // Update of the RectIterator
                         if (updateIterator) {
                             rectIterator.nextPixel();
@@ -954,14 +1212,8 @@ public class ZonalStatsOpImage extends OpImage {
                         continue;
                     }
 
-                    // Coordinate object creation for the spatial indexing
-                    Coordinate p1 = new Coordinate(x0, y0);
-                    // Envelope associated to the coordinate object
-                    Envelope searchEnv = new Envelope(p1);
-                    // Query on the geometry list
-                    List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                    // classId classifier initial value
-                    int classId = 0;
+                    // class ordinal initial value
+                    int classOrdinal = 0;
                     // If the classifier is present then the zone value is taken
                     if (classPresent) {
                         // Selection of the initial point
@@ -973,10 +1225,10 @@ public class ZonalStatsOpImage extends OpImage {
                             if (isNotIdentity) {
                                 inverseTrans.inverseTransform(pointSrc, pointClass);
                                 // Selection of the classId point
-                                classId = randomIterator.getSample(pointClass.x, pointClass.y, 0);
+                                classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x, pointClass.y, 0));
                             } else {
                                 // Selection of the classId point
-                                classId = rectIterator.getSample();
+                                classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                 rectIterator.nextPixel();
                             }
 
@@ -984,48 +1236,39 @@ public class ZonalStatsOpImage extends OpImage {
                             LOGGER.log(Level.SEVERE, e.getMessage(), e);
                         }
                     }
-                    // Cycle on all the geometries found
-                    for (ZoneGeometry zoneGeo : geomList) {
-
-                        ROI geometry = zoneGeo.getROI();
-
-                        // if every geometry really contains the selected point
-                        boolean contains = false;
-                        synchronized (zoneGeo) { // HACK
-                            contains = geometry.contains(x0, y0);
-                        }
-                        if (contains) {
-
-                            // Cycle on the selected Bands
-                            for (int i = 0; i < bandNum; i++) {
-                                int sample = srcData[bands[i]][posx + posy
-                                        + srcBandOffsets[bands[i]]]&0xFF;
-                                // NoData check
-                                if (booleanLookupTable[sample]) {
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains((byte)sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                    // Cycle on all the zones covering the pixel
+                    int zoneEnd = zones.getEnd(x, y);
+                    for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                        ZoneAccumulator zoneAcc = zones.getZone(z);
+                        // Cycle on the selected Bands
+                        for (int i = 0; i < bandNum; i++) {
+                            int sample = srcData[bands[i]][posx + posy
+                                    + srcBandOffsets[bands[i]]]&0xFF;
+                            // NoData check
+                            if (booleanLookupTable[sample]) {
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains((byte)sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
-
                         }
+
                     }
                 }
                 if (updateIterator) {
@@ -1055,8 +1298,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -1076,14 +1319,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the zone value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -1095,11 +1332,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -1107,49 +1344,40 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    int sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]]& 0xFF;
-                                    // NoData check
-                                    if (booleanLookupTable[sample ]) {
-                                        // Update of all the statistics
-                                        // If a range list is present then the sample is checked if it is inside the range
-                                        if (rangesNoClass) {
-                                            for (Range range : rangeList) {
-                                                if (range.contains((byte)sample)) {
-                                                    // For local statistics the pixel is checked for every range
-                                                    if (localStats) {
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                range);
-                                                    } else {
-                                                        // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                        // it is added to the statistic container
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                rangeHelper);
-                                                        break;
-                                                    }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                int sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]]& 0xFF;
+                                // NoData check
+                                if (booleanLookupTable[sample ]) {
+                                    // Update of all the statistics
+                                    // If a range list is present then the sample is checked if it is inside the range
+                                    if (rangesNoClass) {
+                                        for (Range range : rangeList) {
+                                            if (range.contains((byte)sample)) {
+                                                // For local statistics the pixel is checked for every range
+                                                if (localStats) {
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            range);
+                                                } else {
+                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                    // it is added to the statistic container
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            rangeHelper);
+                                                    break;
                                                 }
                                             }
-                                        } else {
-                                            zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                         }
+                                    } else {
+                                        zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                     }
                                 }
-
                             }
+
                         }
                     }
                     if (updateIterator) {
@@ -1174,8 +1402,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone inside the ROI (applied to the coverage)
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -1183,26 +1411,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // ROI value
-                        boolean insideROI = false;
-                        synchronized (this) { // HACK
-                            insideROI = srcROI.contains(x0, y0);
-                        }
-                        if (!insideROI) {
-                            if (updateIterator) {
-                                rectIterator.nextPixel();
-                            }
-                            continue;
-                        }
-
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the zone value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -1214,11 +1424,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -1226,49 +1436,40 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    int sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]]& 0xFF;
-                                    // NoData check
-                                    if (booleanLookupTable[sample ]) {
-                                        // Update of all the statistics
-                                        // If a range list is present then the sample is checked if it is inside the range
-                                        if (rangesNoClass) {
-                                            for (Range range : rangeList) {
-                                                if (range.contains((byte)sample)) {
-                                                    // For local statistics the pixel is checked for every range
-                                                    if (localStats) {
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                range);
-                                                    } else {
-                                                        // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                        // it is added to the statistic container
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                rangeHelper);
-                                                        break;
-                                                    }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                int sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]]& 0xFF;
+                                // NoData check
+                                if (booleanLookupTable[sample ]) {
+                                    // Update of all the statistics
+                                    // If a range list is present then the sample is checked if it is inside the range
+                                    if (rangesNoClass) {
+                                        for (Range range : rangeList) {
+                                            if (range.contains((byte)sample)) {
+                                                // For local statistics the pixel is checked for every range
+                                                if (localStats) {
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            range);
+                                                } else {
+                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                    // it is added to the statistic container
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            rangeHelper);
+                                                    break;
                                                 }
                                             }
-                                        } else {
-                                            zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                         }
+                                    } else {
+                                        zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                     }
                                 }
-
                             }
+
                         }
                     }
                     if (updateIterator) {
@@ -1280,7 +1481,7 @@ public class ZonalStatsOpImage extends OpImage {
     }
 
     private void ushortLoop(RasterAccessor src, Rectangle computableArea, int tileX, int tileY,
-            RasterAccessor roi) {
+            RasterAccessor roi, TileZoneCoverage zones) {
 
         // Source RasterAccessor initial parameters
         final int srcX = src.getX();
@@ -1297,6 +1498,9 @@ public class ZonalStatsOpImage extends OpImage {
 
         RectIter rectIterator = null;
 
+        // Class ordinals of the tile
+        ClassOrdinals classes = zones.getClasses();
+
         if (updateIterator) {
             Raster ras = classifier.getTile(tileX, tileY);
             rectIterator = RectIterFactory.create(ras, computableArea);
@@ -1336,8 +1540,8 @@ public class ZonalStatsOpImage extends OpImage {
                     int x0 = srcX + x;
                     int y0 = srcY + y;
 
-                    // check on containment
-                    if (!union.contains(x0, y0)) {
+                    // check if the pixel is covered by a zone
+                    if (!zones.isCovered(x, y)) {
                         // Update of the RectIterator
                         if (updateIterator) {
                             rectIterator.nextPixel();
@@ -1345,14 +1549,8 @@ public class ZonalStatsOpImage extends OpImage {
                         continue;
                     }
 
-                    // Coordinate object creation for the spatial indexing
-                    Coordinate p1 = new Coordinate(x0, y0);
-                    // Envelope associated to the coordinate object
-                    Envelope searchEnv = new Envelope(p1);
-                    // Query on the geometry list
-                    List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                    // classId classifier initial value
-                    int classId = 0;
+                    // class ordinal initial value
+                    int classOrdinal = 0;
                     // If the classifier is present then the classId value is taken
                     if (classPresent) {
                         // Selection of the initial point
@@ -1364,10 +1562,10 @@ public class ZonalStatsOpImage extends OpImage {
                             if (isNotIdentity) {
                                 inverseTrans.inverseTransform(pointSrc, pointClass);
                                 // Selection of the classId point
-                                classId = randomIterator.getSample(pointClass.x, pointClass.y, 0);
+                                classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x, pointClass.y, 0));
                             } else {
                                 // Selection of the classId point
-                                classId = rectIterator.getSample();
+                                classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                 rectIterator.nextPixel();
                             }
 
@@ -1375,39 +1573,32 @@ public class ZonalStatsOpImage extends OpImage {
                             LOGGER.log(Level.SEVERE, e.getMessage(), e);
                         }
                     }
-                    // Cycle on all the geometries found
-                    for (ZoneGeometry zoneGeo : geomList) {
-
-                        ROI geometry = zoneGeo.getROI();
-                        // if every geometry really contains the selected point
-                        boolean contains = false;
-                        synchronized (zoneGeo) { // HACK
-                            contains = geometry.contains(x0, y0);
-                        }
-                        if (contains) {
-                            // Cycle on the selected Bands
-                            for (int i = 0; i < bandNum; i++) {
-                                int sample = srcData[bands[i]][posx + posy
-                                        + srcBandOffsets[bands[i]]] & 0xFFFF;
-                                // Update of all the statistics
-                                // If a range list is present then the sample is checked if it is inside the range
-                                if (rangesNoClass) {
-                                    for (Range range : rangeList) {
-                                        if (range.contains((short) sample)) {
-                                            // For local statistics the pixel is checked for every range
-                                            if (localStats) {
-                                                zoneGeo.add(sample, bands[i], classId, range);
-                                            } else {
-                                                // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                // it is added to the statistic container
-                                                zoneGeo.add(sample, bands[i], classId, rangeHelper);
-                                                break;
-                                            }
+                    // Cycle on all the zones covering the pixel
+                    int zoneEnd = zones.getEnd(x, y);
+                    for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                        ZoneAccumulator zoneAcc = zones.getZone(z);
+                        // Cycle on the selected Bands
+                        for (int i = 0; i < bandNum; i++) {
+                            int sample = srcData[bands[i]][posx + posy
+                                    + srcBandOffsets[bands[i]]] & 0xFFFF;
+                            // Update of all the statistics
+                            // If a range list is present then the sample is checked if it is inside the range
+                            if (rangesNoClass) {
+                                for (Range range : rangeList) {
+                                    if (range.contains((short) sample)) {
+                                        // For local statistics the pixel is checked for every range
+                                        if (localStats) {
+                                            zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                        } else {
+                                            // For non local statistics the pixel when the pixel is contained inside a singular range
+                                            // it is added to the statistic container
+                                            zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
+                                            break;
                                         }
                                     }
-                                } else {
-                                    zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                 }
+                            } else {
+                                zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                             }
                         }
                     }
@@ -1439,8 +1630,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -1460,14 +1651,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the classId value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -1479,11 +1664,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -1491,40 +1676,33 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    int sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]] & 0xFFFF;
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains((short) sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                int sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]] & 0xFFFF;
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains((short) sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
                         }
@@ -1551,8 +1729,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone inside the ROI (applied to the coverage)
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -1560,26 +1738,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // ROI value
-                        boolean insideROI = false;
-                        synchronized (this) { // HACK
-                            insideROI = srcROI.contains(x0, y0);
-                        }
-                        if (!insideROI) {
-                            if (updateIterator) {
-                                rectIterator.nextPixel();
-                            }
-                            continue;
-                        }
-
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the classId value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -1591,11 +1751,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -1603,40 +1763,33 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    int sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]] & 0xFFFF;
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains((short) sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                int sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]] & 0xFFFF;
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains((short) sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
                         }
@@ -1663,8 +1816,8 @@ public class ZonalStatsOpImage extends OpImage {
                     int x0 = srcX + x;
                     int y0 = srcY + y;
 
-                    // check on containment
-                    if (!union.contains(x0, y0)) {
+                    // check if the pixel is covered by a zone
+                    if (!zones.isCovered(x, y)) {
                         // Update of the RectIterator
                         if (updateIterator) {
                             rectIterator.nextPixel();
@@ -1672,14 +1825,8 @@ public class ZonalStatsOpImage extends OpImage {
                         continue;
                     }
 
-                    // Coordinate object creation for the spatial indexing
-                    Coordinate p1 = new Coordinate(x0, y0);
-                    // Envelope associated to the coordinate object
-                    Envelope searchEnv = new Envelope(p1);
-                    // Query on the geometry list
-                    List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                    // classId classifier initial value
-                    int classId = 0;
+                    // class ordinal initial value
+                    int classOrdinal = 0;
                     // If the classifier is present then the zone value is taken
                     if (classPresent) {
                         // Selection of the initial point
@@ -1691,10 +1838,10 @@ public class ZonalStatsOpImage extends OpImage {
                             if (isNotIdentity) {
                                 inverseTrans.inverseTransform(pointSrc, pointClass);
                                 // Selection of the classId point
-                                classId = randomIterator.getSample(pointClass.x, pointClass.y, 0);
+                                classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x, pointClass.y, 0));
                             } else {
                                 // Selection of the classId point
-                                classId = rectIterator.getSample();
+                                classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                 rectIterator.nextPixel();
                             }
 
@@ -1702,48 +1849,39 @@ public class ZonalStatsOpImage extends OpImage {
                             LOGGER.log(Level.SEVERE, e.getMessage(), e);
                         }
                     }
-                    // Cycle on all the geometries found
-                    for (ZoneGeometry zoneGeo : geomList) {
-
-                        ROI geometry = zoneGeo.getROI();
-
-                        // if every geometry really contains the selected point
-                        boolean contains = false;
-                        synchronized (zoneGeo) { // HACK
-                            contains = geometry.contains(x0, y0);
-                        }
-                        if (contains) {
-
-                            // Cycle on the selected Bands
-                            for (int i = 0; i < bandNum; i++) {
-                                int sample = srcData[bands[i]][posx + posy
-                                        + srcBandOffsets[bands[i]]] & 0xFFFF;
-                                // NoData check
-                                if (!noData.contains((short) sample)) {
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains((short) sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                    // Cycle on all the zones covering the pixel
+                    int zoneEnd = zones.getEnd(x, y);
+                    for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                        ZoneAccumulator zoneAcc = zones.getZone(z);
+                        // Cycle on the selected Bands
+                        for (int i = 0; i < bandNum; i++) {
+                            int sample = srcData[bands[i]][posx + posy
+                                    + srcBandOffsets[bands[i]]] & 0xFFFF;
+                            // NoData check
+                            if (!noData.contains((short) sample)) {
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains((short) sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
-
                         }
+
                     }
                 }
                 if (updateIterator) {
@@ -1773,8 +1911,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -1794,14 +1932,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the zone value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -1813,11 +1945,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -1825,49 +1957,40 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    int sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]] & 0xFFFF;
-                                    // NoData check
-                                    if (!noData.contains((short) sample)) {
-                                        // Update of all the statistics
-                                        // If a range list is present then the sample is checked if it is inside the range
-                                        if (rangesNoClass) {
-                                            for (Range range : rangeList) {
-                                                if (range.contains((short) sample)) {
-                                                    // For local statistics the pixel is checked for every range
-                                                    if (localStats) {
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                range);
-                                                    } else {
-                                                        // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                        // it is added to the statistic container
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                rangeHelper);
-                                                        break;
-                                                    }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                int sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]] & 0xFFFF;
+                                // NoData check
+                                if (!noData.contains((short) sample)) {
+                                    // Update of all the statistics
+                                    // If a range list is present then the sample is checked if it is inside the range
+                                    if (rangesNoClass) {
+                                        for (Range range : rangeList) {
+                                            if (range.contains((short) sample)) {
+                                                // For local statistics the pixel is checked for every range
+                                                if (localStats) {
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            range);
+                                                } else {
+                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                    // it is added to the statistic container
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            rangeHelper);
+                                                    break;
                                                 }
                                             }
-                                        } else {
-                                            zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                         }
+                                    } else {
+                                        zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                     }
                                 }
-
                             }
+
                         }
                     }
                     if (updateIterator) {
@@ -1892,8 +2015,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone inside the ROI (applied to the coverage)
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -1901,26 +2024,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // ROI value
-                        boolean insideROI = false;
-                        synchronized (this) { // HACK
-                            insideROI = srcROI.contains(x0, y0);
-                        }
-                        if (!insideROI) {
-                            if (updateIterator) {
-                                rectIterator.nextPixel();
-                            }
-                            continue;
-                        }
-
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the zone value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -1932,11 +2037,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -1944,49 +2049,40 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    int sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]] & 0xFFFF;
-                                    // NoData check
-                                    if (!noData.contains((short) sample)) {
-                                        // Update of all the statistics
-                                        // If a range list is present then the sample is checked if it is inside the range
-                                        if (rangesNoClass) {
-                                            for (Range range : rangeList) {
-                                                if (range.contains((short) sample)) {
-                                                    // For local statistics the pixel is checked for every range
-                                                    if (localStats) {
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                range);
-                                                    } else {
-                                                        // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                        // it is added to the statistic container
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                rangeHelper);
-                                                        break;
-                                                    }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                int sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]] & 0xFFFF;
+                                // NoData check
+                                if (!noData.contains((short) sample)) {
+                                    // Update of all the statistics
+                                    // If a range list is present then the sample is checked if it is inside the range
+                                    if (rangesNoClass) {
+                                        for (Range range : rangeList) {
+                                            if (range.contains((short) sample)) {
+                                                // For local statistics the pixel is checked for every range
+                                                if (localStats) {
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            range);
+                                                } else {
+                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                    // it is added to the statistic container
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            rangeHelper);
+                                                    break;
                                                 }
                                             }
-                                        } else {
-                                            zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                         }
+                                    } else {
+                                        zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                     }
                                 }
-
                             }
+
                         }
                     }
                     if (updateIterator) {
@@ -1998,7 +2094,7 @@ public class ZonalStatsOpImage extends OpImage {
     }
 
     private void shortLoop(RasterAccessor src, Rectangle computableArea, int tileX, int tileY,
-            RasterAccessor roi) {
+            RasterAccessor roi, TileZoneCoverage zones) {
 
         // Source RasterAccessor initial parameters
         final int srcX = src.getX();
@@ -2015,6 +2111,9 @@ public class ZonalStatsOpImage extends OpImage {
 
         RectIter rectIterator = null;
 
+        // Class ordinals of the tile
+        ClassOrdinals classes = zones.getClasses();
+
         if (updateIterator) {
             Raster ras = classifier.getTile(tileX, tileY);
             rectIterator = RectIterFactory.create(ras, computableArea);
@@ -2054,8 +2153,8 @@ public class ZonalStatsOpImage extends OpImage {
                     int x0 = srcX + x;
                     int y0 = srcY + y;
 
-                    // check on containment
-                    if (!union.contains(x0, y0)) {
+                    // check if the pixel is covered by a zone
+                    if (!zones.isCovered(x, y)) {
                         // Update of the RectIterator
                         if (updateIterator) {
                             rectIterator.nextPixel();
@@ -2063,14 +2162,8 @@ public class ZonalStatsOpImage extends OpImage {
                         continue;
                     }
 
-                    // Coordinate object creation for the spatial indexing
-                    Coordinate p1 = new Coordinate(x0, y0);
-                    // Envelope associated to the coordinate object
-                    Envelope searchEnv = new Envelope(p1);
-                    // Query on the geometry list
-                    List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                    // classId classifier initial value
-                    int classId = 0;
+                    // class ordinal initial value
+                    int classOrdinal = 0;
                     // If the classifier is present then the classId value is taken
                     if (classPresent) {
                         // Selection of the initial point
@@ -2082,10 +2175,10 @@ public class ZonalStatsOpImage extends OpImage {
                             if (isNotIdentity) {
                                 inverseTrans.inverseTransform(pointSrc, pointClass);
                                 // Selection of the classId point
-                                classId = randomIterator.getSample(pointClass.x, pointClass.y, 0);
+                                classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x, pointClass.y, 0));
                             } else {
                                 // Selection of the classId point
-                                classId = rectIterator.getSample();
+                                classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                 rectIterator.nextPixel();
                             }
 
@@ -2093,39 +2186,32 @@ public class ZonalStatsOpImage extends OpImage {
                             LOGGER.log(Level.SEVERE, e.getMessage(), e);
                         }
                     }
-                    // Cycle on all the geometries found
-                    for (ZoneGeometry zoneGeo : geomList) {
-
-                        ROI geometry = zoneGeo.getROI();
-                        // if every geometry really contains the selected point
-                        boolean contains = false;
-                        synchronized (zoneGeo) { // HACK
-                            contains = geometry.contains(x0, y0);
-                        }
-                        if (contains) {
-                            // Cycle on the selected Bands
-                            for (int i = 0; i < bandNum; i++) {
-                                short sample = srcData[bands[i]][posx + posy
-                                        + srcBandOffsets[bands[i]]];
-                                // Update of all the statistics
-                                // If a range list is present then the sample is checked if it is inside the range
-                                if (rangesNoClass) {
-                                    for (Range range : rangeList) {
-                                        if (range.contains(sample)) {
-                                            // For local statistics the pixel is checked for every range
-                                            if (localStats) {
-                                                zoneGeo.add(sample, bands[i], classId, range);
-                                            } else {
-                                                // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                // it is added to the statistic container
-                                                zoneGeo.add(sample, bands[i], classId, rangeHelper);
-                                                break;
-                                            }
+                    // Cycle on all the zones covering the pixel
+                    int zoneEnd = zones.getEnd(x, y);
+                    for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                        ZoneAccumulator zoneAcc = zones.getZone(z);
+                        // Cycle on the selected Bands
+                        for (int i = 0; i < bandNum; i++) {
+                            short sample = srcData[bands[i]][posx + posy
+                                    + srcBandOffsets[bands[i]]];
+                            // Update of all the statistics
+                            // If a range list is present then the sample is checked if it is inside the range
+                            if (rangesNoClass) {
+                                for (Range range : rangeList) {
+                                    if (range.contains(sample)) {
+                                        // For local statistics the pixel is checked for every range
+                                        if (localStats) {
+                                            zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                        } else {
+                                            // For non local statistics the pixel when the pixel is contained inside a singular range
+                                            // it is added to the statistic container
+                                            zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
+                                            break;
                                         }
                                     }
-                                } else {
-                                    zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                 }
+                            } else {
+                                zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                             }
                         }
                     }
@@ -2157,8 +2243,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -2178,14 +2264,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the classId value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -2197,11 +2277,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -2209,41 +2289,34 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    short sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains(sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
-                                            }
-                                        }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
-                                    }
-                                }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                short sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains(sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
+                                            }
+                                        }
+                                    }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
+                                }
                             }
                         }
                     }
@@ -2269,8 +2342,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone inside the ROI (applied to the coverage)
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -2278,26 +2351,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // ROI value
-                        boolean insideROI = false;
-                        synchronized (this) { // HACK
-                            insideROI = srcROI.contains(x0, y0);
-                        }
-                        if (!insideROI) {
-                            if (updateIterator) {
-                                rectIterator.nextPixel();
-                            }
-                            continue;
-                        }
-
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the classId value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -2309,11 +2364,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -2321,40 +2376,33 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    short sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains(sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                short sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains(sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
                         }
@@ -2381,8 +2429,8 @@ public class ZonalStatsOpImage extends OpImage {
                     int x0 = srcX + x;
                     int y0 = srcY + y;
 
-                    // check on containment
-                    if (!union.contains(x0, y0)) {
+                    // check if the pixel is covered by a zone
+                    if (!zones.isCovered(x, y)) {
                         // Update of the RectIterator
                         if (updateIterator) {
                             rectIterator.nextPixel();
@@ -2390,14 +2438,8 @@ public class ZonalStatsOpImage extends OpImage {
                         continue;
                     }
 
-                    // Coordinate object creation for the spatial indexing
-                    Coordinate p1 = new Coordinate(x0, y0);
-                    // Envelope associated to the coordinate object
-                    Envelope searchEnv = new Envelope(p1);
-                    // Query on the geometry list
-                    List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                    // classId classifier initial value
-                    int classId = 0;
+                    // class ordinal initial value
+                    int classOrdinal = 0;
                     // If the classifier is present then the zone value is taken
                     if (classPresent) {
                         // Selection of the initial point
@@ -2409,10 +2451,10 @@ public class ZonalStatsOpImage extends OpImage {
                             if (isNotIdentity) {
                                 inverseTrans.inverseTransform(pointSrc, pointClass);
                                 // Selection of the classId point
-                                classId = randomIterator.getSample(pointClass.x, pointClass.y, 0);
+                                classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x, pointClass.y, 0));
                             } else {
                                 // Selection of the classId point
-                                classId = rectIterator.getSample();
+                                classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                 rectIterator.nextPixel();
                             }
 
@@ -2420,48 +2462,39 @@ public class ZonalStatsOpImage extends OpImage {
                             LOGGER.log(Level.SEVERE, e.getMessage(), e);
                         }
                     }
-                    // Cycle on all the geometries found
-                    for (ZoneGeometry zoneGeo : geomList) {
-
-                        ROI geometry = zoneGeo.getROI();
-
-                        // if every geometry really contains the selected point
-                        boolean contains = false;
-                        synchronized (zoneGeo) { // HACK
-                            contains = geometry.contains(x0, y0);
-                        }
-                        if (contains) {
-
-                            // Cycle on the selected Bands
-                            for (int i = 0; i < bandNum; i++) {
-                                short sample = srcData[bands[i]][posx + posy
-                                        + srcBandOffsets[bands[i]]];
-                                // NoData check
-                                if (!noData.contains(sample)) {
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains(sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                    // Cycle on all the zones covering the pixel
+                    int zoneEnd = zones.getEnd(x, y);
+                    for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                        ZoneAccumulator zoneAcc = zones.getZone(z);
+                        // Cycle on the selected Bands
+                        for (int i = 0; i < bandNum; i++) {
+                            short sample = srcData[bands[i]][posx + posy
+                                    + srcBandOffsets[bands[i]]];
+                            // NoData check
+                            if (!noData.contains(sample)) {
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains(sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
-
                         }
+
                     }
                 }
                 if (updateIterator) {
@@ -2491,8 +2524,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -2512,14 +2545,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the zone value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -2531,11 +2558,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -2543,49 +2570,40 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    short sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // NoData check
-                                    if (!noData.contains(sample)) {
-                                        // Update of all the statistics
-                                        // If a range list is present then the sample is checked if it is inside the range
-                                        if (rangesNoClass) {
-                                            for (Range range : rangeList) {
-                                                if (range.contains(sample)) {
-                                                    // For local statistics the pixel is checked for every range
-                                                    if (localStats) {
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                range);
-                                                    } else {
-                                                        // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                        // it is added to the statistic container
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                rangeHelper);
-                                                        break;
-                                                    }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                short sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // NoData check
+                                if (!noData.contains(sample)) {
+                                    // Update of all the statistics
+                                    // If a range list is present then the sample is checked if it is inside the range
+                                    if (rangesNoClass) {
+                                        for (Range range : rangeList) {
+                                            if (range.contains(sample)) {
+                                                // For local statistics the pixel is checked for every range
+                                                if (localStats) {
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            range);
+                                                } else {
+                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                    // it is added to the statistic container
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            rangeHelper);
+                                                    break;
                                                 }
                                             }
-                                        } else {
-                                            zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                         }
+                                    } else {
+                                        zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                     }
                                 }
-
                             }
+
                         }
                     }
                     if (updateIterator) {
@@ -2610,8 +2628,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone inside the ROI (applied to the coverage)
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -2619,26 +2637,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // ROI value
-                        boolean insideROI = false;
-                        synchronized (this) { // HACK
-                            insideROI = srcROI.contains(x0, y0);
-                        }
-                        if (!insideROI) {
-                            if (updateIterator) {
-                                rectIterator.nextPixel();
-                            }
-                            continue;
-                        }
-
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the zone value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -2650,11 +2650,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -2662,49 +2662,40 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    short sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // NoData check
-                                    if (!noData.contains(sample)) {
-                                        // Update of all the statistics
-                                        // If a range list is present then the sample is checked if it is inside the range
-                                        if (rangesNoClass) {
-                                            for (Range range : rangeList) {
-                                                if (range.contains(sample)) {
-                                                    // For local statistics the pixel is checked for every range
-                                                    if (localStats) {
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                range);
-                                                    } else {
-                                                        // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                        // it is added to the statistic container
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                rangeHelper);
-                                                        break;
-                                                    }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                short sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // NoData check
+                                if (!noData.contains(sample)) {
+                                    // Update of all the statistics
+                                    // If a range list is present then the sample is checked if it is inside the range
+                                    if (rangesNoClass) {
+                                        for (Range range : rangeList) {
+                                            if (range.contains(sample)) {
+                                                // For local statistics the pixel is checked for every range
+                                                if (localStats) {
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            range);
+                                                } else {
+                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                    // it is added to the statistic container
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            rangeHelper);
+                                                    break;
                                                 }
                                             }
-                                        } else {
-                                            zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                         }
+                                    } else {
+                                        zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                     }
                                 }
-
                             }
+
                         }
                     }
                     if (updateIterator) {
@@ -2716,7 +2707,7 @@ public class ZonalStatsOpImage extends OpImage {
     }
 
     private void intLoop(RasterAccessor src, Rectangle computableArea, int tileX, int tileY,
-            RasterAccessor roi) {
+            RasterAccessor roi, TileZoneCoverage zones) {
 
         // Source and ROI RasterAccessor initial parameters
         final int srcX = src.getX();
@@ -2733,6 +2724,9 @@ public class ZonalStatsOpImage extends OpImage {
 
         RectIter rectIterator = null;
 
+        // Class ordinals of the tile
+        ClassOrdinals classes = zones.getClasses();
+
         if (updateIterator) {
             Raster ras = classifier.getTile(tileX, tileY);
             rectIterator = RectIterFactory.create(ras, computableArea);
@@ -2772,8 +2766,8 @@ public class ZonalStatsOpImage extends OpImage {
                     int x0 = srcX + x;
                     int y0 = srcY + y;
 
-                    // check on containment
-                    if (!union.contains(x0, y0)) {
+                    // check if the pixel is covered by a zone
+                    if (!zones.isCovered(x, y)) {
                         // Update of the RectIterator
                         if (updateIterator) {
                             rectIterator.nextPixel();
@@ -2781,14 +2775,8 @@ public class ZonalStatsOpImage extends OpImage {
                         continue;
                     }
 
-                    // Coordinate object creation for the spatial indexing
-                    Coordinate p1 = new Coordinate(x0, y0);
-                    // Envelope associated to the coordinate object
-                    Envelope searchEnv = new Envelope(p1);
-                    // Query on the geometry list
-                    List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                    // classId classifier initial value
-                    int classId = 0;
+                    // class ordinal initial value
+                    int classOrdinal = 0;
                     // If the classifier is present then the classId value is taken
                     if (classPresent) {
                         // Selection of the initial point
@@ -2800,10 +2788,10 @@ public class ZonalStatsOpImage extends OpImage {
                             if (isNotIdentity) {
                                 inverseTrans.inverseTransform(pointSrc, pointClass);
                                 // Selection of the classId point
-                                classId = randomIterator.getSample(pointClass.x, pointClass.y, 0);
+                                classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x, pointClass.y, 0));
                             } else {
                                 // Selection of the classId point
-                                classId = rectIterator.getSample();
+                                classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                 rectIterator.nextPixel();
                             }
 
@@ -2811,39 +2799,32 @@ public class ZonalStatsOpImage extends OpImage {
                             LOGGER.log(Level.SEVERE, e.getMessage(), e);
                         }
                     }
-                    // Cycle on all the geometries found
-                    for (ZoneGeometry zoneGeo : geomList) {
-
-                        ROI geometry = zoneGeo.getROI();
-                        // if every geometry really contains the selected point
-                        boolean contains = false;
-                        synchronized (zoneGeo) { // HACK
-                            contains = geometry.contains(x0, y0);
-                        }
-                        if (contains) {
-                            // Cycle on the selected Bands
-                            for (int i = 0; i < bandNum; i++) {
-                                int sample = srcData[bands[i]][posx + posy
-                                        + srcBandOffsets[bands[i]]];
-                                // Update of all the statistics
-                                // If a range list is present then the sample is checked if it is inside the range
-                                if (rangesNoClass) {
-                                    for (Range range : rangeList) {
-                                        if (range.contains(sample)) {
-                                            // For local statistics the pixel is checked for every range
-                                            if (localStats) {
-                                                zoneGeo.add(sample, bands[i], classId, range);
-                                            } else {
-                                                // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                // it is added to the statistic container
-                                                zoneGeo.add(sample, bands[i], classId, rangeHelper);
-                                                break;
-                                            }
+                    // Cycle on all the zones covering the pixel
+                    int zoneEnd = zones.getEnd(x, y);
+                    for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                        ZoneAccumulator zoneAcc = zones.getZone(z);
+                        // Cycle on the selected Bands
+                        for (int i = 0; i < bandNum; i++) {
+                            int sample = srcData[bands[i]][posx + posy
+                                    + srcBandOffsets[bands[i]]];
+                            // Update of all the statistics
+                            // If a range list is present then the sample is checked if it is inside the range
+                            if (rangesNoClass) {
+                                for (Range range : rangeList) {
+                                    if (range.contains(sample)) {
+                                        // For local statistics the pixel is checked for every range
+                                        if (localStats) {
+                                            zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                        } else {
+                                            // For non local statistics the pixel when the pixel is contained inside a singular range
+                                            // it is added to the statistic container
+                                            zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
+                                            break;
                                         }
                                     }
-                                } else {
-                                    zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                 }
+                            } else {
+                                zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                             }
                         }
                     }
@@ -2875,8 +2856,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -2896,14 +2877,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the classId value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -2915,11 +2890,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -2927,40 +2902,33 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    int sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains(sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                int sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains(sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
                         }
@@ -2987,8 +2955,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone inside the ROI (applied to the coverage)
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -2996,26 +2964,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // ROI value
-                        boolean insideROI = false;
-                        synchronized (this) { // HACK
-                            insideROI = srcROI.contains(x0, y0);
-                        }
-                        if (!insideROI) {
-                            if (updateIterator) {
-                                rectIterator.nextPixel();
-                            }
-                            continue;
-                        }
-
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the classId value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -3027,11 +2977,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -3039,40 +2989,33 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    int sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains(sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                int sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains(sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
                         }
@@ -3099,8 +3042,8 @@ public class ZonalStatsOpImage extends OpImage {
                     int x0 = srcX + x;
                     int y0 = srcY + y;
 
-                    // check on containment
-                    if (!union.contains(x0, y0)) {
+                    // check if the pixel is covered by a zone
+                    if (!zones.isCovered(x, y)) {
                         // Update of the RectIterator
                         if (updateIterator) {
                             rectIterator.nextPixel();
@@ -3108,14 +3051,8 @@ public class ZonalStatsOpImage extends OpImage {
                         continue;
                     }
 
-                    // Coordinate object creation for the spatial indexing
-                    Coordinate p1 = new Coordinate(x0, y0);
-                    // Envelope associated to the coordinate object
-                    Envelope searchEnv = new Envelope(p1);
-                    // Query on the geometry list
-                    List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                    // classId classifier initial value
-                    int classId = 0;
+                    // class ordinal initial value
+                    int classOrdinal = 0;
                     // If the classifier is present then the zone value is taken
                     if (classPresent) {
                         // Selection of the initial point
@@ -3127,10 +3064,10 @@ public class ZonalStatsOpImage extends OpImage {
                             if (isNotIdentity) {
                                 inverseTrans.inverseTransform(pointSrc, pointClass);
                                 // Selection of the classId point
-                                classId = randomIterator.getSample(pointClass.x, pointClass.y, 0);
+                                classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x, pointClass.y, 0));
                             } else {
                                 // Selection of the classId point
-                                classId = rectIterator.getSample();
+                                classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                 rectIterator.nextPixel();
                             }
 
@@ -3138,48 +3075,39 @@ public class ZonalStatsOpImage extends OpImage {
                             LOGGER.log(Level.SEVERE, e.getMessage(), e);
                         }
                     }
-                    // Cycle on all the geometries found
-                    for (ZoneGeometry zoneGeo : geomList) {
-
-                        ROI geometry = zoneGeo.getROI();
-
-                        // if every geometry really contains the selected point
-                        boolean contains = false;
-                        synchronized (zoneGeo) { // HACK
-                            contains = geometry.contains(x0, y0);
-                        }
-                        if (contains) {
-
-                            // Cycle on the selected Bands
-                            for (int i = 0; i < bandNum; i++) {
-                                int sample = srcData[bands[i]][posx + posy
-                                        + srcBandOffsets[bands[i]]];
-                                // NoData check
-                                if (!noData.contains(sample)) {
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains(sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                    // Cycle on all the zones covering the pixel
+                    int zoneEnd = zones.getEnd(x, y);
+                    for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                        ZoneAccumulator zoneAcc = zones.getZone(z);
+                        // Cycle on the selected Bands
+                        for (int i = 0; i < bandNum; i++) {
+                            int sample = srcData[bands[i]][posx + posy
+                                    + srcBandOffsets[bands[i]]];
+                            // NoData check
+                            if (!noData.contains(sample)) {
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains(sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
-
                         }
+
                     }
                 }
                 if (updateIterator) {
@@ -3209,8 +3137,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -3230,14 +3158,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the zone value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -3249,11 +3171,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -3261,49 +3183,40 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    int sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // NoData check
-                                    if (!noData.contains(sample)) {
-                                        // Update of all the statistics
-                                        // If a range list is present then the sample is checked if it is inside the range
-                                        if (rangesNoClass) {
-                                            for (Range range : rangeList) {
-                                                if (range.contains(sample)) {
-                                                    // For local statistics the pixel is checked for every range
-                                                    if (localStats) {
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                range);
-                                                    } else {
-                                                        // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                        // it is added to the statistic container
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                rangeHelper);
-                                                        break;
-                                                    }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                int sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // NoData check
+                                if (!noData.contains(sample)) {
+                                    // Update of all the statistics
+                                    // If a range list is present then the sample is checked if it is inside the range
+                                    if (rangesNoClass) {
+                                        for (Range range : rangeList) {
+                                            if (range.contains(sample)) {
+                                                // For local statistics the pixel is checked for every range
+                                                if (localStats) {
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            range);
+                                                } else {
+                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                    // it is added to the statistic container
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            rangeHelper);
+                                                    break;
                                                 }
                                             }
-                                        } else {
-                                            zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                         }
+                                    } else {
+                                        zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                     }
                                 }
-
                             }
+
                         }
                     }
                     if (updateIterator) {
@@ -3328,8 +3241,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone inside the ROI (applied to the coverage)
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -3337,26 +3250,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // ROI value
-                        boolean insideROI = false;
-                        synchronized (this) { // HACK
-                            insideROI = srcROI.contains(x0, y0);
-                        }
-                        if (!insideROI) {
-                            if (updateIterator) {
-                                rectIterator.nextPixel();
-                            }
-                            continue;
-                        }
-
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the zone value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -3368,11 +3263,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -3380,49 +3275,40 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    int sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // NoData check
-                                    if (!noData.contains(sample)) {
-                                        // Update of all the statistics
-                                        // If a range list is present then the sample is checked if it is inside the range
-                                        if (rangesNoClass) {
-                                            for (Range range : rangeList) {
-                                                if (range.contains(sample)) {
-                                                    // For local statistics the pixel is checked for every range
-                                                    if (localStats) {
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                range);
-                                                    } else {
-                                                        // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                        // it is added to the statistic container
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                rangeHelper);
-                                                        break;
-                                                    }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                int sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // NoData check
+                                if (!noData.contains(sample)) {
+                                    // Update of all the statistics
+                                    // If a range list is present then the sample is checked if it is inside the range
+                                    if (rangesNoClass) {
+                                        for (Range range : rangeList) {
+                                            if (range.contains(sample)) {
+                                                // For local statistics the pixel is checked for every range
+                                                if (localStats) {
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            range);
+                                                } else {
+                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                    // it is added to the statistic container
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            rangeHelper);
+                                                    break;
                                                 }
                                             }
-                                        } else {
-                                            zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                         }
+                                    } else {
+                                        zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                     }
                                 }
-
                             }
+
                         }
                     }
                     if (updateIterator) {
@@ -3435,7 +3321,7 @@ public class ZonalStatsOpImage extends OpImage {
     }
 
     private void floatLoop(RasterAccessor src, Rectangle computableArea, int tileX, int tileY,
-            RasterAccessor roi) {
+            RasterAccessor roi, TileZoneCoverage zones) {
 
         // Source RasterAccessor initial parameters
         final int srcX = src.getX();
@@ -3452,6 +3338,9 @@ public class ZonalStatsOpImage extends OpImage {
 
         RectIter rectIterator = null;
 
+        // Class ordinals of the tile
+        ClassOrdinals classes = zones.getClasses();
+
         if (updateIterator) {
             Raster ras = classifier.getTile(tileX, tileY);
             rectIterator = RectIterFactory.create(ras, computableArea);
@@ -3491,8 +3380,8 @@ public class ZonalStatsOpImage extends OpImage {
                     int x0 = srcX + x;
                     int y0 = srcY + y;
 
-                    // check on containment
-                    if (!union.contains(x0, y0)) {
+                    // check if the pixel is covered by a zone
+                    if (!zones.isCovered(x, y)) {
                         // Update of the RectIterator
                         if (updateIterator) {
                             rectIterator.nextPixel();
@@ -3500,14 +3389,8 @@ public class ZonalStatsOpImage extends OpImage {
                         continue;
                     }
 
-                    // Coordinate object creation for the spatial indexing
-                    Coordinate p1 = new Coordinate(x0, y0);
-                    // Envelope associated to the coordinate object
-                    Envelope searchEnv = new Envelope(p1);
-                    // Query on the geometry list
-                    List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                    // classId classifier initial value
-                    int classId = 0;
+                    // class ordinal initial value
+                    int classOrdinal = 0;
                     // If the classifier is present then the classId value is taken
                     if (classPresent) {
                         // Selection of the initial point
@@ -3519,10 +3402,10 @@ public class ZonalStatsOpImage extends OpImage {
                             if (isNotIdentity) {
                                 inverseTrans.inverseTransform(pointSrc, pointClass);
                                 // Selection of the classId point
-                                classId = randomIterator.getSample(pointClass.x, pointClass.y, 0);
+                                classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x, pointClass.y, 0));
                             } else {
                                 // Selection of the classId point
-                                classId = rectIterator.getSample();
+                                classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                 rectIterator.nextPixel();
                             }
 
@@ -3530,39 +3413,32 @@ public class ZonalStatsOpImage extends OpImage {
                             LOGGER.log(Level.SEVERE, e.getMessage(), e);
                         }
                     }
-                    // Cycle on all the geometries found
-                    for (ZoneGeometry zoneGeo : geomList) {
-
-                        ROI geometry = zoneGeo.getROI();
-                        // if every geometry really contains the selected point
-                        boolean contains = false;
-                        synchronized (zoneGeo) { // HACK
-                            contains = geometry.contains(x0, y0);
-                        }
-                        if (contains) {
-                            // Cycle on the selected Bands
-                            for (int i = 0; i < bandNum; i++) {
-                                float sample = srcData[bands[i]][posx + posy
-                                        + srcBandOffsets[bands[i]]];
-                                // Update of all the statistics
-                                // If a range list is present then the sample is checked if it is inside the range
-                                if (rangesNoClass) {
-                                    for (Range range : rangeList) {
-                                        if (range.contains(sample)) {
-                                            // For local statistics the pixel is checked for every range
-                                            if (localStats) {
-                                                zoneGeo.add(sample, bands[i], classId, range);
-                                            } else {
-                                                // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                // it is added to the statistic container
-                                                zoneGeo.add(sample, bands[i], classId, rangeHelper);
-                                                break;
-                                            }
+                    // Cycle on all the zones covering the pixel
+                    int zoneEnd = zones.getEnd(x, y);
+                    for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                        ZoneAccumulator zoneAcc = zones.getZone(z);
+                        // Cycle on the selected Bands
+                        for (int i = 0; i < bandNum; i++) {
+                            float sample = srcData[bands[i]][posx + posy
+                                    + srcBandOffsets[bands[i]]];
+                            // Update of all the statistics
+                            // If a range list is present then the sample is checked if it is inside the range
+                            if (rangesNoClass) {
+                                for (Range range : rangeList) {
+                                    if (range.contains(sample)) {
+                                        // For local statistics the pixel is checked for every range
+                                        if (localStats) {
+                                            zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                        } else {
+                                            // For non local statistics the pixel when the pixel is contained inside a singular range
+                                            // it is added to the statistic container
+                                            zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
+                                            break;
                                         }
                                     }
-                                } else {
-                                    zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                 }
+                            } else {
+                                zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                             }
                         }
                     }
@@ -3594,8 +3470,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -3615,14 +3491,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the classId value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -3634,11 +3504,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -3646,40 +3516,33 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    float sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains(sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                float sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains(sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
                         }
@@ -3706,8 +3569,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone inside the ROI (applied to the coverage)
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -3715,26 +3578,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // ROI value
-                        boolean insideROI = false;
-                        synchronized (this) { // HACK
-                            insideROI = srcROI.contains(x0, y0);
-                        }
-                        if (!insideROI) {
-                            if (updateIterator) {
-                                rectIterator.nextPixel();
-                            }
-                            continue;
-                        }
-
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the classId value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -3746,11 +3591,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -3758,40 +3603,33 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    float sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains(sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                float sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains(sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
                         }
@@ -3818,8 +3656,8 @@ public class ZonalStatsOpImage extends OpImage {
                     int x0 = srcX + x;
                     int y0 = srcY + y;
 
-                    // check on containment
-                    if (!union.contains(x0, y0)) {
+                    // check if the pixel is covered by a zone
+                    if (!zones.isCovered(x, y)) {
                         // Update of the RectIterator
                         if (updateIterator) {
                             rectIterator.nextPixel();
@@ -3827,14 +3665,8 @@ public class ZonalStatsOpImage extends OpImage {
                         continue;
                     }
 
-                    // Coordinate object creation for the spatial indexing
-                    Coordinate p1 = new Coordinate(x0, y0);
-                    // Envelope associated to the coordinate object
-                    Envelope searchEnv = new Envelope(p1);
-                    // Query on the geometry list
-                    List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                    // classId classifier initial value
-                    int classId = 0;
+                    // class ordinal initial value
+                    int classOrdinal = 0;
                     // If the classifier is present then the zone value is taken
                     if (classPresent) {
                         // Selection of the initial point
@@ -3846,10 +3678,10 @@ public class ZonalStatsOpImage extends OpImage {
                             if (isNotIdentity) {
                                 inverseTrans.inverseTransform(pointSrc, pointClass);
                                 // Selection of the classId point
-                                classId = randomIterator.getSample(pointClass.x, pointClass.y, 0);
+                                classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x, pointClass.y, 0));
                             } else {
                                 // Selection of the classId point
-                                classId = rectIterator.getSample();
+                                classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                 rectIterator.nextPixel();
                             }
 
@@ -3857,48 +3689,39 @@ public class ZonalStatsOpImage extends OpImage {
                             LOGGER.log(Level.SEVERE, e.getMessage(), e);
                         }
                     }
-                    // Cycle on all the geometries found
-                    for (ZoneGeometry zoneGeo : geomList) {
-
-                        ROI geometry = zoneGeo.getROI();
-
-                        // if every geometry really contains the selected point
-                        boolean contains = false;
-                        synchronized (zoneGeo) { // HACK
-                            contains = geometry.contains(x0, y0);
-                        }
-                        if (contains) {
-
-                            // Cycle on the selected Bands
-                            for (int i = 0; i < bandNum; i++) {
-                                float sample = srcData[bands[i]][posx + posy
-                                        + srcBandOffsets[bands[i]]];
-                                // NoData check
-                                if (!noData.contains(sample)) {
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains(sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                    // Cycle on all the zones covering the pixel
+                    int zoneEnd = zones.getEnd(x, y);
+                    for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                        ZoneAccumulator zoneAcc = zones.getZone(z);
+                        // Cycle on the selected Bands
+                        for (int i = 0; i < bandNum; i++) {
+                            float sample = srcData[bands[i]][posx + posy
+                                    + srcBandOffsets[bands[i]]];
+                            // NoData check
+                            if (!noData.contains(sample)) {
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains(sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
-
                         }
+
                     }
                 }
                 if (updateIterator) {
@@ -3928,8 +3751,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -3949,14 +3772,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the zone value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -3968,61 +3785,52 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
                             } catch (NoninvertibleTransformException e) {
-                                LOGGER.log(Level.SEVERE, e.getMessage(), e);
-                            }
-                        }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
+                                LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
-                            if (contains) {
-
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    float sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // NoData check
-                                    if (!noData.contains(sample)) {
-                                        // Update of all the statistics
-                                        // If a range list is present then the sample is checked if it is inside the range
-                                        if (rangesNoClass) {
-                                            for (Range range : rangeList) {
-                                                if (range.contains(sample)) {
-                                                    // For local statistics the pixel is checked for every range
-                                                    if (localStats) {
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                range);
-                                                    } else {
-                                                        // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                        // it is added to the statistic container
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                rangeHelper);
-                                                        break;
-                                                    }
+                        }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                float sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // NoData check
+                                if (!noData.contains(sample)) {
+                                    // Update of all the statistics
+                                    // If a range list is present then the sample is checked if it is inside the range
+                                    if (rangesNoClass) {
+                                        for (Range range : rangeList) {
+                                            if (range.contains(sample)) {
+                                                // For local statistics the pixel is checked for every range
+                                                if (localStats) {
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            range);
+                                                } else {
+                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                    // it is added to the statistic container
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            rangeHelper);
+                                                    break;
                                                 }
                                             }
-                                        } else {
-                                            zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                         }
+                                    } else {
+                                        zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                     }
                                 }
-
                             }
+
                         }
                     }
                     if (updateIterator) {
@@ -4047,8 +3855,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone inside the ROI (applied to the coverage)
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -4056,26 +3864,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // ROI value
-                        boolean insideROI = false;
-                        synchronized (this) { // HACK
-                            insideROI = srcROI.contains(x0, y0);
-                        }
-                        if (!insideROI) {
-                            if (updateIterator) {
-                                rectIterator.nextPixel();
-                            }
-                            continue;
-                        }
-
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the zone value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -4087,11 +3877,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -4099,49 +3889,40 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    float sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // NoData check
-                                    if (!noData.contains(sample)) {
-                                        // Update of all the statistics
-                                        // If a range list is present then the sample is checked if it is inside the range
-                                        if (rangesNoClass) {
-                                            for (Range range : rangeList) {
-                                                if (range.contains(sample)) {
-                                                    // For local statistics the pixel is checked for every range
-                                                    if (localStats) {
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                range);
-                                                    } else {
-                                                        // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                        // it is added to the statistic container
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                rangeHelper);
-                                                        break;
-                                                    }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                float sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // NoData check
+                                if (!noData.contains(sample)) {
+                                    // Update of all the statistics
+                                    // If a range list is present then the sample is checked if it is inside the range
+                                    if (rangesNoClass) {
+                                        for (Range range : rangeList) {
+                                            if (range.contains(sample)) {
+                                                // For local statistics the pixel is checked for every range
+                                                if (localStats) {
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            range);
+                                                } else {
+                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                    // it is added to the statistic container
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            rangeHelper);
+                                                    break;
                                                 }
                                             }
-                                        } else {
-                                            zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                         }
+                                    } else {
+                                        zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                     }
                                 }
-
                             }
+
                         }
                     }
                     if (updateIterator) {
@@ -4154,7 +3935,7 @@ public class ZonalStatsOpImage extends OpImage {
     }
 
     private void doubleLoop(RasterAccessor src, Rectangle computableArea, int tileX, int tileY,
-            RasterAccessor roi) {
+            RasterAccessor roi, TileZoneCoverage zones) {
 
         // Source RasterAccessor initial parameters
         final int srcX = src.getX();
@@ -4171,6 +3952,9 @@ public class ZonalStatsOpImage extends OpImage {
 
         RectIter rectIterator = null;
 
+        // Class ordinals of the tile
+        ClassOrdinals classes = zones.getClasses();
+
         if (updateIterator) {
             Raster ras = classifier.getTile(tileX, tileY);
             rectIterator = RectIterFactory.create(ras, computableArea);
@@ -4210,8 +3994,8 @@ public class ZonalStatsOpImage extends OpImage {
                     int x0 = srcX + x;
                     int y0 = srcY + y;
 
-                    // check on containment
-                    if (!union.contains(x0, y0)) {
+                    // check if the pixel is covered by a zone
+                    if (!zones.isCovered(x, y)) {
                         // Update of the RectIterator
                         if (updateIterator) {
                             rectIterator.nextPixel();
@@ -4219,14 +4003,8 @@ public class ZonalStatsOpImage extends OpImage {
                         continue;
                     }
 
-                    // Coordinate object creation for the spatial indexing
-                    Coordinate p1 = new Coordinate(x0, y0);
-                    // Envelope associated to the coordinate object
-                    Envelope searchEnv = new Envelope(p1);
-                    // Query on the geometry list
-                    List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                    // classId classifier initial value
-                    int classId = 0;
+                    // class ordinal initial value
+                    int classOrdinal = 0;
                     // If the classifier is present then the classId value is taken
                     if (classPresent) {
                         // Selection of the initial point
@@ -4238,10 +4016,10 @@ public class ZonalStatsOpImage extends OpImage {
                             if (isNotIdentity) {
                                 inverseTrans.inverseTransform(pointSrc, pointClass);
                                 // Selection of the classId point
-                                classId = randomIterator.getSample(pointClass.x, pointClass.y, 0);
+                                classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x, pointClass.y, 0));
                             } else {
                                 // Selection of the classId point
-                                classId = rectIterator.getSample();
+                                classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                 rectIterator.nextPixel();
                             }
 
@@ -4249,39 +4027,32 @@ public class ZonalStatsOpImage extends OpImage {
                             LOGGER.log(Level.SEVERE, e.getMessage(), e);
                         }
                     }
-                    // Cycle on all the geometries found
-                    for (ZoneGeometry zoneGeo : geomList) {
-
-                        ROI geometry = zoneGeo.getROI();
-                        // if every geometry really contains the selected point
-                        boolean contains = false;
-                        synchronized (zoneGeo) { // HACK
-                            contains = geometry.contains(x0, y0);
-                        }
-                        if (contains) {
-                            // Cycle on the selected Bands
-                            for (int i = 0; i < bandNum; i++) {
-                                double sample = srcData[bands[i]][posx + posy
-                                        + srcBandOffsets[bands[i]]];
-                                // Update of all the statistics
-                                // If a range list is present then the sample is checked if it is inside the range
-                                if (rangesNoClass) {
-                                    for (Range range : rangeList) {
-                                        if (range.contains(sample)) {
-                                            // For local statistics the pixel is checked for every range
-                                            if (localStats) {
-                                                zoneGeo.add(sample, bands[i], classId, range);
-                                            } else {
-                                                // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                // it is added to the statistic container
-                                                zoneGeo.add(sample, bands[i], classId, rangeHelper);
-                                                break;
-                                            }
+                    // Cycle on all the zones covering the pixel
+                    int zoneEnd = zones.getEnd(x, y);
+                    for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                        ZoneAccumulator zoneAcc = zones.getZone(z);
+                        // Cycle on the selected Bands
+                        for (int i = 0; i < bandNum; i++) {
+                            double sample = srcData[bands[i]][posx + posy
+                                    + srcBandOffsets[bands[i]]];
+                            // Update of all the statistics
+                            // If a range list is present then the sample is checked if it is inside the range
+                            if (rangesNoClass) {
+                                for (Range range : rangeList) {
+                                    if (range.contains(sample)) {
+                                        // For local statistics the pixel is checked for every range
+                                        if (localStats) {
+                                            zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                        } else {
+                                            // For non local statistics the pixel when the pixel is contained inside a singular range
+                                            // it is added to the statistic container
+                                            zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
+                                            break;
                                         }
                                     }
-                                } else {
-                                    zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                 }
+                            } else {
+                                zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                             }
                         }
                     }
@@ -4313,8 +4084,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -4334,14 +4105,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the classId value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -4353,11 +4118,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -4365,40 +4130,33 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    double sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains(sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                double sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains(sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
                         }
@@ -4425,8 +4183,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone inside the ROI (applied to the coverage)
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -4434,26 +4192,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // ROI value
-                        boolean insideROI = false;
-                        synchronized (this) { // HACK
-                            insideROI = srcROI.contains(x0, y0);
-                        }
-                        if (!insideROI) {
-                            if (updateIterator) {
-                                rectIterator.nextPixel();
-                            }
-                            continue;
-                        }
-
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the classId value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -4465,11 +4205,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -4477,40 +4217,33 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    double sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains(sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                double sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains(sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
                         }
@@ -4537,8 +4270,8 @@ public class ZonalStatsOpImage extends OpImage {
                     int x0 = srcX + x;
                     int y0 = srcY + y;
 
-                    // check on containment
-                    if (!union.contains(x0, y0)) {
+                    // check if the pixel is covered by a zone
+                    if (!zones.isCovered(x, y)) {
                         // Update of the RectIterator
                         if (updateIterator) {
                             rectIterator.nextPixel();
@@ -4546,14 +4279,8 @@ public class ZonalStatsOpImage extends OpImage {
                         continue;
                     }
 
-                    // Coordinate object creation for the spatial indexing
-                    Coordinate p1 = new Coordinate(x0, y0);
-                    // Envelope associated to the coordinate object
-                    Envelope searchEnv = new Envelope(p1);
-                    // Query on the geometry list
-                    List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                    // classId classifier initial value
-                    int classId = 0;
+                    // class ordinal initial value
+                    int classOrdinal = 0;
                     // If the classifier is present then the zone value is taken
                     if (classPresent) {
                         // Selection of the initial point
@@ -4565,10 +4292,10 @@ public class ZonalStatsOpImage extends OpImage {
                             if (isNotIdentity) {
                                 inverseTrans.inverseTransform(pointSrc, pointClass);
                                 // Selection of the classId point
-                                classId = randomIterator.getSample(pointClass.x, pointClass.y, 0);
+                                classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x, pointClass.y, 0));
                             } else {
                                 // Selection of the classId point
-                                classId = rectIterator.getSample();
+                                classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                 rectIterator.nextPixel();
                             }
 
@@ -4576,48 +4303,39 @@ public class ZonalStatsOpImage extends OpImage {
                             LOGGER.log(Level.SEVERE, e.getMessage(), e);
                         }
                     }
-                    // Cycle on all the geometries found
-                    for (ZoneGeometry zoneGeo : geomList) {
-
-                        ROI geometry = zoneGeo.getROI();
-
-                        // if every geometry really contains the selected point
-                        boolean contains = false;
-                        synchronized (zoneGeo) { // HACK
-                            contains = geometry.contains(x0, y0);
-                        }
-                        if (contains) {
-
-                            // Cycle on the selected Bands
-                            for (int i = 0; i < bandNum; i++) {
-                                double sample = srcData[bands[i]][posx + posy
-                                        + srcBandOffsets[bands[i]]];
-                                // NoData check
-                                if (!noData.contains(sample)) {
-                                    // Update of all the statistics
-                                    // If a range list is present then the sample is checked if it is inside the range
-                                    if (rangesNoClass) {
-                                        for (Range range : rangeList) {
-                                            if (range.contains(sample)) {
-                                                // For local statistics the pixel is checked for every range
-                                                if (localStats) {
-                                                    zoneGeo.add(sample, bands[i], classId, range);
-                                                } else {
-                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                    // it is added to the statistic container
-                                                    zoneGeo.add(sample, bands[i], classId,
-                                                            rangeHelper);
-                                                    break;
-                                                }
+                    // Cycle on all the zones covering the pixel
+                    int zoneEnd = zones.getEnd(x, y);
+                    for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                        ZoneAccumulator zoneAcc = zones.getZone(z);
+                        // Cycle on the selected Bands
+                        for (int i = 0; i < bandNum; i++) {
+                            double sample = srcData[bands[i]][posx + posy
+                                    + srcBandOffsets[bands[i]]];
+                            // NoData check
+                            if (!noData.contains(sample)) {
+                                // Update of all the statistics
+                                // If a range list is present then the sample is checked if it is inside the range
+                                if (rangesNoClass) {
+                                    for (Range range : rangeList) {
+                                        if (range.contains(sample)) {
+                                            // For local statistics the pixel is checked for every range
+                                            if (localStats) {
+                                                zoneAcc.add(sample, bands[i], classOrdinal, range);
+                                            } else {
+                                                // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                // it is added to the statistic container
+                                                zoneAcc.add(sample, bands[i], classOrdinal,
+                                                        rangeHelper);
+                                                break;
                                             }
                                         }
-                                    } else {
-                                        zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                     }
+                                } else {
+                                    zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                 }
                             }
-
                         }
+
                     }
                 }
                 if (updateIterator) {
@@ -4647,8 +4365,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -4668,14 +4386,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the zone value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -4687,11 +4399,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -4699,49 +4411,40 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    double sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // NoData check
-                                    if (!noData.contains(sample)) {
-                                        // Update of all the statistics
-                                        // If a range list is present then the sample is checked if it is inside the range
-                                        if (rangesNoClass) {
-                                            for (Range range : rangeList) {
-                                                if (range.contains(sample)) {
-                                                    // For local statistics the pixel is checked for every range
-                                                    if (localStats) {
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                range);
-                                                    } else {
-                                                        // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                        // it is added to the statistic container
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                rangeHelper);
-                                                        break;
-                                                    }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                double sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // NoData check
+                                if (!noData.contains(sample)) {
+                                    // Update of all the statistics
+                                    // If a range list is present then the sample is checked if it is inside the range
+                                    if (rangesNoClass) {
+                                        for (Range range : rangeList) {
+                                            if (range.contains(sample)) {
+                                                // For local statistics the pixel is checked for every range
+                                                if (localStats) {
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            range);
+                                                } else {
+                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                    // it is added to the statistic container
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            rangeHelper);
+                                                    break;
                                                 }
                                             }
-                                        } else {
-                                            zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                         }
+                                    } else {
+                                        zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                     }
                                 }
-
                             }
+
                         }
                     }
                     if (updateIterator) {
@@ -4766,8 +4469,8 @@ public class ZonalStatsOpImage extends OpImage {
                         int x0 = srcX + x;
                         int y0 = srcY + y;
 
-                        // check on containment
-                        if (!union.contains(x0, y0)) {
+                        // check if the pixel is covered by a zone inside the ROI (applied to the coverage)
+                        if (!zones.isCovered(x, y)) {
                             // Update of the RectIterator
                             if (updateIterator) {
                                 rectIterator.nextPixel();
@@ -4775,26 +4478,8 @@ public class ZonalStatsOpImage extends OpImage {
                             continue;
                         }
 
-                        // ROI value
-                        boolean insideROI = false;
-                        synchronized (this) { // HACK
-                            insideROI = srcROI.contains(x0, y0);
-                        }
-                        if (!insideROI) {
-                            if (updateIterator) {
-                                rectIterator.nextPixel();
-                            }
-                            continue;
-                        }
-
-                        // Coordinate object creation for the spatial indexing
-                        Coordinate p1 = new Coordinate(x0, y0);
-                        // Envelope associated to the coordinate object
-                        Envelope searchEnv = new Envelope(p1);
-                        // Query on the geometry list
-                        List<ZoneGeometry> geomList = spatialIndex.query(searchEnv);
-                        // classId classifier initial value
-                        int classId = 0;
+                        // class ordinal initial value
+                        int classOrdinal = 0;
                         // If the classifier is present then the zone value is taken
                         if (classPresent) {
                             // Selection of the initial point
@@ -4806,11 +4491,11 @@ public class ZonalStatsOpImage extends OpImage {
                                 if (isNotIdentity) {
                                     inverseTrans.inverseTransform(pointSrc, pointClass);
                                     // Selection of the classId point
-                                    classId = randomIterator.getSample(pointClass.x, pointClass.y,
-                                            0);
+                                    classOrdinal = classes.getOrdinal(randomIterator.getSample(pointClass.x,
+                                            pointClass.y, 0));
                                 } else {
                                     // Selection of the classId point
-                                    classId = rectIterator.getSample();
+                                    classOrdinal = classes.getOrdinal(rectIterator.getSample());
                                     rectIterator.nextPixel();
                                 }
 
@@ -4818,49 +4503,40 @@ public class ZonalStatsOpImage extends OpImage {
                                 LOGGER.log(Level.SEVERE, e.getMessage(), e);
                             }
                         }
-                        // Cycle on all the geometries found
-                        for (ZoneGeometry zoneGeo : geomList) {
-
-                            ROI geometry = zoneGeo.getROI();
-
-                            // if every geometry really contains the selected point
-                            boolean contains = false;
-                            synchronized (zoneGeo) { // HACK
-                                contains = geometry.contains(x0, y0);
-                            }
-                            if (contains) {
-
-                                // Cycle on the selected Bands
-                                for (int i = 0; i < bandNum; i++) {
-                                    double sample = srcData[bands[i]][posx + posy
-                                            + srcBandOffsets[bands[i]]];
-                                    // NoData check
-                                    if (!noData.contains(sample)) {
-                                        // Update of all the statistics
-                                        // If a range list is present then the sample is checked if it is inside the range
-                                        if (rangesNoClass) {
-                                            for (Range range : rangeList) {
-                                                if (range.contains(sample)) {
-                                                    // For local statistics the pixel is checked for every range
-                                                    if (localStats) {
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                range);
-                                                    } else {
-                                                        // For non local statistics the pixel when the pixel is contained inside a singular range
-                                                        // it is added to the statistic container
-                                                        zoneGeo.add(sample, bands[i], classId,
-                                                                rangeHelper);
-                                                        break;
-                                                    }
+                        // Cycle on all the zones covering the pixel
+                        int zoneEnd = zones.getEnd(x, y);
+                        for (int z = zones.getStart(x, y); z < zoneEnd; z++) {
+                            ZoneAccumulator zoneAcc = zones.getZone(z);
+                            // Cycle on the selected Bands
+                            for (int i = 0; i < bandNum; i++) {
+                                double sample = srcData[bands[i]][posx + posy
+                                        + srcBandOffsets[bands[i]]];
+                                // NoData check
+                                if (!noData.contains(sample)) {
+                                    // Update of all the statistics
+                                    // If a range list is present then the sample is checked if it is inside the range
+                                    if (rangesNoClass) {
+                                        for (Range range : rangeList) {
+                                            if (range.contains(sample)) {
+                                                // For local statistics the pixel is checked for every range
+                                                if (localStats) {
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            range);
+                                                } else {
+                                                    // For non local statistics the pixel when the pixel is contained inside a singular range
+                                                    // it is added to the statistic container
+                                                    zoneAcc.add(sample, bands[i], classOrdinal,
+                                                            rangeHelper);
+                                                    break;
                                                 }
                                             }
-                                        } else {
-                                            zoneGeo.add(sample, bands[i], classId, rangeHelper);
                                         }
+                                    } else {
+                                        zoneAcc.add(sample, bands[i], classOrdinal, rangeHelper);
                                     }
                                 }
-
                             }
+
                         }
                     }
                     if (updateIterator) {
@@ -4891,7 +4567,8 @@ public class ZonalStatsOpImage extends OpImage {
      */
     public String[] getPropertyNames() {
         // Get statistics names and names from superclass.
-        String[] statsNames = new String[] { ZonalStatsDescriptor.ZS_PROPERTY };
+        String[] statsNames = new String[] { ZonalStatsDescriptor.ZS_PROPERTY,
+                ZonalStatsDescriptor.ZS_TABLE_PROPERTY };
         String[] superNames = super.getPropertyNames();
 
         // Return stats names if not superclass names.
@@ -4935,6 +4612,13 @@ public class ZonalStatsOpImage extends OpImage {
      */
     public synchronized void clearStatistic() {
         firstTime.set(true);
+        if (zoneListener != null) {
+            initTileCounters();
+        }
+        if (zoneImage != null) {
+            labelStripes = createLabelStripes();
+            labelTable = null;
+        }
     }
 
     /**
@@ -4944,6 +4628,14 @@ public class ZonalStatsOpImage extends OpImage {
      */
     public Raster[] getTiles() {
         if (firstTime.getAndSet(false)) {
+            // The zones not intersecting any tile are already complete
+            if (zoneListener != null) {
+                for (ZoneGeometry zone : zoneList) {
+                    if (zone.isOutsideTiles()) {
+                        notifyZone(zone);
+                    }
+                }
+            }
             //return getTiles(getTileIndices(getBounds()));
             Point[] points = getTileIndices(union);
             
@@ -4974,12 +4666,38 @@ public class ZonalStatsOpImage extends OpImage {
 
             //List<ZoneGeometry> copy = new ArrayList<ZoneGeometry>(zoneList);
 
+            // If the results are streamed, the zones already passed to the listener are not returned
+            // since their statistics have been released
+            if (zoneListener != null) {
+                List<ZoneGeometry> pending = new ArrayList<ZoneGeometry>();
+                for (ZoneGeometry zone : zoneList) {
+                    if (!zone.isNotified()) {
+                        pending.add(zone);
+                    }
+                }
+                return Collections.unmodifiableList(pending);
+            }
             return Collections.unmodifiableList(zoneList);
+        } else if (ZonalStatsDescriptor.ZS_TABLE_PROPERTY.equalsIgnoreCase(name)) {
+            // The table is present only if the zones are defined by the label image
+            if (zoneImage == null) {
+                return Image.UndefinedProperty;
+            }
+            return getTable();
         } else {
             return super.getProperty(name);
         }
     }
     
+    /** Returns the table containing the label statistics, calculating them if needed */
+    private synchronized ZonalStatsTable getTable() {
+        getTiles();
+        if (labelTable == null) {
+            labelTable = new ZonalStatsTable(labelStripes, bands, statsTypes);
+        }
+        return labelTable;
+    }
+
     @Override
     public synchronized void dispose() {
         if(srcROIImgExt != null) {
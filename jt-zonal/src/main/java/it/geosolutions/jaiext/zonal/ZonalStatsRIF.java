@@ -64,11 +64,23 @@ public class ZonalStatsRIF implements RenderedImageFactory {
         int[] numBins = (int[]) pb.getObjectParameter(10);
         List<Range> rangeList = (List<Range>) pb.getObjectParameter(11);
         boolean localStats = (Boolean) pb.getObjectParameter(12);
+        RenderedImage zoneImage = null;
+        if (pb.getNumParameters() > 13) {
+            zoneImage = (RenderedImage) pb.getObjectParameter(13);
+        }
+        Range classDomain = null;
+        if (pb.getNumParameters() > 14) {
+            classDomain = (Range) pb.getObjectParameter(14);
+        }
+        ZonalStatsListener zoneListener = null;
+        if (pb.getNumParameters() > 15) {
+            zoneListener = (ZonalStatsListener) pb.getObjectParameter(15);
+        }
 
         // Image creation
         return new ZonalStatsOpImage(source, layout, hints, classifier, transform, roilist, noData,
                 mask, useROIAccessor, bands, statsTypes, minBound, maxBound, numBins, rangeList,
-                localStats);
+                localStats, zoneImage, classDomain, zoneListener);
     }
 
 }
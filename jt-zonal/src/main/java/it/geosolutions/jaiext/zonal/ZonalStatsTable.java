@@ -0,0 +1,182 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.zonal;
+
+import it.geosolutions.jaiext.stats.Statistics;
+import it.geosolutions.jaiext.stats.Statistics.StatsType;
+
+import java.util.Arrays;
+
+/**
+ * Columnar table containing the results of the "Zonal" operation when the zones are defined by a label image. Each row is associated to a label,
+ * and rows are sorted by label. The statistics of each row and band can be taken as {@link Statistics} objects, while the results of the statistics
+ * returning a single value can be taken as columns of primitive values.
+ */
+public final class ZonalStatsTable {
+
+    /** Sorted labels */
+    private final int[] labels;
+
+    /** Array indicating the selected bands */
+    private final int[] bands;
+
+    /** Array indicating the calculated statistics */
+    private final StatsType[] statsTypes;
+
+    /** Statistics objects, indexed by row, band ordinal and statistic. Null if the band has no valid sample inside the zone */
+    private final Statistics[] statistics;
+
+    /** Creates a new table containing the labels of all the input accumulators, which must contain different labels */
+    ZonalStatsTable(LabelAccumulator[] accumulators, int[] bands, StatsType[] statsTypes) {
+        this.bands = bands;
+        this.statsTypes = statsTypes;
+        int numStats = statsTypes.length;
+        int cellSize = bands.length * numStats;
+
+        // Collection of the labels together with their accumulator and ordinal, packed into a long
+        // so that they are sorted by label
+        int numLabels = 0;
+        for (LabelAccumulator accumulator : accumulators) {
+            numLabels += accumulator.getNumLabels();
+        }
+        long[] entries = new long[numLabels];
+        int[] accumulatorIndexes = new int[numLabels];
+        int[] ordinals = new int[numLabels];
+        int e = 0;
+        for (int a = 0; a < accumulators.length; a++) {
+            for (int o = 0; o < accumulators[a].getNumLabels(); o++) {
+                entries[e] = ((long) accumulators[a].getLabel(o) << 32) | e;
+                accumulatorIndexes[e] = a;
+                ordinals[e] = o;
+                e++;
+            }
+        }
+        Arrays.sort(entries);
+
+        labels = new int[numLabels];
+        statistics = new Statistics[numLabels * cellSize];
+        for (int row = 0; row < numLabels; row++) {
+            int entry = (int) entries[row];
+            labels[row] = (int) (entries[row] >> 32);
+            Statistics[] source = accumulators[accumulatorIndexes[entry]].getStatistics();
+            System.arraycopy(source, ordinals[entry] * cellSize, statistics, row * cellSize,
+                    cellSize);
+        }
+    }
+
+    /** Returns the number of zones */
+    public int getNumZones() {
+        return labels.length;
+    }
+
+    /** Returns the sorted zone labels */
+    public int[] getLabels() {
+        return labels.clone();
+    }
+
+    /** Returns the row associated to the selected label, or a negative value if the label is not present */
+    public int getRow(int label) {
+        return Arrays.binarySearch(labels, label);
+    }
+
+    /** Returns the label associated to the selected row */
+    public int getLabel(int row) {
+        return labels[row];
+    }
+
+    /** Returns the selected bands */
+    public int[] getBands() {
+        return bands.clone();
+    }
+
+    /** Returns the calculated statistics */
+    public StatsType[] getStatsTypes() {
+        return statsTypes.clone();
+    }
+
+    /**
+     * Returns the statistics of the selected row and band, in the same order of the statistic types, or null if the band has no valid sample inside
+     * the zone.
+     */
+    public Statistics[] getStatistics(int row, int band) {
+        int index = getIndex(row, getBandOrdinal(band), 0);
+        if (statistics[index] == null) {
+            return null;
+        }
+        Statistics[] result = new Statistics[statsTypes.length];
+        System.arraycopy(statistics, index, result, 0, statsTypes.length);
+        return result;
+    }
+
+    /**
+     * Returns the results of the selected statistic for all the rows of the selected band. The statistic must return a single value; rows without
+     * valid samples contain NaN.
+     */
+    public double[] getColumn(int band, StatsType type) {
+        int bandOrdinal = getBandOrdinal(band);
+        int statIndex = getStatIndex(type);
+        double[] column = new double[labels.length];
+        for (int row = 0; row < labels.length; row++) {
+            Statistics stat = statistics[getIndex(row, bandOrdinal, statIndex)];
+            if (stat == null) {
+                column[row] = Double.NaN;
+            } else {
+                Object result = stat.getResult();
+                if (!(result instanceof Double)) {
+                    throw new IllegalArgumentException("Statistic " + type
+                            + " does not return a single value");
+                }
+                column[row] = (Double) result;
+            }
+        }
+        return column;
+    }
+
+    /** Returns the number of valid samples of the selected band for all the rows */
+    public long[] getCounts(int band) {
+        int bandOrdinal = getBandOrdinal(band);
+        long[] counts = new long[labels.length];
+        for (int row = 0; row < labels.length; row++) {
+            Statistics stat = statistics[getIndex(row, bandOrdinal, 0)];
+            counts[row] = stat == null ? 0 : stat.getNumSamples();
+        }
+        return counts;
+    }
+
+    private int getIndex(int row, int bandOrdinal, int statIndex) {
+        return (row * bands.length + bandOrdinal) * statsTypes.length + statIndex;
+    }
+
+    private int getBandOrdinal(int band) {
+        for (int b = 0; b < bands.length; b++) {
+            if (bands[b] == band) {
+                return b;
+            }
+        }
+        throw new IllegalArgumentException("Band " + band + " has not been calculated");
+    }
+
+    private int getStatIndex(StatsType type) {
+        for (int st = 0; st < statsTypes.length; st++) {
+            if (statsTypes[st] == type) {
+                return st;
+            }
+        }
+        throw new IllegalArgumentException("Statistic " + type + " has not been calculated");
+    }
+}
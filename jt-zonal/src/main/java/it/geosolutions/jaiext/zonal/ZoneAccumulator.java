@@ -0,0 +1,161 @@
+/* JAI-Ext - OpenSource Java Advanced Image Extensions Library
+*    http://www.geo-solutions.it/
+*    Copyright 2014 GeoSolutions
+
+
+* Licensed under the Apache License, Version 2.0 (the "License");
+* you may not use this file except in compliance with the License.
+* You may obtain a copy of the License at
+
+* http://www.apache.org/licenses/LICENSE-2.0
+
+* Unless required by applicable law or agreed to in writing, software
+* distributed under the License is distributed on an "AS IS" BASIS,
+* WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+* See the License for the specific language governing permissions and
+* limitations under the License.
+*/
+package it.geosolutions.jaiext.zonal;
+
+import it.geosolutions.jaiext.range.Range;
+import it.geosolutions.jaiext.stats.Statistics;
+
+/**
+ * Tile-local accumulator of the statistics of a {@link ZoneGeometry}. It is used by a single thread for a single tile, so no synchronization is
+ * needed. The statistics objects are stored inside a flat array indexed by local class, range and band ordinals. The class ordinals provided by
+ * the {@link ClassOrdinals} of the tile, shared by all its zones, are mapped to local ordinals assigned only to the classes found inside the
+ * zone, so that the array size does not depend on the classes of the other zones. At the end of the tile computation the accumulator is
+ * merged into its zone with the {@link ZoneGeometry#accumulate(ZoneAccumulator)} method.
+ */
+final class ZoneAccumulator {
+
+    /** Zone associated to this accumulator */
+    private final ZoneGeometry zone;
+
+    /** Ordinal of each band inside the zone bands array, indexed by band number */
+    private final int[] bandOrdinals;
+
+    /** Number of bands */
+    private final int numBands;
+
+    /** Number of statistics */
+    private final int numStats;
+
+    /** Ranges of the zone. One additional slot is used for a range not defined by the zone */
+    private final Range[] ranges;
+
+    /** Number of range slots */
+    private final int numRangeSlots;
+
+    /** Statistics objects, indexed by local class ordinal, range ordinal, band ordinal and statistic */
+    private Statistics[] stats;
+
+    /** Class ordinals of the tile */
+    private final ClassOrdinals classes;
+
+    /** Local class ordinals of the zone, keyed by the class ordinals of the tile */
+    private final IntOrdinalMap localClasses = new IntOrdinalMap(1);
+
+    /** Number of local class ordinals stored inside the statistics array */
+    private int numClasses;
+
+    ZoneAccumulator(ZoneGeometry zone, ClassOrdinals classes) {
+        this.zone = zone;
+        this.classes = classes;
+        this.bandOrdinals = zone.getBandOrdinals();
+        this.numBands = zone.getNumBands();
+        this.numStats = zone.getNumStats();
+        int numRanges = zone.getRanges().size();
+        this.ranges = zone.getRanges().toArray(new Range[numRanges + 1]);
+        this.numRangeSlots = numRanges + 1;
+    }
+
+    /**
+     * Adds a sample to the statistics of the selected band, tile class ordinal and range.
+     */
+    void add(double sample, int band, int classOrdinal, Range range) {
+        int bandOrdinal = bandOrdinals[band];
+        int localOrdinal = localClasses.getOrAdd(classOrdinal);
+        if (localOrdinal >= numClasses) {
+            ensureClasses(localOrdinal + 1);
+        }
+        int index = ((localOrdinal * numRangeSlots + getRangeOrdinal(range))
+                * numBands + bandOrdinal) * numStats;
+        if (stats[index] == null) {
+            Statistics[] statistics = zone.createStatistics(band);
+            System.arraycopy(statistics, 0, stats, index, numStats);
+        }
+        for (int st = 0; st < numStats; st++) {
+            stats[index + st].addSample(sample);
+        }
+    }
+
+    /** Returns the ordinal of the input range, by identity, since only the zone ranges are used */
+    private int getRangeOrdinal(Range range) {
+        int last = numRangeSlots - 1;
+        for (int r = 0; r < last; r++) {
+            if (ranges[r] == range) {
+                return r;
+            }
+        }
+        // Ranges not defined by the zone are stored in the last slot
+        if (ranges[last] == null) {
+            ranges[last] = range;
+        } else if (ranges[last] != range) {
+            throw new IllegalArgumentException("Range not defined for the zone");
+        }
+        return last;
+    }
+
+    /** Grows the statistics array for storing the selected number of classes */
+    private void ensureClasses(int requiredClasses) {
+        int classSize = numRangeSlots * numBands * numStats;
+        int size = requiredClasses * classSize;
+        if (stats == null) {
+            stats = new Statistics[size];
+        } else if (size > stats.length) {
+            Statistics[] grown = new Statistics[Math.max(size, stats.length * 2)];
+            System.arraycopy(stats, 0, grown, 0, stats.length);
+            stats = grown;
+        }
+        numClasses = requiredClasses;
+    }
+
+    /** Returns the zone associated to this accumulator */
+    ZoneGeometry getZone() {
+        return zone;
+    }
+
+    /** Returns the number of local class ordinals stored by this accumulator; some of them may have no statistics */
+    int getNumClasses() {
+        return numClasses;
+    }
+
+    /** Returns the class identifier associated to the selected local ordinal */
+    int getClassId(int localOrdinal) {
+        return classes.getClassId(localClasses.getKey(localOrdinal));
+    }
+
+    /** Returns the number of range slots */
+    int getNumRangeSlots() {
+        return numRangeSlots;
+    }
+
+    /** Returns the range associated to the selected ordinal, null if the slot has not been used */
+    Range getRange(int rangeOrdinal) {
+        return ranges[rangeOrdinal];
+    }
+
+    /**
+     * Returns the index of the statistics of the selected local class, range and band ordinals inside the array returned by {@link #getStatistics()}. If
+     * no sample has been added, the array contains null at the returned index.
+     */
+    int getIndex(int classOrdinal, int rangeOrdinal, int bandOrdinal) {
+        return ((classOrdinal * numRangeSlots + rangeOrdinal) * numBands + bandOrdinal) * numStats;
+    }
+
+    /** Returns the statistics array */
+    Statistics[] getStatistics() {
+        return stats;
+    }
+}
@@ -17,6 +17,7 @@
 */
 package it.geosolutions.jaiext.zonal;
 
+import java.awt.Rectangle;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
@@ -35,8 +36,8 @@ import it.geosolutions.jaiext.stats.StatsFactory;
 /**
  * This class is used for storing the statistics associated to a specific geometry. All the statistics are organized inside Map objects. The
  * "statsContainer" object contains a number of items, each one for every band. Every item object contains the statistics array for every Class, if the
- * classifier is present, or only for the Class 0 if not. The statistics object are created at the initialization time if the classifier is not
- * present, otherwise they are created when a new Class is founded.
+ * classifier is present, or only for the Class 0 if not. The statistics object are created when the first sample of their band, Class and Range
+ * is added, so that zones not covering any pixel do not allocate them.
  */
 
 public class ZoneGeometry {
@@ -64,6 +65,30 @@ public class ZoneGeometry {
 
     private List<Range> ranges;
 
+    /** Array indicating the selected bands */
+    private final int[] bands;
+
+    /** Ordinal of each band inside the bands array, indexed by band number */
+    private final int[] bandOrdinals;
+
+    /** Rasterizer of the zone geometry */
+    private final ROIRasterizer rasterizer;
+
+    /** Range of the tiles intersecting the zone bounds, used for tracking the zone completion */
+    private int minTileX;
+
+    private int minTileY;
+
+    private int maxTileX;
+
+    private int maxTileY;
+
+    /** Number of tiles intersecting the zone bounds not yet computed */
+    private int remainingTiles;
+
+    /** Boolean indicating if the zone has been passed to the listener and its statistics released */
+    private boolean notified;
+
     ZoneGeometry(ROI roi, List<Range> ranges, int[] bands, StatsType[] stats, boolean classification, double[] minBounds,
             double[] maxBounds, int[] numbins) {
 
@@ -74,40 +99,58 @@ public class ZoneGeometry {
         this.maxBounds = maxBounds;
         this.numbins = numbins;
         this.roi = roi;
+        this.rasterizer = new ROIRasterizer(roi);
         this.ranges = ranges;
+        this.bands = bands;
+        int maxBand = 0;
+        for (int i : bands) {
+            maxBand = Math.max(maxBand, i);
+        }
+        this.bandOrdinals = new int[maxBand + 1];
+        for (int i = 0; i < bands.length; i++) {
+            bandOrdinals[bands[i]] = i;
+        }
         
         // creation of the new map associated with this ZoneGeometry instance
         statsContainer = new TreeMap<Integer, Map<Integer, Map<Range, Statistics[]>>>();
         // Cicle on all the selected bands for creating the band inner map elements
         for (int i : bands) {
             Map<Integer, Map<Range, Statistics[]>> mapClass = new TreeMap<Integer, Map<Range, Statistics[]>>();
-            // If the classifier is not present, the statistics objects are created at the ZoneGeometry
-            // instantiation
+            // If the classifier is not present, the only Class is created at the ZoneGeometry
+            // instantiation, while its statistics objects are created with the first sample
             if (!classification) {
-                Map<Range, Statistics[]> mapRange = new HashMap<Range, Statistics[]>();
-                
-                for(Range inputRange : ranges){
-                    
-                    
-                    Statistics[] statistics = new Statistics[stats.length];
-                    for (int st = 0; st < stats.length; st++) {
-                        int statId = stats[st].getStatsId();
-                        if (statId <= 6) {
-                            statistics[st] = StatsFactory.createSimpleStatisticsObjectFromInt(statId);
-                        } else {
-                            statistics[st] = StatsFactory.createComplexStatisticsObjectFromInt(statId,
-                                    minBounds[i], maxBounds[i], numbins[i]);
-                        }
-                    }                    
-                    mapRange.put(inputRange, statistics);
-                }                
-                mapClass.put(0, mapRange);
+                mapClass.put(0, new HashMap<Range, Statistics[]>());
             }
             statsContainer.put(i, mapClass);
         }
     }
 
-    public synchronized void  add(double sample, int band, int classId, Range dataRange) {
+    /** Creates a new array of statistics objects for the selected band */
+    Statistics[] createStatistics(int band) {
+        return createStatistics(stats, minBounds, maxBounds, numbins, band);
+    }
+
+    /**
+     * Creates a new array containing the selected statistics objects. The bounds and the bin numbers of the selected band are used only by the
+     * complex statistics.
+     */
+    static Statistics[] createStatistics(StatsType[] stats, double[] minBounds,
+            double[] maxBounds, int[] numbins, int band) {
+        Statistics[] statistics = new Statistics[stats.length];
+        for (int st = 0; st < stats.length; st++) {
+            int statId = stats[st].getStatsId();
+            if (stats[st].isSimple()) {
+                statistics[st] = StatsFactory.createSimpleStatisticsObjectFromInt(statId);
+            } else {
+                statistics[st] = StatsFactory.createComplexStatisticsObjectFromInt(statId,
+                        minBounds[band], maxBounds[band], numbins[band]);
+            }
+        }
+        return statistics;
+    }
+
+    /** Returns the statistics of the selected band, class and range, creating them if not present */
+    private Statistics[] getOrCreateStatistics(int band, int classId, Range dataRange) {
         // Selection of the map associated with the band indicated by the index
         Map<Integer, Map<Range, Statistics[]>> mapClass = statsContainer.get(band);
         // Selection of the Map associated with the zone indicated by the index
@@ -115,63 +158,100 @@ public class ZoneGeometry {
         Map<Range, Statistics[]> mapRange = mapClass.get(classId);
 
         // if the classifier is present and a new Class is founded, then a new statistics object is created
-        if (classification && mapRange == null) {
+        if (mapRange == null) {
             mapRange = new HashMap<Range, Statistics[]>();
-            Statistics[] statistics = new Statistics[stats.length];
-
-            for (int st = 0; st < stats.length; st++) {
-                int statId = stats[st].getStatsId();
-                if (statId <= 6) {
-                    statistics[st] = StatsFactory.createSimpleStatisticsObjectFromInt(statId);
-                } else {
-                    statistics[st] = StatsFactory.createComplexStatisticsObjectFromInt(statId,
-                            minBounds[band], maxBounds[band], numbins[band]);
-                }
-            }
-
-            // The updated statistics are inserted in the related containers
-            mapRange.put(dataRange, statistics);
             // Insertion of the MapRange if not present
             mapClass.put(classId, mapRange);
-            
-        }else{
-            // Selection of the 
-            Statistics[] statistics = mapRange.get(dataRange);
-            
-            // Update of the statistics
-            for (int st = 0; st < stats.length; st++) {
-                statistics[st].addSample(sample);
+        }
+        Statistics[] statistics = mapRange.get(dataRange);
+        if (statistics == null) {
+            statistics = createStatistics(band);
+            mapRange.put(dataRange, statistics);
+        }
+        return statistics;
+    }
+
+    public synchronized void  add(double sample, int band, int classId, Range dataRange) {
+        // The statistics of a zone already passed to the listener are not updated
+        if (notified) {
+            return;
+        }
+        Statistics[] statistics = getOrCreateStatistics(band, classId, dataRange);
+        // Update of the statistics
+        for (int st = 0; st < stats.length; st++) {
+            statistics[st].addSample(sample);
+        }
+    }
+
+    /**
+     * Merges the statistics of a tile-local accumulator into the zone statistics. The zone is locked only once for each accumulator.
+     */
+    synchronized void accumulate(ZoneAccumulator accumulator) {
+        Statistics[] local = accumulator.getStatistics();
+        if (local == null || notified) {
+            return;
+        }
+        int numClasses = accumulator.getNumClasses();
+        int numRangeSlots = accumulator.getNumRangeSlots();
+        for (int c = 0; c < numClasses; c++) {
+            int classId = accumulator.getClassId(c);
+            for (int r = 0; r < numRangeSlots; r++) {
+                for (int b = 0; b < bands.length; b++) {
+                    int index = accumulator.getIndex(c, r, b);
+                    if (local[index] == null) {
+                        continue;
+                    }
+                    Statistics[] statistics = getOrCreateStatistics(bands[b], classId,
+                            accumulator.getRange(r));
+                    for (int st = 0; st < stats.length; st++) {
+                        Statistics.accumulate(statistics[st], local[index + st]);
+                    }
+                }
             }
-            
         }
     }
 
+    /** Returns the ordinal of each band inside the selected bands array, indexed by band number */
+    int[] getBandOrdinals() {
+        return bandOrdinals;
+    }
+
+    /** Returns the number of selected bands */
+    int getNumBands() {
+        return bands.length;
+    }
+
+    /** Returns the number of statistics calculated */
+    int getNumStats() {
+        return stats.length;
+    }
+
     /**
      * Utility method for having the Statistics of a specific band inside a specific zone class and a specific Range
      */
-    public Statistics[] getStatsPerBandPerClassPerRange(int band, int classId, Range range) {
+    public synchronized Statistics[] getStatsPerBandPerClassPerRange(int band, int classId, Range range) {
+        createMissingStatistics();
         Statistics[] statistics = statsContainer.get(band).get(classId).get(range);
         return statistics;
     }
 
     /**
-     * Utility method for having the Statistics of a specific band if no classifier is used 
+     * Utility method for having the Statistics of a specific band if no classifier is used. The statistics of a Range without samples are
+     * empty.
      */
-    public Statistics[] getStatsPerBandNoClassifier(int band, Range range) {
-        Statistics[] statistics = statsContainer.get(band).get(0).get(range);                
-        return statistics;
+    public synchronized Statistics[] getStatsPerBandNoClassifier(int band, Range range) {
+        if (!ranges.contains(range)) {
+            return null;
+        }
+        return getOrCreateStatistics(band, 0, range);
     }
    
     
     /**
      * Utility method for having the Statistics of a specific band if no classifier and no Range are used 
      */
-    public Statistics[] getStatsPerBandNoClassifierNoRange(int band) {
-        
-       Range fullRange = statsContainer.get(band).get(0).keySet().iterator().next();
-        
-        Statistics[] statistics = statsContainer.get(band).get(0).get(fullRange);                
-        return statistics;
+    public synchronized Statistics[] getStatsPerBandNoClassifierNoRange(int band) {
+        return getOrCreateStatistics(band, 0, ranges.get(0));
     }
     
     /**
@@ -182,10 +262,26 @@ public class ZoneGeometry {
         return statistics;
     }
     
+    /**
+     * Creates the empty statistics of the Ranges without samples if the classifier is not present, so that the returned maps contain all the
+     * Ranges as if the statistics were created eagerly.
+     */
+    private void createMissingStatistics() {
+        if (classification) {
+            return;
+        }
+        for (int band : bands) {
+            for (Range range : ranges) {
+                getOrCreateStatistics(band, 0, range);
+            }
+        }
+    }
+
     /**
      * Utility method for having all the zone-class statistics for a selected band.
      */
-    public Map<Integer, Map<Range, Statistics[]>> getStatsPerBand(int band) {
+    public synchronized Map<Integer, Map<Range, Statistics[]>> getStatsPerBand(int band) {
+        createMissingStatistics();
         Map<Integer, Map<Range, Statistics[]>> resultAllClass = statsContainer.get(band);
         return resultAllClass;
     }
@@ -193,7 +289,8 @@ public class ZoneGeometry {
     /**
      * Utility method for having all the zone-class statistics for a selected band.
      */
-    public Map<Range, Statistics[]> getStatsPerBandPerClass(int band, int classId) {
+    public synchronized Map<Range, Statistics[]> getStatsPerBandPerClass(int band, int classId) {
+        createMissingStatistics();
         Map<Range, Statistics[]> resultPerClass = statsContainer.get(band).get(classId);
         return resultPerClass;
     }
@@ -227,7 +324,8 @@ public class ZoneGeometry {
     /**
      * Utility method for having all ZoneGeometry statistics.
      */
-    public Map<Integer, Map<Integer, Map<Range, Statistics[]>>> getTotalStats() {
+    public synchronized Map<Integer, Map<Integer, Map<Range, Statistics[]>>> getTotalStats() {
+        createMissingStatistics();
         return new TreeMap<Integer, Map<Integer, Map<Range, Statistics[]>>>(statsContainer);
     }
     
@@ -239,6 +337,77 @@ public class ZoneGeometry {
     }
     
 
+    /**
+     * Rasterizes the zone geometry inside the selected area. The covered pixels are returned as runs, as described in
+     * {@link ScanlineEdgeTable#rasterize(Rectangle)}.
+     */
+    int[] rasterize(Rectangle area) {
+        return rasterizer.rasterize(area);
+    }
+
+    /**
+     * Sets the range of the tiles intersecting the zone bounds. The zone is complete when all of them have been notified with
+     * {@link #completeTile(int, int)}.
+     */
+    synchronized void setTileRange(int minTileX, int minTileY, int maxTileX, int maxTileY) {
+        this.minTileX = minTileX;
+        this.minTileY = minTileY;
+        this.maxTileX = maxTileX;
+        this.maxTileY = maxTileY;
+        this.remainingTiles = Math.max(maxTileX - minTileX + 1, 0)
+                * Math.max(maxTileY - minTileY + 1, 0);
+        this.notified = false;
+    }
+
+    /**
+     * Notifies that the selected tile has been computed. Each tile must be notified only once. Returns true if the tile was the last one intersecting
+     * the zone bounds.
+     */
+    synchronized boolean completeTile(int tileX, int tileY) {
+        if (tileX < minTileX || tileX > maxTileX || tileY < minTileY || tileY > maxTileY) {
+            return false;
+        }
+        return --remainingTiles == 0;
+    }
+
+    /** Returns true if no tile intersecting the zone bounds has still to be computed */
+    synchronized boolean isComplete() {
+        return remainingTiles == 0;
+    }
+
+    /** Returns true if the zone bounds do not intersect any tile */
+    synchronized boolean isOutsideTiles() {
+        return maxTileX < minTileX || maxTileY < minTileY;
+    }
+
+    /**
+     * Marks the zone as passed to the listener, so that it is notified only once and its statistics are not updated anymore. Returns false if the
+     * zone was already marked.
+     */
+    synchronized boolean markNotified() {
+        if (notified) {
+            return false;
+        }
+        notified = true;
+        return true;
+    }
+
+    /** Returns true if the zone has been passed to the listener and its statistics released */
+    synchronized boolean isNotified() {
+        return notified;
+    }
+
+    /** Releases the statistics of the zone */
+    synchronized void releaseStatistics() {
+        for (Map<Integer, Map<Range, Statistics[]>> mapClass : statsContainer.values()) {
+            if (classification) {
+                mapClass.clear();
+            } else {
+                mapClass.get(0).clear();
+            }
+        }
+    }
+
     /** Simple method for clearing all the image statistics */
     public void clear() {
         statsContainer.clear();
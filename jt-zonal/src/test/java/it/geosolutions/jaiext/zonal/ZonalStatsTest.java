@@ -18,27 +18,37 @@
 package it.geosolutions.jaiext.zonal;
 
 import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
 import java.awt.Rectangle;
 import java.awt.image.DataBuffer;
 import java.awt.image.Raster;
 import java.awt.image.RenderedImage;
 import java.util.ArrayList;
+import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import javax.media.jai.JAI;
+import javax.media.jai.ParameterBlockJAI;
 import javax.media.jai.ROI;
 import javax.media.jai.ROIShape;
+import javax.media.jai.RenderedOp;
 import javax.media.jai.iterator.RandomIter;
+import javax.media.jai.registry.RenderedRegistryMode;
 import it.geosolutions.jaiext.iterators.RandomIterFactory;
 import it.geosolutions.jaiext.range.Range;
 import it.geosolutions.jaiext.range.RangeFactory;
 import it.geosolutions.jaiext.stats.Statistics;
 import it.geosolutions.jaiext.stats.Statistics.StatsType;
 import it.geosolutions.jaiext.testclasses.TestBase;
+import it.geosolutions.jaiext.vectorbin.ROIGeometry;
 import org.junit.BeforeClass;
 import org.junit.Test;
 import com.vividsolutions.jts.geom.Coordinate;
 import com.vividsolutions.jts.geom.Envelope;
+import com.vividsolutions.jts.geom.Geometry;
+import com.vividsolutions.jts.geom.GeometryFactory;
 import com.vividsolutions.jts.index.strtree.STRtree;
 
 /**
@@ -548,6 +558,219 @@ public class ZonalStatsTest extends TestBase {
         assertEquals(4, stats.size());
     }
 
+    @Test
+    public void testLabelZones() {
+        // The classifier image is used as label image
+        RenderedImage source = sourceIMG[1];
+        RenderedImage destination = ZonalStatsDescriptor.create(source, classifier, noDataUShort,
+                null, bands, new StatsType[] { StatsType.SUM, StatsType.MAX }, null, null, null,
+                null);
+        ZonalStatsTable table = (ZonalStatsTable) destination
+                .getProperty(ZonalStatsDescriptor.ZS_TABLE_PROPERTY);
+
+        // Statistics calculated directly on the label image
+        Map<Integer, double[]> expected = new TreeMap<Integer, double[]>();
+        Raster sourceData = source.getData();
+        Raster labelData = classifier.getData();
+        for (int y = source.getMinY(); y < source.getMinY() + source.getHeight(); y++) {
+            for (int x = source.getMinX(); x < source.getMinX() + source.getWidth(); x++) {
+                int value = sourceData.getSample(x, y, 0);
+                if (noDataUShort.contains((short) value)) {
+                    continue;
+                }
+                int label = labelData.getSample(x, y, 0);
+                double[] values = expected.get(label);
+                if (values == null) {
+                    values = new double[] { 0, 0, Double.NEGATIVE_INFINITY };
+                    expected.put(label, values);
+                }
+                values[0]++;
+                values[1] += value;
+                values[2] = Math.max(values[2], value);
+            }
+        }
+
+        // Comparison
+        assertEquals(expected.size(), table.getNumZones());
+        long[] counts = table.getCounts(0);
+        double[] sums = table.getColumn(0, StatsType.SUM);
+        double[] maxs = table.getColumn(0, StatsType.MAX);
+        for (Map.Entry<Integer, double[]> entry : expected.entrySet()) {
+            int row = table.getRow(entry.getKey());
+            double[] values = entry.getValue();
+            assertEquals((long) values[0], counts[row]);
+            assertEquals(values[1], sums[row], TOLERANCE);
+            assertEquals(values[2], maxs[row], TOLERANCE);
+        }
+    }
+
+    @Test
+    public void testClassDomain() {
+        RenderedImage source = sourceIMG[1];
+        StatsType[] statsTypes = new StatsType[] { StatsType.SUM, StatsType.MAX };
+        // Results without class domain
+        List<ZoneGeometry> reference = calculateWithClassDomain(source, statsTypes, null);
+        // The results must not change if the domain covers only some or all the classes
+        Range[] domains = new Range[] { RangeFactory.create(0, true, 1, true),
+                RangeFactory.create(-1000, true, 1000, true) };
+        for (Range domain : domains) {
+            List<ZoneGeometry> result = calculateWithClassDomain(source, statsTypes, domain);
+            assertEquals(reference.size(), result.size());
+            for (int i = 0; i < result.size(); i++) {
+                Map<Integer, Map<Range, Statistics[]>> referencePerClass = reference.get(i)
+                        .getStatsPerBand(0);
+                Map<Integer, Map<Range, Statistics[]>> resultPerClass = result.get(i)
+                        .getStatsPerBand(0);
+                assertEquals(referencePerClass.keySet(), resultPerClass.keySet());
+                for (int classId : referencePerClass.keySet()) {
+                    Statistics[] statsReference = reference.get(i).getStatsPerBandNoRange(0, classId);
+                    Statistics[] statsResult = result.get(i).getStatsPerBandNoRange(0, classId);
+                    for (int j = 0; j < statsTypes.length; j++) {
+                        assertEquals((Double) statsReference[j].getResult(),
+                                (Double) statsResult[j].getResult(), TOLERANCE);
+                    }
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStreamingZones() {
+        RenderedImage source = sourceIMG[0];
+        StatsType[] statsTypes = new StatsType[] { StatsType.SUM, StatsType.MAX };
+        // Results calculated without streaming
+        RenderedImage reference = ZonalStatsDescriptor.create(source, null, null, roiList, null,
+                null, false, bands, statsTypes, null, null, null, null, false, null);
+        List<ZoneGeometry> referenceZones = (List<ZoneGeometry>) reference
+                .getProperty(ZonalStatsDescriptor.ZS_PROPERTY);
+
+        // The results are copied by the listener, since the statistics are released after the notification
+        final Map<ROI, double[]> streamed = new HashMap<ROI, double[]>();
+        final int[] notifications = new int[1];
+        ZonalStatsListener listener = new ZonalStatsListener() {
+            public void zoneCompleted(ZoneGeometry zone) {
+                Statistics[] statistics = zone.getStatsPerBandNoClassifierNoRange(0);
+                double[] values = new double[] { (Double) statistics[0].getResult(),
+                        (Double) statistics[1].getResult() };
+                synchronized (streamed) {
+                    streamed.put(zone.getROI(), values);
+                    notifications[0]++;
+                }
+            }
+        };
+        ParameterBlockJAI pb = new ParameterBlockJAI("Zonal", RenderedRegistryMode.MODE_NAME);
+        pb.setSource(source, 0);
+        pb.setParameter("roilist", roiList);
+        pb.setParameter("bands", bands);
+        pb.setParameter("stats", statsTypes);
+        pb.setParameter("zoneListener", listener);
+        RenderedOp destination = JAI.create("Zonal", pb, null);
+        List<ZoneGeometry> pending = (List<ZoneGeometry>) destination
+                .getProperty(ZonalStatsDescriptor.ZS_PROPERTY);
+        // The released zones are not returned
+        assertTrue(pending.isEmpty());
+
+        // A tile computed again, e.g. after being removed from the cache, is not notified again
+        ZonalStatsOpImage image = (ZonalStatsOpImage) destination.getRendering();
+        image.computeTile(image.getMinTileX(), image.getMinTileY());
+
+        // Every zone must be notified once, with the same results
+        assertEquals(referenceZones.size(), notifications[0]);
+        assertEquals(referenceZones.size(), streamed.size());
+        for (ZoneGeometry zone : referenceZones) {
+            Statistics[] statistics = zone.getStatsPerBandNoClassifierNoRange(0);
+            double[] values = streamed.get(zone.getROI());
+            assertEquals((Double) statistics[0].getResult(), values[0], TOLERANCE);
+            assertEquals((Double) statistics[1].getResult(), values[1], TOLERANCE);
+        }
+    }
+
+    @Test
+    public void testGeometryZones() {
+        RenderedImage source = sourceIMG[0];
+        StatsType[] statsTypes = new StatsType[] { StatsType.SUM };
+        Geometry square = new GeometryFactory().toGeometry(new Envelope(0, 10, 0, 10));
+        // The pixels lying on the boundary of a ROIGeometry are not contained, as for a ROIShape
+        // only the right and bottom edges are excluded
+        List<ROI> zones = new ArrayList<ROI>();
+        zones.add(new ROIGeometry(square));
+        zones.add(new ROIShape(new Rectangle(0, 0, 10, 10)));
+        List<ZoneGeometry> result = calculateZones(source, zones, null, statsTypes);
+        assertEquals(81, result.get(0).getStatsPerBandNoClassifierNoRange(0)[0].getNumSamples()
+                .longValue());
+        assertEquals(100, result.get(1).getStatsPerBandNoClassifierNoRange(0)[0].getNumSamples()
+                .longValue());
+
+        // The same rules are applied to the source ROI
+        zones = new ArrayList<ROI>();
+        zones.add(new ROIShape(new Rectangle(0, 0, 20, 20)));
+        result = calculateZones(source, zones, new ROIGeometry(square), statsTypes);
+        assertEquals(81, result.get(0).getStatsPerBandNoClassifierNoRange(0)[0].getNumSamples()
+                .longValue());
+    }
+
+    @Test
+    public void testFirstSampleOfNewClass() {
+        StatsType[] statsTypes = new StatsType[] { StatsType.SUM };
+        Range range = RangeFactory.create(Double.NEGATIVE_INFINITY, true,
+                Double.POSITIVE_INFINITY, true, true);
+        List<Range> ranges = new ArrayList<Range>();
+        ranges.add(range);
+        int[] zoneBands = new int[] { 0 };
+        ROI zone = new ROIShape(new Rectangle(0, 0, 10, 10));
+
+        // The first sample of a class added directly to the zone is kept
+        ZoneGeometry direct = new ZoneGeometry(zone, ranges, zoneBands, statsTypes, true, null,
+                null, null);
+        direct.add(3, 0, 7, range);
+        Statistics sum = direct.getStatsPerBandPerClassPerRange(0, 7, range)[0];
+        assertEquals(1, sum.getNumSamples().longValue());
+        assertEquals(3, (Double) sum.getResult(), TOLERANCE);
+
+        // The same happens for the samples merged from a tile-local accumulator
+        ZoneGeometry merged = new ZoneGeometry(zone, ranges, zoneBands, statsTypes, true, null,
+                null, null);
+        ClassOrdinals classes = new ClassOrdinals(0, 0);
+        ZoneAccumulator accumulator = new ZoneAccumulator(merged, classes);
+        accumulator.add(3, 0, classes.getOrdinal(7), range);
+        accumulator.add(5, 0, classes.getOrdinal(9), range);
+        accumulator.add(4, 0, classes.getOrdinal(7), range);
+        merged.accumulate(accumulator);
+        sum = merged.getStatsPerBandPerClassPerRange(0, 7, range)[0];
+        assertEquals(2, sum.getNumSamples().longValue());
+        assertEquals(7, (Double) sum.getResult(), TOLERANCE);
+        sum = merged.getStatsPerBandPerClassPerRange(0, 9, range)[0];
+        assertEquals(1, sum.getNumSamples().longValue());
+        assertEquals(5, (Double) sum.getResult(), TOLERANCE);
+    }
+
+    /** Calculates the zonal statistics of the selected zones, without classifier */
+    private List<ZoneGeometry> calculateZones(RenderedImage source, List<ROI> zones, ROI mask,
+            StatsType[] statsTypes) {
+        ParameterBlockJAI pb = new ParameterBlockJAI("Zonal", RenderedRegistryMode.MODE_NAME);
+        pb.setSource(source, 0);
+        pb.setParameter("roilist", zones);
+        pb.setParameter("mask", mask);
+        pb.setParameter("bands", bands);
+        pb.setParameter("stats", statsTypes);
+        RenderedImage destination = JAI.create("Zonal", pb, null);
+        return (List<ZoneGeometry>) destination.getProperty(ZonalStatsDescriptor.ZS_PROPERTY);
+    }
+
+    /** Calculates the zonal statistics of the geometries using the classifier and the selected class domain */
+    private List<ZoneGeometry> calculateWithClassDomain(RenderedImage source,
+            StatsType[] statsTypes, Range classDomain) {
+        ParameterBlockJAI pb = new ParameterBlockJAI("Zonal", RenderedRegistryMode.MODE_NAME);
+        pb.setSource(source, 0);
+        pb.setParameter("classifier", classifier);
+        pb.setParameter("roilist", roiList);
+        pb.setParameter("bands", bands);
+        pb.setParameter("stats", statsTypes);
+        pb.setParameter("classDomain", classDomain);
+        RenderedImage destination = JAI.create("Zonal", pb, null);
+        return (List<ZoneGeometry>) destination.getProperty(ZonalStatsDescriptor.ZS_PROPERTY);
+    }
+
     public void testZonalStats(RenderedImage source, boolean classifierUsed,
             boolean noDataRangeUsed, boolean roiUsed, boolean useROIAccessor, List<Range> rangeList) {
 